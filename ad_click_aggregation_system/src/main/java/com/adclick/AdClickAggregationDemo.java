@@ -1,8 +1,10 @@
 package com.adclick;
 
+import com.adclick.aggregation.RollupCube;
 import com.adclick.model.AdClickEvent;
 import com.adclick.model.AggregatedResult;
 import com.adclick.service.AggregationService;
+import com.adclick.service.BackfillEngine;
 import com.adclick.service.QueryService;
 import com.adclick.storage.AggregationStore;
 import com.adclick.storage.RawDataStore;
@@ -33,8 +35,9 @@ public class AdClickAggregationDemo {
 
         // Initialize stores and services
         RawDataStore rawDataStore = new RawDataStore();
-        AggregationStore aggregationStore = new AggregationStore();
+        AggregationStore aggregationStore = new AggregationStore(5); // 5-minute sliding top-N
         AggregationService aggregationService = new AggregationService(aggregationStore, rawDataStore, 3);
+        aggregationService.setRollupCube(new RollupCube("country,device", "format"));
         QueryService queryService = new QueryService(aggregationStore);
 
         // ============================================
@@ -78,12 +81,18 @@ public class AdClickAggregationDemo {
         System.out.println("\n--- GET /ads/ad2/aggregated_count?filter=country:US ---");
         queryService.getFilteredCount("ad2", minute1, minute2 + 1, "country:US");
 
+        System.out.println("\n--- GET /ads/ad2/aggregated_count?filter=country:US,device:mobile (rollup cube) ---");
+        queryService.getFilteredCount("ad2", minute1, minute2 + 1, Map.of("country", "US", "device", "mobile"));
+
         System.out.println("\n--- GET /ads/popular_ads (minute 1000, top 3) ---");
         queryService.getTopAds(minute1, 3);
 
         System.out.println("\n--- GET /ads/popular_ads (minute 1001, top 3) ---");
         queryService.getTopAds(minute2, 3);
 
+        System.out.println("\n--- GET /ads/popular_ads?window_size=5 (top 3) ---");
+        queryService.getTopAdsInWindow(5, 3);
+
         // ============================================
         // Demo 3: Late Event Handling (Watermark)
         // ============================================
@@ -109,6 +118,14 @@ public class AdClickAggregationDemo {
         System.out.println("Scenario: Bug found in aggregation logic, need to recompute minutes 1000-1002");
         aggregationService.recalculate(minute1, minute2 + 1);
 
+        System.out.println("\n--- Parallel backfill: 1-minute chunks, 2 workers, atomic swap per chunk ---");
+        BackfillEngine backfill = new BackfillEngine(rawDataStore, aggregationStore, 3, 2, 1, 0);
+        backfill.setRollupCuboids(aggregationService.getRollupCube().getCuboids());
+        BackfillEngine.Job job = backfill.start(minute1, minute2 + 1);
+        job.awaitCompletion();
+        System.out.println("  " + job);
+        queryService.getAggregatedCount("ad1", minute1, minute2 + 1);
+
         // ============================================
         // Demo 5: Back-of-Envelope Estimation
         // ============================================
@@ -0,0 +1,186 @@
+package com.adclick;
+
+import com.adclick.aggregation.ClickDeduplicator;
+import com.adclick.model.AdClickEvent;
+import com.adclick.model.AggregatedResult;
+import com.adclick.service.AggregationService;
+import com.adclick.storage.AggregationStore;
+import com.adclick.storage.CheckpointStore;
+import com.adclick.storage.RawDataStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Crash-injection drill for checkpointed, exactly-once aggregation.
+ *
+ * 1. Reference run: ingest the whole stream once, no crashes
+ * 2. Crash run: same stream, but the service is killed at random offsets
+ *    (sometimes with a torn checkpoint write at the tail of the log).
+ *    Each restart restores the latest intact checkpoint and seeks to its offset.
+ * 3. Every stored count must match the reference: no window lost or double-counted,
+ *    and the raw store (which also survives) holds each accepted event exactly once.
+ *
+ * The drill runs twice: plain, and with a ClickDeduplicator in front (the
+ * stream carries ~5% client retries). With dedup on, a restart must restore
+ * the filter ring too, or retries replayed after the crash are judged
+ * differently than in the reference run.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.adclick.CrashRecoveryDemo
+ */
+public class CrashRecoveryDemo {
+    private static final int OFFSETS = 400;
+    private static final int EVENTS_PER_BATCH = 200;
+    private static final int TOP_N = 1000;   // ≥ distinct ads, so top-N ties can't differ between runs
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Crash-injection drill: checkpoint + exactly-once window commits ===");
+        List<List<AdClickEvent>> stream = generateStream(11);
+        boolean ok = drill("plain", stream, service -> { });
+        ok &= drill("with dedup", stream,
+                service -> service.setDeduplicator(new ClickDeduplicator(30, 5, 20_000, 0.001)));
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean drill(String label, List<List<AdClickEvent>> stream,
+                                 java.util.function.Consumer<AggregationService> configure) throws IOException {
+        System.out.println("\n--- " + label + " ---");
+
+        // 1. Reference run
+        AggregationStore expected = new AggregationStore();
+        RawDataStore expectedRaw = new RawDataStore();
+        quietly(() -> {
+            AggregationService service = new AggregationService(expected, expectedRaw, TOP_N);
+            configure.accept(service);
+            for (int offset = 0; offset < OFFSETS; offset++) {
+                service.ingest(offset, stream.get(offset));
+            }
+            service.flushOpenWindows();
+        });
+
+        // 2. Crash run: the aggregation DB and raw store survive, the service process does not
+        Path checkpointFile = Files.createTempFile("adclick-checkpoint", ".log");
+        Files.delete(checkpointFile);
+        AggregationStore actual = new AggregationStore();
+        RawDataStore actualRaw = new RawDataStore();
+        long maxLogBytes = 0;
+        Random random = new Random(5);
+        int crashes = 0, tornWrites = 0;
+        long totalRestoreNanos = 0;
+        int next = 0;
+
+        while (next < OFFSETS) {
+            AggregationService service = new AggregationService(actual, actualRaw, TOP_N);
+            configure.accept(service);
+            CheckpointStore checkpoints = new CheckpointStore(checkpointFile, 3);
+            long restoreStart = System.nanoTime();
+            int resumeAt = (int) quietlyGet(() -> service.enableCheckpointing(checkpoints, 5));
+            totalRestoreNanos += System.nanoTime() - restoreStart;
+
+            int crashAt = resumeAt + 1 + random.nextInt(40);
+            int offset = resumeAt;
+            for (; offset < OFFSETS && offset < crashAt; offset++) {
+                final int o = offset;
+                quietly(() -> service.ingest(o, stream.get(o)));
+                maxLogBytes = Math.max(maxLogBytes, Files.size(checkpointFile));
+            }
+
+            if (offset >= OFFSETS) {
+                quietly(service::flushOpenWindows);
+                checkpoints.close();
+                next = OFFSETS;
+            } else {
+                // Crash: the process dies; unsynced bytes may be cut mid-record
+                checkpoints.close();
+                crashes++;
+                if (random.nextInt(3) == 0 && Files.size(checkpointFile) > 0) {
+                    tearTail(checkpointFile, 1 + random.nextInt(20));
+                    tornWrites++;
+                }
+                next = offset;
+            }
+        }
+        Files.deleteIfExists(checkpointFile);
+
+        // 3. Verify
+        Map<String, Long> expectedCounts = toCountMap(expected.getAllResults());
+        Map<String, Long> actualCounts = toCountMap(actual.getAllResults());
+        System.out.println("  Crashes injected:     " + crashes + " (" + tornWrites + " with torn checkpoint tail)");
+        System.out.println(String.format("  Avg restore time:     %.2f ms", totalRestoreNanos / 1e6 / (crashes + 1)));
+        System.out.println("  Max checkpoint log:   " + maxLogBytes / 1024 + " KB");
+        System.out.println("  Stored rows:          " + actualCounts.size() + " (reference " + expectedCounts.size() + ")");
+        System.out.println("  Raw events:           " + actualRaw.getTotalEvents() + " (reference "
+                + expectedRaw.getTotalEvents() + ")");
+        if (!expectedCounts.equals(actualCounts)) {
+            System.out.println("  ✗ MISMATCH: some window was lost or double-counted");
+            return false;
+        }
+        if (actualRaw.getTotalEvents() != expectedRaw.getTotalEvents()) {
+            System.out.println("  ✗ MISMATCH: replay lost or duplicated raw events");
+            return false;
+        }
+        System.out.println("  ✓ Every window counted exactly once across all restarts");
+        return true;
+    }
+
+    /** Minute advances every 10 offsets; ~20% of events are 1-2 minutes late, ~2% too late, ~5% retried. */
+    private static List<List<AdClickEvent>> generateStream(long seed) {
+        Random random = new Random(seed);
+        String[] countries = {"US", "UK", "IN"};
+        List<List<AdClickEvent>> stream = new ArrayList<>();
+        List<AdClickEvent> retried = new ArrayList<>();
+        for (int offset = 0; offset < OFFSETS; offset++) {
+            long minute = 1000 + offset / 10;
+            List<AdClickEvent> batch = new ArrayList<>();
+            batch.addAll(retried);   // Retries of the previous offset, sometimes across a checkpoint
+            retried.clear();
+            for (int i = 0; i < EVENTS_PER_BATCH; i++) {
+                int roll = random.nextInt(100);
+                long eventMinute = roll < 2 ? minute - 5 : roll < 22 ? minute - 1 - random.nextInt(2) : minute;
+                AdClickEvent event = new AdClickEvent("ad" + random.nextInt(30),
+                        Instant.ofEpochSecond(eventMinute * 60 + random.nextInt(60)),
+                        "user" + random.nextInt(10_000), "10.0.0.1",
+                        countries[random.nextInt(countries.length)], "mobile", "banner");
+                batch.add(event);
+                if (random.nextInt(20) == 0) retried.add(event);
+            }
+            stream.add(batch);
+        }
+        return stream;
+    }
+
+    private static void tearTail(Path file, int bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(Math.max(0, raf.length() - bytes));
+        }
+    }
+
+    private static Map<String, Long> toCountMap(Collection<AggregatedResult> results) {
+        Map<String, Long> map = new TreeMap<>();
+        for (AggregatedResult r : results) {
+            map.put(r.getAdId() + ":" + r.getMinuteBucket() + ":" + r.getFilterId(), r.getCount());
+        }
+        return map;
+    }
+
+    // The service logs every window commit; keep the drill output readable
+    private static void quietly(Runnable task) {
+        quietlyGet(() -> { task.run(); return 0L; });
+    }
+
+    private static long quietlyGet(java.util.function.LongSupplier task) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return task.getAsLong();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.adclick.aggregation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fixed-size Bloom filter over 64-bit key hashes.
+ *
+ * - m bits and k hash functions are sized up front from (expected items, target FPP),
+ *   so memory never grows with traffic
+ * - k probe positions come from double hashing: h1 + i × h2
+ * - No false negatives; false-positive rate is estimated from the fill ratio
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+    private long insertions = 0;
+
+    public BloomFilter(int expectedItems, double falsePositiveRate) {
+        int n = Math.max(1, expectedItems);
+        // m = -n·ln(p) / (ln 2)², k = (m/n)·ln 2
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        this.bits = new long[(numBits + 63) >>> 6];
+    }
+
+    /** Add the key; returns true if it was (probably) already present. */
+    public boolean put(long keyHash) {
+        boolean present = true;
+        long h1 = keyHash, h2 = mix(keyHash) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) numBits);
+            long mask = 1L << bit;
+            if ((bits[bit >>> 6] & mask) == 0) {
+                present = false;
+                bits[bit >>> 6] |= mask;
+            }
+        }
+        if (!present) insertions++;
+        return present;
+    }
+
+    public boolean mightContain(long keyHash) {
+        long h1 = keyHash, h2 = mix(keyHash) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0);
+        insertions = 0;
+    }
+
+    /** Current false-positive probability: (1 - e^(-k·n/m))^k */
+    public double estimatedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) numHashes * insertions / numBits), numHashes);
+    }
+
+    /** Bits + insertion count, for checkpointing the dedup ring */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(insertions);
+        out.writeInt(bits.length);
+        for (long word : bits) out.writeLong(word);
+    }
+
+    /** Load state written by writeTo on a filter sized with the same parameters */
+    void readFrom(DataInputStream in) throws IOException {
+        insertions = in.readLong();
+        int words = in.readInt();
+        if (words != bits.length) {
+            throw new IOException("Bloom filter size mismatch: " + words + " words, expected " + bits.length);
+        }
+        for (int i = 0; i < words; i++) bits[i] = in.readLong();
+    }
+
+    public long getInsertions() { return insertions; }
+    public int getSizeBytes() { return bits.length * Long.BYTES; }
+
+    /**
+     * 64-bit hash of every char of a string (FNV-1a, finalized with mix), chained
+     * from seed so several fields hash into one key. Distinct strings collide with
+     * probability ~2^-64, unlike combining 32-bit String.hashCode values; null and
+     * "" hash differently.
+     */
+    static long hash64(long seed, String s) {
+        if (s == null) {
+            return mix(seed ^ 0x9e3779b97f4a7c15L);
+        }
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h ^ s.length());
+    }
+
+    /** 64-bit finalizer (SplitMix64) to derive the second hash / spread combined keys */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
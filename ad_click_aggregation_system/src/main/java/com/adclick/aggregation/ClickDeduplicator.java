@@ -0,0 +1,180 @@
+package com.adclick.aggregation;
+
+import com.adclick.model.AdClickEvent;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Dedup / click-fraud filter stage, runs BEFORE MapReduceEngine.
+ *
+ * Drops repeated clicks on the same ad from the same (user_id, ip) within
+ * `windowSeconds`. Keys are tracked in a ring of time-bucketed Bloom filters:
+ *
+ *   event time → bucket = epochSecond / bucketSeconds
+ *   ring[bucket % slots]: one BloomFilter per bucket, cleared when reused
+ *
+ *   duplicate? = key in any retained bucket within ±window of the event's bucket
+ *
+ * Memory is fixed at slots × filter size regardless of click volume; old
+ * buckets expire by being overwritten. snapshot()/restore() carry the ring
+ * through a checkpoint, so events replayed after a crash see the same filter
+ * state they saw the first time. Bloom filters have no false negatives,
+ * so every true duplicate in the window is dropped; the (estimated) false-positive
+ * rate is the fraction of genuine clicks wrongly dropped.
+ *
+ * Not thread-safe: one instance per aggregation thread/partition.
+ */
+public class ClickDeduplicator {
+    private final int bucketSeconds;
+    private final int windowBuckets;
+    private final BloomFilter[] filters;
+    private final long[] bucketIds;
+
+    // Metrics
+    private long seen = 0;
+    private long dropped = 0;
+    private long unchecked = 0;   // events older than every retained bucket
+
+    /**
+     * @param windowSeconds        clicks on the same (ad, user, ip) within this window are duplicates
+     * @param bucketSeconds        time granularity of each Bloom filter
+     * @param expectedPerBucket    expected distinct clicks per bucket (sizes each filter)
+     * @param falsePositiveRate    target false-positive rate per filter
+     */
+    public ClickDeduplicator(int windowSeconds, int bucketSeconds, int expectedPerBucket, double falsePositiveRate) {
+        if (windowSeconds < 1 || bucketSeconds < 1) {
+            throw new IllegalArgumentException("windowSeconds and bucketSeconds must be >= 1");
+        }
+        this.bucketSeconds = bucketSeconds;
+        this.windowBuckets = (windowSeconds + bucketSeconds - 1) / bucketSeconds;
+        int slots = 2 * windowBuckets + 1;   // window on both sides: events arrive out of order
+        this.filters = new BloomFilter[slots];
+        this.bucketIds = new long[slots];
+        for (int i = 0; i < slots; i++) {
+            filters[i] = new BloomFilter(expectedPerBucket, falsePositiveRate);
+            bucketIds[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /** Returns true if the click should be counted, false if it is a duplicate. */
+    public boolean accept(AdClickEvent event) {
+        seen++;
+        long bucket = event.getClickTimestamp().getEpochSecond() / bucketSeconds;
+        long key = keyHash(event);
+
+        int slot = slot(bucket);
+        if (bucketIds[slot] < bucket) {
+            // Reusing the slot: the bucket it held has aged out of every window
+            filters[slot].clear();
+            bucketIds[slot] = bucket;
+        } else if (bucketIds[slot] > bucket) {
+            unchecked++;           // older than anything retained: count it, can't dedup it
+            return true;
+        }
+
+        for (long b = bucket - windowBuckets; b <= bucket + windowBuckets; b++) {
+            int s = slot(b);
+            if (b != bucket && bucketIds[s] == b && filters[s].mightContain(key)) {
+                dropped++;
+                return false;
+            }
+        }
+        if (filters[slot].put(key)) {
+            dropped++;
+            return false;
+        }
+        return true;
+    }
+
+    /** Filter a batch, returning only the clicks to count. */
+    public List<AdClickEvent> filter(List<AdClickEvent> events) {
+        List<AdClickEvent> kept = new ArrayList<>(events.size());
+        for (AdClickEvent event : events) {
+            if (accept(event)) kept.add(event);
+        }
+        return kept;
+    }
+
+    /** Serialized ring (bucket ids + bits of every retained filter + metrics) for a checkpoint. */
+    public byte[] snapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(bucketSeconds);
+            out.writeInt(filters.length);
+            out.writeLong(seen);
+            out.writeLong(dropped);
+            out.writeLong(unchecked);
+            for (int i = 0; i < filters.length; i++) {
+                out.writeLong(bucketIds[i]);
+                if (bucketIds[i] != Long.MIN_VALUE) {
+                    filters[i].writeTo(out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Replace the ring with one from snapshot(); this dedup must use the same parameters. */
+    public void restore(byte[] state) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            if (in.readInt() != bucketSeconds || in.readInt() != filters.length) {
+                throw new IllegalArgumentException("Dedup snapshot was taken with different window/bucket settings");
+            }
+            seen = in.readLong();
+            dropped = in.readLong();
+            unchecked = in.readLong();
+            for (int i = 0; i < filters.length; i++) {
+                bucketIds[i] = in.readLong();
+                filters[i].clear();
+                if (bucketIds[i] != Long.MIN_VALUE) {
+                    filters[i].readFrom(in);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt dedup snapshot", e);
+        }
+    }
+
+    public long getSeen() { return seen; }
+    public long getDropped() { return dropped; }
+    public long getUnchecked() { return unchecked; }
+
+    public double getDropRate() {
+        return seen == 0 ? 0 : (double) dropped / seen;
+    }
+
+    /** Probability a genuine click is wrongly dropped: 1 - Π(1 - fpp) over retained buckets */
+    public double getEstimatedFalsePositiveRate() {
+        double pass = 1.0;
+        for (int i = 0; i < filters.length; i++) {
+            if (bucketIds[i] != Long.MIN_VALUE) {
+                pass *= 1 - filters[i].estimatedFalsePositiveRate();
+            }
+        }
+        return 1 - pass;
+    }
+
+    public long getMemoryBytes() {
+        return (long) filters.length * filters[0].getSizeBytes();
+    }
+
+    public String getStats() {
+        return String.format("Dedup{seen=%d, dropped=%d (%.2f%%), est. FPP=%.4f%%, unchecked=%d, memory=%d KB}",
+                seen, dropped, getDropRate() * 100, getEstimatedFalsePositiveRate() * 100,
+                unchecked, getMemoryBytes() / 1024);
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) filters.length);
+    }
+
+    /** 64-bit hash of the full (ad_id, user_id, ip) strings, without building a concatenated key */
+    private static long keyHash(AdClickEvent event) {
+        long h = BloomFilter.hash64(0, event.getAdId());
+        h = BloomFilter.hash64(h, event.getUserId());
+        return BloomFilter.hash64(h, event.getIp());
+    }
+}
@@ -75,6 +75,18 @@ public class MapReduceEngine {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * MERGE phase: Combine local top-N lists from each node into the global top-N.
+     * Assumes events were partitioned by ad_id, so each ad appears in one list only.
+     */
+    public List<AggregatedResult> mergeTopN(List<List<AggregatedResult>> localTopNs, int n) {
+        return localTopNs.stream()
+                .flatMap(List::stream)
+                .sorted((a, b) -> Long.compare(b.getCount(), a.getCount()))
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Full pipeline: Map → Aggregate → Reduce (Top N)
      */
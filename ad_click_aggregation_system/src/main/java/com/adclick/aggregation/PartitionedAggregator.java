@@ -0,0 +1,142 @@
+package com.adclick.aggregation;
+
+import com.adclick.model.AdClickEvent;
+import com.adclick.model.AggregatedResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-core aggregation: shards events by hash(ad_id) across N worker threads.
+ *
+ *   events ─┬─ partition 0 (own StreamingAggregator) → local top-N ─┐
+ *           ├─ partition 1 (own StreamingAggregator) → local top-N ─┼─ merge → global top-N
+ *           └─ partition N (own StreamingAggregator) → local top-N ─┘
+ *
+ * Mirrors the map/reduce node split: every ad_id lives in exactly one partition,
+ * so merging the local top-N lists gives the exact global top-N.
+ * Partitions share no mutable state, so there is no locking on the hot path.
+ */
+public class PartitionedAggregator implements AutoCloseable {
+    private final int partitionCount;
+    private final StreamingAggregator[] partitions;
+    private final ExecutorService workers;
+    private final MapReduceEngine mergeEngine = new MapReduceEngine();
+
+    public PartitionedAggregator(int partitionCount, String filterDimension) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("partitionCount must be >= 1");
+        }
+        this.partitionCount = partitionCount;
+        this.partitions = new StreamingAggregator[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new StreamingAggregator(filterDimension);
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(partitionCount, r -> {
+            Thread t = new Thread(r, "aggregation-partition-" + threadIndex.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Same routing as Kafka's default partitioner: hash(key) mod N */
+    public static int partitionFor(String adId, int partitionCount) {
+        return Math.floorMod(adId.hashCode(), partitionCount);
+    }
+
+    /**
+     * Aggregate one minute window across all partitions.
+     * The caller hashes every event once and buckets the indexes by partition
+     * (a counting sort into one int[]); each worker then folds only its slice,
+     * so total work stays O(E) however many partitions there are.
+     */
+    public WindowResult processWindow(List<AdClickEvent> events, long minuteBucket, int topN) {
+        int[] owner = new int[events.size()];
+        int[] start = new int[partitionCount + 1];
+        for (int i = 0; i < owner.length; i++) {
+            owner[i] = partitionFor(events.get(i).getAdId(), partitionCount);
+            start[owner[i] + 1]++;
+        }
+        for (int p = 0; p < partitionCount; p++) {
+            start[p + 1] += start[p];
+        }
+        int[] order = new int[owner.length];
+        int[] next = Arrays.copyOf(start, partitionCount);
+        for (int i = 0; i < owner.length; i++) {
+            order[next[owner[i]]++] = i;
+        }
+
+        List<Future<WindowResult>> futures = new ArrayList<>(partitionCount);
+        for (int p = 0; p < partitionCount; p++) {
+            final int partition = p;
+            futures.add(workers.submit(() -> aggregatePartition(partition, events,
+                    order, start[partition], start[partition + 1], minuteBucket, topN)));
+        }
+
+        List<List<AggregatedResult>> localTopNs = new ArrayList<>(partitionCount);
+        List<AggregatedResult> filtered = new ArrayList<>();
+        List<AggregatedResult> minuteCounts = new ArrayList<>();
+        for (Future<WindowResult> future : futures) {
+            WindowResult local = await(future);
+            localTopNs.add(local.getTopResults());
+            filtered.addAll(local.getFilteredResults());
+            minuteCounts.addAll(local.getMinuteCounts());
+        }
+
+        // Merge stage: local top-N lists → global top-N
+        return new WindowResult(mergeEngine.mergeTopN(localTopNs, topN), filtered, minuteCounts);
+    }
+
+    /** Fold events[order[from..to)] — exactly the events this partition owns. */
+    private WindowResult aggregatePartition(int partition, List<AdClickEvent> events, int[] order,
+                                            int from, int to, long minuteBucket, int topN) {
+        StreamingAggregator aggregator = partitions[partition];
+        for (int i = from; i < to; i++) {
+            aggregator.accept(events.get(order[i]));
+        }
+        WindowResult local = new WindowResult(
+                aggregator.topN(minuteBucket, topN),
+                aggregator.aggregateWithFilter(minuteBucket),
+                aggregator.aggregate(minuteBucket));
+        aggregator.reset();
+        return local;
+    }
+
+    private static WindowResult await(Future<WindowResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while aggregating partition", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Partition aggregation failed", e.getCause());
+        }
+    }
+
+    public int getPartitionCount() { return partitionCount; }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    /** Top-N, filtered and full per-ad counts for one window (per partition or merged). */
+    public static class WindowResult {
+        private final List<AggregatedResult> topResults;
+        private final List<AggregatedResult> filteredResults;
+        private final List<AggregatedResult> minuteCounts;
+
+        public WindowResult(List<AggregatedResult> topResults, List<AggregatedResult> filteredResults,
+                            List<AggregatedResult> minuteCounts) {
+            this.topResults = topResults;
+            this.filteredResults = filteredResults;
+            this.minuteCounts = minuteCounts;
+        }
+
+        public List<AggregatedResult> getTopResults() { return topResults; }
+        public List<AggregatedResult> getFilteredResults() { return filteredResults; }
+        public List<AggregatedResult> getMinuteCounts() { return minuteCounts; }
+    }
+}
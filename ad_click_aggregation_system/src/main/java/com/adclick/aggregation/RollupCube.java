@@ -0,0 +1,311 @@
+package com.adclick.aggregation;
+
+import com.adclick.model.AdClickEvent;
+import com.adclick.model.AggregatedResult;
+
+import java.util.*;
+
+/**
+ * Multi-dimensional rollup cube: pre-aggregates click counts for chosen
+ * dimension combinations ("cuboids") in one pass over the window.
+ *
+ *   cuboids = ["country,device", "format"]
+ *   event → for each cuboid: cell(minute, cuboid, ad, values...)++
+ *
+ * - ad_id and each dimension's values are dictionary-encoded to ints once
+ * - a cell key packs [cuboid:3][adIdx:31][value:10][value:10][value:10] into one long,
+ *   so counters live in a primitive open-addressing long → long table per minute
+ * - output rows carry a canonical filter_id, dimensions sorted by name:
+ *   "country:US,device:mobile" — a filtered query is a key lookup in the
+ *   aggregation store instead of a replay of raw events
+ *
+ * Limits: ≤ 8 cuboids, ≤ 3 dimensions per cuboid, ≤ 1024 values per dimension.
+ * A dimension's values past the first 1023 are counted under OTHER_VALUE
+ * ("country:__other__"), so one high-cardinality dimension degrades its own
+ * breakdown instead of stopping ingestion.
+ * Not thread-safe: one instance per aggregation thread.
+ */
+public class RollupCube {
+    private static final int MAX_CUBOIDS = 8;
+    private static final int MAX_DIMENSIONS = 3;
+    private static final int VALUE_BITS = 10;
+    private static final int MAX_VALUES = 1 << VALUE_BITS;
+
+    /** Value that stands for every value of a dimension beyond the dictionary's capacity */
+    public static final String OTHER_VALUE = "__other__";
+
+    private final String[] dimensions;      // distinct dimensions across cuboids, sorted
+    private final int[][] cuboids;          // cuboid → indices into dimensions (sorted)
+    private final Map<String, Integer> cuboidBySpec = new HashMap<>();
+
+    // Dictionaries
+    private final Map<String, Integer> adIndex = new HashMap<>();
+    private final List<String> adNames = new ArrayList<>();
+    private final List<Map<String, Integer>> valueIndex = new ArrayList<>();
+    private final List<List<String>> valueNames = new ArrayList<>();
+
+    private final Map<Long, CellCounts> cellsByMinute = new HashMap<>();
+    private final int[] scratch;            // per-event value index of each dimension
+    private long overflowedValues;          // lookups routed to OTHER_VALUE
+
+    /** @param cuboidSpecs dimension combinations, each comma-separated, e.g. "country,device", "format" */
+    public RollupCube(String... cuboidSpecs) {
+        if (cuboidSpecs.length == 0 || cuboidSpecs.length > MAX_CUBOIDS) {
+            throw new IllegalArgumentException("between 1 and " + MAX_CUBOIDS + " cuboids required");
+        }
+        TreeSet<String> distinct = new TreeSet<>();
+        List<TreeSet<String>> parsed = new ArrayList<>();
+        for (String spec : cuboidSpecs) {
+            TreeSet<String> dims = new TreeSet<>();
+            for (String dim : spec.split(",")) {
+                dims.add(dim.trim());
+            }
+            if (dims.isEmpty() || dims.size() > MAX_DIMENSIONS) {
+                throw new IllegalArgumentException("cuboid needs 1-" + MAX_DIMENSIONS + " dimensions: " + spec);
+            }
+            parsed.add(dims);
+            distinct.addAll(dims);
+        }
+
+        this.dimensions = distinct.toArray(new String[0]);
+        this.cuboids = new int[parsed.size()][];
+        for (int c = 0; c < parsed.size(); c++) {
+            String key = String.join(",", parsed.get(c));
+            if (cuboidBySpec.putIfAbsent(key, c) != null) {
+                throw new IllegalArgumentException("duplicate cuboid: " + key);
+            }
+            cuboids[c] = parsed.get(c).stream().mapToInt(d -> Arrays.binarySearch(dimensions, d)).toArray();
+        }
+        for (int d = 0; d < dimensions.length; d++) {
+            valueIndex.add(new HashMap<>());
+            valueNames.add(new ArrayList<>());
+        }
+        this.scratch = new int[dimensions.length];
+    }
+
+    /** Fold one event into every cuboid of its minute. */
+    public void accept(AdClickEvent event) {
+        accept(event, event.getMinuteBucket());
+    }
+
+    /** Fold one event into every cuboid of the given minute window. */
+    public void accept(AdClickEvent event, long minute) {
+        long adIdx = internAd(event.getAdId());
+        for (int d = 0; d < dimensions.length; d++) {
+            String value = event.getTag(dimensions[d]);
+            scratch[d] = internValue(d, value != null ? value : "unknown");
+        }
+        CellCounts cells = cellsByMinute.computeIfAbsent(minute, m -> new CellCounts());
+        for (int c = 0; c < cuboids.length; c++) {
+            long key = ((long) c << 61) | (adIdx << 30);
+            int[] dims = cuboids[c];
+            for (int i = 0; i < dims.length; i++) {
+                key |= (long) scratch[dims[i]] << (VALUE_BITS * (2 - i));
+            }
+            cells.add(key, 1);
+        }
+    }
+
+    public void acceptAll(List<AdClickEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            accept(events.get(i));
+        }
+    }
+
+    /**
+     * In-memory lookup for a minute still held by the cube.
+     * The filter must name exactly one cuboid's dimensions, e.g. {country=US, device=mobile}.
+     */
+    public long getCount(long minute, String adId, Map<String, String> filter) {
+        Integer cuboid = cuboidBySpec.get(String.join(",", new TreeSet<>(filter.keySet())));
+        Integer adIdx = adIndex.get(adId);
+        CellCounts cells = cellsByMinute.get(minute);
+        if (cuboid == null || adIdx == null || cells == null) return 0;
+
+        long key = ((long) cuboid << 61) | ((long) adIdx << 30);
+        int[] dims = cuboids[cuboid];
+        for (int i = 0; i < dims.length; i++) {
+            Integer valueIdx = valueIndex.get(dims[i]).get(filter.get(dimensions[dims[i]]));
+            if (valueIdx == null) return 0;
+            key |= (long) valueIdx << (VALUE_BITS * (2 - i));
+        }
+        return cells.get(key);
+    }
+
+    /** Rows for a minute (filter_id = canonical cell name), removing the minute from the cube. */
+    public List<AggregatedResult> drainMinute(long minute) {
+        return rowsOf(cellsByMinute.remove(minute), minute);
+    }
+
+    /** Rows for the minute without removing it (e.g. for a checkpoint). */
+    public List<AggregatedResult> peekMinute(long minute) {
+        return rowsOf(cellsByMinute.get(minute), minute);
+    }
+
+    /** Drain every minute held by the cube, in minute order. */
+    public NavigableMap<Long, List<AggregatedResult>> drainAll() {
+        NavigableMap<Long, List<AggregatedResult>> rows = new TreeMap<>();
+        for (long minute : new ArrayList<>(cellsByMinute.keySet())) {
+            rows.put(minute, drainMinute(minute));
+        }
+        return rows;
+    }
+
+    /** Re-load rows produced by drainMinute/peekMinute; rows of other filters are ignored. */
+    public void restore(List<AggregatedResult> rows) {
+        for (AggregatedResult row : rows) {
+            if (!owns(row.getFilterId())) continue;
+
+            Map<String, String> filter = parseFilterId(row.getFilterId());
+            int cuboid = cuboidBySpec.get(String.join(",", filter.keySet()));
+            long key = ((long) cuboid << 61) | ((long) internAd(row.getAdId()) << 30);
+            int[] dims = cuboids[cuboid];
+            for (int i = 0; i < dims.length; i++) {
+                key |= (long) internValue(dims[i], filter.get(dimensions[dims[i]])) << (VALUE_BITS * (2 - i));
+            }
+            cellsByMinute.computeIfAbsent(row.getMinuteBucket(), m -> new CellCounts()).add(key, row.getCount());
+        }
+    }
+
+    /** True if the filter_id names a cell of one of this cube's cuboids. */
+    public boolean owns(String filterId) {
+        if (filterId == null) return false;
+        return cuboidBySpec.containsKey(String.join(",", parseFilterId(filterId).keySet()));
+    }
+
+    /** True if a cuboid over exactly these dimensions is configured. */
+    public boolean hasCuboid(String... dims) {
+        return cuboidBySpec.containsKey(String.join(",", new TreeSet<>(Arrays.asList(dims))));
+    }
+
+    public Set<String> getCuboids() { return Collections.unmodifiableSet(cuboidBySpec.keySet()); }
+
+    /** Dimension values (one per event and dimension) routed to OTHER_VALUE because the dictionary was full */
+    public long getOverflowedValues() { return overflowedValues; }
+
+    public int getCellCount() {
+        int cells = 0;
+        for (CellCounts counts : cellsByMinute.values()) {
+            cells += counts.size;
+        }
+        return cells;
+    }
+
+    /** Canonical filter_id for a dimension → value filter: "country:US,device:mobile" */
+    public static String filterId(Map<String, String> filter) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(filter).entrySet()) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseFilterId(String filterId) {
+        Map<String, String> filter = new TreeMap<>();
+        for (String part : filterId.split(",")) {
+            int colon = part.indexOf(':');
+            if (colon > 0) {
+                filter.put(part.substring(0, colon), part.substring(colon + 1));
+            }
+        }
+        return filter;
+    }
+
+    private List<AggregatedResult> rowsOf(CellCounts cells, long minute) {
+        List<AggregatedResult> rows = new ArrayList<>();
+        if (cells == null) return rows;
+        for (int slot = 0; slot < cells.keys.length; slot++) {
+            if (cells.used[slot]) {
+                rows.add(decode(cells.keys[slot], minute, cells.counts[slot]));
+            }
+        }
+        return rows;
+    }
+
+    private AggregatedResult decode(long key, long minute, long count) {
+        int cuboid = (int) (key >>> 61);
+        int adIdx = (int) ((key >>> 30) & 0x7FFF_FFFFL);
+        int[] dims = cuboids[cuboid];
+        StringBuilder filterId = new StringBuilder();
+        for (int i = 0; i < dims.length; i++) {
+            int valueIdx = (int) (key >>> (VALUE_BITS * (2 - i))) & (MAX_VALUES - 1);
+            if (i > 0) filterId.append(',');
+            filterId.append(dimensions[dims[i]]).append(':').append(valueNames.get(dims[i]).get(valueIdx));
+        }
+        return new AggregatedResult(adNames.get(adIdx), minute, count, filterId.toString());
+    }
+
+    private int internAd(String adId) {
+        Integer idx = adIndex.get(adId);
+        if (idx != null) return idx;
+        adIndex.put(adId, adNames.size());
+        adNames.add(adId);
+        return adNames.size() - 1;
+    }
+
+    private int internValue(int dimension, String value) {
+        Map<String, Integer> index = valueIndex.get(dimension);
+        Integer idx = index.get(value);
+        if (idx != null) return idx;
+
+        List<String> names = valueNames.get(dimension);
+        if (names.size() >= MAX_VALUES - 1 && !value.equals(OTHER_VALUE)) {
+            // Dictionary full: the last index is kept for the overflow bucket
+            overflowedValues++;
+            return internValue(dimension, OTHER_VALUE);
+        }
+        index.put(value, names.size());
+        names.add(value);
+        return names.size() - 1;
+    }
+
+    /** Open-addressing long → long counter table (linear probing, power-of-two capacity) */
+    private static final class CellCounts {
+        long[] keys = new long[64];
+        long[] counts = new long[64];
+        boolean[] used = new boolean[64];
+        int size = 0;
+
+        void add(long key, long delta) {
+            if (size * 4 >= keys.length * 3) {
+                grow();
+            }
+            int slot = find(key);
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot] += delta;
+        }
+
+        long get(long key) {
+            int slot = find(key);
+            return used[slot] ? counts[slot] : 0;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) BloomFilter.mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys, oldCounts = counts;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            counts = new long[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    add(oldKeys[i], oldCounts[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.adclick.aggregation;
+
+import com.adclick.model.AggregatedResult;
+import com.adclick.model.TimeWindow;
+
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * Incremental "top N ads over the last M minutes" operator.
+ *
+ * Keeps a ring of slices plus running totals per ad. When the window slides:
+ *   totals += newest minute's counts
+ *   totals -= expiring slice's counts
+ * so each slide costs O(slice size), not O(M × ads).
+ *
+ * A slice is one minute for windows up to MAX_SLICES minutes. Longer windows
+ * group minutes into blocks of b = ceil(M / MAX_SLICES) and expire a whole
+ * block at a time. The window edge is then approximate: with S = ceil(M / b)
+ * slices, the window covers the last (S − 1) × b + 1 to S × b minutes, growing
+ * as the newest block fills (a day window covers 1,417–1,440 minutes, a
+ * 61-minute window 61–62). getWindow() returns the minutes actually covered
+ * right now. Per-minute expiry would need at least N × M slice entries to stay
+ * exact for the top N, which no per-window bound can give.
+ *
+ * Memory is bounded per window, independent of M, by one parameter
+ * trackedAds (K):
+ *   - totals hold at most 1.25 × K ads; past that they are pruned back to
+ *     the K heaviest (a capped totals map, pruned in batches).
+ *   - all slices together keep at most SLICE_BUDGET × K entries, so one
+ *     slice keeps max(1, SLICE_BUDGET × K / slices) ads: the heaviest by slice
+ *     count plus current window total.
+ * Each slice entry remembers which tracking generation of its ad it was added
+ * to and how much it credited, so an ad that was pruned and later tracked again
+ * is never decremented by counts it was not credited with, and merging more
+ * counts into a slice credits only the newly merged delta. Results are exact
+ * while every slice has at most the per-slice cap of distinct ads and the window
+ * at most K; beyond that they keep the heavy hitters and drop the long tail.
+ *
+ * topN() is cached until the next advance, so repeated queries within a
+ * minute do not rescan the totals.
+ *
+ * Not thread-safe: owned by the single writer that commits minute results.
+ */
+public class SlidingWindowTopN {
+    /** Slice entries across the whole window, as a multiple of trackedAds. */
+    public static final int SLICE_BUDGET = 4;
+
+    /** Most slices in the ring; longer windows use multi-minute slices. */
+    public static final int MAX_SLICES = 60;
+
+    private final int windowMinutes;
+    private final int trackedAds;
+    private final int minutesPerSlice;
+    private final int sliceCapacity;
+
+    private final Slice[] ring;                 // ring[block % ring.length], block = minute / minutesPerSlice
+    private final Map<String, Tracked> totals = new HashMap<>();
+    private long lastMinute = Long.MIN_VALUE;   // newest minute in the window
+    private long lastBlock = Long.MIN_VALUE;
+    private long nextGeneration;
+    private int sliceEntries;
+    private List<AggregatedResult> cachedTop = Collections.emptyList();
+    private int cachedTopN = -1;                // n that cachedTop was computed for, -1 if stale
+
+    public SlidingWindowTopN(int windowMinutes, int trackedAds) {
+        if (windowMinutes < 1 || trackedAds < 1) {
+            throw new IllegalArgumentException("windowMinutes and trackedAds must be >= 1");
+        }
+        this.windowMinutes = windowMinutes;
+        this.trackedAds = trackedAds;
+        this.minutesPerSlice = (windowMinutes + MAX_SLICES - 1) / MAX_SLICES;
+        int slices = (windowMinutes + minutesPerSlice - 1) / minutesPerSlice;
+        this.sliceCapacity = (int) Math.max(1, (long) SLICE_BUDGET * trackedAds / slices);
+        this.ring = new Slice[slices];
+    }
+
+    /**
+     * Slide the window forward to minuteBucket and add that minute's per-ad counts.
+     * Skipped minutes count as empty. Counts for a slice already inside the
+     * window (the rest of its block, late events, re-commits) are merged into
+     * it; minutes whose slice has already slid out of the window are ignored.
+     */
+    public void advance(long minuteBucket, List<AggregatedResult> minuteCounts) {
+        long block = Math.floorDiv(minuteBucket, (long) minutesPerSlice);
+        if (lastBlock != Long.MIN_VALUE && block <= lastBlock - ring.length) {
+            return;
+        }
+        cachedTopN = -1;
+        if (lastBlock == Long.MIN_VALUE || block > lastBlock) {
+            // Expire every slice that falls out of (block - slices, block]
+            long gap = lastBlock == Long.MIN_VALUE ? ring.length : block - lastBlock;
+            for (long b = block - Math.min(gap, ring.length) + 1; b <= block; b++) {
+                expire(slot(b));
+            }
+            lastBlock = block;
+        }
+        lastMinute = Math.max(lastMinute, minuteBucket);
+
+        int slot = slot(block);
+        Slice slice = Slice.of(minuteCounts, sliceCapacity, this::windowTotal);
+        if (ring[slot] != null) {
+            // Slice already in the window: replace it with the merged counts
+            slice = ring[slot].merge(slice, sliceCapacity, this::windowTotal);
+        }
+        replaceSlice(slot, slice);
+    }
+
+    /**
+     * Apply per-ad count differences (possibly negative) to a minute already in the
+     * window, e.g. when the minute was recomputed. Unlike advance, the differences
+     * are not truncated before merging, so decreases always reach the slice; ads
+     * whose count drops to zero leave it. Minutes outside the window are ignored.
+     */
+    public void correct(long minuteBucket, List<AggregatedResult> deltas) {
+        if (!covers(minuteBucket)) {
+            return;
+        }
+        cachedTopN = -1;
+        int slot = slot(Math.floorDiv(minuteBucket, (long) minutesPerSlice));
+        Slice base = ring[slot] != null ? ring[slot] : Slice.exact(Collections.emptyList());
+        replaceSlice(slot, base.merge(Slice.exact(deltas), sliceCapacity, this::windowTotal));
+    }
+
+    /** Drop everything; coverage restarts at the next advance. */
+    public void clear() {
+        Arrays.fill(ring, null);
+        totals.clear();
+        sliceEntries = 0;
+        lastMinute = Long.MIN_VALUE;
+        lastBlock = Long.MIN_VALUE;
+        cachedTop = Collections.emptyList();
+        cachedTopN = -1;
+    }
+
+    /** Whether minuteBucket falls inside getWindow() */
+    public boolean covers(long minuteBucket) {
+        if (lastBlock == Long.MIN_VALUE) return false;
+        long block = Math.floorDiv(minuteBucket, (long) minutesPerSlice);
+        return block > lastBlock - ring.length && minuteBucket <= lastMinute;
+    }
+
+    /** Install slice in place of ring[slot], crediting the totals only with what changed. */
+    private void replaceSlice(int slot, Slice slice) {
+        Slice old = ring[slot];
+        Map<String, Integer> previous = Collections.emptyMap();   // ad → index in old
+        if (old != null) {
+            previous = new HashMap<>();
+            for (int j = 0; j < old.size; j++) previous.put(old.adIds[j], j);
+            sliceEntries -= old.size;
+        }
+        ring[slot] = slice;
+        sliceEntries += slice.size;
+        for (int i = 0; i < slice.size; i++) {
+            // Credit only what the new slice adds; an old entry's credit carries over
+            // only if it went to the ad's current tracking generation
+            Integer j = previous.remove(slice.adIds[i]);
+            long delta = slice.counts[i] - (j != null ? old.counts[j] : 0);
+            Tracked tracked = totals.get(slice.adIds[i]);
+            long carried = j != null && tracked != null && tracked.generation == old.generations[j]
+                    ? old.credited[j] : 0;
+            if (tracked == null) {
+                if (delta <= 0) {
+                    slice.generations[i] = -1;   // nothing credited, matches no generation
+                    continue;
+                }
+                tracked = new Tracked(nextGeneration++);
+                totals.put(slice.adIds[i], tracked);
+            }
+            tracked.total += delta;
+            slice.generations[i] = tracked.generation;
+            slice.credited[i] = carried + delta;
+            if (tracked.total <= 0) {
+                totals.remove(slice.adIds[i]);   // corrected down to nothing
+            }
+        }
+        for (int j : previous.values()) {
+            uncredit(old, j);   // dropped by the merge's truncation, or corrected to zero
+        }
+        if (totals.size() > trackedAds + trackedAds / 4) {
+            prune();
+        }
+    }
+
+    /** Top N ads by total clicks in the current window (bounded min-heap, cached until the next advance). */
+    public List<AggregatedResult> topN(int n) {
+        if (cachedTopN >= n) {
+            return new ArrayList<>(cachedTop.subList(0, Math.min(n, cachedTop.size())));
+        }
+        PriorityQueue<Map.Entry<String, Tracked>> heap =
+                new PriorityQueue<>(Math.max(1, n), Comparator.comparingLong(e -> e.getValue().total));
+        for (Map.Entry<String, Tracked> entry : totals.entrySet()) {
+            if (heap.size() < n) {
+                heap.add(entry);
+            } else if (n > 0 && entry.getValue().total > heap.peek().getValue().total) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<AggregatedResult> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            Map.Entry<String, Tracked> e = heap.poll();
+            result.add(new AggregatedResult(e.getKey(), lastMinute, e.getValue().total));
+        }
+        Collections.reverse(result);
+        cachedTop = result;
+        cachedTopN = n;
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Minutes the totals actually cover: [first minute of the oldest retained
+     * block, lastMinute + 1). Equals the last M minutes only for 1-minute slices.
+     */
+    public TimeWindow getWindow() {
+        if (lastBlock == Long.MIN_VALUE) {
+            return TimeWindow.slidingWindow(0, 0);
+        }
+        long oldestMinute = (lastBlock - ring.length + 1) * minutesPerSlice;
+        return new TimeWindow(oldestMinute, lastMinute + 1, TimeWindow.WindowType.SLIDING);
+    }
+
+    /** Shortest span the window can cover, in minutes: (slices − 1) × b + 1 (M for 1-minute slices) */
+    public int getMinCoveredMinutes() { return (ring.length - 1) * minutesPerSlice + 1; }
+
+    /** Longest span the window can cover, in minutes: slices × b (M for 1-minute slices) */
+    public int getMaxCoveredMinutes() { return ring.length * minutesPerSlice; }
+
+    public int getWindowMinutes() { return windowMinutes; }
+    public int getTrackedAds() { return totals.size(); }
+    public int getSliceEntries() { return sliceEntries; }
+    public int getMinutesPerSlice() { return minutesPerSlice; }
+    public int getSliceCapacity() { return sliceCapacity; }
+
+    private long windowTotal(String adId) {
+        Tracked tracked = totals.get(adId);
+        return tracked != null ? tracked.total : 0;
+    }
+
+    private int slot(long block) {
+        return (int) Math.floorMod(block, (long) ring.length);
+    }
+
+    private void expire(int slot) {
+        Slice old = ring[slot];
+        if (old == null) return;
+        for (int i = 0; i < old.size; i++) {
+            uncredit(old, i);
+        }
+        sliceEntries -= old.size;
+        ring[slot] = null;
+    }
+
+    /** Take back what entry i credited, if it went to the ad's current tracking generation. */
+    private void uncredit(Slice slice, int i) {
+        Tracked tracked = totals.get(slice.adIds[i]);
+        if (tracked != null && tracked.generation == slice.generations[i]
+                && (tracked.total -= slice.credited[i]) <= 0) {
+            totals.remove(slice.adIds[i]);
+        }
+    }
+
+    /** Keep the trackedAds heaviest totals; the rest stop being tracked. */
+    private void prune() {
+        long[] sorted = new long[totals.size()];
+        int i = 0;
+        for (Tracked tracked : totals.values()) sorted[i++] = tracked.total;
+        Arrays.sort(sorted);
+        long cut = sorted[sorted.length - trackedAds];
+        int keepAtCut = 0;   // Ties at the cut: keep only as many as fit
+        for (int j = sorted.length - trackedAds; j < sorted.length && sorted[j] == cut; j++) keepAtCut++;
+
+        Iterator<Tracked> it = totals.values().iterator();
+        while (it.hasNext()) {
+            long total = it.next().total;
+            if (total < cut || (total == cut && keepAtCut-- <= 0)) it.remove();
+        }
+    }
+
+    /** Running total of one tracked ad; a new generation each time the ad starts being tracked. */
+    private static final class Tracked {
+        final long generation;
+        long total;
+
+        Tracked(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /** One slice's (truncated) per-ad counts, stored as parallel arrays. */
+    private static final class Slice {
+        final String[] adIds;
+        final long[] counts;
+        final long[] generations;   // Tracked.generation each count was added to
+        final long[] credited;      // how much of the count that generation was credited
+        final int size;
+
+        private Slice(String[] adIds, long[] counts, int size) {
+            this.adIds = adIds;
+            this.counts = counts;
+            this.generations = new long[size];
+            this.credited = new long[size];
+            this.size = size;
+        }
+
+        /**
+         * Keep only `capacity` ads of the slice, ranked by slice count plus
+         * their current window total, so ads that are steadily heavy across the
+         * window keep being counted even in slices where they are not on top.
+         */
+        static Slice of(List<AggregatedResult> minuteCounts, int capacity, ToLongFunction<String> windowTotal) {
+            List<AggregatedResult> kept = minuteCounts;
+            if (minuteCounts.size() > capacity) {
+                Map<String, Long> rank = new HashMap<>();
+                for (AggregatedResult r : minuteCounts) {
+                    rank.merge(r.getAdId(), r.getCount() + windowTotal.applyAsLong(r.getAdId()), Long::sum);
+                }
+                kept = new ArrayList<>(minuteCounts);
+                kept.sort((a, b) -> Long.compare(rank.get(b.getAdId()), rank.get(a.getAdId())));
+                kept = kept.subList(0, capacity);
+            }
+            String[] ids = new String[kept.size()];
+            long[] counts = new long[kept.size()];
+            for (int i = 0; i < kept.size(); i++) {
+                ids[i] = kept.get(i).getAdId();
+                counts[i] = kept.get(i).getCount();
+            }
+            return new Slice(ids, counts, ids.length);
+        }
+
+        /** Every count as given, untruncated (corrections may be negative) */
+        static Slice exact(List<AggregatedResult> counts) {
+            String[] ids = new String[counts.size()];
+            long[] values = new long[counts.size()];
+            for (int i = 0; i < counts.size(); i++) {
+                ids[i] = counts.get(i).getAdId();
+                values[i] = counts.get(i).getCount();
+            }
+            return new Slice(ids, values, ids.length);
+        }
+
+        /**
+         * Combine this slice with more counts for the same block (next minute, late
+         * events, re-commits, corrections); ads left with no clicks are dropped.
+         */
+        Slice merge(Slice other, int capacity, ToLongFunction<String> windowTotal) {
+            Map<String, Long> combined = new HashMap<>();
+            for (int i = 0; i < size; i++) combined.merge(adIds[i], counts[i], Long::sum);
+            for (int i = 0; i < other.size; i++) combined.merge(other.adIds[i], other.counts[i], Long::sum);
+
+            List<AggregatedResult> asResults = new ArrayList<>(combined.size());
+            combined.forEach((ad, c) -> {
+                if (c > 0) asResults.add(new AggregatedResult(ad, 0, c));
+            });
+            return of(asResults, capacity, windowTotal);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.adclick.aggregation;
+
+import com.adclick.model.AdClickEvent;
+import com.adclick.model.AggregatedResult;
+
+import java.util.*;
+
+/**
+ * Streaming (allocation-free) aggregation for one minute window.
+ *
+ * Instead of materializing List&lt;AdClickEvent&gt; per ad (groupingBy) and
+ * counting with .size(), events are folded into counters as they arrive:
+ *
+ *   event → intern(ad_id) → adCounts[adIdx]++
+ *         → intern(dimension value) → filterCounts[adIdx][valueIdx]++
+ *
+ * - ad_id and dimension values are interned into int IDs once; the dictionaries
+ *   survive across windows so steady-state ingestion allocates nothing per event
+ * - reset() compacts a dictionary down to the window just finished once it holds
+ *   more than DICTIONARY_SLACK × that window's entries (and over MIN_DICTIONARY_SIZE),
+ *   so ads that stopped getting clicks do not stay in memory forever
+ * - counters are primitive long[] arrays, reset sparsely between windows
+ * - results are only turned into AggregatedResult objects at the end of the window
+ *
+ * Produces the same output as MapReduceEngine.processWindow / aggregateWithFilter.
+ * Not thread-safe: one instance per aggregation thread/partition.
+ */
+public class StreamingAggregator {
+    /** Dictionaries up to this size are never compacted. */
+    static final int MIN_DICTIONARY_SIZE = 1024;
+    /** Compact once a dictionary holds this many times the entries the last window used. */
+    static final int DICTIONARY_SLACK = 4;
+
+    private final String filterDimension;   // e.g. "country", or null for no filter
+
+    // Interned ad_id dictionary: ad_id ↔ adIdx
+    private final Map<String, Integer> adIndex = new HashMap<>();
+    private String[] adNames = new String[64];
+
+    // Interned dimension-value dictionary: value ↔ valueIdx
+    private final Map<String, Integer> valueIndex = new HashMap<>();
+    private String[] valueNames = new String[16];
+
+    // Per-window counters
+    private long[] adCounts = new long[64];
+    private long[][] filterCounts = new long[64][];
+    private int[] touchedAds = new int[64];     // ads seen in this window, in first-seen order
+    private int touchedCount = 0;
+    private long eventCount = 0;
+
+    public StreamingAggregator(String filterDimension) {
+        this.filterDimension = filterDimension;
+    }
+
+    public StreamingAggregator() {
+        this(null);
+    }
+
+    /** Fold one event into the window counters. */
+    public void accept(AdClickEvent event) {
+        int adIdx = internAd(event.getAdId());
+        if (adCounts[adIdx]++ == 0) {
+            markTouched(adIdx);
+        }
+        eventCount++;
+
+        if (filterDimension != null) {
+            String value = event.getTag(filterDimension);
+            int valueIdx = internValue(value != null ? value : "unknown");
+            filterCountsFor(adIdx, valueIdx)[valueIdx]++;
+        }
+    }
+
+    public void acceptAll(List<AdClickEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            accept(events.get(i));
+        }
+    }
+
+    /**
+     * Re-load partial counts, e.g. from a checkpoint written via aggregate() + aggregateWithFilter().
+     * Unfiltered rows restore the per-ad counter; "dimension:value" rows restore filter counters.
+     */
+    public void restore(List<AggregatedResult> rows) {
+        for (AggregatedResult row : rows) {
+            int adIdx = internAd(row.getAdId());
+            if (row.getFilterId() == null) {
+                if (adCounts[adIdx] == 0 && row.getCount() > 0) {
+                    markTouched(adIdx);
+                }
+                adCounts[adIdx] += row.getCount();
+                eventCount += row.getCount();
+            } else if (filterDimension != null && row.getFilterId().startsWith(filterDimension + ":")
+                    && row.getFilterId().indexOf(',') < 0) {   // multi-dimension rows belong to a RollupCube
+                int valueIdx = internValue(row.getFilterId().substring(filterDimension.length() + 1));
+                filterCountsFor(adIdx, valueIdx)[valueIdx] += row.getCount();
+            }
+        }
+    }
+
+    /** AGGREGATE: click count per ad_id (same as MapReduceEngine.aggregate). */
+    public List<AggregatedResult> aggregate(long minuteBucket) {
+        List<AggregatedResult> results = new ArrayList<>(touchedCount);
+        for (int i = 0; i < touchedCount; i++) {
+            int adIdx = touchedAds[i];
+            results.add(new AggregatedResult(adNames[adIdx], minuteBucket, adCounts[adIdx]));
+        }
+        return results;
+    }
+
+    /** AGGREGATE with filter: count per (ad_id, dimension value) (same as aggregateWithFilter). */
+    public List<AggregatedResult> aggregateWithFilter(long minuteBucket) {
+        List<AggregatedResult> results = new ArrayList<>();
+        if (filterDimension == null) return results;
+
+        for (int i = 0; i < touchedCount; i++) {
+            int adIdx = touchedAds[i];
+            long[] counts = filterCounts[adIdx];
+            if (counts == null) continue;
+            for (int v = 0; v < counts.length; v++) {
+                if (counts[v] > 0) {
+                    results.add(new AggregatedResult(adNames[adIdx], minuteBucket, counts[v],
+                            filterDimension + ":" + valueNames[v]));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * REDUCE: top N ads by count (same as MapReduceEngine.reduceTopN).
+     * Bounded min-heap of ad indices: O(ads × log N), no per-ad boxing.
+     */
+    public List<AggregatedResult> topN(long minuteBucket, int n) {
+        int k = Math.min(n, touchedCount);
+        if (k <= 0) return new ArrayList<>();
+
+        int[] heap = new int[k];   // positions into touchedAds, min-heap by (count, -position)
+        int size = 0;
+        for (int pos = 0; pos < touchedCount; pos++) {
+            if (size < k) {
+                heap[size] = pos;
+                siftUp(heap, size++);
+            } else if (beats(pos, heap[0])) {
+                heap[0] = pos;
+                siftDown(heap, 0, size);
+            }
+        }
+
+        AggregatedResult[] sorted = new AggregatedResult[size];
+        while (size > 0) {
+            int adIdx = touchedAds[heap[0]];
+            sorted[--size] = new AggregatedResult(adNames[adIdx], minuteBucket, adCounts[adIdx]);
+            heap[0] = heap[size];
+            siftDown(heap, 0, size);
+        }
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
+    /** Full pipeline equivalent of MapReduceEngine.processWindow, then reset for the next window. */
+    public List<AggregatedResult> processWindow(List<AdClickEvent> events, long minuteBucket, int n) {
+        acceptAll(events);
+        List<AggregatedResult> top = topN(minuteBucket, n);
+        reset();
+        return top;
+    }
+
+    /**
+     * Clear counters for the next window. Interned dictionaries are kept, unless
+     * they have grown well past what this window used; then they are compacted
+     * to this window's ads and values.
+     */
+    public void reset() {
+        if (adIndex.size() > Math.max(MIN_DICTIONARY_SIZE, DICTIONARY_SLACK * touchedCount)
+                || (valueIndex.size() > MIN_DICTIONARY_SIZE
+                    && valueIndex.size() > DICTIONARY_SLACK * countUsedValues())) {
+            compactDictionaries();
+            return;
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            int adIdx = touchedAds[i];
+            adCounts[adIdx] = 0;
+            if (filterCounts[adIdx] != null) {
+                Arrays.fill(filterCounts[adIdx], 0);
+            }
+        }
+        touchedCount = 0;
+        eventCount = 0;
+    }
+
+    /** Distinct dimension values with a count in this window. */
+    private int countUsedValues() {
+        boolean[] used = new boolean[valueIndex.size()];
+        int count = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            long[] counts = filterCounts[touchedAds[i]];
+            if (counts == null) continue;
+            for (int v = 0; v < counts.length; v++) {
+                if (counts[v] > 0 && !used[v]) {
+                    used[v] = true;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Rebuild both dictionaries from this window's ads and values, with all counters zeroed. */
+    private void compactDictionaries() {
+        int capacity = Math.max(64, Integer.highestOneBit(Math.max(1, touchedCount)) * 2);
+        String[] keptAds = new String[capacity];
+        boolean[] usedValues = new boolean[valueIndex.size()];
+        adIndex.clear();
+        for (int i = 0; i < touchedCount; i++) {
+            int adIdx = touchedAds[i];
+            keptAds[i] = adNames[adIdx];
+            adIndex.put(adNames[adIdx], i);
+            long[] counts = filterCounts[adIdx];
+            for (int v = 0; counts != null && v < counts.length; v++) {
+                if (counts[v] > 0) usedValues[v] = true;
+            }
+        }
+
+        String[] oldValueNames = valueNames;
+        valueIndex.clear();
+        valueNames = new String[16];
+        for (int v = 0; v < usedValues.length; v++) {
+            if (usedValues[v]) internValue(oldValueNames[v]);
+        }
+
+        adNames = keptAds;
+        adCounts = new long[capacity];
+        filterCounts = new long[capacity][];
+        touchedAds = new int[capacity];
+        touchedCount = 0;
+        eventCount = 0;
+    }
+
+    public long getEventCount() { return eventCount; }
+    public int getDistinctAds() { return touchedCount; }
+    public int getInternedAdCount() { return adIndex.size(); }
+    public String getFilterDimension() { return filterDimension; }
+
+    // ---- Interning ----
+
+    private int internAd(String adId) {
+        Integer idx = adIndex.get(adId);
+        if (idx != null) return idx;
+
+        int newIdx = adIndex.size();
+        if (newIdx == adNames.length) {
+            int cap = adNames.length * 2;
+            adNames = Arrays.copyOf(adNames, cap);
+            adCounts = Arrays.copyOf(adCounts, cap);
+            filterCounts = Arrays.copyOf(filterCounts, cap);
+        }
+        adNames[newIdx] = adId;
+        adIndex.put(adId, newIdx);
+        return newIdx;
+    }
+
+    private int internValue(String value) {
+        Integer idx = valueIndex.get(value);
+        if (idx != null) return idx;
+
+        int newIdx = valueIndex.size();
+        if (newIdx == valueNames.length) {
+            valueNames = Arrays.copyOf(valueNames, valueNames.length * 2);
+        }
+        valueNames[newIdx] = value;
+        valueIndex.put(value, newIdx);
+        return newIdx;
+    }
+
+    private long[] filterCountsFor(int adIdx, int valueIdx) {
+        long[] counts = filterCounts[adIdx];
+        if (counts == null || counts.length <= valueIdx) {
+            counts = filterCounts[adIdx] = counts == null
+                    ? new long[Math.max(valueNames.length, valueIdx + 1)]
+                    : Arrays.copyOf(counts, Math.max(counts.length * 2, valueIdx + 1));
+        }
+        return counts;
+    }
+
+    private void markTouched(int adIdx) {
+        if (touchedCount == touchedAds.length) {
+            touchedAds = Arrays.copyOf(touchedAds, touchedAds.length * 2);
+        }
+        touchedAds[touchedCount++] = adIdx;
+    }
+
+    // ---- Heap helpers (ties broken by first-seen order, earlier wins) ----
+
+    private boolean beats(int posA, int posB) {
+        long a = adCounts[touchedAds[posA]], b = adCounts[touchedAds[posB]];
+        return a != b ? a > b : posA < posB;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!beats(heap[parent], heap[i])) break;
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int i, int size) {
+        while (true) {
+            int left = 2 * i + 1, right = left + 1, weakest = i;
+            if (left < size && beats(heap[weakest], heap[left])) weakest = left;
+            if (right < size && beats(heap[weakest], heap[right])) weakest = right;
+            if (weakest == i) return;
+            swap(heap, i, weakest);
+            i = weakest;
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i]; a[i] = a[j]; a[j] = t;
+    }
+}
@@ -14,47 +14,179 @@ import java.util.*;
  * - Events before watermark → process normally
  * - Events after watermark but within window → accept (late but within tolerance)
  * - Events way past watermark → drop or send to dead letter queue
+ *
+ * Per-partition watermarks (like Flink's source watermarks):
+ *
+ *   input partition p = hash(ad_id) % partitions
+ *   partitionWatermark[p] = newest event minute seen on p
+ *   global watermark      = min over partitions that have reported (never moves back)
+ *
+ * A lagging partition holds the global watermark back instead of having its
+ * events dropped because another partition ran ahead.
+ *
+ * The handler only classifies; late events are not buffered here. The caller
+ * routes them into their still-open window aggregate, so late traffic costs a
+ * counter increment rather than a growing side list. Lateness is recorded as
+ * a histogram: minutes behind the watermark → event count. Only the most
+ * recent MAX_RECENT_LATE_EVENTS late events are kept, for getLateEvents().
  */
 public class WatermarkHandler {
+    private static final long NOT_REPORTED = Long.MIN_VALUE;
+
+    /** Cap on late events kept for the deprecated getLateEvents() (oldest evicted first) */
+    public static final int MAX_RECENT_LATE_EVENTS = 1_000;
+
     private final int watermarkDelayMinutes;  // how long to wait for late events
-    private long currentWatermark;            // current watermark minute
-    private final List<AdClickEvent> lateEvents = new ArrayList<>();
-    private int droppedEvents = 0;
+    private final long[] partitionWatermarks; // newest event minute per input partition
+    private long currentWatermark;            // current (global) watermark minute
+
+    // Lateness metrics: histogram[i] = events i minutes behind (0 = on time), last slot = dropped
+    private final long[] latenessHistogram;
+    private long maxLatenessMinutes = 0;
+    private final Deque<AdClickEvent> recentLateEvents = new ArrayDeque<>();
 
     public WatermarkHandler(int watermarkDelayMinutes) {
+        this(watermarkDelayMinutes, 1);
+    }
+
+    public WatermarkHandler(int watermarkDelayMinutes, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be >= 1");
+        }
         this.watermarkDelayMinutes = watermarkDelayMinutes;
+        this.partitionWatermarks = new long[partitions];
+        Arrays.fill(partitionWatermarks, NOT_REPORTED);
+        this.latenessHistogram = new long[watermarkDelayMinutes + 2];
         this.currentWatermark = 0;
     }
 
     /**
-     * Advance the watermark to a new time.
+     * Advance the watermark to a new time on every partition (e.g. an end-of-minute
+     * punctuation, or a restored checkpoint). Never moves the watermark backwards.
      * Any events with timestamp < (watermark - delay) are too late.
      */
     public void advanceWatermark(long newWatermarkMinute) {
-        this.currentWatermark = newWatermarkMinute;
+        for (int p = 0; p < partitionWatermarks.length; p++) {
+            partitionWatermarks[p] = Math.max(partitionWatermarks[p], newWatermarkMinute);
+        }
+        currentWatermark = Math.max(currentWatermark, newWatermarkMinute);
+    }
+
+    /** Raw per-partition watermarks for a checkpoint (Long.MIN_VALUE = not reported yet) */
+    public long[] snapshotPartitionWatermarks() {
+        return partitionWatermarks.clone();
+    }
+
+    /**
+     * Restore the global and per-partition watermarks from a checkpoint. A snapshot
+     * taken with a different partition count is ignored and every partition starts
+     * at the global watermark instead.
+     */
+    public void restore(long watermark, long[] snapshot) {
+        if (snapshot != null && snapshot.length == partitionWatermarks.length) {
+            for (int p = 0; p < partitionWatermarks.length; p++) {
+                partitionWatermarks[p] = Math.max(partitionWatermarks[p], snapshot[p]);
+            }
+            currentWatermark = Math.max(currentWatermark, watermark);
+        } else {
+            advanceWatermark(watermark);
+        }
+    }
+
+    /**
+     * Record an event's time on its input partition; the global watermark becomes
+     * the minimum across partitions. Call for a whole batch before classifying it.
+     */
+    public void observe(AdClickEvent event) {
+        int partition = partitionOf(event);
+        long eventMinute = event.getMinuteBucket();
+        if (eventMinute <= partitionWatermarks[partition]) return;
+
+        partitionWatermarks[partition] = eventMinute;
+        long min = Long.MAX_VALUE;
+        for (long watermark : partitionWatermarks) {
+            if (watermark != NOT_REPORTED) {
+                min = Math.min(min, watermark);
+            }
+        }
+        currentWatermark = Math.max(currentWatermark, min);
     }
 
     /**
      * Check if an event is on-time, late-but-acceptable, or too-late.
      */
     public EventStatus classifyEvent(AdClickEvent event) {
-        long eventMinute = event.getMinuteBucket();
+        long lateness = currentWatermark - event.getMinuteBucket();
 
-        if (eventMinute >= currentWatermark) {
+        if (lateness <= 0) {
+            latenessHistogram[0]++;
             return EventStatus.ON_TIME;
-        } else if (eventMinute >= currentWatermark - watermarkDelayMinutes) {
-            lateEvents.add(event);
+        }
+        maxLatenessMinutes = Math.max(maxLatenessMinutes, lateness);
+        if (lateness <= watermarkDelayMinutes) {
+            latenessHistogram[(int) lateness]++;
+            if (recentLateEvents.size() == MAX_RECENT_LATE_EVENTS) {
+                recentLateEvents.pollFirst();
+            }
+            recentLateEvents.addLast(event);
             return EventStatus.LATE_ACCEPTED;
         } else {
-            droppedEvents++;
+            latenessHistogram[watermarkDelayMinutes + 1]++;
             return EventStatus.TOO_LATE_DROPPED;
         }
     }
 
-    public List<AdClickEvent> getLateEvents() { return new ArrayList<>(lateEvents); }
-    public void clearLateEvents() { lateEvents.clear(); }
-    public int getDroppedCount() { return droppedEvents; }
+    public int partitionOf(AdClickEvent event) {
+        return PartitionedAggregator.partitionFor(event.getAdId(), partitionWatermarks.length);
+    }
+
+    /** Dropped (too late) events, saturated at Integer.MAX_VALUE; see getDroppedTotal() */
+    public int getDroppedCount() { return (int) Math.min(Integer.MAX_VALUE, getDroppedTotal()); }
+    public long getDroppedTotal() { return latenessHistogram[watermarkDelayMinutes + 1]; }
     public long getCurrentWatermark() { return currentWatermark; }
+    public int getWatermarkDelayMinutes() { return watermarkDelayMinutes; }
+    public int getPartitionCount() { return partitionWatermarks.length; }
+    public long getMaxLatenessMinutes() { return maxLatenessMinutes; }
+
+    /** Newest event minute seen on a partition, or the global watermark if it has not reported yet */
+    public long getPartitionWatermark(int partition) {
+        long watermark = partitionWatermarks[partition];
+        return watermark != NOT_REPORTED ? watermark : currentWatermark;
+    }
+
+    public long getLateAcceptedCount() {
+        long late = 0;
+        for (int i = 1; i <= watermarkDelayMinutes; i++) {
+            late += latenessHistogram[i];
+        }
+        return late;
+    }
+
+    /** Copy of the lateness histogram: [0] on time, [1..delay] minutes late, [delay+1] dropped */
+    public long[] getLatenessHistogram() {
+        return latenessHistogram.clone();
+    }
+
+    /**
+     * @deprecated late events are no longer buffered for the caller to replay; they
+     * are routed into their own window as they are classified. Returns only the
+     * most recent MAX_RECENT_LATE_EVENTS late events, for debugging.
+     */
+    @Deprecated
+    public List<AdClickEvent> getLateEvents() { return new ArrayList<>(recentLateEvents); }
+
+    /** @deprecated see getLateEvents() */
+    @Deprecated
+    public void clearLateEvents() { recentLateEvents.clear(); }
+
+    public String getLatenessStats() {
+        StringBuilder sb = new StringBuilder("Lateness{on-time=").append(latenessHistogram[0]);
+        for (int i = 1; i <= watermarkDelayMinutes; i++) {
+            sb.append(", ").append(i).append("m=").append(latenessHistogram[i]);
+        }
+        return sb.append(", dropped=").append(getDroppedTotal())
+                .append(", max=").append(maxLatenessMinutes).append("m}").toString();
+    }
 
     public enum EventStatus {
         ON_TIME,            // Within current window
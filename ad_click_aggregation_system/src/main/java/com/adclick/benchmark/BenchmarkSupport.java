@@ -0,0 +1,106 @@
+package com.adclick.benchmark;
+
+import com.adclick.model.AdClickEvent;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Minimal benchmark harness (warmup + measured iterations) and event generator.
+ *
+ * The project keeps zero external dependencies, so instead of JMH we run
+ * plain main() benchmarks with JIT warmup and per-thread allocation tracking.
+ */
+final class BenchmarkSupport {
+    static final String[] COUNTRIES = {"US", "UK", "IN", "DE", "BR", "JP"};
+    static final String[] DEVICES = {"mobile", "desktop", "tablet"};
+    static final String[] FORMATS = {"banner", "video", "native"};
+
+    private BenchmarkSupport() {}
+
+    /** Generate events for one minute bucket with a skewed (hot-ad) distribution. */
+    static List<AdClickEvent> generateEvents(long minuteBucket, int count, int distinctAds, long seed) {
+        Random random = new Random(seed);
+        List<AdClickEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Square the uniform draw so low ad ids are hotter (rough Zipf-like skew)
+            double u = random.nextDouble();
+            int ad = (int) (u * u * distinctAds);
+            events.add(new AdClickEvent(
+                    "ad" + ad,
+                    Instant.ofEpochSecond(minuteBucket * 60 + random.nextInt(60)),
+                    "user" + random.nextInt(1_000_000),
+                    "10.0." + random.nextInt(256) + "." + random.nextInt(256),
+                    COUNTRIES[random.nextInt(COUNTRIES.length)],
+                    DEVICES[random.nextInt(DEVICES.length)],
+                    FORMATS[random.nextInt(FORMATS.length)]));
+        }
+        return events;
+    }
+
+    /** Result of a measured run: average time and bytes allocated per iteration. */
+    static final class Measurement {
+        final double nanosPerOp;
+        final long bytesPerOp;
+
+        Measurement(double nanosPerOp, long bytesPerOp) {
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        double millisPerOp() { return nanosPerOp / 1_000_000.0; }
+
+        @Override
+        public String toString() {
+            return String.format("%10.3f ms/op  %12s alloc/op", millisPerOp(), formatBytes(bytesPerOp));
+        }
+    }
+
+    /**
+     * Run a task with warmup, then measure. Anything the task prints to stdout
+     * (the services log every call) is discarded while running.
+     */
+    static Measurement measure(int warmupIterations, int iterations, Runnable task) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                task.run();
+            }
+
+            long allocBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                task.run();
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocBefore;
+            return new Measurement((double) elapsed / iterations, allocated / Math.max(1, iterations));
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** Run a task once with stdout discarded. */
+    static void quietly(Runnable task) {
+        measure(0, 1, task);
+    }
+
+    /** Bytes allocated by the current thread, or 0 if the JVM doesn't expose it. */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean) {
+            return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes >= 1024 * 1024) return String.format("%.1f MB", bytes / 1024.0 / 1024.0);
+        if (bytes >= 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return bytes + " B";
+    }
+}
@@ -0,0 +1,48 @@
+package com.adclick.benchmark;
+
+import com.adclick.aggregation.PartitionedAggregator;
+import com.adclick.model.AdClickEvent;
+
+import java.util.*;
+
+/**
+ * Load generator: aggregation throughput at 1, 2, 4 and 8 partitions.
+ *
+ * Replays the same pre-generated minute windows through a PartitionedAggregator
+ * and reports events/sec plus scaling relative to a single partition.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.adclick.benchmark.PartitionedLoadGenerator
+ */
+public class PartitionedLoadGenerator {
+
+    public static void main(String[] args) {
+        int eventsPerMinute = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int distinctAds = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int minutes = 5;
+        int topN = 100;
+
+        System.out.println("=== Partitioned aggregation load generator ===");
+        System.out.println("Events/minute: " + eventsPerMinute + ", distinct ads: " + distinctAds +
+                ", windows: " + minutes + ", cores: " + Runtime.getRuntime().availableProcessors());
+
+        List<List<AdClickEvent>> windows = new ArrayList<>();
+        for (int m = 0; m < minutes; m++) {
+            windows.add(BenchmarkSupport.generateEvents(1000 + m, eventsPerMinute, distinctAds, m));
+        }
+
+        double baseline = 0;
+        for (int partitions : new int[]{1, 2, 4, 8}) {
+            try (PartitionedAggregator aggregator = new PartitionedAggregator(partitions, "country")) {
+                BenchmarkSupport.Measurement m = BenchmarkSupport.measure(3, 5, () -> {
+                    for (int i = 0; i < windows.size(); i++) {
+                        aggregator.processWindow(windows.get(i), 1000 + i, topN);
+                    }
+                });
+                double eventsPerSec = (double) eventsPerMinute * minutes / (m.nanosPerOp / 1e9);
+                if (partitions == 1) baseline = eventsPerSec;
+                System.out.println(String.format("  %d partition(s): %,14.0f events/sec  (%.2fx)",
+                        partitions, eventsPerSec, eventsPerSec / baseline));
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.adclick.benchmark;
+
+import com.adclick.aggregation.SlidingWindowTopN;
+import com.adclick.model.AggregatedResult;
+
+import java.util.*;
+
+/**
+ * Benchmark: incremental SlidingWindowTopN vs re-aggregating all M minutes,
+ * for M = 5, 60 and 1440. One op = slide the window by one minute + query top N.
+ * Also reports the operator's memory (tracked totals + slice entries, bounded
+ * by trackedAds whatever M is) and how much of the exact top N it returns.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.adclick.benchmark.SlidingWindowBenchmark
+ */
+public class SlidingWindowBenchmark {
+
+    public static void main(String[] args) {
+        int adsPerMinute = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int adPool = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int topN = 100;
+        int trackedAds = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        System.out.println("=== Sliding-window top-N: incremental vs re-aggregation ===");
+        System.out.println("Ads/minute: " + adsPerMinute + ", ad pool: " + adPool + ", top " + topN
+                + ", tracked ads per window: " + trackedAds);
+
+        // A fixed cycle of distinct minute slices, replayed as the window slides
+        List<List<AggregatedResult>> slices = new ArrayList<>();
+        Random random = new Random(7);
+        for (int s = 0; s < 97; s++) {
+            Set<String> ads = new LinkedHashSet<>();
+            while (ads.size() < adsPerMinute) {
+                double u = random.nextDouble();
+                ads.add("ad" + (int) (u * u * adPool));
+            }
+            List<AggregatedResult> slice = new ArrayList<>();
+            for (String ad : ads) {
+                slice.add(new AggregatedResult(ad, 0, 1 + random.nextInt(500)));
+            }
+            slices.add(slice);
+        }
+
+        for (int windowMinutes : new int[]{5, 60, 1440}) {
+            SlidingWindowTopN incremental = new SlidingWindowTopN(windowMinutes, trackedAds);
+            ArrayDeque<List<AggregatedResult>> naiveWindow = new ArrayDeque<>();
+            long[] minute = {0};
+
+            // Fill both windows to steady state
+            for (int i = 0; i < windowMinutes; i++) {
+                List<AggregatedResult> slice = slices.get((int) (minute[0] % slices.size()));
+                incremental.advance(minute[0], slice);
+                naiveWindow.addLast(slice);
+                minute[0]++;
+            }
+
+            int iterations = windowMinutes >= 1440 ? 20 : 200;
+            long[] naiveMinute = {minute[0]};
+            BenchmarkSupport.Measurement inc = BenchmarkSupport.measure(iterations, iterations, () -> {
+                incremental.advance(minute[0], slices.get((int) (minute[0] % slices.size())));
+                incremental.topN(topN);
+                minute[0]++;
+            });
+            BenchmarkSupport.Measurement naive = BenchmarkSupport.measure(iterations / 4, iterations / 2, () -> {
+                naiveWindow.pollFirst();
+                naiveWindow.addLast(slices.get((int) (naiveMinute[0] % slices.size())));
+                reaggregateTopN(naiveWindow, topN);
+                naiveMinute[0]++;
+            });
+
+            System.out.println(String.format("  M=%-5d incremental: %s | re-aggregate: %s | %.1fx",
+                    windowMinutes, inc, naive, naive.nanosPerOp / inc.nanosPerOp));
+
+            // Same window contents for both, then compare the top N ad sets
+            for (long m = minute[0]; m < naiveMinute[0]; m++) {
+                incremental.advance(m, slices.get((int) (m % slices.size())));
+            }
+            for (long m = naiveMinute[0]; m < minute[0]; m++) {
+                naiveWindow.pollFirst();
+                naiveWindow.addLast(slices.get((int) (m % slices.size())));
+            }
+            Set<String> exact = new HashSet<>();
+            reaggregateTopN(naiveWindow, topN).forEach(r -> exact.add(r.getAdId()));
+            long found = incremental.topN(topN).stream().filter(r -> exact.contains(r.getAdId())).count();
+            System.out.println(String.format("          memory: %,d tracked totals + %,d slice entries"
+                            + " (%,d ads kept per %d-minute slice) | covers %d-%d min | top-%d recall %.0f%%",
+                    incremental.getTrackedAds(), incremental.getSliceEntries(),
+                    incremental.getSliceCapacity(), incremental.getMinutesPerSlice(),
+                    incremental.getMinCoveredMinutes(), incremental.getMaxCoveredMinutes(), topN,
+                    100.0 * found / exact.size()));
+        }
+    }
+
+    /** Baseline: sum all M minute slices into a fresh map, then sort for top N. */
+    private static List<AggregatedResult> reaggregateTopN(Collection<List<AggregatedResult>> window, int n) {
+        Map<String, Long> totals = new HashMap<>();
+        for (List<AggregatedResult> slice : window) {
+            for (AggregatedResult r : slice) {
+                totals.merge(r.getAdId(), r.getCount(), Long::sum);
+            }
+        }
+        List<AggregatedResult> all = new ArrayList<>();
+        totals.forEach((ad, count) -> all.add(new AggregatedResult(ad, 0, count)));
+        all.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return all.subList(0, Math.min(n, all.size()));
+    }
+}
@@ -45,6 +45,16 @@ public class AdClickEvent {
         return tags;
     }
 
+    /** Single tag lookup without building the tags map (hot-path friendly) */
+    public String getTag(String dimension) {
+        switch (dimension) {
+            case "country": return country;
+            case "device": return deviceType;
+            case "format": return adFormat;
+            default: return null;
+        }
+    }
+
     /** Get the minute bucket this event falls into */
     public long getMinuteBucket() {
         return clickTimestamp.getEpochSecond() / 60;
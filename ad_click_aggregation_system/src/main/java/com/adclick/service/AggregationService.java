@@ -1,10 +1,15 @@
 package com.adclick.service;
 
+import com.adclick.aggregation.ClickDeduplicator;
 import com.adclick.aggregation.MapReduceEngine;
+import com.adclick.aggregation.PartitionedAggregator;
+import com.adclick.aggregation.RollupCube;
+import com.adclick.aggregation.StreamingAggregator;
 import com.adclick.aggregation.WatermarkHandler;
 import com.adclick.model.AdClickEvent;
 import com.adclick.model.AggregatedResult;
 import com.adclick.storage.AggregationStore;
+import com.adclick.storage.CheckpointStore;
 import com.adclick.storage.RawDataStore;
 
 import java.util.*;
@@ -19,20 +24,64 @@ import java.util.*;
  *
  * Supports exactly-once processing via atomic commit:
  * - Aggregation result + offset commit happen atomically
+ *
+ * Windowed ingestion (ingest) keeps open minute windows in memory until the
+ * watermark passes them, and periodically checkpoints offset + watermark +
+ * open-window partial aggregates so a restart resumes from the checkpoint
+ * instead of replaying everything. Raw events it accepts are written to the
+ * raw store at once, keyed by input offset, so batches replayed after a crash
+ * are not stored (and later recalculated) twice.
+ *
+ * Late events (within the watermark delay) are folded into their own minute's
+ * window rather than the current one; the number of open windows is bounded so
+ * a lagging input partition can't make in-flight state grow without limit.
  */
 public class AggregationService {
+    private static final int WATERMARK_DELAY_MINUTES = 2;
+    private static final int DEFAULT_MAX_OPEN_WINDOWS = 30;
+
     private final MapReduceEngine engine;
     private final WatermarkHandler watermarkHandler;
     private final AggregationStore aggregationStore;
     private final RawDataStore rawDataStore;
     private final int topN;
 
-    // Simulates committed offset for exactly-once semantics
-    private long lastCommittedOffset = 0;
+    // Streaming mode: fold events into primitive counters instead of grouping lists
+    private final StreamingAggregator streamingAggregator = new StreamingAggregator("country");
+    private boolean streamingMode = false;
+
+    // Partitioned mode: shard by hash(ad_id) across worker threads (null = single-threaded)
+    private PartitionedAggregator partitionedAggregator;
+
+    // Dedup / fraud filter stage before MapReduce (null = disabled)
+    private ClickDeduplicator deduplicator;
+
+    // Rollup cube for extra dimension combinations (null = country filter only)
+    private RollupCube rollupCube;
+
+    // Windowed ingestion: minute → partial aggregate, committed once the watermark passes
+    private final NavigableMap<Long, StreamingAggregator> openWindows = new TreeMap<>();
+    private final Deque<StreamingAggregator> spareAggregators = new ArrayDeque<>();
+    private int maxOpenWindows = DEFAULT_MAX_OPEN_WINDOWS;
+    private long forcedWindowCloses = 0;
+
+    // Checkpointing (null = disabled)
+    private CheckpointStore checkpointStore;
+    private int checkpointEveryBatches;
+    private int batchesSinceCheckpoint = 0;
+
+    // Simulates committed offset for exactly-once semantics (-1 = nothing committed yet)
+    private long lastCommittedOffset = -1;
 
     public AggregationService(AggregationStore aggregationStore, RawDataStore rawDataStore, int topN) {
+        this(aggregationStore, rawDataStore, topN, 1);
+    }
+
+    /** @param inputPartitions number of input (Kafka) partitions, each tracking its own watermark */
+    public AggregationService(AggregationStore aggregationStore, RawDataStore rawDataStore, int topN,
+                              int inputPartitions) {
         this.engine = new MapReduceEngine();
-        this.watermarkHandler = new WatermarkHandler(2); // 2-minute watermark delay
+        this.watermarkHandler = new WatermarkHandler(WATERMARK_DELAY_MINUTES, inputPartitions);
         this.aggregationStore = aggregationStore;
         this.rawDataStore = rawDataStore;
         this.topN = topN;
@@ -45,34 +94,122 @@ public class AggregationService {
     public void processBatch(List<AdClickEvent> events, long minuteBucket) {
         System.out.println("\n--- Processing minute bucket: " + minuteBucket + " ---");
 
-        // Step 1: Store raw events
-        rawDataStore.storeBatch(events);
-        System.out.println("  [Raw Store] Saved " + events.size() + " raw events");
-
-        // Step 2: Classify events (on-time vs late)
-        watermarkHandler.advanceWatermark(minuteBucket);
+        // Step 2: Classify events against their own input partition's watermark; events
+        // from earlier minutes go to their own minute's window, not this one.
+        // Step 2b: Drop repeated clicks from the same (ad, user, ip) before counting
+        for (AdClickEvent event : events) {
+            watermarkHandler.observe(event);
+        }
         List<AdClickEvent> onTimeEvents = new ArrayList<>();
-        int lateCount = 0, droppedCount = 0;
+        NavigableMap<Long, StreamingAggregator> lateWindows = new TreeMap<>();
+        List<AdClickEvent> rawEvents = new ArrayList<>(events.size());
+        int lateCount = 0, droppedCount = 0, duplicateCount = 0;
 
         for (AdClickEvent event : events) {
-            switch (watermarkHandler.classifyEvent(event)) {
-                case ON_TIME -> onTimeEvents.add(event);
-                case LATE_ACCEPTED -> { onTimeEvents.add(event); lateCount++; }
-                case TOO_LATE_DROPPED -> droppedCount++;
+            WatermarkHandler.EventStatus status = watermarkHandler.classifyEvent(event);
+            if (status == WatermarkHandler.EventStatus.TOO_LATE_DROPPED) {
+                droppedCount++;
+                continue;
+            }
+            if (deduplicator != null && !deduplicator.accept(event)) {
+                duplicateCount++;
+                continue;
+            }
+            rawEvents.add(event);
+            if (event.getMinuteBucket() >= minuteBucket) {
+                onTimeEvents.add(event);
+                if (rollupCube != null) rollupCube.accept(event, minuteBucket);
+            } else {
+                lateWindows.computeIfAbsent(event.getMinuteBucket(), m -> newWindowAggregator()).accept(event);
+                if (rollupCube != null) rollupCube.accept(event);
+                lateCount++;
             }
         }
-        System.out.println("  [Watermark] On-time: " + (onTimeEvents.size() - lateCount) +
+        System.out.println("  [Watermark] On-time: " + onTimeEvents.size() +
                 ", Late-accepted: " + lateCount + ", Dropped: " + droppedCount);
+        System.out.println("  [Watermark] " + watermarkHandler.getLatenessStats());
+        if (deduplicator != null) {
+            System.out.println("  [Dedup] Dropped " + duplicateCount + " duplicate clicks, " +
+                    deduplicator.getStats());
+        }
 
-        // Step 3: MapReduce aggregation
-        List<AggregatedResult> topResults = engine.processWindow(onTimeEvents, minuteBucket, topN);
+        // Step 1: Store raw events, after classification so that duplicates and too-late
+        // drops are left out; a recalculation or backfill replaying the raw store then
+        // counts the same events the live path counted.
+        rawDataStore.storeBatch(rawEvents);
+        System.out.println("  [Raw Store] Saved " + rawEvents.size() + " raw events");
 
-        // Step 4: Aggregate with filter (e.g., by country)
-        List<AggregatedResult> filteredResults = engine.aggregateWithFilter(
-                onTimeEvents, minuteBucket, "country");
+        List<AggregatedResult> topResults;
+        List<AggregatedResult> filteredResults;
+        List<AggregatedResult> minuteCounts;   // every ad's count, feeds sliding-window top-N
+        if (partitionedAggregator != null) {
+            // Steps 3+4 sharded by ad_id across partitions, then local top-N merged globally
+            PartitionedAggregator.WindowResult merged =
+                    partitionedAggregator.processWindow(onTimeEvents, minuteBucket, topN);
+            topResults = merged.getTopResults();
+            filteredResults = merged.getFilteredResults();
+            minuteCounts = merged.getMinuteCounts();
+            System.out.println("  [Partitioned] " + onTimeEvents.size() + " events across " +
+                    partitionedAggregator.getPartitionCount() + " partitions, top " + topN + " merged");
+        } else if (streamingMode) {
+            // Steps 3+4 in one pass: interned IDs + long counters, no per-ad lists
+            streamingAggregator.acceptAll(onTimeEvents);
+            topResults = streamingAggregator.topN(minuteBucket, topN);
+            filteredResults = streamingAggregator.aggregateWithFilter(minuteBucket);
+            minuteCounts = streamingAggregator.aggregate(minuteBucket);
+            streamingAggregator.reset();
+            System.out.println("  [Streaming] Folded " + onTimeEvents.size() + " events, top " + topN + " selected");
+        } else {
+            // Step 3: MapReduce aggregation
+            topResults = engine.processWindow(onTimeEvents, minuteBucket, topN);
+
+            // Step 4: Aggregate with filter (e.g., by country)
+            filteredResults = engine.aggregateWithFilter(onTimeEvents, minuteBucket, "country");
+            minuteCounts = engine.aggregate(engine.map(onTimeEvents), minuteBucket);
+        }
+
+        // Step 4b: Rollup cube cells are committed with the filtered results
+        if (rollupCube != null) {
+            filteredResults = new ArrayList<>(filteredResults);
+            List<AggregatedResult> cells = rollupCube.drainMinute(minuteBucket);
+            filteredResults.addAll(cells);
+            System.out.println("  [Rollup] " + cells.size() + " cells for cuboids " + rollupCube.getCuboids());
+        }
 
         // Step 5: Atomic commit — store results + commit offset together
-        atomicCommit(topResults, filteredResults, minuteBucket);
+        atomicCommit(topResults, filteredResults, minuteCounts, minuteBucket);
+
+        // Step 6: Late events update the minutes they belong to
+        for (Map.Entry<Long, StreamingAggregator> window : lateWindows.entrySet()) {
+            applyLateCorrection(window.getKey(), window.getValue());
+        }
+
+        // Minutes behind the watermark (or beyond the open-window bound) take no more late events
+        aggregationStore.evictMinuteCountsBefore(Math.max(
+                watermarkHandler.getCurrentWatermark() - WATERMARK_DELAY_MINUTES, minuteBucket - maxOpenWindows));
+    }
+
+    /**
+     * Add a late window's counts to its (already committed) minute and re-rank that
+     * minute's top N, then recycle the aggregator. Filtered rows are complete per
+     * minute, so their deltas merge directly.
+     */
+    private void applyLateCorrection(long minute, StreamingAggregator aggregator) {
+        List<AggregatedResult> counts = aggregator.aggregate(minute);
+        aggregationStore.applyLateCounts(minute, counts, topN);
+        for (AggregatedResult result : aggregator.aggregateWithFilter(minute)) {
+            aggregationStore.store(result);
+        }
+        if (rollupCube != null) {
+            for (AggregatedResult cell : rollupCube.drainMinute(minute)) {
+                aggregationStore.store(cell);
+            }
+        }
+        System.out.println("  [Late Routing] minute " + minute + ": +" + aggregator.getEventCount() +
+                " late events across " + counts.size() + " ads");
+
+        aggregator.reset();
+        spareAggregators.push(aggregator);
     }
 
     /**
@@ -80,10 +217,12 @@ public class AggregationService {
      * Either ALL of these succeed or NONE:
      * 1. Write aggregation results
      * 2. Write filtered results
-     * 3. Update committed offset
+     * 3. Slide the window top-N operators
+     * 4. Update committed offset
      */
     private void atomicCommit(List<AggregatedResult> topResults,
                                List<AggregatedResult> filteredResults,
+                               List<AggregatedResult> minuteCounts,
                                long minuteBucket) {
         // Simulate transaction
         for (AggregatedResult result : topResults) {
@@ -94,11 +233,140 @@ public class AggregationService {
         for (AggregatedResult result : filteredResults) {
             aggregationStore.store(result);
         }
+        aggregationStore.storeMinuteCounts(minuteBucket, minuteCounts);
+        aggregationStore.retainMinuteCounts(minuteBucket, minuteCounts);
 
         lastCommittedOffset = minuteBucket;
         System.out.println("  [Atomic Commit] Results stored + offset committed for minute " + minuteBucket);
     }
 
+    /**
+     * Windowed ingestion of one consumer batch read at input offset `offset`.
+     *
+     * 1. Advance each input partition's watermark to its newest event minute;
+     *    the global watermark is the slowest partition's
+     * 2. Fold each accepted, non-duplicate event into its minute's open window
+     *    (late events go straight into their still-open window); too-late events are dropped
+     * 3. Commit every window the watermark has passed (idempotent per window);
+     *    if more than maxOpenWindows are open, force the oldest closed and advance
+     *    the watermark past them so their stragglers are dropped, not lost silently
+     * 4. Checkpoint every N batches when checkpointing is enabled
+     *
+     * Accepted events go to the raw store keyed by `offset`; the store skips offsets
+     * it already holds, so a replay after a restart doesn't duplicate them.
+     *
+     * Batches at or below the restored offset are ignored (already in the state).
+     */
+    public void ingest(long offset, List<AdClickEvent> events) {
+        if (offset <= lastCommittedOffset) return;
+
+        for (AdClickEvent event : events) {
+            watermarkHandler.observe(event);
+        }
+
+        List<AdClickEvent> accepted = new ArrayList<>(events.size());
+        for (AdClickEvent event : events) {
+            if (watermarkHandler.classifyEvent(event) != WatermarkHandler.EventStatus.TOO_LATE_DROPPED
+                    && (deduplicator == null || deduplicator.accept(event))) {
+                openWindows.computeIfAbsent(event.getMinuteBucket(), m -> newWindowAggregator()).accept(event);
+                if (rollupCube != null) rollupCube.accept(event);
+                accepted.add(event);
+            }
+        }
+        rawDataStore.storeBatch(offset, accepted);
+
+        closeWindowsBefore(watermarkHandler.getCurrentWatermark() - WATERMARK_DELAY_MINUTES);
+        if (openWindows.size() > maxOpenWindows) {
+            // Keep the newest maxOpenWindows; a lagging partition must not pin state forever
+            long keepFrom = openWindows.descendingKeySet().stream()
+                    .skip(maxOpenWindows - 1).findFirst().orElseThrow();
+            forcedWindowCloses += openWindows.headMap(keepFrom).size();
+            watermarkHandler.advanceWatermark(keepFrom + WATERMARK_DELAY_MINUTES);
+            closeWindowsBefore(keepFrom);
+        }
+        lastCommittedOffset = offset;
+
+        if (checkpointStore != null && ++batchesSinceCheckpoint >= checkpointEveryBatches) {
+            checkpoint();
+        }
+    }
+
+    /** End of stream: commit every open window regardless of the watermark. */
+    public void flushOpenWindows() {
+        closeWindowsBefore(Long.MAX_VALUE);
+        if (checkpointStore != null) {
+            checkpoint();
+            checkpointStore.sync();
+        }
+    }
+
+    private void closeWindowsBefore(long minuteExclusive) {
+        while (!openWindows.isEmpty() && openWindows.firstKey() < minuteExclusive) {
+            Map.Entry<Long, StreamingAggregator> window = openWindows.pollFirstEntry();
+            long minute = window.getKey();
+            StreamingAggregator aggregator = window.getValue();
+
+            List<AggregatedResult> filtered = aggregator.aggregateWithFilter(minute);
+            if (rollupCube != null) {
+                filtered.addAll(rollupCube.drainMinute(minute));
+            }
+            boolean committed = aggregationStore.commitWindow(minute,
+                    aggregator.topN(minute, topN), filtered, aggregator.aggregate(minute));
+            System.out.println("  [Window Commit] minute " + minute + ": " + aggregator.getEventCount() +
+                    " events" + (committed ? "" : " (already committed before restart, skipped)"));
+
+            aggregator.reset();
+            spareAggregators.push(aggregator);
+        }
+    }
+
+    private StreamingAggregator newWindowAggregator() {
+        StreamingAggregator spare = spareAggregators.poll();
+        return spare != null ? spare : new StreamingAggregator("country");
+    }
+
+    /**
+     * Enable periodic checkpointing and restore from the latest checkpoint, if any.
+     * Returns the next input offset to consume (seek the consumer there).
+     */
+    public long enableCheckpointing(CheckpointStore store, int everyBatches) {
+        this.checkpointStore = store;
+        this.checkpointEveryBatches = Math.max(1, everyBatches);
+
+        store.loadLatest().ifPresent(checkpoint -> {
+            openWindows.clear();
+            for (Map.Entry<Long, List<AggregatedResult>> window : checkpoint.getOpenWindows().entrySet()) {
+                StreamingAggregator aggregator = newWindowAggregator();
+                aggregator.restore(window.getValue());
+                if (rollupCube != null) rollupCube.restore(window.getValue());
+                openWindows.put(window.getKey(), aggregator);
+            }
+            if (deduplicator != null) {
+                checkpoint.getDedupState().ifPresent(deduplicator::restore);
+            }
+            watermarkHandler.restore(checkpoint.getWatermark(), checkpoint.getPartitionWatermarks().orElse(null));
+            lastCommittedOffset = checkpoint.getCommittedOffset();
+            System.out.println("  [Checkpoint] Restored " + checkpoint);
+        });
+        return lastCommittedOffset + 1;
+    }
+
+    /** Snapshot offset + watermarks + open-window partial aggregates + dedup filter ring. */
+    public void checkpoint() {
+        Map<Long, List<AggregatedResult>> partials = new TreeMap<>();
+        for (Map.Entry<Long, StreamingAggregator> window : openWindows.entrySet()) {
+            List<AggregatedResult> rows = new ArrayList<>(window.getValue().aggregate(window.getKey()));
+            rows.addAll(window.getValue().aggregateWithFilter(window.getKey()));
+            if (rollupCube != null) rows.addAll(rollupCube.peekMinute(window.getKey()));
+            partials.put(window.getKey(), rows);
+        }
+        checkpointStore.append(new CheckpointStore.Checkpoint(
+                lastCommittedOffset, watermarkHandler.getCurrentWatermark(), partials,
+                deduplicator != null ? deduplicator.snapshot() : null,
+                watermarkHandler.snapshotPartitionWatermarks()));
+        batchesSinceCheckpoint = 0;
+    }
+
     /**
      * Recalculation: Replay raw events to recompute aggregations.
      * Used when a bug is found in aggregation logic.
@@ -106,21 +374,70 @@ public class AggregationService {
     public void recalculate(long startMinute, long endMinute) {
         System.out.println("\n=== RECALCULATION: minutes " + startMinute + " to " + endMinute + " ===");
 
-        List<AdClickEvent> rawEvents = rawDataStore.getEventsByTimeRange(startMinute, endMinute);
-        System.out.println("  [Recalculation] Replaying " + rawEvents.size() + " raw events");
+        // Stream minute by minute from the raw store; no full range is held in memory
+        StreamingAggregator replay = new StreamingAggregator();
+        long replayed = 0;
+        for (long minute : rawDataStore.getMinuteBuckets(startMinute, endMinute)) {
+            rawDataStore.scanMinute(minute, replay::accept);
+            replayed += replay.getEventCount();
+            List<AggregatedResult> results = replay.topN(minute, topN);
+            replay.reset();
+            aggregationStore.storeTopN(minute, results);
+            System.out.println("  [Recalculation] Minute " + minute + " → top " + results.size() + " recomputed");
+        }
+        System.out.println("  [Recalculation] Replayed " + replayed + " raw events");
 
-        // Group by minute bucket and re-aggregate
-        Map<Long, List<AdClickEvent>> byMinute = new LinkedHashMap<>();
-        for (AdClickEvent event : rawEvents) {
-            byMinute.computeIfAbsent(event.getMinuteBucket(), k -> new ArrayList<>()).add(event);
+        System.out.println("  [Recalculation] Complete!");
+    }
+
+    /** Upper bound on in-flight windows during ingest (memory bound under lagging partitions) */
+    public void setMaxOpenWindows(int maxOpenWindows) { this.maxOpenWindows = Math.max(1, maxOpenWindows); }
+    public int getOpenWindowCount() { return openWindows.size(); }
+    public long getForcedWindowCloses() { return forcedWindowCloses; }
+    public WatermarkHandler getWatermarkHandler() { return watermarkHandler; }
+
+    /**
+     * Pre-aggregate extra dimension combinations (e.g. country×device, format) alongside
+     * the built-in country filter. Set before enableCheckpointing so restored windows
+     * get their cube cells back. Pass null to disable.
+     */
+    public void setRollupCube(RollupCube rollupCube) {
+        if (rollupCube != null && rollupCube.hasCuboid("country")) {
+            throw new IllegalArgumentException("country is already pre-aggregated; use combinations with it instead");
         }
+        this.rollupCube = rollupCube;
+    }
+    public RollupCube getRollupCube() { return rollupCube; }
+
+    /**
+     * Enable the dedup / click-fraud filter stage (null disables it). Set before
+     * enableCheckpointing so the restored filter ring sees replayed offsets the
+     * way it saw them before the crash.
+     */
+    public void setDeduplicator(ClickDeduplicator deduplicator) { this.deduplicator = deduplicator; }
+    public ClickDeduplicator getDeduplicator() { return deduplicator; }
+
+    /** Switch between the list-grouping MapReduce path and the streaming counter path */
+    public void setStreamingMode(boolean streamingMode) { this.streamingMode = streamingMode; }
+    public boolean isStreamingMode() { return streamingMode; }
 
-        for (Map.Entry<Long, List<AdClickEvent>> entry : byMinute.entrySet()) {
-            List<AggregatedResult> results = engine.processWindow(entry.getValue(), entry.getKey(), topN);
-            aggregationStore.storeTopN(entry.getKey(), results);
+    /**
+     * Enable partitioned execution with N worker threads (1 node per partition).
+     * Pass 0 to return to single-threaded processing.
+     */
+    public void setPartitions(int partitions) {
+        if (partitionedAggregator != null) {
+            partitionedAggregator.close();
+            partitionedAggregator = null;
+        }
+        if (partitions > 0) {
+            partitionedAggregator = new PartitionedAggregator(partitions, "country");
         }
+    }
 
-        System.out.println("  [Recalculation] Complete!");
+    /** Release partition worker threads */
+    public void shutdown() {
+        setPartitions(0);
     }
 
     public long getLastCommittedOffset() { return lastCommittedOffset; }
@@ -0,0 +1,227 @@
+package com.adclick.service;
+
+import com.adclick.aggregation.RollupCube;
+import com.adclick.aggregation.StreamingAggregator;
+import com.adclick.model.AggregatedResult;
+import com.adclick.storage.AggregationStore;
+import com.adclick.storage.RawDataStore;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel recalculation / backfill engine.
+ *
+ * Used when an aggregation bug forces recomputing days or weeks of history:
+ *
+ *   [start, end) ─split─→ chunk 1 │ chunk 2 │ ... │ chunk K     (chunkMinutes each)
+ *                            ↓         ↓              ↓
+ *                       ForkJoinPool workers (parallelism P)
+ *                            ↓  stream raw events minute by minute
+ *                            ↓  StreamingAggregator (+ RollupCube) per chunk
+ *                       AggregationStore.replaceMinutes(chunk)  ← atomic swap
+ *
+ * A chunk recomputes the top-N rows, the country rows and, if setRollupCuboids
+ * was called, the cube cells; only those rows are swapped, anything else
+ * stored for the minute is kept. Every ad's recomputed count goes into the same
+ * swap, so late-event corrections and the sliding windows follow the new minutes.
+ *
+ * - Bounded memory: at most P chunks in flight, each holding only its own results
+ * - Rate limit: shared events/sec budget so backfill can't starve live ingestion
+ * - Progress + ETA: exposed through the returned Job handle
+ */
+public class BackfillEngine {
+    private final RawDataStore rawDataStore;
+    private final AggregationStore aggregationStore;
+    private final int topN;
+    private final int parallelism;
+    private final int chunkMinutes;
+    private final long maxEventsPerSecond;   // 0 = unlimited
+    private volatile String[] rollupCuboids;  // null = no cube rows recomputed
+
+    public BackfillEngine(RawDataStore rawDataStore, AggregationStore aggregationStore, int topN,
+                          int parallelism, int chunkMinutes, long maxEventsPerSecond) {
+        if (parallelism < 1 || chunkMinutes < 1 || maxEventsPerSecond < 0) {
+            throw new IllegalArgumentException("parallelism and chunkMinutes must be >= 1, rate limit >= 0");
+        }
+        this.rawDataStore = rawDataStore;
+        this.aggregationStore = aggregationStore;
+        this.topN = topN;
+        this.parallelism = parallelism;
+        this.chunkMinutes = chunkMinutes;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+    }
+
+    /** Also recompute the rollup cube cells of these cuboids, e.g. the live cube's getCuboids() */
+    public void setRollupCuboids(Collection<String> cuboidSpecs) {
+        this.rollupCuboids = cuboidSpecs == null || cuboidSpecs.isEmpty()
+                ? null : cuboidSpecs.toArray(new String[0]);
+    }
+
+    /** Start backfilling minutes [startMinute, endMinute) in the background. */
+    public Job start(long startMinute, long endMinute) {
+        NavigableSet<Long> minutes = rawDataStore.getMinuteBuckets(startMinute, endMinute);
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> current = new ArrayList<>();
+        for (long minute : minutes) {
+            current.add(minute);
+            if (current.size() == chunkMinutes) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty()) chunks.add(current);
+
+        Job job = new Job(startMinute, endMinute, minutes.size(), new ForkJoinPool(parallelism));
+        System.out.println("  [Backfill] " + minutes.size() + " minutes in " + chunks.size() +
+                " chunks, parallelism " + parallelism +
+                (maxEventsPerSecond > 0 ? ", limit " + maxEventsPerSecond + " events/sec" : ""));
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (List<Long> chunk : chunks) {
+            tasks.add(job.pool.submit(() -> processChunk(chunk, job)));
+        }
+        job.tasks = tasks;
+        return job;
+    }
+
+    private void processChunk(List<Long> chunk, Job job) {
+        if (job.cancelled) return;
+        StreamingAggregator aggregator = new StreamingAggregator("country");
+        String[] cuboids = rollupCuboids;
+        RollupCube cube = cuboids != null ? new RollupCube(cuboids) : null;
+        Map<Long, List<AggregatedResult>> resultsByMinute = new LinkedHashMap<>();
+        Map<Long, List<AggregatedResult>> topNsByMinute = new LinkedHashMap<>();
+        Map<Long, List<AggregatedResult>> minuteCountsByMinute = new LinkedHashMap<>();
+
+        for (long minute : chunk) {
+            rawDataStore.scanMinute(minute, event -> {
+                aggregator.accept(event);
+                if (cube != null) cube.accept(event, minute);
+            });
+            long events = aggregator.getEventCount();
+
+            // Same outputs as the live path: top-N as unfiltered rows + filtered rows + cube cells
+            List<AggregatedResult> top = aggregator.topN(minute, topN);
+            List<AggregatedResult> rows = new ArrayList<>(aggregator.aggregateWithFilter(minute));
+            for (AggregatedResult r : top) {
+                rows.add(new AggregatedResult(r.getAdId(), minute, r.getCount()));
+            }
+            if (cube != null) rows.addAll(cube.drainMinute(minute));
+            List<AggregatedResult> minuteCounts = aggregator.aggregate(minute);
+            aggregator.reset();
+
+            resultsByMinute.put(minute, rows);
+            topNsByMinute.put(minute, top);
+            minuteCountsByMinute.put(minute, minuteCounts);
+            job.eventsProcessed.addAndGet(events);
+            job.throttle(events);
+            if (job.cancelled) return;
+        }
+
+        aggregationStore.replaceMinutes(resultsByMinute, topNsByMinute, minuteCountsByMinute,
+                filterId -> filterId == null || isCountryFilter(filterId) || (cube != null && cube.owns(filterId)));
+        job.minutesCompleted.addAndGet(chunk.size());
+    }
+
+    private static boolean isCountryFilter(String filterId) {
+        return filterId.startsWith("country:") && filterId.indexOf(',') < 0;
+    }
+
+    /** Handle to a running backfill: progress, ETA, wait, cancel. */
+    public class Job {
+        private final long startMinute;
+        private final long endMinute;
+        private final long totalMinutes;
+        private final ForkJoinPool pool;
+        private final long startedAtNanos = System.nanoTime();
+        private final AtomicLong minutesCompleted = new AtomicLong();
+        private final AtomicLong eventsProcessed = new AtomicLong();
+        private volatile boolean cancelled = false;
+        private volatile List<ForkJoinTask<?>> tasks = Collections.emptyList();   // Set once all chunks are submitted
+
+        // Token bucket shared by all workers of this job
+        private long availableEvents = 0;
+        private long lastRefillNanos = System.nanoTime();
+
+        private Job(long startMinute, long endMinute, long totalMinutes, ForkJoinPool pool) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.totalMinutes = totalMinutes;
+            this.pool = pool;
+        }
+
+        /** Block the calling worker until `events` fit in the events/sec budget. */
+        private void throttle(long events) {
+            if (maxEventsPerSecond == 0) return;
+            synchronized (this) {
+                availableEvents -= events;
+                while (availableEvents < 0 && !cancelled) {
+                    long now = System.nanoTime();
+                    availableEvents = Math.min(maxEventsPerSecond,
+                            availableEvents + (now - lastRefillNanos) * maxEventsPerSecond / 1_000_000_000L);
+                    lastRefillNanos = now;
+                    if (availableEvents < 0) {
+                        long waitMillis = Math.max(1, -availableEvents * 1000 / maxEventsPerSecond);
+                        try {
+                            wait(waitMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Fraction of minutes swapped into the store, 0.0 – 1.0 */
+        public double getProgress() {
+            return totalMinutes == 0 ? 1.0 : (double) minutesCompleted.get() / totalMinutes;
+        }
+
+        /** Estimated time remaining, based on throughput so far (null until first chunk lands) */
+        public Duration getEta() {
+            long done = minutesCompleted.get();
+            if (done == 0) return null;
+            long elapsed = System.nanoTime() - startedAtNanos;
+            return Duration.ofNanos(elapsed / done * (totalMinutes - done));
+        }
+
+        public long getMinutesCompleted() { return minutesCompleted.get(); }
+        public long getTotalMinutes() { return totalMinutes; }
+        public long getEventsProcessed() { return eventsProcessed.get(); }
+        public boolean isDone() { return tasks.stream().allMatch(ForkJoinTask::isDone); }
+
+        /** Wait for all chunks, rethrowing the first chunk failure. */
+        public void awaitCompletion() {
+            try {
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+            System.out.println(String.format("  [Backfill] minutes [%d, %d): %d/%d done, %d events replayed",
+                    startMinute, endMinute, minutesCompleted.get(), totalMinutes, eventsProcessed.get()));
+        }
+
+        /** Stop after the chunks in flight; finished chunks stay swapped in. */
+        public void cancel() {
+            cancelled = true;
+            synchronized (this) {
+                notifyAll();
+            }
+            pool.shutdown();
+        }
+
+        @Override
+        public String toString() {
+            Duration eta = getEta();
+            return String.format("Backfill{%.0f%%, %d/%d minutes, %d events, eta=%s}",
+                    getProgress() * 100, minutesCompleted.get(), totalMinutes, eventsProcessed.get(),
+                    eta != null ? eta.toMillis() + "ms" : "?");
+        }
+    }
+}
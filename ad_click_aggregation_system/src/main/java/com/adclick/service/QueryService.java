@@ -1,9 +1,12 @@
 package com.adclick.service;
 
+import com.adclick.aggregation.RollupCube;
 import com.adclick.model.AggregatedResult;
+import com.adclick.model.TimeWindow;
 import com.adclick.storage.AggregationStore;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Query Service — reads from the Aggregation Database.
@@ -13,6 +16,7 @@ import java.util.List;
  *   GET /ads/{ad_id}/aggregated_count?from=&to=
  *   GET /ads/popular_ads?window_size=M&top=N
  *   GET /ads/{ad_id}/aggregated_count?filter=country:US
+ *   GET /ads/{ad_id}/aggregated_count?filter=country:US,device:mobile   (rollup cube)
  */
 public class QueryService {
     private final AggregationStore store;
@@ -37,6 +41,14 @@ public class QueryService {
         return count;
     }
 
+    /**
+     * GET /ads/{ad_id}/aggregated_count?filter=country:US,device:mobile — clicks for a
+     * dimension combination pre-aggregated by the rollup cube (series lookup, no replay)
+     */
+    public long getFilteredCount(String adId, long startMinute, long endMinute, Map<String, String> filters) {
+        return getFilteredCount(adId, startMinute, endMinute, RollupCube.filterId(filters));
+    }
+
     /** GET /ads/popular_ads — top N most clicked ads in a minute */
     public List<AggregatedResult> getTopAds(long minuteBucket, int n) {
         List<AggregatedResult> topAds = store.getTopN(minuteBucket, n);
@@ -46,4 +58,16 @@ public class QueryService {
         }
         return topAds;
     }
+
+    /** GET /ads/popular_ads?window_size=M — top N most clicked ads over the last M minutes */
+    public List<AggregatedResult> getTopAdsInWindow(int windowMinutes, int n) {
+        List<AggregatedResult> topAds = store.getSlidingTopN(windowMinutes, n);
+        TimeWindow covered = store.getSlidingWindowCoverage(windowMinutes);
+        System.out.println("  [Query] Top " + n + " ads over last " + windowMinutes + " minutes (covering minutes [" +
+                covered.getStartMinute() + ", " + covered.getEndMinute() + ")):");
+        for (int i = 0; i < topAds.size(); i++) {
+            System.out.println("    #" + (i + 1) + ": " + topAds.get(i));
+        }
+        return topAds;
+    }
 }
@@ -1,14 +1,24 @@
 package com.adclick.storage;
 
+import com.adclick.aggregation.SlidingWindowTopN;
 import com.adclick.model.AggregatedResult;
+import com.adclick.model.TimeWindow;
 
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Simulates the aggregation database (e.g., Cassandra).
  * Stores pre-computed aggregation results for fast queries.
  * Query Service reads from this store.
+ *
+ * Range queries are answered from a per-series index (like a Cassandra
+ * partition per ad_id, clustered by minute) with minute→hour→day rollups,
+ * so cost grows with the query range, not with total stored history.
+ *
+ * Thread-safe: live ingestion and backfill workers write concurrently, and a
+ * backfill chunk is swapped in under one lock so readers never see a mix.
  */
 public class AggregationStore {
     // Key: "adId:minuteBucket" or "adId:minuteBucket:filterId"
@@ -17,47 +27,273 @@ public class AggregationStore {
     // Top-N results per window
     private final Map<Long, List<AggregatedResult>> topNByMinute = new LinkedHashMap<>();
 
-    public void store(AggregatedResult result) {
+    // Time-series index: ad_id → series, and ad_id → filterId → series
+    private final Map<String, TimeSeries> seriesByAd = new HashMap<>();
+    private final Map<String, Map<String, TimeSeries>> filteredSeriesByAd = new HashMap<>();
+
+    // Result keys written per minute, so a minute can be replaced wholesale
+    private final Map<Long, Set<String>> keysByMinute = new HashMap<>();
+
+    // Full per-ad counts of recently committed minutes (minute → ad_id → count), kept
+    // only while late events can still arrive for them so a correction can re-rank
+    private final NavigableMap<Long, Map<String, Long>> correctableCounts = new TreeMap<>();
+
+    // Highest window committed via commitWindow (windows close in minute order)
+    private long lastCommittedWindow = Long.MIN_VALUE;
+
+    // Incremental "top N over last M minutes", keyed by window size M;
+    // each window tracks at most ~10K ads (+ 4x that in minute slices) whatever M is
+    private static final int SLIDING_WINDOW_TRACKED_ADS = 10_000;
+    private final Map<Integer, SlidingWindowTopN> slidingWindows = new HashMap<>();
+
+    public AggregationStore() {
+    }
+
+    /** Maintain sliding-window top-N for the given window sizes (in minutes) */
+    public AggregationStore(int... slidingWindowMinutes) {
+        for (int m : slidingWindowMinutes) {
+            slidingWindows.put(m, new SlidingWindowTopN(m, SLIDING_WINDOW_TRACKED_ADS));
+        }
+    }
+
+    public synchronized void store(AggregatedResult result) {
         String key = buildKey(result);
         results.merge(key, result, (existing, newResult) -> {
             existing.incrementCount(newResult.getCount());
             return existing;
         });
+        seriesFor(result.getAdId(), result.getFilterId()).add(result.getMinuteBucket(), result.getCount());
+        keysByMinute.computeIfAbsent(result.getMinuteBucket(), k -> new HashSet<>()).add(key);
+    }
+
+    /**
+     * Idempotent window commit: results, top-N and sliding-window counts for one
+     * closed window are written in one transaction, keyed by the window minute.
+     * A window that was already committed (e.g. replayed after a crash that hit
+     * before the checkpoint) is skipped, so it can never be double-counted.
+     *
+     * @return false if the window had already been committed
+     */
+    public synchronized boolean commitWindow(long minuteBucket, List<AggregatedResult> topResults,
+                                             List<AggregatedResult> filteredResults,
+                                             List<AggregatedResult> minuteCounts) {
+        if (minuteBucket <= lastCommittedWindow) {
+            return false;
+        }
+        for (AggregatedResult result : topResults) {
+            store(result);
+        }
+        storeTopN(minuteBucket, topResults);
+        for (AggregatedResult result : filteredResults) {
+            store(result);
+        }
+        storeMinuteCounts(minuteBucket, minuteCounts);
+        lastCommittedWindow = minuteBucket;
+        return true;
+    }
+
+    public synchronized long getLastCommittedWindow() {
+        return lastCommittedWindow;
+    }
+
+    /**
+     * Atomically replace a chunk of minutes (used by backfill). For each minute,
+     * old results whose filter_id the caller recomputed (null = unfiltered) are
+     * removed and subtracted from the rollups before the recomputed ones are
+     * written; rows for other filter_ids are left alone. Readers see all-old or all-new.
+     *
+     * minuteCountsByMinute (every ad's recomputed count) keeps the rest of the state
+     * in step within the same swap: minutes still open to late corrections get their
+     * full counts replaced, and sliding windows covering a replaced minute are
+     * corrected by the per-ad difference when the old counts are still known, or
+     * cleared otherwise (their coverage then restarts at the next committed minute).
+     */
+    public synchronized void replaceMinutes(Map<Long, List<AggregatedResult>> resultsByMinute,
+                                            Map<Long, List<AggregatedResult>> topNsByMinute,
+                                            Map<Long, List<AggregatedResult>> minuteCountsByMinute,
+                                            Predicate<String> recomputedFilterIds) {
+        for (Map.Entry<Long, List<AggregatedResult>> entry : resultsByMinute.entrySet()) {
+            long minute = entry.getKey();
+            Set<String> keys = keysByMinute.getOrDefault(minute, Collections.emptySet());
+            for (Iterator<String> it = keys.iterator(); it.hasNext(); ) {
+                String key = it.next();
+                AggregatedResult old = results.get(key);
+                if (!recomputedFilterIds.test(old.getFilterId())) continue;
+                results.remove(key);
+                seriesFor(old.getAdId(), old.getFilterId()).add(minute, -old.getCount());
+                it.remove();
+            }
+            for (AggregatedResult result : entry.getValue()) {
+                store(result);
+            }
+        }
+        for (Map.Entry<Long, List<AggregatedResult>> entry : topNsByMinute.entrySet()) {
+            storeTopN(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Long, List<AggregatedResult>> entry : minuteCountsByMinute.entrySet()) {
+            replaceMinuteCounts(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** Swap one minute's full counts into correctableCounts and the sliding windows. */
+    private void replaceMinuteCounts(long minute, List<AggregatedResult> recomputed) {
+        Map<String, Long> counts = new HashMap<>();
+        for (AggregatedResult r : recomputed) {
+            counts.merge(r.getAdId(), r.getCount(), Long::sum);
+        }
+        Map<String, Long> old = correctableCounts.get(minute);
+        if (old != null) {
+            correctableCounts.put(minute, counts);
+        }
+
+        List<AggregatedResult> deltas = null;
+        if (old != null) {
+            Map<String, Long> delta = new HashMap<>(counts);
+            old.forEach((ad, c) -> delta.merge(ad, -c, Long::sum));
+            deltas = new ArrayList<>(delta.size());
+            for (Map.Entry<String, Long> d : delta.entrySet()) {
+                if (d.getValue() != 0) deltas.add(new AggregatedResult(d.getKey(), minute, d.getValue()));
+            }
+        }
+        for (SlidingWindowTopN window : slidingWindows.values()) {
+            if (!window.covers(minute)) continue;
+            if (deltas != null) {
+                window.correct(minute, deltas);
+            } else {
+                window.clear();   // old counts unknown: no exact correction possible
+            }
+        }
+    }
+
+    public synchronized void storeTopN(long minuteBucket, List<AggregatedResult> topN) {
+        // Snapshot the rows: store() merges later deltas into the shared result objects,
+        // which would change a cached ranking's counts without re-sorting it
+        List<AggregatedResult> snapshot = new ArrayList<>(topN.size());
+        for (AggregatedResult r : topN) {
+            snapshot.add(new AggregatedResult(r.getAdId(), r.getMinuteBucket(), r.getCount(), r.getFilterId()));
+        }
+        topNByMinute.put(minuteBucket, snapshot);
+    }
+
+    /** Keep a committed minute's full per-ad counts so late events can re-rank it */
+    public synchronized void retainMinuteCounts(long minuteBucket, List<AggregatedResult> minuteCounts) {
+        Map<String, Long> counts = correctableCounts.computeIfAbsent(minuteBucket, k -> new HashMap<>());
+        for (AggregatedResult r : minuteCounts) {
+            counts.merge(r.getAdId(), r.getCount(), Long::sum);
+        }
+    }
+
+    /** Forget full counts of minutes before minuteExclusive (no late event can reach them any more) */
+    public synchronized void evictMinuteCountsBefore(long minuteExclusive) {
+        correctableCounts.headMap(minuteExclusive).clear();
+    }
+
+    /**
+     * Late correction for an already committed minute: add each ad's late delta
+     * and re-rank the minute's top N.
+     *
+     * While the minute's full counts are retained, the top N is recomputed from
+     * them and ads that move into it get a row with their full (on-time + late)
+     * count. Once they are evicted, only rows that were stored are corrected and
+     * the stored top N is re-sorted.
+     */
+    public synchronized void applyLateCounts(long minuteBucket, List<AggregatedResult> lateCounts, int n) {
+        Map<String, Long> full = correctableCounts.get(minuteBucket);
+        for (AggregatedResult late : lateCounts) {
+            if (full != null) {
+                full.merge(late.getAdId(), late.getCount(), Long::sum);
+            }
+            if (results.containsKey(buildKey(late))) {
+                store(late);
+            }
+        }
+
+        List<AggregatedResult> ranked = new ArrayList<>();
+        if (full != null) {
+            for (Map.Entry<String, Long> entry : full.entrySet()) {
+                ranked.add(new AggregatedResult(entry.getKey(), minuteBucket, entry.getValue()));
+            }
+        } else {
+            for (AggregatedResult r : topNByMinute.getOrDefault(minuteBucket, Collections.emptyList())) {
+                AggregatedResult current = results.get(buildKey(r));
+                ranked.add(current != null ? current : r);
+            }
+        }
+        ranked.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        List<AggregatedResult> top = ranked.subList(0, Math.min(n, ranked.size()));
+        for (AggregatedResult r : top) {
+            if (!results.containsKey(buildKey(r))) {
+                store(new AggregatedResult(r.getAdId(), minuteBucket, r.getCount()));
+            }
+        }
+        storeTopN(minuteBucket, top);
+        storeMinuteCounts(minuteBucket, lateCounts);
+    }
+
+    /** Feed one minute's per-ad counts into every sliding window (adds newest, expires oldest) */
+    public synchronized void storeMinuteCounts(long minuteBucket, List<AggregatedResult> minuteCounts) {
+        for (SlidingWindowTopN window : slidingWindows.values()) {
+            window.advance(minuteBucket, minuteCounts);
+        }
     }
 
-    public void storeTopN(long minuteBucket, List<AggregatedResult> topN) {
-        topNByMinute.put(minuteBucket, new ArrayList<>(topN));
+    public synchronized boolean hasSlidingWindows() {
+        return !slidingWindows.isEmpty();
     }
 
     /** Query: Get click count for ad_id in last M minutes */
-    public long getAggregatedCount(String adId, long startMinute, long endMinute) {
-        return results.values().stream()
-                .filter(r -> r.getAdId().equals(adId))
-                .filter(r -> r.getMinuteBucket() >= startMinute && r.getMinuteBucket() < endMinute)
-                .filter(r -> r.getFilterId() == null) // unfiltered only
-                .mapToLong(AggregatedResult::getCount)
-                .sum();
+    public synchronized long getAggregatedCount(String adId, long startMinute, long endMinute) {
+        TimeSeries series = seriesByAd.get(adId);
+        return series != null ? series.sum(startMinute, endMinute) : 0;
     }
 
     /** Query: Get click count with filter */
-    public long getFilteredCount(String adId, long startMinute, long endMinute, String filterId) {
-        return results.values().stream()
-                .filter(r -> r.getAdId().equals(adId))
-                .filter(r -> r.getMinuteBucket() >= startMinute && r.getMinuteBucket() < endMinute)
-                .filter(r -> filterId.equals(r.getFilterId()))
-                .mapToLong(AggregatedResult::getCount)
-                .sum();
+    public synchronized long getFilteredCount(String adId, long startMinute, long endMinute, String filterId) {
+        TimeSeries series = filteredSeriesByAd.getOrDefault(adId, Collections.emptyMap()).get(filterId);
+        return series != null ? series.sum(startMinute, endMinute) : 0;
     }
 
     /** Query: Get top N most clicked ads in a minute */
-    public List<AggregatedResult> getTopN(long minuteBucket, int n) {
+    public synchronized List<AggregatedResult> getTopN(long minuteBucket, int n) {
         List<AggregatedResult> topList = topNByMinute.getOrDefault(minuteBucket, Collections.emptyList());
         return topList.stream().limit(n).collect(Collectors.toList());
     }
 
+    /**
+     * Query: Top N most clicked ads over the last M minutes (M must be a configured window).
+     * Windows longer than SlidingWindowTopN.MAX_SLICES minutes expire in multi-minute
+     * blocks, so their edge is approximate; getSlidingWindowCoverage gives the minutes
+     * these totals actually cover. Each result's minute bucket is the window's end.
+     */
+    public synchronized List<AggregatedResult> getSlidingTopN(int windowMinutes, int n) {
+        return slidingWindow(windowMinutes).topN(n);
+    }
+
+    /** Minutes the sliding window of size M currently covers (see getSlidingTopN) */
+    public synchronized TimeWindow getSlidingWindowCoverage(int windowMinutes) {
+        return slidingWindow(windowMinutes).getWindow();
+    }
+
+    private SlidingWindowTopN slidingWindow(int windowMinutes) {
+        SlidingWindowTopN window = slidingWindows.get(windowMinutes);
+        if (window == null) {
+            throw new IllegalArgumentException("No sliding window configured for " + windowMinutes +
+                    " minutes, available: " + slidingWindows.keySet());
+        }
+        return window;
+    }
+
     /** Get all stored results (for debugging) */
-    public Collection<AggregatedResult> getAllResults() {
-        return results.values();
+    public synchronized Collection<AggregatedResult> getAllResults() {
+        return new ArrayList<>(results.values());
+    }
+
+    private TimeSeries seriesFor(String adId, String filterId) {
+        if (filterId == null) {
+            return seriesByAd.computeIfAbsent(adId, k -> new TimeSeries());
+        }
+        return filteredSeriesByAd.computeIfAbsent(adId, k -> new HashMap<>())
+                .computeIfAbsent(filterId, k -> new TimeSeries());
     }
 
     private String buildKey(AggregatedResult result) {
@@ -0,0 +1,273 @@
+package com.adclick.storage;
+
+import com.adclick.model.AggregatedResult;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Durable checkpoints for the aggregation service (like Flink's state backend).
+ *
+ * Append-only log file; each record is one full snapshot:
+ *
+ *   [length][crc32][committedOffset | watermark | open windows → partial aggregates | dedup ring
+ *                   | per-partition watermarks]
+ *
+ * - fsync batching: records are written immediately but fsync'd only every
+ *   `syncEvery` checkpoints (or on sync()), trading a little replay for throughput
+ * - Rotation: a sync writes the previous durable record + the newest one to a fresh
+ *   file, fsyncs it and renames it over the log, so the log never holds more than
+ *   `syncEvery` + 1 records and disk use / restart time stay flat however long the
+ *   service runs
+ * - Recovery reads forward and keeps the last record whose CRC matches, so a
+ *   torn write at the tail (crash mid-append) falls back to the previous checkpoint;
+ *   the torn bytes are truncated on open so new records append after valid ones.
+ *   Only that newest valid record is decoded.
+ */
+public class CheckpointStore implements Closeable {
+    private final Path file;
+    private final int syncEvery;
+    private final Path rotationFile;
+    private FileChannel channel;
+    private int unsynced = 0;
+    private byte[] lastRecord;      // newest appended record, not yet rotated into a durable log
+    private byte[] durableRecord;   // newest record of the current log's valid prefix: the fallback
+
+    public CheckpointStore(Path file, int syncEvery) {
+        this.file = file;
+        this.syncEvery = Math.max(1, syncEvery);
+        this.rotationFile = file.resolveSibling(file.getFileName() + ".rotate");
+        try {
+            Files.deleteIfExists(rotationFile);   // crash mid-rotation: the old log is still intact
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            byte[][] latest = new byte[1][];
+            long validLength = scan(latest);
+            durableRecord = latest[0] != null ? frame(latest[0]) : null;
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open checkpoint log " + file, e);
+        }
+    }
+
+    /** Append a checkpoint; fsync (and rotate) once every `syncEvery` appends. */
+    public void append(Checkpoint checkpoint) {
+        lastRecord = frame(checkpoint.encode());
+        if (++unsynced >= syncEvery) {
+            sync();   // the rotated log ends with this record; no need to append it first
+            return;
+        }
+        ByteBuffer record = ByteBuffer.wrap(lastRecord);
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append checkpoint", e);
+        }
+    }
+
+    /**
+     * Make the newest checkpoint durable: write it after the previous durable one
+     * to a new file, fsync, and atomically replace the log, dropping every older record.
+     */
+    public void sync() {
+        if (lastRecord == null) {
+            return;
+        }
+        try {
+            try (FileChannel out = FileChannel.open(rotationFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (byte[] bytes : durableRecord != null
+                        ? new byte[][]{durableRecord, lastRecord} : new byte[][]{lastRecord}) {
+                    ByteBuffer record = ByteBuffer.wrap(bytes);
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(false);
+            }
+            channel.close();
+            Files.move(rotationFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            durableRecord = lastRecord;
+            lastRecord = null;
+            unsynced = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync checkpoint log " + file, e);
+        }
+    }
+
+    /** Latest intact checkpoint in the log, or empty on a fresh start. */
+    public Optional<Checkpoint> loadLatest() {
+        byte[][] latest = new byte[1][];
+        try {
+            scan(latest);
+            return latest[0] != null ? Optional.of(Checkpoint.decode(latest[0])) : Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read checkpoint log " + file, e);
+        }
+    }
+
+    /** [length][crc32][payload] */
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(12 + payload.length)
+                .putInt(payload.length).putLong(crc.getValue()).put(payload).array();
+    }
+
+    /**
+     * Read records until EOF or the first torn/corrupt one, checking CRCs only.
+     * Returns the byte length of the valid prefix; stores the last good payload in latest[0].
+     */
+    private long scan(byte[][] latest) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                long expectedCrc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    expectedCrc = in.readLong();
+                    if (length < 0) break;
+                    payload = in.readNBytes(length);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (payload.length != length || crc.getValue() != expectedCrc) {
+                    break; // torn tail: everything before it is still valid
+                }
+                if (latest != null) {
+                    latest[0] = payload;
+                }
+                validLength += 12 + length;
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        return validLength;
+    }
+
+    @Override
+    public void close() {
+        try {
+            sync();
+            channel.close();
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Snapshot of the aggregation service's in-flight state. */
+    public static class Checkpoint {
+        private final long committedOffset;                             // last input offset reflected
+        private final long watermark;                                   // watermark minute
+        private final Map<Long, List<AggregatedResult>> openWindows;    // minute → partial aggregates
+        private final byte[] dedupState;                                // ClickDeduplicator ring, null if none
+        private final long[] partitionWatermarks;                       // per input partition, null if none
+
+        public Checkpoint(long committedOffset, long watermark, Map<Long, List<AggregatedResult>> openWindows) {
+            this(committedOffset, watermark, openWindows, null);
+        }
+
+        public Checkpoint(long committedOffset, long watermark, Map<Long, List<AggregatedResult>> openWindows,
+                          byte[] dedupState) {
+            this(committedOffset, watermark, openWindows, dedupState, null);
+        }
+
+        public Checkpoint(long committedOffset, long watermark, Map<Long, List<AggregatedResult>> openWindows,
+                          byte[] dedupState, long[] partitionWatermarks) {
+            this.committedOffset = committedOffset;
+            this.watermark = watermark;
+            this.openWindows = openWindows;
+            this.dedupState = dedupState;
+            this.partitionWatermarks = partitionWatermarks;
+        }
+
+        public long getCommittedOffset() { return committedOffset; }
+        public long getWatermark() { return watermark; }
+        public Map<Long, List<AggregatedResult>> getOpenWindows() { return openWindows; }
+        public Optional<byte[]> getDedupState() { return Optional.ofNullable(dedupState); }
+        public Optional<long[]> getPartitionWatermarks() { return Optional.ofNullable(partitionWatermarks); }
+
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeLong(committedOffset);
+                out.writeLong(watermark);
+                out.writeInt(openWindows.size());
+                for (Map.Entry<Long, List<AggregatedResult>> window : openWindows.entrySet()) {
+                    out.writeLong(window.getKey());
+                    out.writeInt(window.getValue().size());
+                    for (AggregatedResult row : window.getValue()) {
+                        out.writeUTF(row.getAdId());
+                        out.writeLong(row.getCount());
+                        out.writeUTF(row.getFilterId() != null ? row.getFilterId() : "");
+                    }
+                }
+                out.writeInt(dedupState != null ? dedupState.length : -1);
+                if (dedupState != null) out.write(dedupState);
+                out.writeInt(partitionWatermarks != null ? partitionWatermarks.length : -1);
+                if (partitionWatermarks != null) {
+                    for (long partitionWatermark : partitionWatermarks) out.writeLong(partitionWatermark);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        static Checkpoint decode(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long offset = in.readLong();
+            long watermark = in.readLong();
+            int windowCount = in.readInt();
+            Map<Long, List<AggregatedResult>> windows = new TreeMap<>();
+            for (int w = 0; w < windowCount; w++) {
+                long minute = in.readLong();
+                int rows = in.readInt();
+                List<AggregatedResult> results = new ArrayList<>(rows);
+                for (int r = 0; r < rows; r++) {
+                    String adId = in.readUTF();
+                    long count = in.readLong();
+                    String filterId = in.readUTF();
+                    results.add(new AggregatedResult(adId, minute, count, filterId.isEmpty() ? null : filterId));
+                }
+                windows.put(minute, results);
+            }
+            byte[] dedupState = null;
+            if (in.available() > 0) {   // Records written before dedup state was checkpointed end here
+                int length = in.readInt();
+                if (length >= 0) dedupState = in.readNBytes(length);
+            }
+            long[] partitionWatermarks = null;
+            if (in.available() > 0) {   // ...and records written before per-partition watermarks here
+                int partitions = in.readInt();
+                if (partitions >= 0) {
+                    partitionWatermarks = new long[partitions];
+                    for (int p = 0; p < partitions; p++) partitionWatermarks[p] = in.readLong();
+                }
+            }
+            return new Checkpoint(offset, watermark, windows, dedupState, partitionWatermarks);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Checkpoint{offset=%d, watermark=%d, openWindows=%s%s}",
+                    committedOffset, watermark, openWindows.keySet(),
+                    dedupState != null ? ", dedup=" + dedupState.length / 1024 + " KB" : "");
+        }
+    }
+}
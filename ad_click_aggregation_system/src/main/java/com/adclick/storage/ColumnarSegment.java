@@ -0,0 +1,302 @@
+package com.adclick.storage;
+
+import com.adclick.model.AdClickEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * One immutable, append-only segment file holding the raw events of ONE minute bucket.
+ *
+ * Layout (all columns dictionary- or delta-encoded, read via mmap):
+ *
+ *   ┌──────────────────────────────────────────────────────────────┐
+ *   │ magic | minuteBucket | eventCount                            │ header
+ *   │ dict[ad_id] | dict[country] | dict[device] | dict[format]    │ sparse index:
+ *   │ dict[user_id] | dict[ip]                                     │  ad dict → ad-id pruning
+ *   │ len[7]                                                       │ column lengths
+ *   ├──────────────────────────────────────────────────────────────┤
+ *   │ ad code (varint) | ts delta ms (varint) | country (byte)     │ columns
+ *   │ device (byte) | format (byte) | user code | ip code (varint) │
+ *   └──────────────────────────────────────────────────────────────┘
+ *
+ * A raw event (~0.1 KB as JSON) encodes to roughly 6-10 bytes of columns.
+ * Timestamps are stored as millisecond offsets from the start of the minute.
+ * country/device/format take one byte per row while their dictionary fits in
+ * 256 codes and widen to varints beyond that; readers tell the two apart by the
+ * column length (exactly one byte per row = byte-coded), so older files still read.
+ * Dictionary entries are written as (UTF-8 length + 1, bytes); length 0 is a
+ * null value, so null fields read back as null. Version-1 segments ("ACS1",
+ * plain lengths, no nulls) are still readable.
+ */
+class ColumnarSegment {
+    private static final int MAGIC = 0x41435332;    // "ACS2": dictionaries encode null
+    private static final int MAGIC_V1 = 0x41435331; // "ACS1": null stored as ""
+    private static final int COLUMNS = 7;
+    private static final int MAX_SMALL_DICT = 256; // country/device/format fit in one byte
+
+    private final Path path;
+    private final long minuteBucket;
+    private final int eventCount;
+    private final String[] adIds;   // kept in memory: the segment's ad-id index
+    private final boolean nullable; // dictionaries use the null-aware (v2) encoding
+    private final ByteBuffer mapped; // stays valid even after compaction deletes the file
+    private volatile SoftReference<Decoded> decoded = new SoftReference<>(null);
+
+    private ColumnarSegment(Path path, ByteBuffer mapped, long minuteBucket, int eventCount, String[] adIds,
+                            boolean nullable) {
+        this.path = path;
+        this.mapped = mapped;
+        this.minuteBucket = minuteBucket;
+        this.eventCount = eventCount;
+        this.adIds = adIds;
+        this.nullable = nullable;
+    }
+
+    long getMinuteBucket() { return minuteBucket; }
+    int getEventCount() { return eventCount; }
+    Path getPath() { return path; }
+
+    /** Sparse index check: can this segment contain the ad? */
+    boolean mayContainAd(String adId) {
+        return Arrays.binarySearch(adIds, adId) >= 0;
+    }
+
+    // ==================== Write ====================
+
+    /** Encode events (all from minuteBucket) into a new segment file. */
+    static ColumnarSegment write(Path path, long minuteBucket, List<AdClickEvent> events) {
+        Dictionary ads = new Dictionary(), countries = new Dictionary(), devices = new Dictionary(),
+                formats = new Dictionary(), users = new Dictionary(), ips = new Dictionary();
+        // Sorted ad dictionary so readers can binary-search it
+        events.stream().map(AdClickEvent::getAdId).sorted().forEach(ads::code);
+
+        ByteArrayOutputStream[] cols = new ByteArrayOutputStream[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) cols[c] = new ByteArrayOutputStream();
+
+        long minuteStartMillis = minuteBucket * 60_000;
+        int[][] smallCodes = new int[3][events.size()];   // country/device/format, width decided below
+        int row = 0;
+        for (AdClickEvent e : events) {
+            writeVarint(cols[0], ads.code(e.getAdId()));
+            writeVarint(cols[1], e.getClickTimestamp().toEpochMilli() - minuteStartMillis);
+            smallCodes[0][row] = countries.code(e.getCountry());
+            smallCodes[1][row] = devices.code(e.getDeviceType());
+            smallCodes[2][row] = formats.code(e.getAdFormat());
+            writeVarint(cols[5], users.code(e.getUserId()));
+            writeVarint(cols[6], ips.code(e.getIp()));
+            row++;
+        }
+        Dictionary[] smallDicts = {countries, devices, formats};
+        for (int c = 0; c < smallDicts.length; c++) {
+            boolean byteCoded = smallDicts[c].size() <= MAX_SMALL_DICT;
+            for (int code : smallCodes[c]) {
+                if (byteCoded) cols[2 + c].write(code);
+                else writeVarint(cols[2 + c], code);
+            }
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        writeInt(header, MAGIC);
+        writeVarint(header, minuteBucket);
+        writeVarint(header, events.size());
+        for (Dictionary dict : new Dictionary[]{ads, countries, devices, formats, users, ips}) {
+            dict.writeTo(header);
+        }
+        for (ByteArrayOutputStream col : cols) writeVarint(header, col.size());
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(header.toByteArray()));
+            for (ByteArrayOutputStream col : cols) ch.write(ByteBuffer.wrap(col.toByteArray()));
+            ch.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write segment " + path, e);
+        }
+        try {
+            // Publish only complete segments: readers never see a partial file
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to publish segment " + path, e);
+        }
+        return new ColumnarSegment(path, map(path), minuteBucket, events.size(), ads.values(), true);
+    }
+
+    // ==================== Read ====================
+
+    /** Open an existing segment, reading only its header + ad dictionary. */
+    static ColumnarSegment open(Path path) {
+        ByteBuffer buf = map(path);
+        int magic = buf.duplicate().getInt();
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            throw new IllegalStateException("Not a segment file: " + path);
+        }
+        boolean nullable = magic == MAGIC;
+        ByteBuffer header = buf.duplicate().position(4);
+        long minute = readVarint(header);
+        int count = (int) readVarint(header);
+        return new ColumnarSegment(path, buf, minute, count, readDictionary(header, nullable), nullable);
+    }
+
+    /** Decode every event (optionally only one ad) and hand it to the consumer. */
+    void scan(String adIdFilter, Consumer<AdClickEvent> consumer) {
+        if (adIdFilter != null && !mayContainAd(adIdFilter)) return;
+
+        Decoded d = decoded();
+        // One cursor per column; rows are decoded in lockstep
+        ByteBuffer[] cursors = new ByteBuffer[COLUMNS];
+        int offset = d.columnsStart;
+        for (int c = 0; c < COLUMNS; c++) {
+            cursors[c] = mapped.duplicate().position(offset).limit(offset + d.lengths[c]);
+            offset += d.lengths[c];
+        }
+        boolean[] byteCoded = new boolean[COLUMNS];
+        for (int c = 2; c <= 4; c++) byteCoded[c] = d.lengths[c] == eventCount;
+
+        int wantedCode = adIdFilter != null ? Arrays.binarySearch(d.ads, adIdFilter) : -1;
+        long minuteStartMillis = minuteBucket * 60_000;
+        for (int row = 0; row < eventCount; row++) {
+            int adCode = (int) readVarint(cursors[0]);
+            long tsDelta = readVarint(cursors[1]);
+            int country = readSmall(cursors[2], byteCoded[2]);
+            int device = readSmall(cursors[3], byteCoded[3]);
+            int format = readSmall(cursors[4], byteCoded[4]);
+            int user = (int) readVarint(cursors[5]);
+            int ip = (int) readVarint(cursors[6]);
+            if (wantedCode >= 0 && adCode != wantedCode) continue;
+
+            consumer.accept(new AdClickEvent(d.ads[adCode], Instant.ofEpochMilli(minuteStartMillis + tsDelta),
+                    d.users[user], d.ips[ip], d.countries[country], d.devices[device], d.formats[format]));
+        }
+    }
+
+    /** Dictionaries + column lengths, decoded once and kept until memory runs short. */
+    private Decoded decoded() {
+        Decoded d = decoded.get();
+        if (d == null) {
+            ByteBuffer buf = mapped.duplicate().position(4);
+            readVarint(buf);
+            readVarint(buf);
+            d = new Decoded(buf, nullable);
+            decoded = new SoftReference<>(d);
+        }
+        return d;
+    }
+
+    private static final class Decoded {
+        final String[] ads, countries, devices, formats, users, ips;
+        final int[] lengths = new int[COLUMNS];
+        final int columnsStart;
+
+        Decoded(ByteBuffer buf, boolean nullable) {
+            ads = readDictionary(buf, nullable);
+            countries = readDictionary(buf, nullable);
+            devices = readDictionary(buf, nullable);
+            formats = readDictionary(buf, nullable);
+            users = readDictionary(buf, nullable);
+            ips = readDictionary(buf, nullable);
+            for (int c = 0; c < COLUMNS; c++) lengths[c] = (int) readVarint(buf);
+            columnsStart = buf.position();
+        }
+    }
+
+    private static int readSmall(ByteBuffer cursor, boolean byteCoded) {
+        return byteCoded ? cursor.get() & 0xFF : (int) readVarint(cursor);
+    }
+
+    private static ByteBuffer map(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map segment " + path, e);
+        }
+    }
+
+    // ==================== Encoding helpers ====================
+
+    /** Insertion-ordered string dictionary: value → code (null is a value of its own) */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new LinkedHashMap<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        int size() {
+            return codes.size();
+        }
+
+        String[] values() {
+            return codes.keySet().toArray(new String[0]);
+        }
+
+        void writeTo(ByteArrayOutputStream out) {
+            writeVarint(out, codes.size());
+            for (String value : codes.keySet()) {
+                if (value == null) {
+                    writeVarint(out, 0);
+                    continue;
+                }
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length + 1);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer buf, boolean nullable) {
+        String[] values = new String[(int) readVarint(buf)];
+        for (int i = 0; i < values.length; i++) {
+            int length = (int) readVarint(buf);
+            if (nullable && length-- == 0) {
+                continue;   // values[i] stays null
+            }
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer buf) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -2,7 +2,9 @@ package com.adclick.storage;
 
 import com.adclick.model.AdClickEvent;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -11,37 +13,134 @@ import java.util.stream.Collectors;
  * - Data recalculation (if aggregation had a bug)
  * - Debugging and auditing
  * - Backup source of truth
+ *
+ * Two modes:
+ * - In-memory (default): every event kept on the heap, for the demo, indexed
+ *   by minute bucket so a minute or range read touches only its own events
+ * - Segment-backed: columnar, compressed, append-only files per minute bucket,
+ *   read via mmap with time-range and ad_id pruning (see SegmentStore)
+ *
+ * Batches written with their source (input) offset are idempotent per minute:
+ * a minute that already holds data from that offset or a later one skips it,
+ * so replaying offsets after a crash doesn't store their events twice.
+ *
+ * Thread-safe: live ingestion appends while backfill workers scan minutes. In
+ * segment mode writes don't take this store's lock; SegmentStore encodes and
+ * fsyncs each file outside its own catalog lock.
  */
 public class RawDataStore {
-    private final List<AdClickEvent> events = new ArrayList<>();
+    private final NavigableMap<Long, List<AdClickEvent>> eventsByMinute = new TreeMap<>();
+    private int eventCount = 0;
+    private final Map<Long, Long> storedThroughOffset = new HashMap<>();   // in-memory mode: minute → offset
+    private final SegmentStore segments;   // null = in-memory mode
 
+    public RawDataStore() {
+        this.segments = null;
+    }
+
+    /** Disk-backed store: raw events go to columnar segment files under the directory */
+    public RawDataStore(Path segmentDirectory) {
+        this.segments = new SegmentStore(segmentDirectory);
+    }
+
+    /** Single-event append; in segment mode prefer storeBatch (one segment per minute per call) */
     public void store(AdClickEvent event) {
-        events.add(event);
+        storeBatch(Collections.singletonList(event));
     }
 
     public void storeBatch(List<AdClickEvent> batch) {
-        events.addAll(batch);
+        storeBatch(-1, batch);
+    }
+
+    /**
+     * Append a batch read at input offset `sourceOffset` (-1 = unkeyed, always stored).
+     * Minutes already holding data from this offset or a later one are skipped.
+     */
+    public void storeBatch(long sourceOffset, List<AdClickEvent> batch) {
+        if (segments != null) {
+            segments.append(sourceOffset, batch);   // skips stored offsets itself
+            return;
+        }
+        synchronized (this) {
+            for (AdClickEvent event : batch) {
+                long minute = event.getMinuteBucket();
+                if (sourceOffset >= 0 && storedThroughOffset.getOrDefault(minute, -1L) >= sourceOffset) continue;
+                eventsByMinute.computeIfAbsent(minute, m -> new ArrayList<>()).add(event);
+                eventCount++;
+            }
+            if (sourceOffset >= 0) {
+                for (AdClickEvent event : batch) {
+                    storedThroughOffset.merge(event.getMinuteBucket(), sourceOffset, Math::max);
+                }
+            }
+        }
     }
 
     /** Retrieve events in a time range (used for recalculation) */
-    public List<AdClickEvent> getEventsByTimeRange(long startMinute, long endMinute) {
-        return events.stream()
-                .filter(e -> e.getMinuteBucket() >= startMinute && e.getMinuteBucket() < endMinute)
-                .collect(Collectors.toList());
+    public synchronized List<AdClickEvent> getEventsByTimeRange(long startMinute, long endMinute) {
+        if (segments != null) {
+            List<AdClickEvent> result = new ArrayList<>();
+            segments.scan(startMinute, endMinute, null, result::add);
+            return result;
+        }
+        List<AdClickEvent> result = new ArrayList<>();
+        if (startMinute < endMinute) {
+            eventsByMinute.subMap(startMinute, endMinute).values().forEach(result::addAll);
+        }
+        return result;
     }
 
     /** Retrieve events for a specific ad */
-    public List<AdClickEvent> getEventsByAdId(String adId) {
-        return events.stream()
+    public synchronized List<AdClickEvent> getEventsByAdId(String adId) {
+        if (segments != null) {
+            List<AdClickEvent> result = new ArrayList<>();
+            segments.scan(Long.MIN_VALUE, Long.MAX_VALUE, adId, result::add);
+            return result;
+        }
+        return eventsByMinute.values().stream()
+                .flatMap(List::stream)
                 .filter(e -> e.getAdId().equals(adId))
                 .collect(Collectors.toList());
     }
 
-    public int getTotalEvents() { return events.size(); }
+    /** Minute buckets in [startMinute, endMinute) that have raw data, in order */
+    public synchronized NavigableSet<Long> getMinuteBuckets(long startMinute, long endMinute) {
+        if (segments != null) {
+            return segments.minutes(startMinute, endMinute);
+        }
+        return startMinute < endMinute
+                ? new TreeSet<>(eventsByMinute.subMap(startMinute, endMinute).keySet())
+                : new TreeSet<>();
+    }
+
+    /** Stream one minute's raw events without materializing them (used for recalculation) */
+    public void scanMinute(long minuteBucket, Consumer<AdClickEvent> consumer) {
+        // Snapshot under the lock (one minute's segments or events), consume outside it
+        // so ingestion isn't blocked
+        List<ColumnarSegment> minuteSegments;
+        List<AdClickEvent> minuteEvents;
+        synchronized (this) {
+            if (segments != null) {
+                minuteSegments = segments.segmentsFor(minuteBucket);
+                minuteEvents = Collections.emptyList();
+            } else {
+                minuteSegments = Collections.emptyList();
+                minuteEvents = new ArrayList<>(eventsByMinute.getOrDefault(minuteBucket, Collections.emptyList()));
+            }
+        }
+        for (ColumnarSegment segment : minuteSegments) {
+            segment.scan(null, consumer);
+        }
+        minuteEvents.forEach(consumer);
+    }
+
+    public synchronized int getTotalEvents() {
+        return segments != null ? (int) segments.getTotalEvents() : eventCount;
+    }
 
-    /** Estimate storage: ~0.1 KB per event */
-    public String getStorageEstimate() {
-        double sizeKB = events.size() * 0.1;
+    /** Estimate storage: ~0.1 KB per event (actual file size in segment mode) */
+    public synchronized String getStorageEstimate() {
+        double sizeKB = segments != null ? segments.getDiskBytes() / 1024.0 : eventCount * 0.1;
         if (sizeKB > 1024 * 1024) return String.format("%.1f TB", sizeKB / 1024 / 1024);
         if (sizeKB > 1024) return String.format("%.1f GB", sizeKB / 1024);
         return String.format("%.1f KB", sizeKB);
@@ -0,0 +1,250 @@
+package com.adclick.storage;
+
+import com.adclick.model.AdClickEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Directory of append-only ColumnarSegment files, partitioned by minute bucket.
+ *
+ *   segments/
+ *     minute-1000-0.seg      ← first batch that contained minute 1000
+ *     minute-1000-1.seg      ← a later batch (late events) for minute 1000
+ *     minute-1001-0-42.seg   ← written from input offset 42 (see RawDataStore)
+ *     minute-1002-0_7-58.seg ← compaction of minute 1002's segments 0..7
+ *
+ * The in-memory catalog (minute → segments) prunes by time range; each
+ * segment's ad dictionary prunes by ad_id before any column is decoded.
+ * Existing segments are re-catalogued on startup, so raw data survives restarts.
+ *
+ * Compaction: once a minute holds more than MAX_SEGMENTS_PER_MINUTE files, they
+ * are merged into one covering their sequence range and the inputs deleted. A
+ * crash before the deletes leaves the inputs behind; on startup any segment whose
+ * range lies inside another's is superseded and removed, so nothing counts twice.
+ *
+ * Thread-safe: the catalog is guarded by this store's lock, but segment files are
+ * encoded, written and fsync'd outside it, so appends don't stall readers or each other.
+ */
+class SegmentStore {
+    static final int MAX_SEGMENTS_PER_MINUTE = 8;
+
+    private final Path directory;
+    private final NavigableMap<Long, List<Entry>> catalog = new TreeMap<>();
+    private final Map<Long, Integer> nextSeq = new HashMap<>();            // minute → next file sequence
+    private final Map<Long, Long> storedThroughOffset = new HashMap<>();   // minute → highest source offset
+    private final Set<Long> compacting = new HashSet<>();
+    private long totalEvents = 0;
+
+    SegmentStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            List<Entry> found = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(p -> p.getFileName().toString().endsWith(".seg"))
+                        .forEach(p -> found.add(Entry.parse(p)));
+            }
+            // Numeric (minute, sequence) order; widest ranges first so superseded inputs are spotted
+            found.sort(Comparator.comparingLong((Entry e) -> e.minute)
+                    .thenComparingInt(e -> e.lo).thenComparingInt(e -> -e.hi));
+            Entry cover = null;
+            for (Entry entry : found) {
+                if (cover != null && cover.minute == entry.minute && entry.hi <= cover.hi) {
+                    Files.delete(entry.path);   // left behind by a compaction that crashed before its deletes
+                    continue;
+                }
+                cover = entry;
+                entry.segment = ColumnarSegment.open(entry.path);
+                register(entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open segment directory " + directory, e);
+        }
+    }
+
+    /**
+     * Append a batch: one new segment file per minute bucket present in the batch,
+     * tagged with the batch's source offset (-1 = none) in the file name. Minutes
+     * already holding data from this offset or a later one are skipped.
+     */
+    void append(long sourceOffset, List<AdClickEvent> batch) {
+        Map<Long, List<AdClickEvent>> byMinute = new TreeMap<>();
+        for (AdClickEvent event : batch) {
+            byMinute.computeIfAbsent(event.getMinuteBucket(), k -> new ArrayList<>()).add(event);
+        }
+        for (Map.Entry<Long, List<AdClickEvent>> group : byMinute.entrySet()) {
+            long minute = group.getKey();
+            int seq;
+            synchronized (this) {
+                if (sourceOffset >= 0 && storedThrough(minute) >= sourceOffset) {
+                    continue;
+                }
+                seq = nextSeq.merge(minute, 1, Integer::sum) - 1;
+            }
+            Entry entry = new Entry(minute, seq, seq, sourceOffset);
+            entry.segment = ColumnarSegment.write(entry.path = entry.path(directory), minute, group.getValue());
+            List<Entry> toCompact;
+            synchronized (this) {
+                register(entry);
+                toCompact = claimCompaction(minute);
+            }
+            if (toCompact != null) {
+                compact(minute, toCompact);
+            }
+        }
+    }
+
+    /** Highest source offset written into the minute, -1 if none */
+    synchronized long storedThrough(long minuteBucket) {
+        return storedThroughOffset.getOrDefault(minuteBucket, -1L);
+    }
+
+    /** Minute buckets in [startMinute, endMinute) that have data. */
+    synchronized NavigableSet<Long> minutes(long startMinute, long endMinute) {
+        return new TreeSet<>(catalog.subMap(startMinute, true, endMinute, false).keySet());
+    }
+
+    /** Segments of one minute bucket (a snapshot, safe to scan while appends continue). */
+    synchronized List<ColumnarSegment> segmentsFor(long minuteBucket) {
+        List<ColumnarSegment> segments = new ArrayList<>();
+        for (Entry entry : catalog.getOrDefault(minuteBucket, Collections.emptyList())) {
+            segments.add(entry.segment);
+        }
+        return segments;
+    }
+
+    /** Stream every event in [startMinute, endMinute), minute by minute. */
+    void scan(long startMinute, long endMinute, String adIdFilter, Consumer<AdClickEvent> consumer) {
+        for (long minute : minutes(startMinute, endMinute)) {
+            for (ColumnarSegment segment : segmentsFor(minute)) {
+                segment.scan(adIdFilter, consumer);
+            }
+        }
+    }
+
+    synchronized long getTotalEvents() { return totalEvents; }
+
+    synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (List<Entry> entries : catalog.values()) {
+            for (Entry entry : entries) {
+                try {
+                    bytes += Files.size(entry.path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /** Segment files currently catalogued (after compaction) */
+    synchronized int getSegmentCount() {
+        int count = 0;
+        for (List<Entry> entries : catalog.values()) count += entries.size();
+        return count;
+    }
+
+    private void register(Entry entry) {
+        catalog.computeIfAbsent(entry.minute, k -> new ArrayList<>()).add(entry);
+        totalEvents += entry.segment.getEventCount();
+        nextSeq.merge(entry.minute, entry.hi + 1, Math::max);
+        if (entry.sourceOffset >= 0) {
+            storedThroughOffset.merge(entry.minute, entry.sourceOffset, Math::max);
+        }
+    }
+
+    /**
+     * Under the lock: the minute's segments to merge if it needs compacting and no one
+     * else is on it. Only a gap-free sequence run is taken, so the merged range never
+     * covers a sequence number whose file is still being written.
+     */
+    private List<Entry> claimCompaction(long minute) {
+        List<Entry> entries = catalog.get(minute);
+        if (entries.size() <= MAX_SEGMENTS_PER_MINUTE || compacting.contains(minute)) {
+            return null;
+        }
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingInt(e -> e.lo));
+        List<Entry> run = new ArrayList<>();
+        for (Entry entry : sorted) {
+            if (!run.isEmpty() && entry.lo != run.get(run.size() - 1).hi + 1) break;
+            run.add(entry);
+        }
+        if (run.size() < 2) {
+            return null;
+        }
+        compacting.add(minute);
+        return run;
+    }
+
+    /** Merge the minute's segments into one file covering their sequence range, then drop the inputs. */
+    private void compact(long minute, List<Entry> inputs) {
+        try {
+            List<AdClickEvent> events = new ArrayList<>();
+            int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+            long sourceOffset = -1;
+            for (Entry input : inputs) {
+                input.segment.scan(null, events::add);
+                lo = Math.min(lo, input.lo);
+                hi = Math.max(hi, input.hi);
+                sourceOffset = Math.max(sourceOffset, input.sourceOffset);
+            }
+            Entry merged = new Entry(minute, lo, hi, sourceOffset);
+            merged.segment = ColumnarSegment.write(merged.path = merged.path(directory), minute, events);
+
+            synchronized (this) {
+                List<Entry> entries = catalog.get(minute);
+                entries.removeAll(inputs);
+                entries.add(0, merged);
+                // Event total is unchanged: the merged segment holds exactly the inputs' events
+            }
+            for (Entry input : inputs) {
+                Files.deleteIfExists(input.path);   // snapshots being scanned keep their mapping
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact segments of minute " + minute, e);
+        } finally {
+            synchronized (this) {
+                compacting.remove(minute);
+            }
+        }
+    }
+
+    /** Catalog entry: a segment plus the sequence range and source offset from its file name */
+    private static final class Entry {
+        final long minute;
+        final int lo, hi;
+        final long sourceOffset;
+        Path path;
+        ColumnarSegment segment;
+
+        Entry(long minute, int lo, int hi, long sourceOffset) {
+            this.minute = minute;
+            this.lo = lo;
+            this.hi = hi;
+            this.sourceOffset = sourceOffset;
+        }
+
+        /** minute-<minute>-<seq | lo_hi>[-<sourceOffset>].seg */
+        Path path(Path directory) {
+            return directory.resolve("minute-" + minute + "-" + (lo == hi ? String.valueOf(lo) : lo + "_" + hi)
+                    + (sourceOffset >= 0 ? "-" + sourceOffset : "") + ".seg");
+        }
+
+        static Entry parse(Path path) {
+            String name = path.getFileName().toString();
+            String[] parts = name.substring(0, name.length() - ".seg".length()).split("-");
+            String[] range = parts[2].split("_");
+            Entry entry = new Entry(Long.parseLong(parts[1]), Integer.parseInt(range[0]),
+                    Integer.parseInt(range[range.length - 1]), parts.length > 3 ? Long.parseLong(parts[3]) : -1);
+            entry.path = path;
+            return entry;
+        }
+    }
+}
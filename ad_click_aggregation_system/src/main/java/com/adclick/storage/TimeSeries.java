@@ -0,0 +1,81 @@
+package com.adclick.storage;
+
+import java.util.*;
+
+/**
+ * Time-ordered click counts for one series (one ad_id, or one ad_id + filter).
+ *
+ * Three rollup tiers, each a NavigableMap keyed by bucket:
+ *   minute → hour (60 minutes) → day (24 hours)
+ *
+ * A range query [start, end) is split into partial minutes at both edges,
+ * partial hours at both edges, and whole days in the middle:
+ *
+ *   |--min--|------hours------|=========days=========|------hours------|--min--|
+ *
+ * so "last 30 days" touches ~30 day buckets + at most ~2×(24+60) edge buckets
+ * instead of 43,200 minute buckets. Each tier lookup is O(log n + range).
+ */
+class TimeSeries {
+    private static final long MINUTES_PER_HOUR = 60;
+    private static final long HOURS_PER_DAY = 24;
+
+    private final NavigableMap<Long, long[]> minutes = new TreeMap<>();
+    private final NavigableMap<Long, long[]> hours = new TreeMap<>();
+    private final NavigableMap<Long, long[]> days = new TreeMap<>();
+
+    /** Add delta clicks to a minute bucket and its hour/day rollups. */
+    void add(long minuteBucket, long delta) {
+        long hour = Math.floorDiv(minuteBucket, MINUTES_PER_HOUR);
+        long day = Math.floorDiv(hour, HOURS_PER_DAY);
+        minutes.computeIfAbsent(minuteBucket, k -> new long[1])[0] += delta;
+        hours.computeIfAbsent(hour, k -> new long[1])[0] += delta;
+        days.computeIfAbsent(day, k -> new long[1])[0] += delta;
+    }
+
+    /** Count stored for a single minute bucket. */
+    long get(long minuteBucket) {
+        long[] count = minutes.get(minuteBucket);
+        return count != null ? count[0] : 0;
+    }
+
+    /** Sum of clicks in minutes [startMinute, endMinute). */
+    long sum(long startMinute, long endMinute) {
+        if (startMinute >= endMinute) return 0;
+
+        long firstFullHour = ceilDiv(startMinute, MINUTES_PER_HOUR);
+        long endFullHour = Math.floorDiv(endMinute, MINUTES_PER_HOUR);
+        if (firstFullHour >= endFullHour) {
+            return rangeSum(minutes, startMinute, endMinute);
+        }
+
+        return rangeSum(minutes, startMinute, firstFullHour * MINUTES_PER_HOUR)
+                + sumHours(firstFullHour, endFullHour)
+                + rangeSum(minutes, endFullHour * MINUTES_PER_HOUR, endMinute);
+    }
+
+    private long sumHours(long startHour, long endHour) {
+        long firstFullDay = ceilDiv(startHour, HOURS_PER_DAY);
+        long endFullDay = Math.floorDiv(endHour, HOURS_PER_DAY);
+        if (firstFullDay >= endFullDay) {
+            return rangeSum(hours, startHour, endHour);
+        }
+
+        return rangeSum(hours, startHour, firstFullDay * HOURS_PER_DAY)
+                + rangeSum(days, firstFullDay, endFullDay)
+                + rangeSum(hours, endFullDay * HOURS_PER_DAY, endHour);
+    }
+
+    private static long rangeSum(NavigableMap<Long, long[]> tier, long from, long to) {
+        if (from >= to) return 0;
+        long total = 0;
+        for (long[] count : tier.subMap(from, true, to, false).values()) {
+            total += count[0];
+        }
+        return total;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
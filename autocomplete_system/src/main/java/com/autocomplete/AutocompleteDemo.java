@@ -7,6 +7,7 @@ import com.autocomplete.pipeline.*;
 import com.autocomplete.storage.*;
 import com.autocomplete.trie.*;
 import com.autocomplete.trie.TrieNode.Suggestion;
+import java.time.Duration;
 import java.util.*;
 
 /**
@@ -192,6 +193,11 @@ public class AutocompleteDemo {
         System.out.println("\n[Request 3: Different prefix]");
         AutocompleteResponse resp3 = apiService.getSuggestions("fi", "user123");
         
+        // Typo: no exact match, falls back to prefixes within one edit
+        System.out.println("\n[Request 4: Typo 'facbook' with typo tolerance on]");
+        trieCache.setTypoTolerance(Duration.ofMillis(1));
+        AutocompleteResponse resp4 = apiService.getSuggestions("facbook", "user789");
+        
         // Show cache stats
         System.out.println("\n--- CACHE STATISTICS ---");
         Map<String, Object> stats = apiService.getStats();
@@ -236,6 +242,52 @@ public class AutocompleteDemo {
         System.out.println("Simple sharding: 's' and 'z' same load per shard");
         System.out.println("Smart sharding: 's' gets dedicated shard (12% of queries)");
         System.out.println("               'u','v','w','x','y','z' share a shard (combined ~5%)");
+        
+        // Load-aware re-sharding: a trending topic makes 's' far hotter than planned
+        System.out.println("\n--- LOAD-AWARE RE-SHARDING (trending 's' queries) ---");
+        TrieDB trieDB = new TrieDB();
+        Trie trie = new Trie(5);
+        String[] queries = {"samsung", "super bowl", "spotify", "snapchat", "starbucks", "shein",
+                            "apple", "banana", "cat", "dog", "google", "twitter", "weather"};
+        for (int i = 0; i < queries.length; i++) {
+            trie.insert(queries[i], 100 - i);
+        }
+        trieDB.publish(trie);
+        for (int i = 0; i < 4; i++) {
+            smartManager.registerShard(i, new TrieCache(trieDB));
+        }
+        
+        String[] trending = {"sam", "sams", "sup", "super", "spo", "spot", "sna", "sta", "sh", "she"};
+        String[] background = {"ap", "ba", "ca", "do", "go", "tw", "we"};
+        for (int i = 0; i < 2000; i++) {
+            smartManager.getSuggestions(trending[i % trending.length]);
+            if (i % 4 == 0) {
+                smartManager.getSuggestions(background[i % background.length]);
+            }
+        }
+        
+        // rebalance() closes the measurement window, then re-splits if one shard runs hot
+        smartManager.rebalance();
+        for (int i = 0; i < 2000; i++) {
+            smartManager.getSuggestions(trending[i % trending.length]);
+            if (i % 4 == 0) {
+                smartManager.getSuggestions(background[i % background.length]);
+            }
+        }
+        smartManager.rebalance();  // Next period: balanced now, so nothing moves
+        printShardLoad(smartManager.getShardQps());
+        System.out.println(String.format("  'samsung' → Shard %d, 'super bowl' → Shard %d: %s",
+            smartManager.getShardId("samsung"), smartManager.getShardId("super bowl"),
+            smartManager.getSuggestions("sup")));
+    }
+    
+    private static void printShardLoad(double[] qps) {
+        double total = Arrays.stream(qps).sum();
+        StringBuilder sb = new StringBuilder("Shard load:");
+        for (int i = 0; i < qps.length; i++) {
+            sb.append(String.format("  %d=%.0f%%", i, total > 0 ? 100 * qps[i] / total : 0));
+        }
+        System.out.println(sb);
     }
 }
 
@@ -0,0 +1,132 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.pipeline.Aggregator;
+import com.autocomplete.pipeline.AnalyticsLog;
+import com.autocomplete.pipeline.AnalyticsLog.LogEntry;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * AggregatorBenchmark - Exact vs bounded-memory aggregation of a query log.
+ *
+ * The log has Zipf-distributed queries from many users over a few minutes,
+ * with some rapid retypes (same user, same query) for dedup to remove.
+ * Reports throughput, retained heap and how well the bounded mode's top-N
+ * matches the exact counts.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.AggregatorBenchmark
+ *      (optional args: events, default 3000000; consumer threads, default 4)
+ */
+public class AggregatorBenchmark {
+    
+    private static final int DISTINCT_QUERIES = 200_000;
+    private static final int USERS = 500_000;
+    private static final int TOP_N = 1_000;
+    private static final long SPAN_MILLIS = 10 * 60_000;
+    
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        int consumers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        List<LogEntry> log = generateLog(events);
+        System.out.println("=== Aggregator: " + events + " log entries, " + DISTINCT_QUERIES
+            + " distinct queries, top-" + TOP_N + " ===");
+        
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   // Aggregator logs every batch
+        Run exact = run(log, false, 1);
+        Run bounded = run(log, true, 1);
+        Run parallel = run(log, true, consumers);
+        System.setOut(out);
+        
+        System.out.println(String.format("  exact   (1 consumer):  %7.0f ms  %6.2f M events/s  retained %s",
+            exact.millis, events / exact.millis / 1e3, BenchmarkSupport.formatBytes(exact.retainedBytes)));
+        System.out.println(String.format("  bounded (1 consumer):  %7.0f ms  %6.2f M events/s  retained %s",
+            bounded.millis, events / bounded.millis / 1e3, BenchmarkSupport.formatBytes(bounded.retainedBytes)));
+        System.out.println(String.format("  bounded (%d consumers): %7.0f ms  %6.2f M events/s",
+            consumers, parallel.millis, events / parallel.millis / 1e3));
+        
+        // Accuracy of the bounded top-N against exact counts
+        Map<String, Integer> exactCounts = exact.aggregator.getAggregatedCounts();
+        Set<String> exactTop = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : exact.aggregator.getTopQueries(TOP_N)) {
+            exactTop.add(entry.getKey());
+        }
+        int found = 0;
+        double sumError = 0;
+        double maxError = 0;
+        for (Map.Entry<String, Integer> entry : bounded.aggregator.getAggregatedCounts().entrySet()) {
+            if (exactTop.contains(entry.getKey())) {
+                found++;
+            }
+            int truth = exactCounts.getOrDefault(entry.getKey(), 0);
+            double error = Math.abs(entry.getValue() - truth) / (double) Math.max(1, truth);
+            sumError += error;
+            maxError = Math.max(maxError, error);
+        }
+        System.out.println(String.format("  top-%d recall: %.1f%%, count error mean %.3f%% / max %.3f%%",
+            TOP_N, 100.0 * found / TOP_N, 100 * sumError / TOP_N, 100 * maxError));
+        System.out.println(String.format("  bounded structures: %s fixed (dedup filters + sketch + counters)",
+            BenchmarkSupport.formatBytes(bounded.aggregator.getBoundedMemoryBytes())));
+    }
+    
+    private static Run run(List<LogEntry> log, boolean bounded, int consumers) {
+        long base = BenchmarkSupport.usedHeapAfterGc();   // Before queueing: the queue is drained again
+        AnalyticsLog analyticsLog = new AnalyticsLog();
+        log.forEach(analyticsLog::append);
+        
+        Aggregator aggregator = bounded ? new Aggregator(analyticsLog, TOP_N) : new Aggregator(analyticsLog);
+        long start = System.nanoTime();
+        aggregator.drain(consumers);
+        double millis = (System.nanoTime() - start) / 1e6;
+        long retained = BenchmarkSupport.usedHeapAfterGc() - base;
+        return new Run(aggregator, millis, retained);
+    }
+    
+    /**
+     * Zipf(1) over the vocabulary; 10% of events are a retype of the user's previous query.
+     */
+    private static List<LogEntry> generateLog(int events) {
+        List<String> queries = new ArrayList<>(BenchmarkSupport.generateVocabulary(DISTINCT_QUERIES, 42).keySet());
+        double[] cumulative = new double[queries.size()];
+        double sum = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        
+        Random random = new Random(11);
+        String[] lastQuery = new String[USERS];
+        String[] userIds = new String[USERS];
+        for (int u = 0; u < USERS; u++) {
+            userIds[u] = "user" + u;
+        }
+        long startMillis = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        List<LogEntry> log = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            int user = random.nextInt(USERS);
+            String query = lastQuery[user];
+            if (query == null || random.nextInt(10) != 0) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                query = queries.get(Math.min(queries.size() - 1, rank < 0 ? -rank - 1 : rank));
+                lastQuery[user] = query;
+            }
+            long millis = startMillis + SPAN_MILLIS * i / events;
+            log.add(new LogEntry(query, userIds[user], Instant.ofEpochMilli(millis)));
+        }
+        return log;
+    }
+    
+    private static final class Run {
+        final Aggregator aggregator;
+        final double millis;
+        final long retainedBytes;
+        
+        Run(Aggregator aggregator, double millis, long retainedBytes) {
+            this.aggregator = aggregator;
+            this.millis = millis;
+            this.retainedBytes = retainedBytes;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.autocomplete.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Minimal benchmark harness (warmup + measured iterations) and query-log generator.
+ * 
+ * The project has no external dependencies, so instead of JMH the benchmarks
+ * are plain main() programs with JIT warmup, per-thread allocation tracking
+ * and GC-settled heap measurements.
+ */
+final class BenchmarkSupport {
+    
+    private static final String[] SYLLABLES = {
+        "be", "st", "buy", "ca", "fa", "ce", "bo", "ok", "go", "og", "le", "ma", "ps",
+        "in", "sta", "gram", "you", "tu", "we", "ath", "er", "ne", "ar", "me", "mo", "vie",
+        "new", "sy", "ork", "pi", "zza", "ti", "ck", "et", "fl", "ig", "ht", "ho", "tel", "sh"
+    };
+    
+    private BenchmarkSupport() {}
+    
+    /**
+     * Synthetic aggregated query counts: words built from shared syllables (so prefixes
+     * overlap like real queries) with a Zipf-like frequency skew.
+     */
+    static Map<String, Integer> generateVocabulary(int distinctQueries, long seed) {
+        Random random = new Random(seed);
+        Map<String, Integer> counts = new HashMap<>(distinctQueries * 2);
+        StringBuilder sb = new StringBuilder();
+        while (counts.size() < distinctQueries) {
+            sb.setLength(0);
+            int parts = 2 + random.nextInt(5);
+            for (int p = 0; p < parts; p++) {
+                sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            int rank = counts.size() + 1;
+            counts.putIfAbsent(sb.toString(), Math.max(1, 10_000_000 / rank));
+        }
+        return counts;
+    }
+    
+    /**
+     * Prefixes (1-8 chars) of random vocabulary words: what users type while searching.
+     */
+    static String[] samplePrefixes(Map<String, Integer> vocabulary, int count, long seed) {
+        Random random = new Random(seed);
+        List<String> words = new ArrayList<>(vocabulary.keySet());
+        String[] prefixes = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            prefixes[i] = word.substring(0, Math.min(word.length(), 1 + random.nextInt(8)));
+        }
+        return prefixes;
+    }
+    
+    /**
+     * Result of a measured run: average time and bytes allocated per operation.
+     */
+    static final class Measurement {
+        final double nanosPerOp;
+        final double bytesPerOp;
+        
+        Measurement(double nanosPerOp, double bytesPerOp) {
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%10.1f ns/op  %8.1f B/op", nanosPerOp, bytesPerOp);
+        }
+    }
+    
+    /**
+     * Run `task` (which performs `opsPerRun` operations) with warmup, then measure.
+     * Anything the task prints to stdout is discarded while running.
+     */
+    static Measurement measure(int warmupRuns, int runs, int opsPerRun, Runnable task) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmupRuns; i++) {
+                task.run();
+            }
+            
+            long allocBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                task.run();
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocBefore;
+            double ops = (double) runs * opsPerRun;
+            return new Measurement(elapsed / ops, allocated / ops);
+        } finally {
+            System.setOut(out);
+        }
+    }
+    
+    /**
+     * Value at percentile p (0-100) of an ascending-sorted sample array.
+     */
+    static long percentile(long[] sorted, int count, double p) {
+        if (count == 0) return 0;
+        int index = (int) Math.ceil(p / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+    
+    /**
+     * Heap in use after letting the GC settle (for retained-size comparisons).
+     */
+    static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+    
+    /**
+     * Bytes allocated by the current thread, or 0 if the JVM doesn't expose it.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+    
+    static String formatBytes(long bytes) {
+        if (bytes >= 1024 * 1024) return String.format("%.1f MB", bytes / 1024.0 / 1024.0);
+        if (bytes >= 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return bytes + " B";
+    }
+}
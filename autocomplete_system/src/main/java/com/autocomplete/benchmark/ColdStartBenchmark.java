@@ -0,0 +1,103 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.storage.TrieDB;
+import com.autocomplete.trie.Trie;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * ColdStartBenchmark - Time to first suggestion on a fresh node, and what it costs in heap.
+ *
+ *   rebuild: Trie.build(aggregated counts) → heap TrieDB.publish   (the old cold start)
+ *   mmap:    new TrieDB(directory) maps the published trie.dat      (persistent TrieDB)
+ *
+ * Then compares lookup latency of the heap map and the mapped file.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.ColdStartBenchmark
+ *      (optional arg: number of distinct queries, default 200000)
+ */
+public class ColdStartBenchmark {
+    
+    private static final int TOP_K = 5;
+    private static final int PREFIXES = 100_000;
+    
+    public static void main(String[] args) throws IOException {
+        int distinct = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Map<String, Integer> vocabulary = BenchmarkSupport.generateVocabulary(distinct, 42);
+        String[] prefixes = BenchmarkSupport.samplePrefixes(vocabulary, PREFIXES, 7);
+        Path directory = Files.createTempDirectory("triedb");
+        
+        try {
+            // Worker side: build and publish the file once
+            long start = System.nanoTime();
+            new TrieDB(directory).publish(Trie.build(vocabulary, TOP_K));
+            long writeNanos = System.nanoTime() - start;
+            long fileBytes = Files.size(directory.resolve("trie.dat"));
+            
+            // Cold start A: rebuild from aggregated counts into the heap store
+            long base = BenchmarkSupport.usedHeapAfterGc();
+            start = System.nanoTime();
+            TrieDB heapDB = new TrieDB();
+            heapDB.publish(Trie.build(vocabulary, TOP_K));
+            heapDB.getSuggestionsForPrefix(prefixes[0]);
+            long rebuildNanos = System.nanoTime() - start;
+            long heapBytes = BenchmarkSupport.usedHeapAfterGc() - base;
+            
+            // Cold start B: map the file
+            base = BenchmarkSupport.usedHeapAfterGc();
+            start = System.nanoTime();
+            TrieDB mappedDB = new TrieDB(directory);
+            mappedDB.getSuggestionsForPrefix(prefixes[0]);
+            long openNanos = System.nanoTime() - start;
+            long mappedBytes = BenchmarkSupport.usedHeapAfterGc() - base;
+            
+            // Same answers from both stores
+            for (String prefix : prefixes) {
+                if (!heapDB.getSuggestionsForPrefix(prefix).equals(mappedDB.getSuggestionsForPrefix(prefix))) {
+                    throw new IllegalStateException("Mismatch for '" + prefix + "'");
+                }
+            }
+            
+            long[] sink = new long[1];
+            BenchmarkSupport.Measurement heapQuery = BenchmarkSupport.measure(5, 20, prefixes.length, () -> {
+                for (String prefix : prefixes) {
+                    sink[0] += heapDB.getSuggestionsForPrefix(prefix).size();
+                }
+            });
+            BenchmarkSupport.Measurement mappedQuery = BenchmarkSupport.measure(5, 20, prefixes.length, () -> {
+                for (String prefix : prefixes) {
+                    sink[0] += mappedDB.getSuggestionsForPrefix(prefix).size();
+                }
+            });
+            
+            System.out.println("\n=== Cold start: " + distinct + " distinct queries, "
+                + mappedDB.getStats().get("totalPrefixes") + " prefixes, top-" + TOP_K + " ===");
+            System.out.println(String.format("  build + write trie.dat:     %8.0f ms  (%s on disk)",
+                writeNanos / 1e6, BenchmarkSupport.formatBytes(fileBytes)));
+            System.out.println(String.format("  rebuild → first suggestion: %8.0f ms  heap %s",
+                rebuildNanos / 1e6, BenchmarkSupport.formatBytes(heapBytes)));
+            System.out.println(String.format("  mmap → first suggestion:    %8.1f ms  heap %s",
+                openNanos / 1e6, BenchmarkSupport.formatBytes(mappedBytes)));
+            System.out.println("\n  Lookup latency (" + prefixes.length + " prefixes):");
+            System.out.println("    heap map      " + heapQuery);
+            System.out.println("    mapped file   " + mappedQuery);
+            System.out.println("  (checksum " + sink[0] + ")");
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    private static void deleteDirectory(Path directory) {
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
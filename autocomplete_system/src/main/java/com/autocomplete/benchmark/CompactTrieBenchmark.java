@@ -0,0 +1,88 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.trie.CompactTrie;
+import com.autocomplete.trie.Trie;
+import com.autocomplete.trie.TrieNode.Suggestion;
+import java.util.*;
+
+/**
+ * CompactTrieBenchmark - Retained heap and query latency: Trie vs CompactTrie.
+ * 
+ * Both tries are built from the same aggregated counts (query → frequency).
+ * Queries run over a fixed set of prefixes; CompactTrie is measured through
+ * both its List-returning API and its zero-allocation array API.
+ * 
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.CompactTrieBenchmark
+ *      (optional arg: number of distinct queries, default 200000)
+ */
+public class CompactTrieBenchmark {
+    
+    private static final int TOP_K = 5;
+    private static final int PREFIXES = 100_000;
+    
+    public static void main(String[] args) {
+        int distinct = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Map<String, Integer> vocabulary = BenchmarkSupport.generateVocabulary(distinct, 42);
+        String[] prefixes = BenchmarkSupport.samplePrefixes(vocabulary, PREFIXES, 7);
+        
+        System.out.println("=== Trie vs CompactTrie: " + distinct + " distinct queries, top-" + TOP_K + " ===");
+        
+        // Retained heap: measure each structure alone
+        long base = BenchmarkSupport.usedHeapAfterGc();
+        Trie trie = new Trie(TOP_K);
+        vocabulary.forEach(trie::insert);
+        long trieBytes = BenchmarkSupport.usedHeapAfterGc() - base;
+        
+        base = BenchmarkSupport.usedHeapAfterGc();
+        CompactTrie compact = CompactTrie.build(vocabulary, TOP_K);
+        long compactBytes = BenchmarkSupport.usedHeapAfterGc() - base;
+        
+        System.out.println(String.format("  Trie heap:        %12s", BenchmarkSupport.formatBytes(trieBytes)));
+        System.out.println(String.format("  CompactTrie heap: %12s  (%d nodes, arrays %s + word table)",
+            BenchmarkSupport.formatBytes(compactBytes), compact.getNodeCount(),
+            BenchmarkSupport.formatBytes(compact.getStructureBytes())));
+        System.out.println(String.format("  Reduction:        %11.1fx", (double) trieBytes / compactBytes));
+        
+        // Same suggestions (compared by frequency; equal-frequency ties may order differently)
+        for (String prefix : prefixes) {
+            List<Integer> expected = frequencies(trie.getAutocompleteSuggestions(prefix));
+            List<Integer> actual = frequencies(compact.getAutocompleteSuggestions(prefix));
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Mismatch for '" + prefix + "': " + expected + " vs " + actual);
+            }
+        }
+        
+        // Latency + allocation per query
+        long[] sink = new long[1];
+        Suggestion[] out = new Suggestion[TOP_K];
+        BenchmarkSupport.Measurement trieQuery = BenchmarkSupport.measure(5, 20, prefixes.length, () -> {
+            for (String prefix : prefixes) {
+                sink[0] += trie.getAutocompleteSuggestions(prefix).size();
+            }
+        });
+        BenchmarkSupport.Measurement compactList = BenchmarkSupport.measure(5, 20, prefixes.length, () -> {
+            for (String prefix : prefixes) {
+                sink[0] += compact.getAutocompleteSuggestions(prefix).size();
+            }
+        });
+        BenchmarkSupport.Measurement compactArray = BenchmarkSupport.measure(5, 20, prefixes.length, () -> {
+            for (String prefix : prefixes) {
+                sink[0] += compact.getAutocompleteSuggestions(prefix, out);
+            }
+        });
+        
+        System.out.println("\n  Query latency (" + prefixes.length + " prefixes):");
+        System.out.println("    Trie                         " + trieQuery);
+        System.out.println("    CompactTrie (List API)       " + compactList);
+        System.out.println("    CompactTrie (array API)      " + compactArray);
+        System.out.println("  (checksum " + sink[0] + ")");
+    }
+    
+    private static List<Integer> frequencies(List<Suggestion> suggestions) {
+        List<Integer> result = new ArrayList<>();
+        for (Suggestion s : suggestions) {
+            result.add(s.getFrequency());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,159 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.trie.Trie;
+import com.autocomplete.trie.TrieNode.Suggestion;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * FuzzyLookupBenchmark - Cost of typo-tolerant lookup vs exact prefix lookup.
+ *
+ * Typed prefixes (3-8 chars) get one random typo: substitution, deletion,
+ * insertion or adjacent swap. For each mode reports per-lookup latency,
+ * trie nodes visited, and recall: how often the intended prefix's top
+ * suggestion is among the results. Fuzzy modes run on the typos with no
+ * exact match, the case where TrieCache falls back to them.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.FuzzyLookupBenchmark
+ *      (optional arg: number of distinct queries, default 200000)
+ */
+public class FuzzyLookupBenchmark {
+    
+    private static final int TOP_K = 5;
+    private static final int LOOKUPS = 20_000;
+    private static final long UNBOUNDED = 1_000_000_000L;
+    private static final long TIGHT_BUDGET = 50_000;   // 50 µs
+    
+    public static void main(String[] args) {
+        int distinct = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Map<String, Integer> vocabulary = BenchmarkSupport.generateVocabulary(distinct, 42);
+        Trie trie = Trie.build(vocabulary, TOP_K);
+        
+        Random random = new Random(7);
+        List<String> words = new ArrayList<>(vocabulary.keySet());
+        String[] intended = new String[LOOKUPS];
+        String[] typed = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            intended[i] = word.substring(0, Math.min(word.length(), 3 + random.nextInt(6)));
+            typed[i] = addTypo(intended[i], random);
+        }
+        
+        // The cache only falls back to fuzzy lookup when the typed prefix has no exact match
+        List<String> missTyped = new ArrayList<>();
+        List<String> missIntended = new ArrayList<>();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (trie.getAutocompleteSuggestions(typed[i]).isEmpty()) {
+                missTyped.add(typed[i]);
+                missIntended.add(intended[i]);
+            }
+        }
+        String[] fallback = missTyped.toArray(new String[0]);
+        String[] fallbackIntended = missIntended.toArray(new String[0]);
+        
+        System.out.println("=== Fuzzy lookup: " + distinct + " distinct queries, " + LOOKUPS
+            + " prefixes, top-" + TOP_K + " ===");
+        report("exact, intended prefix ", trie, intended, intended, trie::getAutocompleteSuggestions, null);
+        report("exact, typo            ", trie, typed, intended, trie::getAutocompleteSuggestions, null);
+        
+        int[] counters = new int[2];   // nodes visited, lookups cut short by the budget
+        Function<Trie.FuzzyResult, List<Suggestion>> unwrap = result -> {
+            counters[0] += result.getNodesVisited();
+            counters[1] += result.isComplete() ? 0 : 1;
+            return result.getSuggestions();
+        };
+        report("fuzzy auto, intended   ", trie, intended, intended,
+            p -> unwrap.apply(trie.getFuzzySuggestions(p, Trie.autoMaxEdits(p.length()), UNBOUNDED)), counters);
+        
+        System.out.println(String.format("\n  %d typos (%.1f%%) have no exact match; fuzzy fallback on those:",
+            fallback.length, 100.0 * fallback.length / LOOKUPS));
+        report("fuzzy 1 edit           ", trie, fallback, fallbackIntended,
+            p -> unwrap.apply(trie.getFuzzySuggestions(p, 1, UNBOUNDED)), counters);
+        report("fuzzy 2 edits          ", trie, fallback, fallbackIntended,
+            p -> unwrap.apply(trie.getFuzzySuggestions(p, 2, UNBOUNDED)), counters);
+        report("fuzzy auto             ", trie, fallback, fallbackIntended,
+            p -> unwrap.apply(trie.getFuzzySuggestions(p, Trie.autoMaxEdits(p.length()), UNBOUNDED)), counters);
+        report("fuzzy auto, 50µs budget", trie, fallback, fallbackIntended,
+            p -> unwrap.apply(trie.getFuzzySuggestions(p, Trie.autoMaxEdits(p.length()), TIGHT_BUDGET)), counters);
+    }
+    
+    /**
+     * Time each lookup (after a warmup pass) and check that the intended
+     * prefix's top suggestion came back.
+     */
+    private static void report(String label, Trie trie, String[] queries, String[] intended,
+                               Function<String, List<Suggestion>> lookup, int[] counters) {
+        for (String query : queries) {
+            lookup.apply(query);
+        }
+        if (counters != null) {
+            Arrays.fill(counters, 0);
+        }
+        
+        long[] nanos = new long[queries.length];
+        int found = 0;
+        int expected = 0;
+        for (int i = 0; i < queries.length; i++) {
+            long start = System.nanoTime();
+            List<Suggestion> result = lookup.apply(queries[i]);
+            nanos[i] = System.nanoTime() - start;
+            
+            List<Suggestion> truth = trie.getAutocompleteSuggestions(intended[i]);
+            if (!truth.isEmpty()) {
+                expected++;
+                String target = truth.get(0).getWord();
+                for (Suggestion suggestion : result) {
+                    if (suggestion.getWord().equals(target)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        Arrays.sort(nanos);
+        
+        String extra = "";
+        if (counters != null) {
+            extra = String.format("  nodes %5.0f  cut short %4.1f%%",
+                (double) counters[0] / queries.length, 100.0 * counters[1] / queries.length);
+        }
+        System.out.println(String.format("  %s  p50 %7.2f µs  p99 %8.2f µs  recall %5.1f%%%s",
+            label,
+            BenchmarkSupport.percentile(nanos, nanos.length, 50) / 1000.0,
+            BenchmarkSupport.percentile(nanos, nanos.length, 99) / 1000.0,
+            100.0 * found / Math.max(1, expected),
+            extra));
+    }
+    
+    /**
+     * One random edit: substitution, deletion, insertion or adjacent swap.
+     */
+    private static String addTypo(String prefix, Random random) {
+        StringBuilder sb = new StringBuilder(prefix);
+        int pos = 1 + random.nextInt(prefix.length() - 1);   // First letter is rarely mistyped
+        char letter = (char) ('a' + random.nextInt(26));
+        switch (random.nextInt(4)) {
+            case 0:
+                sb.setCharAt(pos, letter == sb.charAt(pos) ? (char) ('a' + (letter - 'a' + 1) % 26) : letter);
+                break;
+            case 1:
+                sb.deleteCharAt(pos);
+                break;
+            case 2:
+                sb.insert(pos, letter);
+                break;
+            default:
+                if (pos == prefix.length() - 1) {
+                    pos--;
+                }
+                if (pos > 0 && sb.charAt(pos) != sb.charAt(pos + 1)) {
+                    char c = sb.charAt(pos);
+                    sb.setCharAt(pos, sb.charAt(pos + 1));
+                    sb.setCharAt(pos + 1, c);
+                } else {
+                    sb.deleteCharAt(pos);
+                }
+        }
+        return sb.toString();
+    }
+}
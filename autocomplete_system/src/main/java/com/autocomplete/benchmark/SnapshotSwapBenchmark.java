@@ -0,0 +1,131 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.pipeline.AnalyticsLog;
+import com.autocomplete.pipeline.Aggregator;
+import com.autocomplete.pipeline.TrieWorker;
+import com.autocomplete.storage.TrieDB;
+import com.autocomplete.trie.Trie;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SnapshotSwapBenchmark - Reader latency while the trie is being rebuilt.
+ * 
+ * Reader threads query TrieDB continuously and record per-query latency.
+ * Phase 1 measures a quiet system; phase 2 runs the TrieWorker doing
+ * copy-on-write incremental updates (path-copy updated words → publish) back to back.
+ * 
+ * Every sampled prefix exists in every version, so an empty result or an
+ * exception means a reader saw a torn / half-built state.
+ * 
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.SnapshotSwapBenchmark
+ */
+public class SnapshotSwapBenchmark {
+    
+    private static final int VOCABULARY = 50_000;
+    private static final int READERS = 3;
+    private static final long PHASE_MILLIS = 3_000;
+    private static final int MAX_SAMPLES_PER_READER = 2_000_000;
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, Integer> vocabulary = BenchmarkSupport.generateVocabulary(VOCABULARY, 42);
+        String[] prefixes = BenchmarkSupport.samplePrefixes(vocabulary, 50_000, 7);
+        List<String> words = new ArrayList<>(vocabulary.keySet());
+        
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   // services log every call
+        
+        TrieDB trieDB = new TrieDB();
+        Trie initial = new Trie(5);
+        vocabulary.forEach(initial::insert);
+        trieDB.publish(initial);
+        TrieWorker worker = new TrieWorker(new Aggregator(new AnalyticsLog()), trieDB, 5);
+        
+        out.println("=== Reader latency during copy-on-write rebuilds ===");
+        out.println(String.format("  %d words, %d reader threads, %d ms per phase, %d CPUs",
+            VOCABULARY, READERS, PHASE_MILLIS, Runtime.getRuntime().availableProcessors()));
+        
+        out.println("  quiet:        " + runPhase(trieDB, prefixes, null));
+        
+        AtomicLong published = new AtomicLong();
+        Runnable rebuild = () -> {
+            Random random = new Random(published.get());
+            Map<String, Integer> updates = new HashMap<>();
+            for (int i = 0; i < 1_000; i++) {
+                updates.put(words.get(random.nextInt(words.size())), random.nextInt(20_000_000));
+            }
+            worker.incrementalUpdate(updates);
+            published.incrementAndGet();
+        };
+        out.println("  rebuilding:   " + runPhase(trieDB, prefixes, rebuild));
+        out.println(String.format("  snapshots published during phase 2: %d (final version %d)",
+            published.get(), trieDB.getVersion()));
+        
+        System.setOut(out);
+    }
+    
+    /**
+     * Run readers for one phase, optionally with a writer looping `writerTask`.
+     */
+    private static String runPhase(TrieDB trieDB, String[] prefixes, Runnable writerTask) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(READERS + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong anomalies = new AtomicLong();
+        List<Future<long[]>> readers = new ArrayList<>();
+        
+        for (int r = 0; r < READERS; r++) {
+            final int offset = r * 997;
+            readers.add(pool.submit(() -> {
+                long[] samples = new long[MAX_SAMPLES_PER_READER];
+                int count = 0;
+                for (int i = offset; running.get() && count < samples.length; i++) {
+                    String prefix = prefixes[i % prefixes.length];
+                    long start = System.nanoTime();
+                    try {
+                        if (trieDB.getSuggestionsForPrefix(prefix).isEmpty()) {
+                            anomalies.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        anomalies.incrementAndGet();
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                long[] result = Arrays.copyOf(samples, count);
+                Arrays.sort(result);
+                return result;
+            }));
+        }
+        if (writerTask != null) {
+            pool.submit(() -> {
+                while (running.get()) {
+                    writerTask.run();
+                }
+            });
+        }
+        
+        Thread.sleep(PHASE_MILLIS);
+        running.set(false);
+        
+        long[] all = new long[0];
+        for (Future<long[]> reader : readers) {
+            long[] samples = reader.get();
+            long[] merged = Arrays.copyOf(all, all.length + samples.length);
+            System.arraycopy(samples, 0, merged, all.length, samples.length);
+            all = merged;
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        Arrays.sort(all);
+        
+        return String.format("%,10d queries  p50=%6.1f µs  p99=%7.1f µs  p99.9=%8.1f µs  anomalies=%d",
+            all.length,
+            BenchmarkSupport.percentile(all, all.length, 50) / 1000.0,
+            BenchmarkSupport.percentile(all, all.length, 99) / 1000.0,
+            BenchmarkSupport.percentile(all, all.length, 99.9) / 1000.0,
+            anomalies.get());
+    }
+}
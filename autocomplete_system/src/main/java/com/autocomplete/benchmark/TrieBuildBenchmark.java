@@ -0,0 +1,119 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.trie.Trie;
+import com.autocomplete.trie.TrieNode;
+import com.autocomplete.trie.TrieNode.Suggestion;
+import java.util.*;
+
+/**
+ * TrieBuildBenchmark - Weekly rebuild time: per-insert re-sort vs bottom-up bulk build.
+ * 
+ *   legacy:  insert each word, updateTopKCache (scan + append + sort + copy) on every ancestor
+ *   insert:  insert each word, leaf → root top-k propagation with early stop
+ *   bulk:    Trie.build() — one post-order merge pass
+ * 
+ * Also times a burst of incremental frequency updates (increases and decreases) and
+ * checks that every prefix's top-k matches a fresh bulk build of the final counts.
+ * 
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.TrieBuildBenchmark
+ *      (optional arg: number of distinct queries, default 1000000;
+ *       a large young generation keeps GC pauses out of the timings, e.g. -Xmx4g -Xmn1g)
+ */
+public class TrieBuildBenchmark {
+    
+    private static final int TOP_K = 5;
+    private static final int UPDATES = 100_000;
+    
+    public static void main(String[] args) {
+        int distinct = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Map<String, Integer> counts = BenchmarkSupport.generateVocabulary(distinct, 42);
+        System.out.println("=== Trie build: " + distinct + " distinct queries, top-" + TOP_K + " ===");
+        
+        long start = System.nanoTime();
+        Trie legacy = legacyBuild(counts);
+        long legacyNanos = System.nanoTime() - start;
+        legacy = null;
+        BenchmarkSupport.usedHeapAfterGc();
+        
+        start = System.nanoTime();
+        Trie bulk = Trie.build(counts, TOP_K);
+        long bulkNanos = System.nanoTime() - start;
+        BenchmarkSupport.usedHeapAfterGc();
+        
+        start = System.nanoTime();
+        Trie inserted = new Trie(TOP_K);
+        counts.forEach(inserted::insert);
+        long insertNanos = System.nanoTime() - start;
+        
+        System.out.println(String.format("  legacy insert (re-sort path): %8.0f ms", legacyNanos / 1e6));
+        System.out.println(String.format("  insert (early-stop):          %8.0f ms", insertNanos / 1e6));
+        System.out.println(String.format("  bulk build (post-order):      %8.0f ms  (%.1fx vs legacy)",
+            bulkNanos / 1e6, (double) legacyNanos / bulkNanos));
+        
+        // Incremental updates on the bulk-built trie: random increases and decreases
+        Random random = new Random(3);
+        List<String> words = new ArrayList<>(counts.keySet());
+        Map<String, Integer> finalCounts = new HashMap<>(counts);
+        start = System.nanoTime();
+        for (int i = 0; i < UPDATES; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            int frequency = random.nextInt(10_000_000);
+            bulk.updateFrequency(word, frequency);
+            inserted.updateFrequency(word, frequency);
+            finalCounts.put(word, frequency);
+        }
+        long updateNanos = System.nanoTime() - start;
+        System.out.println(String.format("  %d updateFrequency calls × 2 tries: %.0f ms (%.2f µs each)",
+            UPDATES, updateNanos / 1e6, updateNanos / 1e3 / (2.0 * UPDATES)));
+        
+        // Both incrementally maintained tries must equal a fresh build of the final counts
+        Trie expected = Trie.build(finalCounts, TOP_K);
+        int checked = compare(expected.getRoot(), bulk.getRoot(), new StringBuilder())
+            + compare(expected.getRoot(), inserted.getRoot(), new StringBuilder());
+        System.out.println("  verified top-k of " + checked + " prefixes against a fresh build");
+    }
+    
+    /**
+     * The pre-bulk-build algorithm: updateTopKCache on every node of every inserted path.
+     */
+    private static Trie legacyBuild(Map<String, Integer> counts) {
+        Trie trie = new Trie(TOP_K);
+        List<TrieNode> path = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String word = entry.getKey();
+            TrieNode current = trie.getRoot();
+            path.clear();
+            path.add(current);
+            for (char c : word.toCharArray()) {
+                current = current.addChild(c);
+                path.add(current);
+            }
+            current.setEndOfWord(true, word);
+            current.setFrequency(entry.getValue());
+            Suggestion suggestion = new Suggestion(word, entry.getValue());
+            for (TrieNode node : path) {
+                node.updateTopKCache(suggestion, TOP_K);
+            }
+        }
+        return trie;
+    }
+    
+    private static int compare(TrieNode expected, TrieNode actual, StringBuilder prefix) {
+        List<Suggestion> a = expected.getTopKCache(), b = actual.getTopKCache();
+        boolean same = a.size() == b.size();
+        for (int i = 0; same && i < a.size(); i++) {
+            same = a.get(i).getWord().equals(b.get(i).getWord())
+                && a.get(i).getFrequency() == b.get(i).getFrequency();
+        }
+        if (!same) {
+            throw new IllegalStateException("Mismatch at '" + prefix + "': " + a + " vs " + b);
+        }
+        int checked = 1;
+        for (Map.Entry<Character, TrieNode> child : expected.getChildren().entrySet()) {
+            prefix.append(child.getKey());
+            checked += compare(child.getValue(), actual.getChildren().get(child.getKey()), prefix);
+            prefix.setLength(prefix.length() - 1);
+        }
+        return checked;
+    }
+}
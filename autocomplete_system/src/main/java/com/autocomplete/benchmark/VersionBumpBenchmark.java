@@ -0,0 +1,149 @@
+package com.autocomplete.benchmark;
+
+import com.autocomplete.cache.TrieCache;
+import com.autocomplete.storage.TrieDB;
+import com.autocomplete.trie.Trie;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * VersionBumpBenchmark - The miss storm after a new trie version, hard vs soft invalidation.
+ *
+ * Reader threads replay typing sessions (one request per keystroke, popular
+ * words more often) against a TrieCache whose TrieDB answers after a simulated
+ * remote round trip. Once the cache is warm a new version is published; the
+ * benchmark reports DB round trips and request latency in the window after it.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.autocomplete.benchmark.VersionBumpBenchmark
+ */
+public class VersionBumpBenchmark {
+    
+    private static final int VOCABULARY = 100_000;
+    private static final int READERS = 8;
+    private static final long ROUND_TRIP_NANOS = 200_000;   // Remote store fetch
+    private static final long WARM_MILLIS = 3_000;
+    private static final long WINDOW_MILLIS = 500;
+    private static final int MAX_SAMPLES_PER_READER = 2_000_000;
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, Integer> vocabulary = BenchmarkSupport.generateVocabulary(VOCABULARY, 42);
+        List<String> words = new ArrayList<>(vocabulary.keySet());
+        words.sort((a, b) -> Integer.compare(vocabulary.get(b), vocabulary.get(a)));
+        Trie trie = Trie.build(vocabulary, 5);
+        
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   // cache and DB log version changes
+        
+        out.println("=== Version bump: " + READERS + " readers, " + ROUND_TRIP_NANOS / 1000
+            + " µs DB round trip, " + WINDOW_MILLIS + " ms window after publish, "
+            + Runtime.getRuntime().availableProcessors() + " CPUs ===");
+        out.println("  no publish:      " + run(trie, words, false, false));
+        out.println("  hard invalidate: " + run(trie, words, false, true));
+        out.println("  soft invalidate: " + run(trie, words, true, true));
+        
+        System.setOut(out);
+    }
+    
+    private static String run(Trie trie, List<String> words, boolean soft, boolean publish) throws Exception {
+        RemoteTrieDB trieDB = new RemoteTrieDB();
+        trieDB.publish(trie);
+        TrieCache cache = new TrieCache(trieDB);
+        cache.setSoftInvalidation(soft);
+        
+        ExecutorService pool = Executors.newFixedThreadPool(READERS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<long[][]>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            final long seed = r;
+            readers.add(pool.submit(() -> replaySessions(cache, words, new Random(seed), running)));
+        }
+        
+        Thread.sleep(WARM_MILLIS);
+        long roundTripsBefore = trieDB.roundTrips.sum();
+        Map<String, Object> before = cache.getStats();
+        if (publish) {
+            trieDB.publish(trie);   // Same data, new version
+        }
+        long bumpNanos = System.nanoTime();
+        Thread.sleep(WINDOW_MILLIS);
+        long roundTrips = trieDB.roundTrips.sum() - roundTripsBefore;
+        Map<String, Object> after = cache.getStats();
+        running.set(false);
+        
+        // Latencies of requests that started inside the window
+        long[] window = new long[0];
+        for (Future<long[][]> reader : readers) {
+            long[][] samples = reader.get();
+            long[] selected = new long[samples[0].length];
+            int n = 0;
+            for (int i = 0; i < samples[0].length; i++) {
+                long started = samples[0][i];
+                if (started >= bumpNanos && started < bumpNanos + WINDOW_MILLIS * 1_000_000) {
+                    selected[n++] = samples[1][i];
+                }
+            }
+            long[] merged = Arrays.copyOf(window, window.length + n);
+            System.arraycopy(selected, 0, merged, window.length, n);
+            window = merged;
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        cache.shutdown();
+        Arrays.sort(window);
+        
+        return String.format("%,8d requests  p50=%5.1f µs  p99=%6.1f µs  DB reads=%,6d  "
+                + "coalesced=%,d  fromParent=%,d  staleHits=%,d  refreshed=%,d",
+            window.length,
+            BenchmarkSupport.percentile(window, window.length, 50) / 1000.0,
+            BenchmarkSupport.percentile(window, window.length, 99) / 1000.0,
+            roundTrips,
+            delta(after, before, "coalescedMisses"),
+            delta(after, before, "fromParentPrefix"),
+            delta(after, before, "staleHits"),
+            delta(after, before, "refreshed"));
+    }
+    
+    /**
+     * One request per keystroke of a popular-skewed word; returns {start times, latencies}.
+     */
+    private static long[][] replaySessions(TrieCache cache, List<String> words, Random random,
+                                           AtomicBoolean running) {
+        long[] starts = new long[MAX_SAMPLES_PER_READER];
+        long[] latencies = new long[MAX_SAMPLES_PER_READER];
+        int count = 0;
+        while (running.get() && count < starts.length - 8) {
+            double u = random.nextDouble();
+            String word = words.get((int) (u * u * u * words.size()));   // Skewed towards popular words
+            for (int length = 1; length <= Math.min(8, word.length()); length++) {
+                long start = System.nanoTime();
+                cache.getSuggestions(word.substring(0, length));
+                starts[count] = start;
+                latencies[count++] = System.nanoTime() - start;
+            }
+        }
+        return new long[][] {Arrays.copyOf(starts, count), Arrays.copyOf(latencies, count)};
+    }
+    
+    private static long delta(Map<String, Object> after, Map<String, Object> before, String key) {
+        return (Long) after.get(key) - (Long) before.get(key);
+    }
+    
+    /**
+     * TrieDB whose snapshot fetch (one per cache miss) costs a network round trip.
+     */
+    private static final class RemoteTrieDB extends TrieDB {
+        final LongAdder roundTrips = new LongAdder();
+        
+        @Override
+        public Snapshot getSnapshot() {
+            roundTrips.increment();
+            LockSupport.parkNanos(ROUND_TRIP_NANOS);
+            return super.getSnapshot();
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.autocomplete.cache;
 
 import com.autocomplete.storage.TrieDB;
+import com.autocomplete.trie.Trie;
 import com.autocomplete.trie.TrieNode.Suggestion;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * TrieCache - In-memory cache for fast autocomplete lookups.
@@ -25,50 +31,118 @@ import java.util.concurrent.*;
  * ║  CACHE STRATEGY:                                                            ║
  * ║  ────────────────                                                           ║
  * ║  1. Weekly snapshot from Trie DB                                            ║
- * ║  2. LRU eviction for less common prefixes                                   ║
+ * ║  2. LRU-like (CLOCK) eviction for less common prefixes                      ║
  * ║  3. Popular prefixes (top 20%) always in cache                              ║
  * ║                                                                               ║
  * ║  CACHE KEY: prefix (e.g., "be", "bes", "best")                              ║
  * ║  CACHE VALUE: List<Suggestion> (top-k suggestions)                          ║
  * ║                                                                               ║
  * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  CONCURRENCY                                                                 ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  shard = hash(prefix) & (shards - 1), each shard a ConcurrentHashMap         ║
+ * ║                                                                               ║
+ * ║  HIT PATH (lock-free): map.get → set entry's "referenced" bit → return      ║
+ * ║  MISS PATH: read one TrieDB snapshot (data + version together) → put        ║
+ * ║  EVICTION (per-shard tryLock, second-chance / CLOCK):                       ║
+ * ║    walk the shard's insertion queue; referenced entries get their bit       ║
+ * ║    cleared and go to the back, unreferenced ones are evicted                ║
+ * ║                                                                               ║
+ * ║  Version: entries are tagged with the snapshot version they came from;      ║
+ * ║  one CAS on cachedVersion elects the thread that clears the shards, and     ║
+ * ║  entries from an older version are never served.                            ║
+ * ║  Metrics: LongAdder hits / misses / evictions per shard.                    ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  MISS PATH                                                                   ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  Single-flight: the first thread to miss on a prefix registers a future     ║
+ * ║  in the shard's inFlight map and loads; concurrent misses on the same       ║
+ * ║  prefix wait on that future instead of all hitting the DB.                  ║
+ * ║                                                                               ║
+ * ║  Keystroke reuse: "iph" after "ip" is answered from the cached "ip" list    ║
+ * ║  when that is provably exact: keep the words starting with "iph"; exact     ║
+ * ║  if "ip" had fewer than k words (its whole subtree) or all k match.         ║
+ * ║                                                                               ║
+ * ║  Typo tolerance (setTypoTolerance): no exact suggestions → fall back to     ║
+ * ║  Trie.getFuzzySuggestions within the budget; the result is cached under     ║
+ * ║  the typed prefix, so a repeated misspelling is a hit.                      ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  SOFT INVALIDATION (setSoftInvalidation)                                     ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  Hard (default): a version bump clears every shard, so the next request     ║
+ * ║  for each hot prefix misses at once.                                        ║
+ * ║  Soft: entries from an older version are still served (staleHits) while     ║
+ * ║  a few warmer threads reload them from the new snapshot, hottest first;     ║
+ * ║  a stale hit also queues its own prefix, and a miss under a stale parent    ║
+ * ║  is derived from it (stale too, queued as well). Served lists may lag one   ║
+ * ║  publish, never mix versions within a list.                                 ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
  */
 public class TrieCache {
     
     private final TrieDB trieDB;
     
-    // LRU cache: prefix → suggestions
-    private final LinkedHashMap<String, CacheEntry> cache;
+    // Sharded cache: prefix → suggestions
+    private final Shard[] shards;
     private final int maxSize;
     
-    // Metrics
-    private long hits;
-    private long misses;
-    
     // Version tracking (for invalidation)
-    private long cachedVersion;
+    private final AtomicLong cachedVersion;
+    
+    // Typo tolerance: fuzzy fallback budget (0 = off)
+    private volatile long fuzzyBudgetNanos;
+    private final LongAdder fuzzyLookups = new LongAdder();
+    private final LongAdder fuzzyTruncated = new LongAdder();
+    
+    // Miss-path metrics
+    private final LongAdder coalesced = new LongAdder();      // misses that waited on another thread's load
+    private final LongAdder fromParent = new LongAdder();     // misses answered from the parent prefix
+    
+    // Soft invalidation: serve stale entries while warmer threads reload them
+    private volatile boolean softInvalidation;
+    private volatile ExecutorService warmer;
+    private static final int WARMER_THREADS = 4;   // Reloads are DB round trips: overlap a few
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
     
     // Default cache size
     private static final int DEFAULT_MAX_SIZE = 100000;
+    private static final int DEFAULT_SHARDS = 16;
     
     public TrieCache(TrieDB trieDB) {
         this(trieDB, DEFAULT_MAX_SIZE);
     }
     
     public TrieCache(TrieDB trieDB, int maxSize) {
+        this(trieDB, maxSize, DEFAULT_SHARDS);
+    }
+    
+    /**
+     * @param shardCount Number of shards (rounded down to a power of two, at most maxSize)
+     */
+    public TrieCache(TrieDB trieDB, int maxSize, int shardCount) {
         this.trieDB = trieDB;
         this.maxSize = maxSize;
-        this.hits = 0;
-        this.misses = 0;
-        this.cachedVersion = -1;
-        
-        // LRU cache implementation
-        this.cache = new LinkedHashMap<>(maxSize, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
-                return size() > maxSize;
-            }
-        };
+        this.cachedVersion = new AtomicLong(-1);
+        
+        int count = Integer.highestOneBit(Math.max(1, Math.min(shardCount, maxSize)));
+        int perShard = (maxSize + count - 1) / count;
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(perShard);
+        }
     }
     
     /**
@@ -91,40 +165,252 @@ public class TrieCache {
         }
         
         // Check if cache needs refresh
-        checkVersion();
+        long version = checkVersion();
         
-        // Try cache first
-        CacheEntry entry = cache.get(prefix);
-        if (entry != null) {
-            hits++;
+        // Try cache first (lock-free)
+        Shard shard = shardFor(prefix);
+        CacheEntry entry = shard.map.get(prefix);
+        if (entry != null && entry.version == version) {
+            entry.referenced = true;
+            shard.hits.increment();
+            return entry.getSuggestions();
+        }
+        if (entry != null && softInvalidation) {
+            // Older version: serve it now, reload in the background
+            entry.referenced = true;
+            shard.hits.increment();
+            staleHits.increment();
+            refreshInBackground(shard, prefix);
             return entry.getSuggestions();
         }
         
-        // Cache miss - fetch from DB
-        misses++;
-        List<Suggestion> suggestions = trieDB.getSuggestionsForPrefix(prefix);
+        // Cache miss - one load per prefix at a time
+        shard.misses.increment();
+        CompletableFuture<List<Suggestion>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Suggestion>> leader = shard.inFlight.putIfAbsent(prefix, mine);
+        if (leader != null) {
+            coalesced.increment();
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return load(shard, prefix, mine, softInvalidation);
+    }
+    
+    /**
+     * Load a prefix from the DB into the cache and complete the in-flight
+     * future registered for it (callers must have registered `pending`).
+     * 
+     * @param allowStale Soft mode request path: may derive from a stale parent
+     */
+    private List<Suggestion> load(Shard shard, String prefix, CompletableFuture<List<Suggestion>> pending,
+                                  boolean allowStale) {
+        try {
+            List<Suggestion> suggestions = loadFromDB(shard, prefix, allowStale);
+            pending.complete(suggestions);
+            return suggestions;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            shard.inFlight.remove(prefix, pending);
+        }
+    }
+    
+    private List<Suggestion> loadFromDB(Shard shard, String prefix, boolean allowStale) {
+        // Keystroke reuse: answer from the cached parent without a DB read
+        long version = trieDB.getVersion();
+        CacheEntry derived = fromParent(prefix, version, allowStale);
+        if (derived != null) {
+            fromParent.increment();
+            shard.put(prefix, derived);
+            if (derived.version != version) {
+                refreshInBackground(shard, prefix);  // stale like its parent: warm it too
+            }
+            return derived.getSuggestions();
+        }
+        
+        // Data and version from the same snapshot
+        TrieDB.Snapshot snapshot = trieDB.getSnapshot();
+        List<Suggestion> suggestions = snapshot.getSuggestions(prefix);
+        int topK = snapshot.getTopK();
+        boolean cacheable = true;
+        
+        // No exact match: probably a typo, try nearby prefixes
+        long budget = fuzzyBudgetNanos;
+        int maxEdits = Trie.autoMaxEdits(prefix.length());
+        if (suggestions.isEmpty() && budget > 0 && maxEdits > 0) {
+            Trie.FuzzyResult fuzzy = snapshot.getFuzzySuggestions(prefix, maxEdits, budget);
+            suggestions = fuzzy.getSuggestions();
+            cacheable = fuzzy.isComplete();  // don't pin a result the budget cut short
+            topK = 0;
+            fuzzyLookups.increment();
+            if (!cacheable) {
+                fuzzyTruncated.increment();
+            }
+        }
         
         // Populate cache
-        if (!suggestions.isEmpty()) {
-            cache.put(prefix, new CacheEntry(suggestions));
+        if (!suggestions.isEmpty() && cacheable) {
+            shard.put(prefix, new CacheEntry(suggestions, snapshot.getVersion(), topK));
+        } else {
+            // Drop a stale entry the new version no longer backs
+            CacheEntry old = shard.map.get(prefix);
+            if (old != null && old.version != snapshot.getVersion()) {
+                shard.map.remove(prefix, old);
+            }
         }
         
         return suggestions;
     }
     
+    /**
+     * Entry for "iph" built from the cached top-k of "ip" at this version (or
+     * any version if allowStale), or null if that list doesn't prove the answer
+     * (see class comment) or it is empty.
+     */
+    private CacheEntry fromParent(String prefix, long version, boolean allowStale) {
+        if (prefix.length() < 2) {
+            return null;
+        }
+        String parentPrefix = prefix.substring(0, prefix.length() - 1);
+        CacheEntry parent = shardFor(parentPrefix).map.get(parentPrefix);
+        if (parent == null || parent.topK == 0 || (parent.version != version && !allowStale)) {
+            return null;
+        }
+        
+        List<Suggestion> parentList = parent.getSuggestions();
+        List<Suggestion> matching = new ArrayList<>(parentList.size());
+        for (Suggestion suggestion : parentList) {
+            if (suggestion.getWord().startsWith(prefix)) {
+                matching.add(suggestion);
+            }
+        }
+        if (!matching.isEmpty() && (parentList.size() < parent.topK || matching.size() == parent.topK)) {
+            return new CacheEntry(matching, parent.version, parent.topK);
+        }
+        return null;
+    }
+    
+    /**
+     * Soft mode: reload a stale prefix on a warmer thread (once, however many
+     * stale hits it gets meanwhile).
+     */
+    private void refreshInBackground(Shard shard, String prefix) {
+        ExecutorService executor = warmer;
+        if (executor != null && shard.refreshQueued.add(prefix)) {
+            try {
+                executor.execute(() -> {
+                    shard.refreshQueued.remove(prefix);
+                    refreshIfStale(shard, prefix);
+                });
+            } catch (RejectedExecutionException e) {
+                shard.refreshQueued.remove(prefix);
+            }
+        }
+    }
+    
+    /**
+     * Reload a prefix unless it is already current or being loaded. Queued work
+     * is not registered in inFlight until it runs, so a miss never waits on it.
+     */
+    private void refreshIfStale(Shard shard, String prefix) {
+        CacheEntry cached = shard.map.get(prefix);
+        if (cached != null && cached.version == trieDB.getVersion()) {
+            return;
+        }
+        CompletableFuture<List<Suggestion>> pending = new CompletableFuture<>();
+        if (shard.inFlight.putIfAbsent(prefix, pending) == null) {
+            load(shard, prefix, pending, false);
+            refreshed.increment();
+        }
+    }
+    
+    /**
+     * Soft mode: queue every entry older than the current version for reload,
+     * hottest (referenced) entries first.
+     */
+    private void warmStaleEntries() {
+        long version = trieDB.getVersion();
+        int queued = 0;
+        for (boolean referencedPass : new boolean[] {true, false}) {
+            for (Shard shard : shards) {
+                for (Map.Entry<String, CacheEntry> entry : shard.map.entrySet()) {
+                    CacheEntry cached = entry.getValue();
+                    if (cached.referenced == referencedPass && cached.version != version) {
+                        refreshInBackground(shard, entry.getKey());
+                        queued++;
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("[TrieCache] Queued %d stale entries for warming", queued));
+    }
+    
     /**
      * Check if cache version matches DB version.
-     * If not, invalidate cache.
+     * If not, the thread that wins the CAS invalidates the cache.
+     * 
+     * @return The current DB version
      */
-    private void checkVersion() {
+    private long checkVersion() {
         long dbVersion = trieDB.getVersion();
-        if (dbVersion != cachedVersion) {
+        long seen = cachedVersion.get();
+        if (dbVersion != seen && cachedVersion.compareAndSet(seen, dbVersion)) {
+            ExecutorService executor = warmer;
+            if (softInvalidation && executor != null) {
+                System.out.println(String.format(
+                    "[TrieCache] Version changed %d → %d, serving stale entries while warming...",
+                    seen, dbVersion));
+                try {
+                    executor.execute(this::warmStaleEntries);
+                    return dbVersion;
+                } catch (RejectedExecutionException e) {
+                    // Warmer shut down: fall back to a hard invalidation
+                }
+            }
             System.out.println(String.format(
                 "[TrieCache] Version changed %d → %d, invalidating cache...", 
-                cachedVersion, dbVersion));
+                seen, dbVersion));
             invalidate();
-            cachedVersion = dbVersion;
         }
+        return dbVersion;
+    }
+    
+    /**
+     * Soft invalidation: on a version change keep serving the old entries and
+     * reload them in the background, instead of clearing the cache.
+     */
+    public synchronized void setSoftInvalidation(boolean soft) {
+        if (soft && warmer == null) {
+            warmer = Executors.newFixedThreadPool(WARMER_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "trie-cache-warmer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.softInvalidation = soft;
+    }
+    
+    /**
+     * Stop the background warmer (soft invalidation falls back to hard).
+     */
+    public synchronized void shutdown() {
+        softInvalidation = false;
+        if (warmer != null) {
+            warmer.shutdown();
+        }
+    }
+    
+    /**
+     * Enable typo-tolerant fallback for prefixes with no exact suggestions.
+     * 
+     * @param budget Latency budget per fuzzy lookup, or null / zero to disable
+     */
+    public void setTypoTolerance(Duration budget) {
+        this.fuzzyBudgetNanos = budget == null || budget.isNegative() ? 0 : budget.toNanos();
     }
     
     /**
@@ -136,15 +422,16 @@ public class TrieCache {
     public void preload(List<String> prefixes) {
         System.out.println(String.format("[TrieCache] Preloading %d prefixes...", prefixes.size()));
         
+        TrieDB.Snapshot snapshot = trieDB.getSnapshot();
         for (String prefix : prefixes) {
             prefix = normalize(prefix);
-            List<Suggestion> suggestions = trieDB.getSuggestionsForPrefix(prefix);
+            List<Suggestion> suggestions = snapshot.getSuggestions(prefix);
             if (!suggestions.isEmpty()) {
-                cache.put(prefix, new CacheEntry(suggestions));
+                shardFor(prefix).put(prefix, new CacheEntry(suggestions, snapshot.getVersion(), snapshot.getTopK()));
             }
         }
         
-        cachedVersion = trieDB.getVersion();
+        cachedVersion.set(snapshot.getVersion());
         System.out.println("[TrieCache] Preload complete!");
     }
     
@@ -152,41 +439,87 @@ public class TrieCache {
      * Invalidate the entire cache.
      */
     public void invalidate() {
-        cache.clear();
-        hits = 0;
-        misses = 0;
+        for (Shard shard : shards) {
+            shard.clear();
+        }
     }
     
     /**
      * Invalidate a specific prefix.
      */
     public void invalidate(String prefix) {
-        cache.remove(normalize(prefix));
+        prefix = normalize(prefix);
+        shardFor(prefix).remove(prefix);
     }
     
     /**
      * Get cache statistics.
      */
     public Map<String, Object> getStats() {
+        long hits = 0, misses = 0, evictions = 0;
+        int size = 0;
+        for (Shard shard : shards) {
+            hits += shard.hits.sum();
+            misses += shard.misses.sum();
+            evictions += shard.evictions.sum();
+            size += shard.map.size();
+        }
         Map<String, Object> stats = new HashMap<>();
-        stats.put("size", cache.size());
+        stats.put("size", size);
         stats.put("maxSize", maxSize);
         stats.put("hits", hits);
         stats.put("misses", misses);
         stats.put("hitRate", hits + misses > 0 ? 
             String.format("%.2f%%", 100.0 * hits / (hits + misses)) : "N/A");
-        stats.put("cachedVersion", cachedVersion);
+        stats.put("evictions", evictions);
+        stats.put("shards", shards.length);
+        stats.put("cachedVersion", cachedVersion.get());
+        stats.put("fuzzyLookups", fuzzyLookups.sum());
+        stats.put("fuzzyTruncated", fuzzyTruncated.sum());
+        stats.put("coalescedMisses", coalesced.sum());
+        stats.put("fromParentPrefix", fromParent.sum());
+        stats.put("softInvalidation", softInvalidation);
+        stats.put("staleHits", staleHits.sum());
+        stats.put("refreshed", refreshed.sum());
         return stats;
     }
     
+    /**
+     * Get per-shard statistics (spot hot shards / skewed prefixes).
+     */
+    public List<Map<String, Object>> getShardStats() {
+        List<Map<String, Object>> result = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("shard", i);
+            stats.put("size", shard.map.size());
+            stats.put("hits", shard.hits.sum());
+            stats.put("misses", shard.misses.sum());
+            stats.put("evictions", shard.evictions.sum());
+            result.add(stats);
+        }
+        return result;
+    }
+    
     /**
      * Get cache hit rate.
      */
     public double getHitRate() {
+        long hits = 0, misses = 0;
+        for (Shard shard : shards) {
+            hits += shard.hits.sum();
+            misses += shard.misses.sum();
+        }
         long total = hits + misses;
         return total > 0 ? (double) hits / total : 0.0;
     }
     
+    private Shard shardFor(String prefix) {
+        int h = prefix.hashCode();
+        return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+    }
+    
     /**
      * Normalize prefix for cache key.
      */
@@ -194,15 +527,142 @@ public class TrieCache {
         return prefix.toLowerCase().replaceAll("[^a-z]", "");
     }
     
+    /**
+     * Shard - One independently locked slice of the cache.
+     */
+    private static final class Shard {
+        private final ConcurrentHashMap<String, CacheEntry> map = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, CompletableFuture<List<Suggestion>>> inFlight = new ConcurrentHashMap<>();
+        private final Set<String> refreshQueued = ConcurrentHashMap.newKeySet();  // Soft mode: queued on the warmer
+        // Insertion order; a slot is stale once map no longer holds its entry (removed or replaced)
+        private final ConcurrentLinkedQueue<ClockSlot> clock = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger clockSlots = new AtomicInteger();  // clock.size() without the O(n) walk
+        private final ReentrantLock evictionLock = new ReentrantLock();
+        private final int capacity;
+        
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        
+        Shard(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        void put(String prefix, CacheEntry entry) {
+            map.put(prefix, entry);
+            clock.add(new ClockSlot(prefix, entry));  // a replaced entry's old slot goes stale
+            int slots = clockSlots.incrementAndGet();
+            if (map.size() > capacity) {
+                evict();
+            } else if (slots > 2 * Math.max(capacity, map.size()) + 64) {
+                compact();  // mostly stale slots: drop them so the queue stays O(capacity)
+            }
+        }
+        
+        private boolean isLive(ClockSlot slot) {
+            return map.get(slot.prefix) == slot.entry;
+        }
+        
+        /**
+         * Second-chance eviction. Only one thread sweeps a shard at a time;
+         * others skip (the shard may briefly exceed capacity).
+         */
+        private void evict() {
+            if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                while (map.size() > capacity) {
+                    ClockSlot slot = clock.poll();
+                    if (slot == null) {
+                        return;
+                    }
+                    if (!isLive(slot)) {
+                        clockSlots.decrementAndGet();
+                        continue;  // removed or replaced since it was queued
+                    }
+                    if (slot.entry.referenced) {
+                        slot.entry.referenced = false;  // second chance
+                        clock.add(slot);
+                    } else {
+                        clockSlots.decrementAndGet();
+                        if (map.remove(slot.prefix, slot.entry)) {
+                            evictions.increment();
+                        }
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        
+        /**
+         * O(1): the prefix's clock slot is left behind stale and dropped by the next sweep.
+         */
+        void remove(String prefix) {
+            map.remove(prefix);
+        }
+        
+        /**
+         * Drop stale slots in one pass (amortized over the puts that created them).
+         */
+        private void compact() {
+            if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                for (Iterator<ClockSlot> it = clock.iterator(); it.hasNext(); ) {
+                    if (!isLive(it.next())) {
+                        it.remove();
+                        clockSlots.decrementAndGet();
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        
+        void clear() {
+            evictionLock.lock();
+            try {
+                map.clear();
+                clock.clear();
+                clockSlots.set(0);
+                hits.reset();
+                misses.reset();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * ClockSlot - A queued (prefix, entry) pair; the entry doubles as its generation.
+     */
+    private static final class ClockSlot {
+        private final String prefix;
+        private final CacheEntry entry;
+        
+        ClockSlot(String prefix, CacheEntry entry) {
+            this.prefix = prefix;
+            this.entry = entry;
+        }
+    }
+    
     /**
      * CacheEntry - Wrapper for cached suggestions.
      */
     private static class CacheEntry {
         private final List<Suggestion> suggestions;
+        private final long version;        // TrieDB snapshot version it was loaded from
+        private final int topK;            // k of the top-k list it holds; 0 = typo fallback, not a top-k
         private final long timestamp;
+        private volatile boolean referenced;  // set on hit, cleared by the eviction sweep
         
-        public CacheEntry(List<Suggestion> suggestions) {
-            this.suggestions = new ArrayList<>(suggestions);
+        public CacheEntry(List<Suggestion> suggestions, long version, int topK) {
+            this.suggestions = Collections.unmodifiableList(new ArrayList<>(suggestions));
+            this.version = version;
+            this.topK = topK;
             this.timestamp = System.currentTimeMillis();
         }
         
@@ -215,4 +675,3 @@ public class TrieCache {
         }
     }
 }
-
@@ -30,6 +30,24 @@ import java.util.stream.Collectors;
  * ║  Aggregated: {"best buy": 3, "best": 1, "beer": 1}                          ║
  * ║                                                                               ║
  * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  BOUNDED-MEMORY MODE: new Aggregator(log, topN)                              ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  Exact mode keeps one map entry per query and per (user, query) forever.    ║
+ * ║  Bounded mode uses fixed-size structures instead:                           ║
+ * ║                                                                               ║
+ * ║  dedup   TimeSlicedDedupFilter: Bloom filter per 10s slice, entries expire  ║
+ * ║          after DEDUP_WINDOW; keys are hashes of (user, query), no strings   ║
+ * ║  counts  CountMinSketch (any query's count, never under)                    ║
+ * ║          + SpaceSaving (the heavy hitters that go into the trie)            ║
+ * ║                                                                               ║
+ * ║  processLogs() is thread-safe: several consumers can drain AnalyticsLog     ║
+ * ║  at once (see drain). Each pre-aggregates its batch locally, then merges    ║
+ * ║  once per distinct query; event times come from the log entries.           ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
  */
 public class Aggregator {
     
@@ -47,10 +65,54 @@ public class Aggregator {
     // Time decay: queries older than this get reduced weight
     private static final Duration DECAY_WINDOW = Duration.ofDays(7);
     
+    private static final int BATCH_SIZE = 10000;
+    
+    // Bounded mode (null in exact mode)
+    private final TimeSlicedDedupFilter dedupFilter;
+    private final CountMinSketch sketch;
+    private final SpaceSaving heavyHitters;
+    private final int topN;
+    
+    private static final int DEDUP_SLICES = 6;
+    private static final int DEDUP_EXPECTED_PER_SLICE = 1 << 20;
+    private static final double DEDUP_FALSE_POSITIVE_RATE = 0.001;
+    private static final int SKETCH_WIDTH = 1 << 18;      // ε ≈ e / 2^18 ≈ 0.001% of total
+    private static final int SKETCH_DEPTH = 4;            // δ ≈ e^-4 ≈ 2%
+    private static final int HEAVY_HITTER_SLACK = 4;      // Space-Saving counters per reported query
+    
+    /**
+     * Exact mode: one entry per query and per (user, query).
+     */
     public Aggregator(AnalyticsLog analyticsLog) {
         this.analyticsLog = analyticsLog;
         this.aggregatedData = new ConcurrentHashMap<>();
         this.deduplicationMap = new ConcurrentHashMap<>();
+        this.dedupFilter = null;
+        this.sketch = null;
+        this.heavyHitters = null;
+        this.topN = 0;
+    }
+    
+    /**
+     * Bounded-memory mode: sketch counts, time-sliced dedup, the topN heaviest
+     * queries reported by getAggregatedCounts().
+     */
+    public Aggregator(AnalyticsLog analyticsLog, int topN) {
+        if (topN < 1) {
+            throw new IllegalArgumentException("topN must be >= 1");
+        }
+        this.analyticsLog = analyticsLog;
+        this.aggregatedData = null;
+        this.deduplicationMap = null;
+        this.dedupFilter = new TimeSlicedDedupFilter(DEDUP_WINDOW, DEDUP_SLICES,
+            DEDUP_EXPECTED_PER_SLICE, DEDUP_FALSE_POSITIVE_RATE);
+        this.sketch = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+        this.heavyHitters = new SpaceSaving(topN * HEAVY_HITTER_SLACK);
+        this.topN = topN;
+    }
+    
+    public boolean isBounded() {
+        return sketch != null;
     }
     
     /**
@@ -61,7 +123,7 @@ public class Aggregator {
      * @return Number of entries processed
      */
     public int processLogs() {
-        List<LogEntry> entries = analyticsLog.pollEntries(10000);
+        List<LogEntry> entries = analyticsLog.pollEntries(BATCH_SIZE);
         
         if (entries.isEmpty()) {
             return 0;
@@ -69,6 +131,12 @@ public class Aggregator {
         
         System.out.println(String.format("\n[Aggregator] Processing %d log entries...", entries.size()));
         
+        if (isBounded()) {
+            int counted = processBounded(entries);
+            System.out.println(String.format("[Aggregator] Counted %d queries (after dedup)", counted));
+            return entries.size();
+        }
+        
         int counted = 0;
         for (LogEntry entry : entries) {
             if (shouldCount(entry)) {
@@ -81,6 +149,62 @@ public class Aggregator {
         return entries.size();
     }
     
+    /**
+     * Bounded mode: dedup by filter, pre-aggregate the batch, merge into the sketches.
+     */
+    private int processBounded(List<LogEntry> entries) {
+        Map<String, int[]> batch = new HashMap<>();
+        int counted = 0;
+        for (LogEntry entry : entries) {
+            long key = TimeSlicedDedupFilter.keyHash(entry.getUserId(), entry.getQuery());
+            if (dedupFilter.accept(key, entry.getTimestamp().toEpochMilli())) {
+                batch.computeIfAbsent(entry.getQuery(), q -> new int[1])[0]++;
+                counted++;
+            }
+        }
+        for (Map.Entry<String, int[]> query : batch.entrySet()) {
+            int n = query.getValue()[0];
+            long estimate = sketch.add(CountMinSketch.hash(query.getKey()), n);
+            heavyHitters.offer(query.getKey(), n, estimate);
+        }
+        return counted;
+    }
+    
+    /**
+     * Drain the log with several consumer threads until it is empty.
+     * 
+     * @param consumers Number of consumer threads
+     * @return Number of entries processed
+     */
+    public long drain(int consumers) {
+        ExecutorService pool = Executors.newFixedThreadPool(consumers);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            results.add(pool.submit(() -> {
+                long processed = 0;
+                int n;
+                while ((n = processLogs()) > 0) {
+                    processed += n;
+                }
+                return processed;
+            }));
+        }
+        
+        long total = 0;
+        try {
+            for (Future<Long> result : results) {
+                total += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Consumer failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return total;
+    }
+    
     /**
      * Check if this query should be counted (deduplication).
      */
@@ -119,6 +243,13 @@ public class Aggregator {
      * @return Map of query → frequency
      */
     public Map<String, Integer> getAggregatedCounts() {
+        if (isBounded()) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (Map.Entry<String, Long> entry : heavyHitters.top(topN)) {
+                counts.put(entry.getKey(), (int) Math.min(Integer.MAX_VALUE, entry.getValue()));
+            }
+            return counts;
+        }
         return aggregatedData.entrySet().stream()
             .collect(Collectors.toMap(
                 Map.Entry::getKey,
@@ -130,6 +261,11 @@ public class Aggregator {
      * Get top N queries by frequency.
      */
     public List<Map.Entry<String, Integer>> getTopQueries(int n) {
+        if (isBounded()) {
+            return heavyHitters.top(Math.min(n, topN)).stream()
+                .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), (int) Math.min(Integer.MAX_VALUE, e.getValue())))
+                .collect(Collectors.toList());
+        }
         return aggregatedData.entrySet().stream()
             .sorted((a, b) -> Integer.compare(b.getValue().getCount(), a.getValue().getCount()))
             .limit(n)
@@ -144,6 +280,13 @@ public class Aggregator {
      * In production: This runs as a periodic batch job.
      */
     public void applyTimeDecay() {
+        if (isBounded()) {
+            // No per-query timestamps: decay everything by 50% (exponential decay)
+            System.out.println("\n[Aggregator] Applying time decay (sketch + heavy hitters halved)...");
+            sketch.decay();
+            heavyHitters.decay();
+            return;
+        }
         Instant cutoff = Instant.now().minus(DECAY_WINDOW.toDays(), ChronoUnit.DAYS);
         
         System.out.println("\n[Aggregator] Applying time decay...");
@@ -165,16 +308,49 @@ public class Aggregator {
      * Reset aggregated data (for testing).
      */
     public void reset() {
+        if (isBounded()) {
+            dedupFilter.clear();
+            sketch.clear();
+            heavyHitters.clear();
+            return;
+        }
         aggregatedData.clear();
         deduplicationMap.clear();
     }
     
+    /**
+     * Estimated count of any query (bounded mode: sketch upper bound; exact mode: exact).
+     */
+    public long getEstimatedCount(String query) {
+        if (isBounded()) {
+            return sketch.estimate(CountMinSketch.hash(query));
+        }
+        AggregatedData data = aggregatedData.get(query);
+        return data != null ? data.getCount() : 0;
+    }
+    
+    /**
+     * Fixed memory of the bounded-mode structures (0 in exact mode, which grows with traffic).
+     */
+    public long getBoundedMemoryBytes() {
+        if (!isBounded()) {
+            return 0;
+        }
+        // Space-Saving: ~100 bytes per counter (entry, tree node, key string)
+        return dedupFilter.getMemoryBytes() + sketch.getMemoryBytes() + 100L * heavyHitters.getCapacity();
+    }
+    
     /**
      * Print aggregated data summary.
      */
     public void printSummary() {
         System.out.println("\n=== AGGREGATED DATA ===");
-        System.out.println(String.format("Total unique queries: %d", aggregatedData.size()));
+        if (isBounded()) {
+            System.out.println(String.format("Tracked heavy hitters: %d of %d counters (reporting top %d), fixed memory %d KB",
+                heavyHitters.size(), heavyHitters.getCapacity(), topN, getBoundedMemoryBytes() / 1024));
+        } else {
+            System.out.println(String.format("Total unique queries: %d", aggregatedData.size()));
+        }
         
         System.out.println("\nTop 10 queries:");
         getTopQueries(10).forEach(e -> 
@@ -59,6 +59,14 @@ public class AnalyticsLog {
         System.out.println(String.format("  [AnalyticsLog] Logged: '%s' from user %s", query, userId));
     }
     
+    /**
+     * High-volume ingest: enqueue an entry without echoing it or keeping it
+     * in the debug history (which grows without bound).
+     */
+    public void append(LogEntry entry) {
+        logQueue.offer(entry);
+    }
+    
     /**
      * Log a search query (anonymous).
      */
@@ -0,0 +1,130 @@
+package com.autocomplete.pipeline;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * CountMinSketch - Approximate per-query counts in fixed memory.
+ *
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  COUNT-MIN SKETCH                                                            ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  depth rows × width counters; each row hashes the query to one counter      ║
+ * ║                                                                               ║
+ * ║  add(q, n):    counter[row][h_row(q)] += n     for every row                ║
+ * ║  estimate(q):  min over rows of counter[row][h_row(q)]                      ║
+ * ║                                                                               ║
+ * ║  Never underestimates. With width = e/ε and depth = ln(1/δ):                ║
+ * ║  estimate ≤ true + ε × total, with probability 1 - δ                        ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ *
+ * Counters are atomic, so consumer threads can add concurrently.
+ */
+public class CountMinSketch {
+    
+    private final int width;   // Power of two (index = hash & mask)
+    private final int depth;
+    private final AtomicLongArray counters;
+    
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be >= 1");
+        }
+        int rounded = Integer.highestOneBit(width);
+        this.width = rounded < width ? rounded << 1 : rounded;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(this.width * depth);
+    }
+    
+    /**
+     * Add `count` occurrences of the query (given by its 64-bit hash).
+     *
+     * @return The query's estimate after the add
+     */
+    public long add(long hash, long count) {
+        long estimate = Long.MAX_VALUE;
+        long h2 = mix(hash) | 1;
+        for (int row = 0; row < depth; row++) {
+            long value = counters.addAndGet(index(row, hash, h2), count);
+            estimate = Math.min(estimate, value);
+        }
+        return estimate;
+    }
+    
+    /**
+     * Upper bound on the query's count.
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        long h2 = mix(hash) | 1;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, hash, h2)));
+        }
+        return estimate;
+    }
+    
+    /**
+     * Halve every counter (time decay).
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.updateAndGet(i, value -> value / 2);
+        }
+    }
+    
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getDepth() {
+        return depth;
+    }
+    
+    public long getMemoryBytes() {
+        return 8L * counters.length();
+    }
+    
+    private int index(int row, long h1, long h2) {
+        // Double hashing: row i uses h1 + i × h2
+        return row * width + (int) ((h1 + row * h2) & (width - 1));
+    }
+    
+    /**
+     * 64-bit hash of a string. Every char feeds the hash, so strings that share a
+     * String.hashCode (e.g. "Aa" / "BB") still land on different counters.
+     */
+    public static long hash(String value) {
+        return hash64(0, value);
+    }
+    
+    /**
+     * FNV-1a 64 over a string, chained from seed and finalized with mix;
+     * null and "" hash differently.
+     */
+    static long hash64(long seed, String s) {
+        if (s == null) {
+            return mix(seed ^ 0x9e3779b97f4a7c15L);
+        }
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h ^ s.length());
+    }
+    
+    /**
+     * 64-bit finalizer (SplitMix64).
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
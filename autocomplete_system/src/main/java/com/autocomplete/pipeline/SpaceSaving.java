@@ -0,0 +1,138 @@
+package com.autocomplete.pipeline;
+
+import java.util.*;
+
+/**
+ * SpaceSaving - Top-N heavy hitters with a fixed number of counters.
+ *
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  SPACE-SAVING (Metwally et al.)                                              ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  capacity counters (query, count, error):                                   ║
+ * ║  - tracked query      → count += n                                          ║
+ * ║  - free counter       → (query, n, 0)                                       ║
+ * ║  - full               → evict the minimum counter m, reuse it as            ║
+ * ║                         (query, m.count + n, m.count)                       ║
+ * ║                                                                               ║
+ * ║  Every query with true count > total / capacity is tracked, and each        ║
+ * ║  count overestimates by at most its error.                                  ║
+ * ║                                                                               ║
+ * ║  Paired with a CountMinSketch: a newcomer's count is capped at the          ║
+ * ║  sketch estimate (both are upper bounds, so the smaller one is too), and    ║
+ * ║  a newcomer whose estimate doesn't exceed the minimum is not admitted.      ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ *
+ * Thread-safe (synchronized); consumers offer pre-aggregated batches, so the
+ * lock is taken once per distinct query per batch, not per event.
+ */
+public class SpaceSaving {
+    
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final TreeSet<Counter> byCount;   // Ascending: first() is the eviction candidate
+    private long sequence;                    // Tie-breaker for equal counts
+    
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.byCount = new TreeSet<>((a, b) -> a.count != b.count
+            ? Long.compare(a.count, b.count) : Long.compare(a.id, b.id));
+    }
+    
+    /**
+     * Count `n` more occurrences of the query.
+     *
+     * @param upperBound Independent upper bound on the query's total (e.g. a
+     *                   CountMinSketch estimate), or Long.MAX_VALUE
+     */
+    public synchronized void offer(String query, long n, long upperBound) {
+        Counter counter = counters.get(query);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += n;
+            byCount.add(counter);
+            return;
+        }
+        
+        if (counters.size() < capacity) {
+            counter = new Counter(query, n, 0, sequence++);
+        } else {
+            if (upperBound <= byCount.first().count) {
+                return;   // Can't outrank the minimum yet: skip the evict/reinsert churn
+            }
+            Counter min = byCount.pollFirst();
+            counters.remove(min.query);
+            long count = Math.min(min.count + n, Math.max(n, upperBound));
+            counter = new Counter(query, count, count - n, sequence++);
+        }
+        counters.put(query, counter);
+        byCount.add(counter);
+    }
+    
+    /**
+     * The n highest counts, largest first.
+     */
+    public synchronized List<Map.Entry<String, Long>> top(int n) {
+        List<Map.Entry<String, Long>> result = new ArrayList<>(Math.min(n, counters.size()));
+        for (Counter counter : byCount.descendingSet()) {
+            if (result.size() == n) {
+                break;
+            }
+            result.add(new AbstractMap.SimpleEntry<>(counter.query, counter.count));
+        }
+        return result;
+    }
+    
+    /**
+     * Tracked count (an overestimate by at most the counter's error), or 0.
+     */
+    public synchronized long getCount(String query) {
+        Counter counter = counters.get(query);
+        return counter != null ? counter.count : 0;
+    }
+    
+    /**
+     * Halve every count (time decay).
+     */
+    public synchronized void decay() {
+        List<Counter> all = new ArrayList<>(byCount);
+        byCount.clear();
+        for (Counter counter : all) {
+            counter.count /= 2;
+            counter.error /= 2;
+            byCount.add(counter);
+        }
+    }
+    
+    public synchronized void clear() {
+        counters.clear();
+        byCount.clear();
+    }
+    
+    public synchronized int size() {
+        return counters.size();
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    private static final class Counter {
+        final String query;
+        final long id;
+        long count;
+        long error;
+        
+        Counter(String query, long count, long error, long id) {
+            this.query = query;
+            this.count = count;
+            this.error = error;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.autocomplete.pipeline;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TimeSlicedDedupFilter - "Seen this (user, query) within the window?" in fixed memory.
+ *
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  TIME-SLICED BLOOM FILTERS                                                   ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  window = 60s, 6 slices of 10s → ring of 7 Bloom filters                    ║
+ * ║                                                                               ║
+ * ║  event at time t → slice = t / sliceMillis                                  ║
+ * ║  duplicate?      = key in any slice of the last window                      ║
+ * ║  otherwise       → add key to the event's slice                             ║
+ * ║                                                                               ║
+ * ║  A ring slot is cleared when a newer slice reuses it, so entries expire     ║
+ * ║  after window .. window + 1 slice. Memory = slots × bits per slice,         ║
+ * ║  whatever the number of distinct users and queries.                         ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ *
+ * Bloom filters have no false negatives, so a repeat within the window is always
+ * dropped; a false positive drops a genuine query (rate ≈ target FPP × slices,
+ * slightly more since the filters are blocked: all of a key's bits share one
+ * cache line, so a check is one memory access per slice).
+ * Thread-safe: bits are set with CAS, and slot reuse takes a lock only when
+ * a slice rolls over.
+ */
+public class TimeSlicedDedupFilter {
+    
+    private final long sliceMillis;
+    private final int windowSlices;
+    private final int bitsPerSlice;      // Power of two
+    private final int numHashes;
+    private final AtomicLongArray bits;  // slot s owns words [s × wordsPerSlice, (s+1) × wordsPerSlice)
+    private final AtomicLongArray sliceIds;
+    private final int wordsPerSlice;
+    private final int blocksPerSlice;
+    
+    private static final int BLOCK_BITS = 512;   // One 64-byte cache line
+    private static final int BLOCK_WORDS = BLOCK_BITS / 64;
+    
+    /**
+     * @param window             Entries expire after this long
+     * @param slices             Slices per window (more = tighter expiry, more filters to check)
+     * @param expectedPerSlice   Expected distinct keys per slice (sizes each filter)
+     * @param falsePositiveRate  Target false-positive rate per filter
+     */
+    public TimeSlicedDedupFilter(Duration window, int slices, int expectedPerSlice, double falsePositiveRate) {
+        if (slices < 1 || window.toMillis() < slices) {
+            throw new IllegalArgumentException("need 1 <= slices <= window millis");
+        }
+        this.sliceMillis = window.toMillis() / slices;
+        this.windowSlices = slices;
+        
+        // m = -n·ln(p) / (ln 2)², rounded up to a power of two; k = (m/n)·ln 2
+        int n = Math.max(1, expectedPerSlice);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long rounded = Long.highestOneBit(Math.max(BLOCK_BITS, m));
+        this.bitsPerSlice = (int) Math.min(1L << 30, rounded < m ? rounded << 1 : rounded);
+        this.numHashes = Math.max(1, Math.min(16, (int) Math.round((double) bitsPerSlice / n * Math.log(2))));
+        
+        int slots = slices + 1;   // The window plus the slice being filled
+        this.wordsPerSlice = bitsPerSlice >>> 6;
+        this.blocksPerSlice = bitsPerSlice / BLOCK_BITS;
+        this.bits = new AtomicLongArray(slots * wordsPerSlice);
+        this.sliceIds = new AtomicLongArray(slots);
+        for (int s = 0; s < slots; s++) {
+            sliceIds.set(s, Long.MIN_VALUE);
+        }
+    }
+    
+    /**
+     * Record the key at the event time.
+     *
+     * @return true if the key is new within the window (count it), false if a duplicate
+     */
+    public boolean accept(long keyHash, long eventMillis) {
+        long slice = Math.floorDiv(eventMillis, sliceMillis);
+        int slot = slot(slice);
+        if (!claim(slot, slice)) {
+            return true;   // Older than every retained slice: can't dedup, count it
+        }
+        
+        long h2 = CountMinSketch.mix(keyHash) | 1;
+        for (long s = slice - windowSlices; s < slice; s++) {
+            int other = slot(s);
+            if (sliceIds.get(other) == s && mightContain(other, keyHash, h2)) {
+                return false;
+            }
+        }
+        return !put(slot, keyHash, h2);
+    }
+    
+    /**
+     * Make the slot hold `slice`, clearing it if it still holds an older one.
+     * Returns false if the slot already moved on to a newer slice.
+     */
+    private boolean claim(int slot, long slice) {
+        long held = sliceIds.get(slot);
+        if (held == slice) {
+            return true;
+        }
+        if (held > slice) {
+            return false;
+        }
+        synchronized (this) {
+            held = sliceIds.get(slot);
+            if (held < slice) {
+                int base = slot * wordsPerSlice;
+                for (int w = 0; w < wordsPerSlice; w++) {
+                    bits.set(base + w, 0);
+                }
+                sliceIds.set(slot, slice);
+                return true;
+            }
+            return held == slice;
+        }
+    }
+    
+    /**
+     * Set the key's bits; returns true if all of them were already set.
+     */
+    private boolean put(int slot, long h1, long h2) {
+        long[] masks = blockMasks(h2);
+        int base = blockBase(slot, h1);
+        boolean present = true;
+        for (int w = 0; w < BLOCK_WORDS; w++) {
+            if (masks[w] != 0) {
+                long old = bits.getAndAccumulate(base + w, masks[w], (current, m) -> current | m);
+                if ((old & masks[w]) != masks[w]) {
+                    present = false;
+                }
+            }
+        }
+        return present;
+    }
+    
+    private boolean mightContain(int slot, long h1, long h2) {
+        int base = blockBase(slot, h1);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = blockBit(h2, i);
+            if ((bits.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Blocked Bloom filter: h1 picks one 512-bit block (a cache line), h2 the
+     * k bits inside it, so a probe touches one line instead of k random ones.
+     */
+    private int blockBase(int slot, long h1) {
+        return slot * wordsPerSlice + (int) (h1 & (blocksPerSlice - 1)) * BLOCK_WORDS;
+    }
+    
+    private static int blockBit(long h2, int i) {
+        return (int) ((h2 + i * ((h2 >>> 32) | 1)) & (BLOCK_BITS - 1));
+    }
+    
+    private long[] blockMasks(long h2) {
+        long[] masks = new long[BLOCK_WORDS];
+        for (int i = 0; i < numHashes; i++) {
+            int bit = blockBit(h2, i);
+            masks[bit >>> 6] |= 1L << bit;
+        }
+        return masks;
+    }
+    
+    private int slot(long slice) {
+        return (int) Math.floorMod(slice, (long) sliceIds.length());
+    }
+    
+    public void clear() {
+        synchronized (this) {
+            for (int i = 0; i < bits.length(); i++) {
+                bits.set(i, 0);
+            }
+            for (int s = 0; s < sliceIds.length(); s++) {
+                sliceIds.set(s, Long.MIN_VALUE);
+            }
+        }
+    }
+    
+    public long getMemoryBytes() {
+        return 8L * bits.length();
+    }
+    
+    /**
+     * Hash of (userId, query) without building a concatenated key string.
+     * Every char feeds a 64-bit hash, so two distinct keys collide with
+     * probability ~2^-64 instead of sharing 32-bit String.hashCode values
+     * and silently deduplicating a genuine query.
+     */
+    public static long keyHash(String userId, String query) {
+        return CountMinSketch.hash64(CountMinSketch.hash64(0, userId), query);
+    }
+}
@@ -1,5 +1,6 @@
 package com.autocomplete.pipeline;
 
+import com.autocomplete.trie.CompactTrie;
 import com.autocomplete.trie.Trie;
 import com.autocomplete.storage.TrieDB;
 import java.util.*;
@@ -30,6 +31,8 @@ import java.util.*;
  * ║  - Rebuild weekly (or daily for high-traffic systems)                       ║
  * ║  - Create new trie, then atomically swap                                    ║
  * ║  - Old trie remains until new one is ready                                  ║
+ * ║  - Incremental updates copy the published trie, never mutate it             ║
+ * ║  - Writers serialize on the worker; readers never lock                      ║
  * ║                                                                               ║
  * ╚═══════════════════════════════════════════════════════════════════════════════╝
  */
@@ -65,22 +68,34 @@ public class TrieWorker {
         Map<String, Integer> data = aggregator.getAggregatedCounts();
         System.out.println(String.format("[TrieWorker] Processing %d unique queries", data.size()));
         
-        Trie trie = new Trie(topK);
-        
-        // Insert all words with their frequencies
-        for (Map.Entry<String, Integer> entry : data.entrySet()) {
-            trie.insert(entry.getKey(), entry.getValue());
-        }
+        // Bulk build: top-k computed bottom-up in one pass (no per-insert re-sorting)
+        Trie trie = Trie.build(data, topK);
         
         System.out.println("[TrieWorker] Trie built successfully!");
         return trie;
     }
     
+    /**
+     * Build a read-only CompactTrie from the current aggregated data.
+     * Same suggestions as buildTrie(), a fraction of the heap.
+     * 
+     * @return The newly built CompactTrie
+     */
+    public CompactTrie buildCompactTrie() {
+        Map<String, Integer> data = aggregator.getAggregatedCounts();
+        System.out.println(String.format("\n[TrieWorker] Building compact trie from %d unique queries", data.size()));
+        
+        CompactTrie trie = CompactTrie.build(data, topK);
+        System.out.println(String.format("[TrieWorker] Compact trie built: %d nodes, %d words",
+            trie.getNodeCount(), trie.getWordCount()));
+        return trie;
+    }
+    
     /**
      * Build trie and persist to DB.
      * This is the main job that runs weekly.
      */
-    public void buildAndPersist() {
+    public synchronized void buildAndPersist() {
         System.out.println("\n" + "=".repeat(60));
         System.out.println("[TrieWorker] Starting weekly trie rebuild...");
         System.out.println("=".repeat(60));
@@ -88,12 +103,9 @@ public class TrieWorker {
         // Step 1: Build new trie
         Trie newTrie = buildTrie();
         
-        // Step 2: Persist to DB
+        // Step 2+3: Persist to DB and bump the version (triggers cache refresh) in one swap
         System.out.println("[TrieWorker] Persisting trie to database...");
-        trieDB.saveTrie(newTrie);
-        
-        // Step 3: Update version (triggers cache refresh)
-        trieDB.incrementVersion();
+        trieDB.publish(newTrie);
         
         System.out.println("[TrieWorker] Trie rebuild complete!");
         System.out.println("=".repeat(60) + "\n");
@@ -103,34 +115,30 @@ public class TrieWorker {
      * Incremental update: Update frequencies for specific words.
      * Used for hot updates between full rebuilds.
      * 
+     * Copy-on-write by path copying: only the nodes on each updated word's
+     * path are copied (Trie.withUpdates), untouched subtrees are shared with
+     * the published trie, and the result is published atomically. Readers
+     * keep serving the previous snapshot until the swap.
+     * 
      * @param updates Map of word → new frequency
      */
-    public void incrementalUpdate(Map<String, Integer> updates) {
+    public synchronized void incrementalUpdate(Map<String, Integer> updates) {
         System.out.println(String.format("\n[TrieWorker] Incremental update: %d words", updates.size()));
         
-        Trie currentTrie = trieDB.loadTrie();
-        if (currentTrie == null) {
+        Trie publishedTrie = trieDB.loadTrie();
+        if (publishedTrie == null) {
             System.out.println("[TrieWorker] No existing trie, building new one...");
             Trie newTrie = new Trie(topK);
             for (Map.Entry<String, Integer> entry : updates.entrySet()) {
                 newTrie.insert(entry.getKey(), entry.getValue());
             }
-            trieDB.saveTrie(newTrie);
+            trieDB.publish(newTrie);
             return;
         }
         
-        // Update existing trie
-        for (Map.Entry<String, Integer> entry : updates.entrySet()) {
-            String word = entry.getKey();
-            int newFreq = entry.getValue();
-            
-            if (!currentTrie.updateFrequency(word, newFreq)) {
-                // Word doesn't exist, insert it
-                currentTrie.insert(word, newFreq);
-            }
-        }
-        
-        trieDB.saveTrie(currentTrie);
+        // Path-copy the updated words; the published trie itself is never mutated
+        Trie currentTrie = publishedTrie.withUpdates(updates);
+        trieDB.publish(currentTrie);
         System.out.println("[TrieWorker] Incremental update complete!");
     }
     
@@ -0,0 +1,517 @@
+package com.autocomplete.storage;
+
+import com.autocomplete.trie.Trie;
+import com.autocomplete.trie.TrieNode;
+import com.autocomplete.trie.TrieNode.Suggestion;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * MappedTrieFile - The on-disk TrieDB format: sorted prefix → top-k, read via mmap.
+ *
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  FILE LAYOUT                                                                 ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  header   magic | topK | version | prefixes | words | blocks | offsets      ║
+ * ║  words    [len:2][utf-8][frequency:4]   every word in the trie, sorted      ║
+ * ║  entries  [len:2][prefix][n:1][wordOffset:4 × n]   sorted by prefix         ║
+ * ║  index    [entryOffset:4][len:2][prefix]   first prefix of every block      ║
+ * ║           of BLOCK_ENTRIES entries                                          ║
+ * ║                                                                               ║
+ * ║  Open:   map the file, read only the block index into heap                  ║
+ * ║  Lookup: binary search the index → scan ≤ BLOCK_ENTRIES entries in the      ║
+ * ║          mapping → decode the (shared) words of the match                   ║
+ * ║                                                                               ║
+ * ║  The data lives in the OS page cache, not the Java heap, and a restarted    ║
+ * ║  node serves lookups as soon as the index is read.                          ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ *
+ * Files are written to a temp file, fsync'd and renamed into place
+ * (ATOMIC_MOVE), so a reader only ever opens a complete file. A mapping stays
+ * valid after its file is replaced. One mapping is limited to 2 GB: beyond
+ * that, store one file per prefix range (see ShardManager).
+ */
+final class MappedTrieFile {
+    
+    private static final int MAGIC = 0x41435431;  // "ACT1"
+    private static final int HEADER_BYTES = 40;
+    static final int BLOCK_ENTRIES = 64;
+    private static final int FUZZY_BUDGET_CHECK_INTERVAL = 64;   // Entries between clock reads
+    
+    private final Path path;
+    private final MappedByteBuffer buffer;   // Read with absolute gets only (shared by readers)
+    private final int topK;
+    private final long version;
+    private final int prefixCount;
+    private final int wordCount;
+    private final int entriesOffset;
+    private final int indexOffset;
+    private final String[] blockFirstPrefix;
+    private final int[] blockOffset;
+    
+    /** Same mapping and block index as base, under a new version */
+    private MappedTrieFile(MappedTrieFile base, long version) {
+        this.path = base.path;
+        this.buffer = base.buffer;
+        this.topK = base.topK;
+        this.version = version;
+        this.prefixCount = base.prefixCount;
+        this.wordCount = base.wordCount;
+        this.entriesOffset = base.entriesOffset;
+        this.indexOffset = base.indexOffset;
+        this.blockFirstPrefix = base.blockFirstPrefix;
+        this.blockOffset = base.blockOffset;
+    }
+    
+    private MappedTrieFile(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a trie file: " + path);
+        }
+        this.topK = buffer.getInt(4);
+        this.version = buffer.getLong(8);
+        this.prefixCount = buffer.getInt(16);
+        this.wordCount = buffer.getInt(20);
+        int blockCount = buffer.getInt(24);
+        this.entriesOffset = buffer.getInt(32);
+        this.indexOffset = buffer.getInt(36);
+        
+        // Block index: the only part copied into heap
+        this.blockFirstPrefix = new String[blockCount];
+        this.blockOffset = new int[blockCount];
+        int pos = indexOffset;
+        for (int b = 0; b < blockCount; b++) {
+            blockOffset[b] = buffer.getInt(pos);
+            int length = buffer.getShort(pos + 4) & 0xFFFF;
+            blockFirstPrefix[b] = readString(pos + 6, length);
+            pos += 6 + length;
+        }
+    }
+    
+    // ===== Write =====
+    
+    /**
+     * Write the trie's prefix → top-k table to `path` (temp file + atomic rename).
+     */
+    static void write(Path path, Trie trie, long version) {
+        if (trie.getTopK() > 255) {
+            throw new IllegalArgumentException("topK must fit in one byte: " + trie.getTopK());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CountingOutput out = new CountingOutput(channel);
+            out.skip(HEADER_BYTES);
+            
+            // Words, sorted; remember each word's offset for the entries
+            Map<String, Integer> wordOffsets = new HashMap<>();
+            forEachNode(trie.getRoot(), new StringBuilder(), (prefix, node) -> {
+                if (node.isEndOfWord()) {
+                    wordOffsets.put(node.getWord(), out.position());
+                    out.writeString(node.getWord());
+                    out.writeInt(node.getFrequency());
+                }
+            });
+            
+            // Entries, sorted by prefix; every BLOCK_ENTRIES-th starts a block
+            int entriesOffset = out.position();
+            List<String> blockPrefixes = new ArrayList<>();
+            List<Integer> blockOffsets = new ArrayList<>();
+            int[] prefixCount = new int[1];
+            forEachNode(trie.getRoot(), new StringBuilder(), (prefix, node) -> {
+                List<Suggestion> topK = node.getTopKCache();
+                if (topK.isEmpty()) {
+                    return;
+                }
+                if (prefixCount[0]++ % BLOCK_ENTRIES == 0) {
+                    blockPrefixes.add(prefix);
+                    blockOffsets.add(out.position());
+                }
+                out.writeString(prefix);
+                out.writeByte(topK.size());
+                for (Suggestion suggestion : topK) {
+                    out.writeInt(wordOffsets.get(suggestion.getWord()));
+                }
+            });
+            
+            int indexOffset = out.position();
+            for (int b = 0; b < blockPrefixes.size(); b++) {
+                out.writeInt(blockOffsets.get(b));
+                out.writeString(blockPrefixes.get(b));
+            }
+            out.flush();
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(trie.getTopK()).putLong(version)
+                .putInt(prefixCount[0]).putInt(wordOffsets.size()).putInt(blockPrefixes.size())
+                .putInt(HEADER_BYTES).putInt(entriesOffset).putInt(indexOffset).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write trie file " + tmp, e);
+        }
+        publish(tmp, path);
+    }
+    
+    /**
+     * Bump the version in place: one 8-byte header write + fsync, no data rewritten.
+     * The write is sector-aligned, so a crash leaves either the old or the new
+     * version. Returns a view sharing this mapping and index under the new version;
+     * this object keeps reporting the version it was opened with.
+     */
+    MappedTrieFile withVersion(long newVersion) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer versionBytes = ByteBuffer.allocate(Long.BYTES).putLong(newVersion);
+            versionBytes.flip();
+            channel.write(versionBytes, 8);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bump version of trie file " + path, e);
+        }
+        return new MappedTrieFile(this, newVersion);
+    }
+    
+    private static void publish(Path tmp, Path path) {
+        try {
+            // Readers never see a partial file; open mappings keep the old one alive
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to publish trie file " + path, e);
+        }
+    }
+    
+    /**
+     * Pre-order DFS with children in char order = prefixes in sorted order.
+     */
+    private static void forEachNode(TrieNode node, StringBuilder prefix, BiConsumer<String, TrieNode> visitor) {
+        visitor.accept(prefix.toString(), node);
+        Map<Character, TrieNode> children = node.getChildren();
+        if (children.isEmpty()) {
+            return;
+        }
+        Character[] keys = children.keySet().toArray(new Character[0]);
+        Arrays.sort(keys);
+        for (Character c : keys) {
+            prefix.append(c.charValue());
+            forEachNode(children.get(c), prefix, visitor);
+            prefix.setLength(prefix.length() - 1);
+        }
+    }
+    
+    // ===== Read =====
+    
+    static MappedTrieFile open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Trie file over 2 GB, split it by prefix range: " + path);
+            }
+            return new MappedTrieFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map trie file " + path, e);
+        }
+    }
+    
+    /**
+     * Top-k for a normalized prefix, or an empty list.
+     */
+    List<Suggestion> get(String prefix) {
+        // Last block whose first prefix ≤ prefix
+        int low = 0, high = blockFirstPrefix.length - 1, block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blockFirstPrefix[mid].compareTo(prefix) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return Collections.emptyList();
+        }
+        
+        int pos = blockOffset[block];
+        int end = block + 1 < blockOffset.length ? blockOffset[block + 1] : indexOffset;
+        while (pos < end) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            int cmp = compareKey(pos + 2, length, prefix);
+            int count = buffer.get(pos + 2 + length) & 0xFF;
+            if (cmp == 0) {
+                return readSuggestions(pos + 3 + length, count);
+            }
+            if (cmp > 0) {
+                break;  // Entries are sorted: the prefix isn't stored
+            }
+            pos += 3 + length + 4 * count;
+        }
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Typo-tolerant top-k walked over the mapped entries, without a heap trie
+     * (same matching and ranking as Trie.getFuzzySuggestions).
+     * 
+     * Entries are the trie's nodes in pre-order, so the entry for a key of
+     * length L extends the path of the entries before it and needs only DP
+     * row L. A pruned subtree is one key range, skipped with one seek; the
+     * exact prefix is collected first, so the budget can't cut it short.
+     * 
+     * @param query Normalized prefix, possibly misspelled
+     */
+    Trie.FuzzyResult fuzzySuggestions(String query, int maxEdits, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        char[] typed = query.toCharArray();
+        int[][] rows = new int[typed.length + maxEdits + 1][typed.length + 1];
+        char[] path = new char[rows.length];
+        for (int j = 0; j <= typed.length; j++) {
+            rows[0][j] = j;
+        }
+        Trie.FuzzyTopK best = new Trie.FuzzyTopK(topK);
+        best.collect(get(query), 0);
+        
+        int visited = 0;
+        boolean truncated = false;
+        int pos = entriesOffset;
+        while (pos < indexOffset) {
+            if (++visited % FUZZY_BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                truncated = true;
+                break;
+            }
+            int depth = buffer.getShort(pos) & 0xFFFF;
+            int count = buffer.get(pos + 2 + depth) & 0xFF;
+            int next = pos + 3 + depth + 4 * count;
+            if (depth == 0) {
+                pos = next;  // Root: every key extends it
+                continue;
+            }
+            char c = (char) (buffer.get(pos + 1 + depth) & 0xFF);
+            path[depth - 1] = c;
+            int min = Trie.fillRow(rows, path, typed, depth, c);
+            
+            boolean descend = min <= maxEdits;
+            int edits = rows[depth][typed.length];
+            if (descend && edits <= maxEdits) {
+                collect(pos + 3 + depth, count, edits, best);
+                descend = edits != min;  // descendants can't match with fewer edits
+            }
+            descend = descend && depth + 1 < rows.length && count > 0
+                && best.canEnter(readFrequency(buffer.getInt(pos + 3 + depth)), min);
+            pos = descend ? next : skipSubtree(pos, depth, next);
+        }
+        return new Trie.FuzzyResult(best.toList(), !truncated, visited);
+    }
+    
+    /**
+     * Offer an entry's suggestions, decoding words only while they can still
+     * enter the top-k (the list is sorted by frequency).
+     */
+    private void collect(int pos, int count, int edits, Trie.FuzzyTopK best) {
+        for (int i = 0; i < count; i++) {
+            int word = buffer.getInt(pos + 4 * i);
+            int frequency = readFrequency(word);
+            if (!best.canEnter(frequency, edits)) {
+                return;
+            }
+            best.offer(new Suggestion(readString(word + 2, buffer.getShort(word) & 0xFFFF), frequency), edits);
+        }
+    }
+    
+    private int readFrequency(int word) {
+        return buffer.getInt(word + 2 + (buffer.getShort(word) & 0xFFFF));
+    }
+    
+    /**
+     * Position of the first entry after the subtree of the entry at `pos`.
+     * Keys are a-z, so every key in the subtree sorts before key + '{'.
+     */
+    private int skipSubtree(int pos, int depth, int next) {
+        if (next >= indexOffset || (buffer.getShort(next) & 0xFFFF) <= depth) {
+            return next;  // Leaf or no stored descendants: the next entry is already outside
+        }
+        return seek(readString(pos + 2, depth) + '{', next);
+    }
+    
+    /**
+     * Position of the first entry at or after `from` whose key is ≥ target
+     * (indexOffset if none); keys before `from` must all be < target.
+     */
+    private int seek(String target, int from) {
+        int low = 0, high = blockFirstPrefix.length - 1, block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blockFirstPrefix[mid].compareTo(target) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int pos = Math.max(from, blockOffset.length > 0 ? blockOffset[block] : indexOffset);
+        while (pos < indexOffset) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            if (compareKey(pos + 2, length, target) >= 0) {
+                break;
+            }
+            pos += 3 + length + 4 * (buffer.get(pos + 2 + length) & 0xFF);
+        }
+        return pos;
+    }
+    
+    /**
+     * Visit the first `limit` stored prefixes with their top-k, in sorted order.
+     */
+    void forEachEntry(int limit, BiConsumer<String, List<Suggestion>> visitor) {
+        int pos = entriesOffset;
+        for (int visited = 0; visited < limit && pos < indexOffset; visited++) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            int count = buffer.get(pos + 2 + length) & 0xFF;
+            visitor.accept(readString(pos + 2, length), readSuggestions(pos + 3 + length, count));
+            pos += 3 + length + 4 * count;
+        }
+    }
+    
+    /**
+     * Every word with its frequency (rebuilds a Trie after a cold start).
+     */
+    Map<String, Integer> readWords() {
+        Map<String, Integer> words = new HashMap<>(wordCount * 2);
+        int pos = HEADER_BYTES;
+        for (int i = 0; i < wordCount; i++) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            words.put(readString(pos + 2, length), buffer.getInt(pos + 2 + length));
+            pos += 6 + length;
+        }
+        return words;
+    }
+    
+    private List<Suggestion> readSuggestions(int pos, int count) {
+        Suggestion[] suggestions = new Suggestion[count];
+        for (int i = 0; i < count; i++) {
+            int word = buffer.getInt(pos + 4 * i);
+            int length = buffer.getShort(word) & 0xFFFF;
+            suggestions[i] = new Suggestion(readString(word + 2, length), buffer.getInt(word + 2 + length));
+        }
+        return Collections.unmodifiableList(Arrays.asList(suggestions));
+    }
+    
+    /**
+     * Compare the stored key bytes with a prefix without decoding the key
+     * (keys are normalized a-z, so bytes and chars order the same way).
+     */
+    private int compareKey(int pos, int length, String prefix) {
+        int common = Math.min(length, prefix.length());
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(pos + i) & 0xFF) - prefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - prefix.length();
+    }
+    
+    private String readString(int pos, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(pos + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    Path getPath() {
+        return path;
+    }
+    
+    int getTopK() {
+        return topK;
+    }
+    
+    long getVersion() {
+        return version;
+    }
+    
+    int getPrefixCount() {
+        return prefixCount;
+    }
+    
+    int getWordCount() {
+        return wordCount;
+    }
+    
+    long getSizeBytes() {
+        return buffer.capacity();
+    }
+    
+    /**
+     * Buffered writer that tracks the file offset of what it writes.
+     */
+    private static final class CountingOutput {
+        private final DataOutputStream out;
+        private long position;
+        
+        CountingOutput(FileChannel channel) {
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        }
+        
+        int position() {
+            if (position > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Trie file over 2 GB, split it by prefix range");
+            }
+            return (int) position;
+        }
+        
+        void skip(int bytes) {
+            try {
+                out.write(new byte[bytes]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += bytes;
+        }
+        
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            try {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += 2 + bytes.length;
+        }
+        
+        void writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += 4;
+        }
+        
+        void writeByte(int value) {
+            try {
+                out.writeByte(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += 1;
+        }
+        
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.autocomplete.storage;
 import com.autocomplete.cache.TrieCache;
 import com.autocomplete.trie.TrieNode.Suggestion;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * ShardManager - Manages sharding for the autocomplete system.
@@ -39,6 +42,16 @@ import java.util.*;
  * ║     - 's' has 20% of queries → gets its own shard                          ║
  * ║     - 'u', 'v', 'w', 'x', 'y', 'z' combined = 20% → share one shard        ║
  * ║                                                                               ║
+ * ║  3. LOAD-AWARE: re-split ranges on live QPS (rebalance())                   ║
+ * ║     ──────────────────────────────────────────────────────                  ║
+ * ║     - Requests are counted per range key (prefix cut to splitDepth chars)   ║
+ * ║       and smoothed into QPS once per rebalance() call                       ║
+ * ║     - If the busiest shard exceeds imbalanceThreshold × average, the        ║
+ * ║       sorted range keys are cut into contiguous ranges of similar QPS;      ║
+ * ║       each range stays on the shard already serving most of it              ║
+ * ║     - Migration: new owners preload the hottest moved prefixes, the         ║
+ * ║       routing table is swapped atomically, old owners then evict them       ║
+ * ║                                                                               ║
  * ║  ┌─────────────┐   ① What shard?    ┌─────────────────┐                     ║
  * ║  │ Web Servers │ ─────────────────► │ Shard Map       │                     ║
  * ║  └──────┬──────┘                    │ Manager         │                     ║
@@ -53,8 +66,8 @@ import java.util.*;
  */
 public class ShardManager {
     
-    // Shard map: prefix range → shard ID
-    private final Map<String, Integer> shardMap;
+    // Routing table: prefix range → shard ID, replaced as a whole
+    private final AtomicReference<RoutingTable> routing;
     
     // Shards: shard ID → TrieCache
     private final Map<Integer, TrieCache> shards;
@@ -62,11 +75,32 @@ public class ShardManager {
     // Number of shards
     private final int numShards;
     
+    // Live load: requests per range key (prefix cut to splitDepth chars) and per full prefix
+    private final Map<String, LongAdder> rangeHits;
+    private final Map<String, LongAdder> prefixHits;
+    private final TreeMap<String, Double> rangeQps;  // Smoothed QPS per range key (guarded by this)
+    private long windowStartNanos;
+    
+    private int splitDepth = DEFAULT_SPLIT_DEPTH;
+    private double imbalanceThreshold = DEFAULT_IMBALANCE_THRESHOLD;
+    private long rebalances;
+    private long movedPrefixes;
+    
+    private static final int DEFAULT_SPLIT_DEPTH = 2;
+    private static final double DEFAULT_IMBALANCE_THRESHOLD = 1.25;
+    private static final double QPS_SMOOTHING = 0.5;        // Weight of the latest window
+    private static final int MAX_TRACKED_PREFIXES = 10_000;  // Bounds prefixHits memory
+    private static final int MAX_WARM_PREFIXES = 1_000;      // Preloaded per rebalance
+    
     // Default: 26 shards (one per letter) - simple approach
     public ShardManager(int numShards) {
         this.numShards = numShards;
-        this.shardMap = new HashMap<>();
-        this.shards = new HashMap<>();
+        this.routing = new AtomicReference<>();
+        this.shards = new ConcurrentHashMap<>();
+        this.rangeHits = new ConcurrentHashMap<>();
+        this.prefixHits = new ConcurrentHashMap<>();
+        this.rangeQps = new TreeMap<>();
+        this.windowStartNanos = System.nanoTime();
         
         initializeDefaultSharding();
     }
@@ -78,8 +112,12 @@ public class ShardManager {
      */
     public ShardManager(Map<Character, Double> queryDistribution, int numShards) {
         this.numShards = numShards;
-        this.shardMap = new HashMap<>();
-        this.shards = new HashMap<>();
+        this.routing = new AtomicReference<>();
+        this.shards = new ConcurrentHashMap<>();
+        this.rangeHits = new ConcurrentHashMap<>();
+        this.prefixHits = new ConcurrentHashMap<>();
+        this.rangeQps = new TreeMap<>();
+        this.windowStartNanos = System.nanoTime();
         
         initializeSmartSharding(queryDistribution);
     }
@@ -90,6 +128,7 @@ public class ShardManager {
     private void initializeDefaultSharding() {
         System.out.println(String.format("\n[ShardManager] Initializing %d shards (simple sharding)...", numShards));
         
+        Map<String, Integer> shardMap = new HashMap<>();
         int lettersPerShard = 26 / numShards;
         int currentShard = 0;
         
@@ -101,6 +140,7 @@ public class ShardManager {
             }
         }
         
+        routing.set(RoutingTable.of(shardMap, 1));
         printShardMapping();
     }
     
@@ -111,6 +151,7 @@ public class ShardManager {
     private void initializeSmartSharding(Map<Character, Double> distribution) {
         System.out.println(String.format("\n[ShardManager] Initializing %d shards (smart sharding)...", numShards));
         
+        Map<String, Integer> shardMap = new HashMap<>();
         double targetPerShard = 100.0 / numShards;
         int currentShard = 0;
         double currentLoad = 0;
@@ -141,6 +182,7 @@ public class ShardManager {
             }
         }
         
+        routing.set(RoutingTable.of(shardMap, 1));
         printShardMapping();
     }
     
@@ -156,12 +198,8 @@ public class ShardManager {
      * Get the shard ID for a prefix.
      */
     public int getShardId(String prefix) {
-        if (prefix == null || prefix.isEmpty()) {
-            return 0;
-        }
-        
-        String firstChar = String.valueOf(prefix.toLowerCase().charAt(0));
-        return shardMap.getOrDefault(firstChar, 0);
+        String key = normalize(prefix);
+        return key.isEmpty() ? 0 : routing.get().shardFor(key);
     }
     
     /**
@@ -174,31 +212,291 @@ public class ShardManager {
     
     /**
      * Get suggestions from the appropriate shard.
+     * Counts the request towards its prefix range's live QPS.
      */
     public List<Suggestion> getSuggestions(String prefix) {
-        TrieCache cache = getCacheForPrefix(prefix);
+        String key = normalize(prefix);
+        int shardId = 0;
+        if (!key.isEmpty()) {
+            shardId = routing.get().shardFor(key);
+            recordRequest(key);
+        }
+        
+        TrieCache cache = shards.get(shardId);
         if (cache == null) {
-            System.out.println(String.format("[ShardManager] No cache for shard %d", getShardId(prefix)));
+            System.out.println(String.format("[ShardManager] No cache for shard %d", shardId));
             return Collections.emptyList();
         }
         return cache.getSuggestions(prefix);
     }
     
+    private void recordRequest(String key) {
+        String rangeKey = key.length() > splitDepth ? key.substring(0, splitDepth) : key;
+        rangeHits.computeIfAbsent(rangeKey, k -> new LongAdder()).increment();
+        
+        LongAdder hits = prefixHits.get(key);
+        if (hits == null && prefixHits.size() < MAX_TRACKED_PREFIXES) {
+            hits = prefixHits.computeIfAbsent(key, k -> new LongAdder());
+        }
+        if (hits != null) {
+            hits.increment();
+        }
+    }
+    
+    // ===== Load-Aware Rebalancing =====
+    
+    /**
+     * Smoothed QPS per prefix range key (prefix cut to splitDepth chars), as of
+     * the last rebalance(). Read-only: only rebalance() closes measurement windows.
+     */
+    public synchronized Map<String, Double> getPrefixQps() {
+        return new TreeMap<>(rangeQps);
+    }
+    
+    /**
+     * Smoothed QPS per shard under the current routing table, as of the last
+     * rebalance(). Read-only: only rebalance() closes measurement windows.
+     */
+    public synchronized double[] getShardQps() {
+        return routing.get().shardLoads(rangeQps, numShards);
+    }
+    
+    /**
+     * Re-split prefix ranges so every shard gets a similar share of live QPS,
+     * and move the affected ranges between TrieCaches (see LOAD-AWARE in the class comment).
+     * 
+     * @return true if a new routing table was published
+     */
+    public synchronized boolean rebalance() {
+        sampleLoad();
+        Map<String, Long> hotPrefixes = drainPrefixHits();
+        
+        RoutingTable current = routing.get();
+        double[] load = current.shardLoads(rangeQps, numShards);
+        double total = sum(load);
+        if (total <= 0 || max(load) <= imbalanceThreshold * total / numShards) {
+            return false;
+        }
+        
+        RoutingTable proposed = partition(current, total);
+        double[] newLoad = proposed.shardLoads(rangeQps, numShards);
+        if (max(newLoad) >= max(load)) {
+            return false;  // Load sits on one key that can't be split at this depth
+        }
+        
+        migrate(current, proposed, hotPrefixes);
+        rebalances++;
+        System.out.println(String.format(
+            "[ShardManager] Rebalanced (table v%d): max shard load %.0f%% → %.0f%% of average",
+            proposed.version, 100 * max(load) * numShards / total, 100 * max(newLoad) * numShards / total));
+        printShardMapping();
+        return true;
+    }
+    
+    /**
+     * Fold the counts of the window that just ended into the smoothed QPS.
+     * Called only by rebalance(), so windows have the rebalance period's length.
+     */
+    private void sampleLoad() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - windowStartNanos) / 1e9);
+        windowStartNanos = now;
+        
+        Set<String> keys = new HashSet<>(rangeQps.keySet());
+        keys.addAll(rangeHits.keySet());
+        for (String key : keys) {
+            LongAdder hits = rangeHits.get(key);
+            double qps = hits == null ? 0 : hits.sumThenReset() / seconds;
+            Double previous = rangeQps.get(key);
+            double smoothed = previous == null ? qps : QPS_SMOOTHING * qps + (1 - QPS_SMOOTHING) * previous;
+            if (smoothed < 0.01) {
+                rangeQps.remove(key);
+                rangeHits.remove(key);
+            } else {
+                rangeQps.put(key, smoothed);
+            }
+        }
+    }
+    
+    private Map<String, Long> drainPrefixHits() {
+        Map<String, Long> hot = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : prefixHits.entrySet()) {
+            hot.put(entry.getKey(), entry.getValue().sum());
+        }
+        prefixHits.clear();
+        return hot;
+    }
+    
+    /**
+     * Cut the sorted range keys into at most numShards contiguous ranges of
+     * roughly equal QPS, then give each range to the shard that already
+     * serves most of it (fewest prefixes change owner).
+     */
+    private RoutingTable partition(RoutingTable current, double total) {
+        List<String> starts = new ArrayList<>();
+        List<double[]> overlaps = new ArrayList<>();  // range → QPS it currently sends to each shard
+        starts.add(RoutingTable.FIRST_KEY);
+        double[] overlap = new double[numShards];
+        double remaining = total;
+        double accumulated = 0;
+        
+        for (Map.Entry<String, Double> entry : rangeQps.entrySet()) {
+            double qps = entry.getValue();
+            int shardsLeft = numShards - overlaps.size();
+            // Close the range before this key if adding it would overshoot by more than half of it
+            if (accumulated > 0 && shardsLeft > 1 && accumulated + qps / 2 > remaining / shardsLeft) {
+                overlaps.add(overlap);
+                starts.add(entry.getKey());
+                remaining -= accumulated;
+                accumulated = 0;
+                overlap = new double[numShards];
+            }
+            accumulated += qps;
+            overlap[current.shardFor(entry.getKey())] += qps;
+        }
+        overlaps.add(overlap);
+        
+        return new RoutingTable(starts.toArray(new String[0]), assignShards(overlaps), current.version + 1);
+    }
+    
+    /**
+     * Greedy matching: largest (range, shard) overlap first; leftovers take free shards.
+     */
+    private int[] assignShards(List<double[]> overlaps) {
+        int[] owner = new int[overlaps.size()];
+        Arrays.fill(owner, -1);
+        boolean[] taken = new boolean[numShards];
+        
+        List<int[]> pairs = new ArrayList<>();
+        for (int r = 0; r < owner.length; r++) {
+            for (int s = 0; s < numShards; s++) {
+                if (overlaps.get(r)[s] > 0) {
+                    pairs.add(new int[] {r, s});
+                }
+            }
+        }
+        pairs.sort((a, b) -> Double.compare(overlaps.get(b[0])[b[1]], overlaps.get(a[0])[a[1]]));
+        for (int[] pair : pairs) {
+            if (owner[pair[0]] < 0 && !taken[pair[1]]) {
+                owner[pair[0]] = pair[1];
+                taken[pair[1]] = true;
+            }
+        }
+        
+        int free = 0;
+        for (int r = 0; r < owner.length; r++) {
+            if (owner[r] < 0) {
+                while (taken[free]) {
+                    free++;
+                }
+                owner[r] = free;
+                taken[free] = true;
+            }
+        }
+        return owner;
+    }
+    
+    /**
+     * Warm new owners, swap the table, then drop moved prefixes from old owners.
+     */
+    private void migrate(RoutingTable current, RoutingTable proposed, Map<String, Long> hotPrefixes) {
+        List<Map.Entry<String, Long>> hottest = new ArrayList<>(hotPrefixes.entrySet());
+        hottest.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        
+        Map<Integer, List<String>> warm = new HashMap<>();
+        Map<Integer, List<String>> evict = new HashMap<>();
+        int warmed = 0;
+        for (Map.Entry<String, Long> entry : hottest) {
+            String prefix = entry.getKey();
+            int from = current.shardFor(prefix);
+            int to = proposed.shardFor(prefix);
+            if (from == to) {
+                continue;
+            }
+            evict.computeIfAbsent(from, k -> new ArrayList<>()).add(prefix);
+            if (warmed++ < MAX_WARM_PREFIXES) {
+                warm.computeIfAbsent(to, k -> new ArrayList<>()).add(prefix);
+            }
+            movedPrefixes++;
+        }
+        
+        // 1. New owners load the hot prefixes they are about to receive
+        for (Map.Entry<Integer, List<String>> entry : warm.entrySet()) {
+            TrieCache cache = shards.get(entry.getKey());
+            if (cache != null) {
+                cache.preload(entry.getValue());
+            }
+        }
+        
+        // 2. One atomic swap: in-flight requests finish on the old owner, new ones go to the new owner
+        routing.set(proposed);
+        
+        // 3. Old owners free the moved entries
+        for (Map.Entry<Integer, List<String>> entry : evict.entrySet()) {
+            TrieCache cache = shards.get(entry.getKey());
+            if (cache != null) {
+                entry.getValue().forEach(cache::invalidate);
+            }
+        }
+    }
+    
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+    
+    private static double max(double[] values) {
+        double max = 0;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+    
+    /**
+     * Range keys are cut to this many chars (≥ 2 lets a hot letter split).
+     */
+    public synchronized void setSplitDepth(int splitDepth) {
+        if (splitDepth < 1) {
+            throw new IllegalArgumentException("splitDepth must be >= 1");
+        }
+        this.splitDepth = splitDepth;
+        rangeHits.clear();
+        rangeQps.clear();
+    }
+    
+    /**
+     * Rebalance only when the busiest shard exceeds this multiple of the average.
+     */
+    public synchronized void setImbalanceThreshold(double imbalanceThreshold) {
+        this.imbalanceThreshold = imbalanceThreshold;
+    }
+    
+    /**
+     * The routing table currently in use.
+     */
+    public RoutingTable getRoutingTable() {
+        return routing.get();
+    }
+    
     /**
      * Get shard statistics.
      */
     public Map<String, Object> getStats() {
+        RoutingTable table = routing.get();
         Map<String, Object> stats = new HashMap<>();
         stats.put("numShards", numShards);
         stats.put("registeredShards", shards.size());
-        
-        Map<Integer, List<String>> shardLetters = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : shardMap.entrySet()) {
-            shardLetters.computeIfAbsent(entry.getValue(), k -> new ArrayList<>())
-                .add(entry.getKey());
+        stats.put("shardMapping", table.rangesByShard());
+        stats.put("routingVersion", table.version);
+        synchronized (this) {
+            stats.put("splitDepth", splitDepth);
+            stats.put("rebalances", rebalances);
+            stats.put("movedPrefixes", movedPrefixes);
         }
-        stats.put("shardMapping", shardLetters);
-        
         return stats;
     }
     
@@ -206,20 +504,32 @@ public class ShardManager {
      * Print the shard mapping.
      */
     private void printShardMapping() {
-        Map<Integer, List<String>> shardLetters = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : shardMap.entrySet()) {
-            shardLetters.computeIfAbsent(entry.getValue(), k -> new ArrayList<>())
-                .add(entry.getKey());
-        }
+        Map<Integer, List<String>> shardRanges = routing.get().rangesByShard();
         
         System.out.println("Shard mapping:");
         for (int i = 0; i < numShards; i++) {
-            List<String> letters = shardLetters.getOrDefault(i, Collections.emptyList());
-            Collections.sort(letters);
-            System.out.println(String.format("  Shard %d: %s", i, String.join(", ", letters)));
+            List<String> ranges = shardRanges.getOrDefault(i, Collections.emptyList());
+            System.out.println(String.format("  Shard %d: %s", i, String.join(", ", ranges)));
         }
     }
     
+    /**
+     * Normalize like TrieCache, so routing sees the same key the cache serves.
+     */
+    private static String normalize(String prefix) {
+        if (prefix == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(prefix.length());
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = Character.toLowerCase(prefix.charAt(i));
+            if (c >= 'a' && c <= 'z') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
     /**
      * Get example query distribution (for demo).
      */
@@ -254,5 +564,94 @@ public class ShardManager {
         dist.put('z', 0.5);
         return dist;
     }
+    
+    /**
+     * RoutingTable - Immutable prefix ranges → shard IDs, published as a whole.
+     * Range i covers [starts[i], starts[i + 1]); the last range is open-ended.
+     */
+    public static final class RoutingTable {
+        static final String FIRST_KEY = "a";  // Normalized prefixes are a-z only
+        
+        private final String[] starts;
+        private final int[] shardIds;
+        private final long version;
+        
+        private RoutingTable(String[] starts, int[] shardIds, long version) {
+            this.starts = starts;
+            this.shardIds = shardIds;
+            this.version = version;
+        }
+        
+        /**
+         * Table from a range start → shard map (e.g. one entry per first letter).
+         * A letter missing from the map joins the range before it, i.e. the shard
+         * of the nearest mapped letter below it.
+         */
+        static RoutingTable of(Map<String, Integer> shardMap, long version) {
+            TreeMap<String, Integer> sorted = new TreeMap<>(shardMap);
+            if (!sorted.containsKey(FIRST_KEY)) {
+                sorted.put(FIRST_KEY, 0);  // Letters before the first mapped one go to shard 0
+            }
+            String[] starts = sorted.keySet().toArray(new String[0]);
+            int[] shardIds = sorted.values().stream().mapToInt(Integer::intValue).toArray();
+            return new RoutingTable(starts, shardIds, version);
+        }
+        
+        /**
+         * Shard for a normalized, non-empty prefix: last range start ≤ prefix.
+         */
+        public int shardFor(String prefix) {
+            int low = 0, high = starts.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (starts[mid].compareTo(prefix) <= 0) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return shardIds[low];
+        }
+        
+        public int getRangeCount() {
+            return starts.length;
+        }
+        
+        public long getVersion() {
+            return version;
+        }
+        
+        /**
+         * Sum per-range-key QPS into per-shard QPS.
+         */
+        double[] shardLoads(Map<String, Double> rangeQps, int numShards) {
+            double[] loads = new double[numShards];
+            for (Map.Entry<String, Double> entry : rangeQps.entrySet()) {
+                loads[shardFor(entry.getKey())] += entry.getValue();
+            }
+            return loads;
+        }
+        
+        /**
+         * Shard → its ranges: a lone letter prints as "s", other ranges as "[sa, sm)".
+         */
+        Map<Integer, List<String>> rangesByShard() {
+            Map<Integer, List<String>> ranges = new TreeMap<>();
+            for (int i = 0; i < starts.length; i++) {
+                ranges.computeIfAbsent(shardIds[i], k -> new ArrayList<>()).add(label(i));
+            }
+            return ranges;
+        }
+        
+        private String label(int i) {
+            String start = starts[i];
+            String end = i + 1 < starts.length ? starts[i + 1] : null;
+            boolean singleLetter = start.length() == 1
+                && (end == null ? start.equals("z") : end.length() == 1 && end.charAt(0) == start.charAt(0) + 1);
+            if (singleLetter) {
+                return start;
+            }
+            return end != null ? "[" + start + ", " + end + ")" : "[" + start + ", z]";
+        }
+    }
 }
-
@@ -3,8 +3,13 @@ package com.autocomplete.storage;
 import com.autocomplete.trie.Trie;
 import com.autocomplete.trie.TrieNode;
 import com.autocomplete.trie.TrieNode.Suggestion;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * TrieDB - Persistent storage for the Trie.
@@ -36,70 +41,180 @@ import java.util.concurrent.atomic.AtomicLong;
  * ║  - Cache-friendly: Each key is independently cacheable                      ║
  * ║                                                                               ║
  * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  COPY-ON-WRITE SNAPSHOTS                                                     ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  All readable state (prefix → top-k map, source trie, version, counters)     ║
+ * ║  lives in one immutable Snapshot behind an AtomicReference:                  ║
+ * ║                                                                               ║
+ * ║    worker:  build new map off to the side → current.set(newSnapshot)         ║
+ * ║    reader:  current.get() → lookup   (no lock, never sees a half-built map)  ║
+ * ║                                                                               ║
+ * ║  The old snapshot stays valid for readers still holding it and is GC'd      ║
+ * ║  once they finish. Published tries must not be mutated: workers update      ║
+ * ║  a path copy (Trie.withUpdates) and publish that.                           ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  PERSISTENT MODE: new TrieDB(directory)                                      ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  Snapshots are backed by directory/trie.dat (see MappedTrieFile): a sorted  ║
+ * ║  prefix → top-k file with a block index, memory-mapped for reads.           ║
+ * ║                                                                               ║
+ * ║  publish / saveTrie:                                                         ║
+ * ║    write trie.dat.tmp → fsync → rename over trie.dat (atomic) → map it      ║
+ * ║    → swap the snapshot; a crash leaves the previous file.                   ║
+ * ║  incrementVersion: rewrite only the 8-byte version in the header + fsync.   ║
+ * ║                                                                               ║
+ * ║  Exact and fuzzy lookups both read from the mapping (fuzzy ones walk the    ║
+ * ║  mapped entries), so snapshots hold no heap trie, cold start or not.        ║
+ * ║  The writer's last trie is kept softly for loadTrie (incremental updates);  ║
+ * ║  if the GC drops it, loadTrie rebuilds it once from the file.               ║
+ * ║                                                                               ║
+ * ║  Trade-off: publish still rewrites the whole file, even for a one-word      ║
+ * ║  update: the format is sorted and immutable, so cost is O(trie size) per    ║
+ * ║  publish. Batch updates per publish rather than publishing per word.        ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
  */
 public class TrieDB {
     
     // In production: This would be Redis, DynamoDB, or Cassandra
-    // Here we store prefix → top-k suggestions (Figure 13-10)
-    private final Map<String, List<Suggestion>> prefixStore;
-    
-    // Store the full trie for incremental updates
-    private Trie currentTrie;
+    // Here we store prefix → top-k suggestions (Figure 13-10), published as immutable snapshots
+    private final AtomicReference<Snapshot> current;
     
-    // Version number (for cache invalidation)
-    private final AtomicLong version;
-    
-    // For tracking storage metrics
-    private int totalPrefixes;
-    private int totalWords;
+    // Persistent mode: backing file (null = heap only)
+    private final Path file;
+    private static final String FILE_NAME = "trie.dat";
     
     public TrieDB() {
-        this.prefixStore = new HashMap<>();
-        this.version = new AtomicLong(0);
-        this.totalPrefixes = 0;
-        this.totalWords = 0;
+        this.current = new AtomicReference<>(Snapshot.EMPTY);
+        this.file = null;
+    }
+    
+    /**
+     * Persistent TrieDB stored in the directory. If it already holds a trie
+     * file, that file is mapped and served right away (cold start).
+     */
+    public TrieDB(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create " + directory, e);
+        }
+        this.file = directory.resolve(FILE_NAME);
+        
+        Snapshot initial = Snapshot.EMPTY;
+        if (Files.exists(file)) {
+            long start = System.nanoTime();
+            initial = new Snapshot(MappedTrieFile.open(file), new SoftReference<>(null));
+            System.out.println(String.format("[TrieDB] Opened %s: version %d, %d prefixes in %.1f ms",
+                file, initial.version, initial.totalPrefixes, (System.nanoTime() - start) / 1e6));
+        }
+        this.current = new AtomicReference<>(initial);
     }
     
     /**
      * Save a trie to the database.
-     * Converts the trie to key-value format (Figure 13-10).
+     * Converts the trie to key-value format (Figure 13-10) off to the side,
+     * then swaps it in atomically. The version is left unchanged (see publish).
      */
     public void saveTrie(Trie trie) {
         System.out.println("\n[TrieDB] Saving trie to database...");
         
-        this.currentTrie = trie;
-        prefixStore.clear();
+        Snapshot saved;
+        if (file != null) {
+            saved = persist(trie, false);
+        } else {
+            Snapshot built = buildSnapshot(trie);
+            saved = current.updateAndGet(old -> built.withVersion(old.version));
+        }
+        System.out.println(String.format("[TrieDB] Stored %d prefixes", saved.totalPrefixes));
+    }
+    
+    /**
+     * Save a trie and bump the version in a single swap, so readers never see
+     * new data under the old version (or the reverse).
+     * 
+     * @return The new version
+     */
+    public long publish(Trie trie) {
+        System.out.println("\n[TrieDB] Publishing new trie snapshot...");
+        
+        Snapshot published;
+        if (file != null) {
+            published = persist(trie, true);
+        } else {
+            Snapshot built = buildSnapshot(trie);
+            published = current.updateAndGet(old -> built.withVersion(old.version + 1));
+        }
+        System.out.println(String.format("[TrieDB] Published version %d: %d prefixes",
+            published.version, published.totalPrefixes));
+        return published.version;
+    }
+    
+    /**
+     * Persistent mode: write the file, rename it into place, map it, swap the snapshot.
+     * Serialized so concurrent writers can't publish the same version twice.
+     */
+    private synchronized Snapshot persist(Trie trie, boolean bumpVersion) {
+        long version = current.get().version + (bumpVersion ? 1 : 0);
+        MappedTrieFile.write(file, trie, version);
+        Snapshot snapshot = new Snapshot(MappedTrieFile.open(file), new SoftReference<>(trie));
+        current.set(snapshot);
+        return snapshot;
+    }
+    
+    private Snapshot buildSnapshot(Trie trie) {
+        Map<String, List<Suggestion>> prefixStore = new HashMap<>();
+        int[] totalWords = new int[1];
         
         // Traverse trie and store each prefix's top-k
-        traverseAndStore(trie.getRoot(), "");
+        traverseAndStore(trie.getRoot(), new StringBuilder(), prefixStore, totalWords);
         
-        totalPrefixes = prefixStore.size();
-        System.out.println(String.format("[TrieDB] Stored %d prefixes", totalPrefixes));
+        return new Snapshot(Collections.unmodifiableMap(prefixStore), trie, 0, totalWords[0]);
     }
     
-    private void traverseAndStore(TrieNode node, String prefix) {
+    private void traverseAndStore(TrieNode node, StringBuilder prefix,
+                                  Map<String, List<Suggestion>> prefixStore, int[] totalWords) {
         // Store top-k for this prefix (if not empty)
         List<Suggestion> topK = node.getTopKCache();
         if (!topK.isEmpty()) {
-            prefixStore.put(prefix, new ArrayList<>(topK));
+            prefixStore.put(prefix.toString(), Collections.unmodifiableList(new ArrayList<>(topK)));
         }
         
         // Count words
         if (node.isEndOfWord()) {
-            totalWords++;
+            totalWords[0]++;
         }
         
         // Recurse to children
         for (Map.Entry<Character, TrieNode> entry : node.getChildren().entrySet()) {
-            traverseAndStore(entry.getValue(), prefix + entry.getKey());
+            prefix.append(entry.getKey());
+            traverseAndStore(entry.getValue(), prefix, prefixStore, totalWords);
+            prefix.setLength(prefix.length() - 1);
         }
     }
     
     /**
      * Load the trie from database.
+     * The returned trie may be shared: update it with Trie.withUpdates, never in place.
+     * In persistent mode it is rebuilt from the file's word table after a cold
+     * start or once the GC has dropped the writer's copy.
      */
     public Trie loadTrie() {
-        return currentTrie;
+        return current.get().walkableTrie();
+    }
+    
+    /**
+     * Current immutable snapshot (consistent data + version for a reader).
+     */
+    public Snapshot getSnapshot() {
+        return current.get();
     }
     
     /**
@@ -110,15 +225,20 @@ public class TrieDB {
      * @return List of suggestions, or empty if not found
      */
     public List<Suggestion> getSuggestionsForPrefix(String prefix) {
-        prefix = prefix.toLowerCase().replaceAll("[^a-z]", "");
-        return prefixStore.getOrDefault(prefix, Collections.emptyList());
+        return current.get().getSuggestions(prefix);
     }
     
     /**
      * Get all prefixes (for debugging/testing).
      */
     public Set<String> getAllPrefixes() {
-        return new HashSet<>(prefixStore.keySet());
+        Snapshot snapshot = current.get();
+        if (snapshot.file != null) {
+            Set<String> prefixes = new HashSet<>();
+            snapshot.file.forEachEntry(Integer.MAX_VALUE, (prefix, topK) -> prefixes.add(prefix));
+            return prefixes;
+        }
+        return new HashSet<>(snapshot.prefixStore.keySet());
     }
     
     /**
@@ -126,34 +246,56 @@ public class TrieDB {
      * Used for cache invalidation.
      */
     public long getVersion() {
-        return version.get();
+        return current.get().version;
     }
     
     /**
      * Increment version (triggers cache refresh).
      */
     public long incrementVersion() {
-        return version.incrementAndGet();
+        if (file != null) {
+            return persistVersionBump();
+        }
+        return current.updateAndGet(old -> old.withVersion(old.version + 1)).version;
+    }
+    
+    /**
+     * Persistent mode: the bump rewrites only the version in the file header.
+     */
+    private synchronized long persistVersionBump() {
+        Snapshot old = current.get();
+        if (old.file == null) {
+            current.set(old.withVersion(old.version + 1));  // Nothing stored yet
+            return old.version + 1;
+        }
+        Snapshot bumped = new Snapshot(old.file.withVersion(old.version + 1), old.sourceTrie);
+        current.set(bumped);
+        return bumped.version;
     }
     
     /**
      * Get storage statistics.
      */
     public Map<String, Object> getStats() {
+        Snapshot snapshot = current.get();
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalPrefixes", totalPrefixes);
-        stats.put("totalWords", totalWords);
-        stats.put("version", version.get());
-        stats.put("storeSizeBytes", estimateStorageSize());
+        stats.put("totalPrefixes", snapshot.totalPrefixes);
+        stats.put("totalWords", snapshot.totalWords);
+        stats.put("version", snapshot.version);
+        stats.put("storeSizeBytes", estimateStorageSize(snapshot));
+        stats.put("storage", file != null ? "mmap " + file : "heap");
         return stats;
     }
     
     /**
      * Estimate storage size (for capacity planning).
      */
-    private long estimateStorageSize() {
+    private long estimateStorageSize(Snapshot snapshot) {
+        if (snapshot.file != null) {
+            return snapshot.file.getSizeBytes();
+        }
         long size = 0;
-        for (Map.Entry<String, List<Suggestion>> entry : prefixStore.entrySet()) {
+        for (Map.Entry<String, List<Suggestion>> entry : snapshot.prefixStore.entrySet()) {
             // Key size
             size += entry.getKey().length() * 2;  // chars are 2 bytes
             // Value size: each suggestion ~50 bytes average
@@ -166,15 +308,126 @@ public class TrieDB {
      * Print database contents (for debugging).
      */
     public void printContents() {
+        Snapshot snapshot = current.get();
         System.out.println("\n=== TRIE DB CONTENTS ===");
-        System.out.println(String.format("Version: %d", version.get()));
-        System.out.println(String.format("Total prefixes: %d", totalPrefixes));
-        System.out.println(String.format("Total words: %d", totalWords));
+        System.out.println(String.format("Version: %d", snapshot.version));
+        System.out.println(String.format("Total prefixes: %d", snapshot.totalPrefixes));
+        System.out.println(String.format("Total words: %d", snapshot.totalWords));
         
         System.out.println("\nSample prefixes:");
-        prefixStore.entrySet().stream()
+        if (snapshot.file != null) {
+            snapshot.file.forEachEntry(10, (prefix, topK) ->
+                System.out.println(String.format("  '%s' → %s", prefix, topK)));
+            return;
+        }
+        snapshot.prefixStore.entrySet().stream()
             .limit(10)
             .forEach(e -> System.out.println(String.format("  '%s' → %s", e.getKey(), e.getValue())));
     }
+    
+    /**
+     * Snapshot - One immutable, published version of the trie DB.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), null, 0, 0);
+        
+        private final Map<String, List<Suggestion>> prefixStore;  // Heap mode
+        private final MappedTrieFile file;                        // Persistent mode
+        private final Trie trie;                                  // Heap mode
+        private volatile SoftReference<Trie> sourceTrie;          // Persistent mode, for loadTrie only
+        private final long version;
+        private final int totalPrefixes;
+        private final int totalWords;
+        
+        private Snapshot(Map<String, List<Suggestion>> prefixStore, Trie trie, long version, int totalWords) {
+            this.prefixStore = prefixStore;
+            this.file = null;
+            this.trie = trie;
+            this.version = version;
+            this.totalPrefixes = prefixStore.size();
+            this.totalWords = totalWords;
+        }
+        
+        private Snapshot(MappedTrieFile file, SoftReference<Trie> sourceTrie) {
+            this.prefixStore = null;
+            this.file = file;
+            this.trie = null;
+            this.sourceTrie = sourceTrie;
+            this.version = file.getVersion();
+            this.totalPrefixes = file.getPrefixCount();
+            this.totalWords = file.getWordCount();
+        }
+        
+        private Snapshot withVersion(long newVersion) {
+            return new Snapshot(prefixStore, trie, newVersion, totalWords);
+        }
+        
+        public List<Suggestion> getSuggestions(String prefix) {
+            prefix = prefix.toLowerCase().replaceAll("[^a-z]", "");
+            if (file != null) {
+                return file.get(prefix);
+            }
+            return prefixStore.getOrDefault(prefix, Collections.emptyList());
+        }
+        
+        /**
+         * Typo-tolerant lookup (Trie.getFuzzySuggestions). Persistent snapshots
+         * have no heap trie: the walk runs over the mapped file instead.
+         */
+        public Trie.FuzzyResult getFuzzySuggestions(String prefix, int maxEdits, long budgetNanos) {
+            if (trie != null) {
+                return trie.getFuzzySuggestions(prefix, maxEdits, budgetNanos);
+            }
+            String normalized = prefix == null ? "" : prefix.toLowerCase().replaceAll("[^a-z]", "");
+            if (file == null || normalized.isEmpty()) {
+                return new Trie.FuzzyResult(Collections.emptyList(), true, 0);  // Empty snapshot
+            }
+            maxEdits = Math.max(0, Math.min(maxEdits, Trie.MAX_EDITS));
+            return file.fuzzySuggestions(normalized, maxEdits, budgetNanos);
+        }
+        
+        /**
+         * The trie behind this snapshot, for loadTrie (the worker's update path,
+         * not the request path). Persistent mode keeps it only softly; when it is
+         * missing it is rebuilt from the mapped file. Null if empty.
+         */
+        private Trie walkableTrie() {
+            if (file == null) {
+                return trie;
+            }
+            Trie built = sourceTrie.get();
+            if (built == null) {
+                synchronized (this) {
+                    built = sourceTrie.get();
+                    if (built == null) {
+                        long start = System.nanoTime();
+                        built = Trie.build(file.readWords(), file.getTopK());
+                        sourceTrie = new SoftReference<>(built);
+                        System.out.println(String.format("[TrieDB] Rebuilt trie from %d words in %.1f ms",
+                            totalWords, (System.nanoTime() - start) / 1e6));
+                    }
+                }
+            }
+            return built;
+        }
+        
+        public long getVersion() {
+            return version;
+        }
+        
+        /**
+         * Suggestions kept per prefix, or 0 if unknown (empty snapshot).
+         */
+        public int getTopK() {
+            return file != null ? file.getTopK() : trie != null ? trie.getTopK() : 0;
+        }
+        
+        public int getTotalPrefixes() {
+            return totalPrefixes;
+        }
+        
+        public int getTotalWords() {
+            return totalWords;
+        }
+    }
 }
-
@@ -0,0 +1,279 @@
+package com.autocomplete.trie;
+
+import com.autocomplete.trie.TrieNode.Suggestion;
+import java.util.*;
+
+/**
+ * CompactTrie - Read-only, array-backed trie built from Aggregator output.
+ *
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  LAYOUT (nodes numbered in BFS order, no per-node objects)                   ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  labels[i]       char on the edge into node i                                ║
+ * ║  firstChild[i]   children of i are nodes firstChild[i] .. firstChild[i+1]-1  ║
+ * ║                  (BFS keeps siblings contiguous and sorted by label)         ║
+ * ║  topKStart[i]    top-k of i is topKIds[topKStart[i] .. topKStart[i+1]-1]     ║
+ * ║  topKIds[]       int indices into the shared word table                      ║
+ * ║  words[]         one Suggestion per word, sorted lexicographically          ║
+ * ║                                                                               ║
+ * ║  Per node: 2 + 4 + 4 bytes + 4 per cached suggestion                         ║
+ * ║  vs TrieNode: HashMap + boxed Character keys + ArrayList<Suggestion>         ║
+ * ║                                                                               ║
+ * ║  Child lookup: binary search over the sibling labels                        ║
+ * ║  contains / getFrequency: binary search over the sorted word table          ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ *
+ * getAutocompleteSuggestions(prefix, out) fills a caller-owned array and
+ * allocates nothing; the List-returning overload mirrors Trie's API.
+ * Immutable once built, so it is safe to share between reader threads.
+ */
+public class CompactTrie {
+    
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] topKStart;
+    private final int[] topKIds;
+    private final Suggestion[] words;
+    private final int topK;
+    
+    private CompactTrie(char[] labels, int[] firstChild, int[] topKStart, int[] topKIds,
+                        Suggestion[] words, int topK) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.topKStart = topKStart;
+        this.topKIds = topKIds;
+        this.words = words;
+        this.topK = topK;
+    }
+    
+    /**
+     * Build from aggregated counts (query → frequency), e.g. Aggregator.getAggregatedCounts().
+     * Words are normalized like Trie (lowercase a-z only); collisions keep the higher frequency.
+     * 
+     * @throws IllegalArgumentException if topK < 1
+     */
+    public static CompactTrie build(Map<String, Integer> counts, int topK) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("topK must be >= 1");
+        }
+        // Shared word table, sorted so every trie node covers a contiguous range
+        TreeMap<String, Integer> normalized = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String word = normalize(entry.getKey());
+            if (!word.isEmpty()) {
+                normalized.merge(word, entry.getValue(), Math::max);
+            }
+        }
+        Suggestion[] words = new Suggestion[normalized.size()];
+        int w = 0;
+        for (Map.Entry<String, Integer> entry : normalized.entrySet()) {
+            words[w++] = new Suggestion(entry.getKey(), entry.getValue());
+        }
+        
+        // BFS over word ranges: node = (lo, hi, depth) = words[lo..hi) sharing a depth-char prefix
+        IntList lo = new IntList(), hi = new IntList(), depth = new IntList();
+        StringBuilder labelBuf = new StringBuilder();
+        IntList firstChild = new IntList(), topKStart = new IntList(), topKIds = new IntList();
+        
+        lo.add(0); hi.add(words.length); depth.add(0); labelBuf.append('\0');
+        int[] best = new int[topK];
+        for (int node = 0; node < lo.size(); node++) {
+            int from = lo.get(node), to = hi.get(node), d = depth.get(node);
+            
+            // Top-k of this prefix = best k words in its range
+            topKStart.add(topKIds.size());
+            int found = selectTopK(words, from, to, best);
+            for (int i = 0; i < found; i++) {
+                topKIds.add(best[i]);
+            }
+            
+            // Children: group the range by the character at position d
+            firstChild.add(lo.size());
+            int i = from;
+            while (i < to && words[i].getWord().length() == d) {
+                i++;   // the word equal to this prefix ends here
+            }
+            while (i < to) {
+                char c = words[i].getWord().charAt(d);
+                int j = i + 1;
+                while (j < to && words[j].getWord().charAt(d) == c) {
+                    j++;
+                }
+                lo.add(i); hi.add(j); depth.add(d + 1); labelBuf.append(c);
+                i = j;
+            }
+        }
+        firstChild.add(lo.size());
+        topKStart.add(topKIds.size());
+        
+        char[] labels = new char[labelBuf.length()];
+        labelBuf.getChars(0, labels.length, labels, 0);
+        return new CompactTrie(labels, firstChild.toArray(), topKStart.toArray(), topKIds.toArray(),
+                words, topK);
+    }
+    
+    /**
+     * Zero-allocation query: fill `out` with the top suggestions for the prefix.
+     * The prefix is normalized on the fly (case-folded, non a-z skipped).
+     *
+     * @return number of suggestions written (≤ min(topK, out.length))
+     */
+    public int getAutocompleteSuggestions(CharSequence prefix, Suggestion[] out) {
+        int node = findNode(prefix);
+        if (node <= 0) {
+            return 0;   // not found, or empty prefix (root)
+        }
+        int start = topKStart[node];
+        int count = Math.min(topKStart[node + 1] - start, out.length);
+        for (int i = 0; i < count; i++) {
+            out[i] = words[topKIds[start + i]];
+        }
+        return count;
+    }
+    
+    /**
+     * Same contract as Trie.getAutocompleteSuggestions (allocates the result list).
+     */
+    public List<Suggestion> getAutocompleteSuggestions(String prefix) {
+        if (prefix == null) {
+            return Collections.emptyList();
+        }
+        Suggestion[] out = new Suggestion[topK];
+        int count = getAutocompleteSuggestions(prefix, out);
+        return count == 0 ? Collections.emptyList()
+            : Collections.unmodifiableList(Arrays.asList(out).subList(0, count));
+    }
+    
+    public boolean contains(String word) {
+        return indexOf(normalize(word)) >= 0;
+    }
+    
+    public int getFrequency(String word) {
+        int index = indexOf(normalize(word));
+        return index >= 0 ? words[index].getFrequency() : 0;
+    }
+    
+    public int getTopK() {
+        return topK;
+    }
+    
+    public int getNodeCount() {
+        return labels.length;
+    }
+    
+    public int getWordCount() {
+        return words.length;
+    }
+    
+    /**
+     * Bytes held by the trie arrays (excluding the word strings themselves).
+     */
+    public long getStructureBytes() {
+        return 2L * labels.length + 4L * firstChild.length + 4L * topKStart.length
+            + 4L * topKIds.length + 4L * words.length;
+    }
+    
+    /**
+     * Node for the prefix: 0 = root, -1 = no such prefix.
+     */
+    private int findNode(CharSequence prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = Character.toLowerCase(prefix.charAt(i));
+            if (c < 'a' || c > 'z') {
+                continue;
+            }
+            node = findChild(node, c);
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return node;
+    }
+    
+    private int findChild(int node, char c) {
+        int low = firstChild[node], high = firstChild[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    private int indexOf(String word) {
+        int low = 0, high = words.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = words[mid].getWord().compareTo(word);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Best k word indices in words[from..to), highest frequency first (ties: alphabetical).
+     */
+    private static int selectTopK(Suggestion[] words, int from, int to, int[] best) {
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            int freq = words[i].getFrequency();
+            if (size == best.length && freq <= words[best[size - 1]].getFrequency()) {
+                continue;
+            }
+            // Insertion into the small sorted array; equal frequencies keep earlier (alphabetical) first
+            int pos = size == best.length ? size - 1 : size++;
+            while (pos > 0 && words[best[pos - 1]].getFrequency() < freq) {
+                best[pos] = best[pos - 1];
+                pos--;
+            }
+            best[pos] = i;
+        }
+        return size;
+    }
+    
+    private static String normalize(String input) {
+        return input.toLowerCase().replaceAll("[^a-z]", "");
+    }
+    
+    /**
+     * Growable int array (avoids boxing while building).
+     */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        int get(int index) {
+            return values[index];
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -39,24 +39,246 @@ import java.util.*;
  * ║  With caching: Search is O(p) - just traverse to node and return cache!     ║
  * ║                                                                               ║
  * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  BUILDING TOP-K                                                              ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  topK(node) = best k of { node's own word } ∪ topK(child) for each child    ║
+ * ║                                                                               ║
+ * ║  Bulk build: insert all words, then ONE post-order pass merging the         ║
+ * ║  children's lists: O(nodes × k), no per-insert sorting.                     ║
+ * ║                                                                               ║
+ * ║  Incremental (insert / updateFrequency): recompute leaf → root and stop     ║
+ * ║  as soon as                                                                  ║
+ * ║   - the word doesn't qualify for a node's full top-k (ancestors cover a     ║
+ * ║     superset of words, so their k-th best is at least as high), or         ║
+ * ║   - a node's top-k comes out unchanged (ancestors only see children's       ║
+ * ║     lists, so nothing above can change either)                              ║
+ * ║  Recomputing from children also handles frequency DECREASES correctly.     ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
+ * 
+ * ╔═══════════════════════════════════════════════════════════════════════════════╗
+ * ║  TYPO-TOLERANT LOOKUP (getFuzzySuggestions)                                  ║
+ * ╠═══════════════════════════════════════════════════════════════════════════════╣
+ * ║                                                                               ║
+ * ║  Walk the trie carrying one Levenshtein DP row per depth (the automaton     ║
+ * ║  for "within d edits of the typed prefix", d ≤ 2; adjacent swaps count      ║
+ * ║  as one edit):                                                              ║
+ * ║                                                                               ║
+ * ║    row[j] = edits between typed[0..j) and the node's path                   ║
+ * ║    row[m] ≤ d    → node matches: merge its cached top-k                     ║
+ * ║    min(row) > d  → no descendant can match: prune the subtree               ║
+ * ║                                                                               ║
+ * ║  Candidates rank by fewest edits, then frequency. A subtree is also         ║
+ * ║  skipped when its best frequency (head of its top-k) at its fewest          ║
+ * ║  possible edits can't beat the current k-th: once the exact prefix has      ║
+ * ║  filled the top-k, every typo branch is pruned. The typed path is walked    ║
+ * ║  first, so exact matches are found before the budget can cut it short.      ║
+ * ║                                                                               ║
+ * ╚═══════════════════════════════════════════════════════════════════════════════╝
  */
 public class Trie {
     
     private final TrieNode root;
     private final int topK;
     
+    public static final int MAX_EDITS = 2;
+    private static final int BUDGET_CHECK_INTERVAL = 64;   // Nodes between clock reads
+    
     public Trie() {
         this(5);  // Default: return top 5 suggestions
     }
     
     public Trie(int topK) {
-        this.root = new TrieNode();
+        this(new TrieNode(), topK);
+    }
+    
+    private Trie(TrieNode root, int topK) {
+        this.root = root;
         this.topK = topK;
     }
     
+    /**
+     * Copy-on-write update by path copying: a new trie with each word set to
+     * its frequency (inserted if unknown), sharing every subtree that no
+     * updated word passes through with this one. Costs O(total length of the
+     * updated words) new nodes instead of a full copy; this trie is untouched,
+     * so it may be one that readers can see.
+     * 
+     * @param updates Map of word → new frequency
+     * @return The updated trie
+     */
+    public Trie withUpdates(Map<String, Integer> updates) {
+        Set<TrieNode> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+        TrieNode newRoot = root.shallowCopy();
+        copied.add(newRoot);
+        Trie updated = new Trie(newRoot, topK);
+        
+        for (Map.Entry<String, Integer> entry : updates.entrySet()) {
+            String word = normalize(entry.getKey());
+            if (word.isEmpty()) continue;
+            
+            TrieNode current = newRoot;
+            List<TrieNode> path = new ArrayList<>(word.length() + 1);
+            path.add(current);
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                TrieNode child = current.getChild(c);
+                if (child == null) {
+                    child = current.addChild(c);
+                } else if (!copied.contains(child)) {
+                    child = child.shallowCopy();  // Shared with this trie: copy before touching
+                    current.putChild(c, child);
+                }
+                copied.add(child);
+                current = child;
+                path.add(current);
+            }
+            
+            int frequency = entry.getValue();
+            current.setEndOfWord(true, word);
+            current.setFrequency(frequency);
+            updated.propagateTopK(path, new Suggestion(word, frequency));
+        }
+        return updated;
+    }
+    
+    /**
+     * Bulk build from aggregated counts (query → frequency), e.g. Aggregator output.
+     * Words are normalized as in insert(); collisions keep the higher frequency.
+     * Top-k lists are computed bottom-up in a single post-order pass.
+     * 
+     * @param counts Aggregated query frequencies
+     * @param topK Suggestions to keep per prefix
+     * @return The built trie
+     */
+    public static Trie build(Map<String, Integer> counts, int topK) {
+        Trie trie = new Trie(topK);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String word = trie.normalize(entry.getKey());
+            if (word.isEmpty()) continue;
+            
+            TrieNode current = trie.root;
+            for (int i = 0; i < word.length(); i++) {
+                current = current.addChild(word.charAt(i));
+            }
+            int frequency = entry.getValue();
+            if (!current.isEndOfWord() || current.getFrequency() < frequency) {
+                current.setEndOfWord(true, word);
+                current.setFrequency(frequency);
+            }
+        }
+        trie.computeTopKBottomUp(trie.root);
+        return trie;
+    }
+    
+    private void computeTopKBottomUp(TrieNode node) {
+        for (TrieNode child : node.getChildren().values()) {
+            computeTopKBottomUp(child);
+        }
+        node.replaceTopKCache(mergeTopK(node));
+    }
+    
+    /**
+     * Best k of the node's own word and its children's top-k lists
+     * (higher frequency first, ties alphabetical).
+     */
+    private List<Suggestion> mergeTopK(TrieNode node) {
+        if (topK <= 0) {
+            return new ArrayList<>();
+        }
+        Suggestion[] best = new Suggestion[topK];
+        int size = 0;
+        if (node.isEndOfWord()) {
+            size = offer(best, size, new Suggestion(node.getWord(), node.getFrequency()));
+        }
+        for (TrieNode child : node.getChildren().values()) {
+            List<Suggestion> childTopK = child.topKView();
+            for (int i = 0; i < childTopK.size(); i++) {
+                Suggestion candidate = childTopK.get(i);
+                if (size == topK && !ranksBefore(candidate, best[size - 1])) {
+                    break;  // child's list is sorted: the rest can't qualify either
+                }
+                size = offer(best, size, candidate);
+            }
+        }
+        List<Suggestion> merged = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            merged.add(best[i]);
+        }
+        return merged;
+    }
+    
+    /**
+     * Insert into a bounded sorted array. Returns the new size.
+     */
+    private static int offer(Suggestion[] best, int size, Suggestion candidate) {
+        if (size == best.length && !ranksBefore(candidate, best[size - 1])) {
+            return size;
+        }
+        int pos = size == best.length ? size - 1 : size++;
+        while (pos > 0 && ranksBefore(candidate, best[pos - 1])) {
+            best[pos] = best[pos - 1];
+            pos--;
+        }
+        best[pos] = candidate;
+        return size;
+    }
+    
+    private static boolean ranksBefore(Suggestion a, Suggestion b) {
+        if (a.getFrequency() != b.getFrequency()) {
+            return a.getFrequency() > b.getFrequency();
+        }
+        return a.getWord().compareTo(b.getWord()) < 0;
+    }
+    
+    /**
+     * Recompute top-k from the leaf up, stopping early (see class comment).
+     * 
+     * @param path Nodes from root to the word's node
+     * @param suggestion The inserted / updated word
+     */
+    private void propagateTopK(List<TrieNode> path, Suggestion suggestion) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            TrieNode node = path.get(i);
+            List<Suggestion> cache = node.topKView();
+            
+            if (cache.size() == topK && !containsWord(cache, suggestion.getWord())
+                    && ranksBefore(cache.get(topK - 1), suggestion)) {
+                return;  // doesn't qualify here, so not above either
+            }
+            
+            List<Suggestion> merged = mergeTopK(node);
+            if (sameRanking(cache, merged)) {
+                return;  // unchanged here, so unchanged above
+            }
+            node.replaceTopKCache(merged);
+        }
+    }
+    
+    private static boolean containsWord(List<Suggestion> cache, String word) {
+        for (Suggestion s : cache) {
+            if (s.getWord().equals(word)) return true;
+        }
+        return false;
+    }
+    
+    private static boolean sameRanking(List<Suggestion> a, List<Suggestion> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getWord().equals(b.get(i).getWord())
+                    || a.get(i).getFrequency() != b.get(i).getFrequency()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Insert a word with its frequency.
-     * Updates the top-k cache at each node along the path.
+     * Updates the top-k cache along the path (leaf → root, stopping early).
      * 
      * @param word The word to insert
      * @param frequency The search frequency
@@ -81,11 +303,8 @@ public class Trie {
         current.setEndOfWord(true, word);
         current.setFrequency(frequency);
         
-        // Update top-k cache at each node along the path
-        Suggestion suggestion = new Suggestion(word, frequency);
-        for (TrieNode node : path) {
-            node.updateTopKCache(suggestion, topK);
-        }
+        // Update top-k cache along the path
+        propagateTopK(path, new Suggestion(word, frequency));
     }
     
     /**
@@ -120,11 +339,8 @@ public class Trie {
         // Update frequency
         current.setFrequency(newFrequency);
         
-        // Update top-k cache at each node along the path
-        Suggestion suggestion = new Suggestion(word, newFrequency);
-        for (TrieNode node : path) {
-            node.updateTopKCache(suggestion, topK);
-        }
+        // Update top-k cache along the path
+        propagateTopK(path, new Suggestion(word, newFrequency));
         
         return true;
     }
@@ -156,6 +372,35 @@ public class Trie {
         return node.getTopKCache();
     }
     
+    /**
+     * Typo-tolerant suggestions: top-k over every prefix within maxEdits of the
+     * typed one (see class comment). Stops when the budget runs out and
+     * returns the best found so far.
+     * 
+     * @param prefix The search prefix (possibly misspelled)
+     * @param maxEdits Edit distance allowed, 0..MAX_EDITS (see autoMaxEdits)
+     * @param budgetNanos Latency budget for the walk
+     */
+    public FuzzyResult getFuzzySuggestions(String prefix, int maxEdits, long budgetNanos) {
+        if (prefix == null || prefix.isEmpty()) {
+            return new FuzzyResult(Collections.emptyList(), true, 0);
+        }
+        prefix = normalize(prefix);
+        maxEdits = Math.max(0, Math.min(maxEdits, MAX_EDITS));
+        
+        FuzzySearch search = new FuzzySearch(prefix, maxEdits, topK, System.nanoTime() + budgetNanos);
+        search.search(root, 0, 0);
+        return search.result();
+    }
+    
+    /**
+     * Edits to allow for a prefix of this length: none below 3 characters,
+     * one up to 5, then two (short prefixes would match almost anything).
+     */
+    public static int autoMaxEdits(int length) {
+        return length < 3 ? 0 : length < 6 ? 1 : 2;
+    }
+    
     /**
      * Find the node for a given prefix.
      * 
@@ -207,7 +452,21 @@ public class Trie {
      * Normalize input: lowercase, remove non-alphabetic characters.
      */
     private String normalize(String input) {
-        return input.toLowerCase().replaceAll("[^a-z]", "");
+        // Char loop instead of a regex: this runs once per query on every rebuild
+        StringBuilder sb = new StringBuilder(input.length());
+        boolean unchanged = true;
+        for (int i = 0; i < input.length(); i++) {
+            char raw = input.charAt(i);
+            char c = Character.toLowerCase(raw);
+            if (c >= 'a' && c <= 'z') {
+                sb.append(c);
+                unchanged &= c == raw;
+            } else {
+                unchanged = false;
+            }
+        }
+        // Reuse the input only when lowercasing and filtering changed nothing
+        return unchanged ? input : sb.toString();
     }
     
     /**
@@ -277,5 +536,214 @@ public class Trie {
             printNode(node.getChildren().get(c), newPrefix, newEdge);
         }
     }
+    
+    /**
+     * FuzzyResult - Suggestions from a typo-tolerant lookup.
+     */
+    public static final class FuzzyResult {
+        private final List<Suggestion> suggestions;
+        private final boolean complete;
+        private final int nodesVisited;
+        
+        public FuzzyResult(List<Suggestion> suggestions, boolean complete, int nodesVisited) {
+            this.suggestions = suggestions;
+            this.complete = complete;
+            this.nodesVisited = nodesVisited;
+        }
+        
+        public List<Suggestion> getSuggestions() {
+            return suggestions;
+        }
+        
+        /**
+         * False if the latency budget cut the walk short (results may be missing).
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+        
+        public int getNodesVisited() {
+            return nodesVisited;
+        }
+    }
+    
+    /**
+     * FuzzyTopK - Best-k suggestions by (fewest edits, then frequency), one
+     * entry per word. Shared by the trie walk and the mapped-file walk.
+     */
+    public static final class FuzzyTopK {
+        private final Suggestion[] best;
+        private final long[] scores;
+        private int size;
+        
+        public FuzzyTopK(int topK) {
+            this.best = new Suggestion[Math.max(0, topK)];
+            this.scores = new long[best.length];
+        }
+        
+        /**
+         * False if a suggestion with this frequency at this many edits can't
+         * enter the top-k (lists are sorted, so nothing after it can either).
+         */
+        public boolean canEnter(int frequency, int edits) {
+            return size < best.length || score(frequency, edits) >= scores[size - 1];
+        }
+        
+        public void collect(List<Suggestion> candidates, int edits) {
+            for (int i = 0; i < candidates.size(); i++) {
+                Suggestion candidate = candidates.get(i);
+                if (!canEnter(candidate.getFrequency(), edits)) {
+                    break;  // list is sorted: the rest score lower
+                }
+                offer(candidate, edits);
+            }
+        }
+        
+        /**
+         * Keep the best-scoring entry per word in a bounded sorted array.
+         */
+        public void offer(Suggestion candidate, int edits) {
+            long score = score(candidate.getFrequency(), edits);
+            for (int i = 0; i < size; i++) {
+                if (best[i].getWord().equals(candidate.getWord())) {
+                    if (scores[i] >= score) {
+                        return;
+                    }
+                    System.arraycopy(best, i + 1, best, i, size - i - 1);
+                    System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+                    size--;
+                    break;
+                }
+            }
+            if (size == best.length && (size == 0 || !ranksBefore(candidate, score, size - 1))) {
+                return;
+            }
+            int pos = size == best.length ? size - 1 : size++;
+            while (pos > 0 && ranksBefore(candidate, score, pos - 1)) {
+                best[pos] = best[pos - 1];
+                scores[pos] = scores[pos - 1];
+                pos--;
+            }
+            best[pos] = candidate;
+            scores[pos] = score;
+        }
+        
+        private boolean ranksBefore(Suggestion candidate, long score, int i) {
+            if (score != scores[i]) {
+                return score > scores[i];
+            }
+            return candidate.getWord().compareTo(best[i].getWord()) < 0;
+        }
+        
+        /**
+         * Fewer edits first, then higher frequency.
+         */
+        private static long score(int frequency, int edits) {
+            return ((long) (MAX_EDITS - edits) << 32) | frequency;
+        }
+        
+        public List<Suggestion> toList() {
+            return new ArrayList<>(Arrays.asList(best).subList(0, size));
+        }
+    }
+    
+    /**
+     * One bounded edit-distance walk: DP rows per depth, best-k by (edits, frequency).
+     */
+    private static final class FuzzySearch {
+        private final char[] query;
+        private final int maxEdits;
+        private final int[][] rows;      // rows[depth][j] = edits(query[0..j), path[0..depth))
+        private final char[] path;
+        private final long deadline;
+        private final FuzzyTopK best;
+        private int visited;
+        private boolean truncated;
+        
+        FuzzySearch(String query, int maxEdits, int topK, long deadline) {
+            this.query = query.toCharArray();
+            this.maxEdits = maxEdits;
+            // Depth > m + maxEdits means more than maxEdits insertions: never matches
+            this.rows = new int[query.length() + maxEdits + 1][query.length() + 1];
+            this.path = new char[rows.length];
+            this.deadline = deadline;
+            this.best = new FuzzyTopK(topK);
+            for (int j = 0; j <= query.length(); j++) {
+                rows[0][j] = j;
+            }
+        }
+        
+        /**
+         * Visit a node whose row (rows[depth]) is filled in; minEdits = min of that row.
+         */
+        void search(TrieNode node, int depth, int minEdits) {
+            if (truncated) {
+                return;
+            }
+            if (++visited % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                truncated = true;
+                return;
+            }
+            
+            int edits = rows[depth][query.length];
+            if (depth > 0 && edits <= maxEdits) {
+                best.collect(node.topKView(), edits);
+                if (edits == minEdits) {
+                    return;  // descendants can't match with fewer edits
+                }
+            }
+            
+            List<Suggestion> subtreeTop = node.topKView();
+            if (subtreeTop.isEmpty() || depth + 1 == rows.length) {
+                return;
+            }
+            if (!best.canEnter(subtreeTop.get(0).getFrequency(), minEdits)) {
+                return;  // nothing below can reach the current top-k
+            }
+            
+            // Typed character first: exact matches are found before the budget runs out
+            TrieNode typed = depth < query.length ? node.getChild(query[depth]) : null;
+            if (typed != null) {
+                step(typed, query[depth], depth + 1);
+            }
+            for (Map.Entry<Character, TrieNode> child : node.getChildren().entrySet()) {
+                if (child.getValue() != typed) {
+                    step(child.getValue(), child.getKey(), depth + 1);
+                }
+            }
+        }
+        
+        private void step(TrieNode child, char c, int depth) {
+            path[depth - 1] = c;
+            int min = fillRow(rows, path, query, depth, c);
+            if (min <= maxEdits) {
+                search(child, depth, min);
+            }
+        }
+        
+        FuzzyResult result() {
+            return new FuzzyResult(best.toList(), !truncated, visited);
+        }
+    }
+    
+    /**
+     * Fill rows[depth] for path[0..depth) (path[depth - 1] == c) from the rows
+     * above it; adjacent swaps count as one edit. Returns the row's minimum.
+     */
+    public static int fillRow(int[][] rows, char[] path, char[] query, int depth, char c) {
+        int[] prev = rows[depth - 1];
+        int[] row = rows[depth];
+        row[0] = depth;
+        int min = depth;
+        for (int j = 1; j <= query.length; j++) {
+            int edits = Math.min(Math.min(prev[j], row[j - 1]) + 1,
+                prev[j - 1] + (query[j - 1] == c ? 0 : 1));
+            if (depth > 1 && j > 1 && c == query[j - 2] && path[depth - 2] == query[j - 1]) {
+                edits = Math.min(edits, rows[depth - 2][j - 2] + 1);  // adjacent swap
+            }
+            row[j] = edits;
+            min = Math.min(min, edits);
+        }
+        return min;
+    }
 }
-
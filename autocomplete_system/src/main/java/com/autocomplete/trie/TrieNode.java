@@ -30,7 +30,7 @@ import java.util.*;
  */
 public class TrieNode {
     
-    private final Map<Character, TrieNode> children;
+    private Map<Character, TrieNode> children;  // Allocated on first child (most nodes are leaves)
     private boolean isEndOfWord;
     private int frequency;  // Only meaningful if isEndOfWord = true
     private String word;    // The complete word (only if isEndOfWord = true)
@@ -42,7 +42,7 @@ public class TrieNode {
     private static final int DEFAULT_K = 5;
     
     public TrieNode() {
-        this.children = new HashMap<>();
+        this.children = null;
         this.isEndOfWord = false;
         this.frequency = 0;
         this.word = null;
@@ -52,22 +52,27 @@ public class TrieNode {
     // ===== Child Management =====
     
     public boolean hasChild(char c) {
-        return children.containsKey(c);
+        return children != null && children.containsKey(c);
     }
     
     public TrieNode getChild(char c) {
-        return children.get(c);
+        return children != null ? children.get(c) : null;
     }
     
     public TrieNode addChild(char c) {
-        if (!children.containsKey(c)) {
-            children.put(c, new TrieNode());
+        if (children == null) {
+            children = new HashMap<>(4);
         }
-        return children.get(c);
+        TrieNode child = children.get(c);
+        if (child == null) {
+            child = new TrieNode();
+            children.put(c, child);
+        }
+        return child;
     }
     
     public Map<Character, TrieNode> getChildren() {
-        return children;
+        return children != null ? children : Collections.emptyMap();
     }
     
     // ===== Word Termination =====
@@ -145,6 +150,21 @@ public class TrieNode {
         }
     }
     
+    /**
+     * The cache itself, without the read-only wrapper (Trie's merge loops, read-only use).
+     */
+    List<Suggestion> topKView() {
+        return topKCache;
+    }
+    
+    /**
+     * Install a freshly computed top-k list without copying (Trie bulk build / propagation).
+     * The caller hands over ownership of the list.
+     */
+    void replaceTopKCache(List<Suggestion> cache) {
+        this.topKCache = cache;
+    }
+    
     /**
      * Set the entire top-k cache (used during trie loading from DB).
      */
@@ -152,6 +172,33 @@ public class TrieNode {
         this.topKCache = new ArrayList<>(cache);
     }
     
+    /**
+     * Copy of this node alone: its own child map and top-k list, the same child
+     * nodes. Path copying replaces nodes on an updated word's path with these,
+     * so untouched subtrees stay shared with the published trie.
+     */
+    TrieNode shallowCopy() {
+        TrieNode copy = new TrieNode();
+        copy.isEndOfWord = isEndOfWord;
+        copy.frequency = frequency;
+        copy.word = word;
+        copy.topKCache = new ArrayList<>(topKCache);
+        if (children != null) {
+            copy.children = new HashMap<>(children);
+        }
+        return copy;
+    }
+    
+    /**
+     * Replace a child (path copying swaps in a node's private copy).
+     */
+    void putChild(char c, TrieNode child) {
+        if (children == null) {
+            children = new HashMap<>(4);
+        }
+        children.put(c, child);
+    }
+    
     /**
      * Suggestion - A word with its frequency score.
      */
@@ -16,6 +16,7 @@ import java.util.*;
  * 4. Hold Expiry (Hold Manager releases expired holds)
  * 5. Idempotency (same confirm retried → cached result, no double charge)
  * 6. Event-Driven Architecture (Kafka simulation — notifications, analytics)
+ * 7. Seat Map Snapshots (versioned bitmap read model + deltas, fed by events)
  */
 public class BookMyShowDemo {
 
@@ -32,6 +33,7 @@ public class BookMyShowDemo {
         demoHoldExpiry();
         demoIdempotency();
         demoEventDriven();
+        demoSeatMapSnapshot();
     }
 
     /** Setup: create a show with seats A1-A5. */
@@ -236,7 +238,31 @@ public class BookMyShowDemo {
         System.out.println("\n--- User confirms booking ---");
         bookingService.confirmBooking(hold.getHoldId(), "user_1", "idem_event_demo");
 
-        System.out.println("\n\nAll " + eventBus.eventCount() + " events processed by all consumers ✓");
+        System.out.println("\n\nAll " + eventBus.eventCount() + " events processed by all consumers ✓\n");
+    }
+
+    static void demoSeatMapSnapshot() {
+        System.out.println("━━━ Demo 8: Seat Map Snapshot + Delta ━━━");
+        System.out.println("Seat-map page reads one immutable bitmap; clients fetch only what changed.\n");
+
+        SeatInventoryDB db = setupShow("s_800");
+        EventBus eventBus = new EventBus();
+        SeatMapCache seatMaps = new SeatMapCache(db, eventBus);
+        BookingService bookingService = new BookingService(db, new IdempotencyStore(), eventBus, 600_000);
+
+        SeatMapCache.Snapshot before = seatMaps.getSnapshot("s_800");
+        System.out.println("Page view: " + before + " bitmap=" + before.getEncoded());
+
+        System.out.println("\nUser_1 holds A2, A3 and confirms:");
+        Hold hold = bookingService.holdSeats("s_800", List.of("A2", "A3"), "user_1");
+        bookingService.confirmBooking(hold.getHoldId(), "user_1", "idem_seatmap_demo");
+
+        SeatMapCache.Snapshot after = seatMaps.getSnapshot("s_800");
+        System.out.println("\nPage view: " + after + " bitmap=" + after.getEncoded());
+        System.out.println("Client at v" + before.getVersion() + " asks for delta: "
+            + seatMaps.getDelta("s_800", before.getVersion()));
+        System.out.println("  Only A2, A3 sent; no per-request list building ✓");
+
         System.out.println("\n═══════════════════════════════════════════");
         System.out.println("Demo complete!");
     }
@@ -0,0 +1,32 @@
+package com.bookmyshow.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Shared helpers for the plain main() benchmarks (no JMH dependency).
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {}
+
+    /** p-th percentile of the first `count` values of a sorted array. */
+    static long percentile(long[] sorted, int count, double p) {
+        if (count == 0) return 0;
+        int index = (int) Math.ceil(p / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /** Concatenate per-thread samples and sort them. */
+    static long[] mergeSorted(long[][] perThread, int[] counts) {
+        int total = 0;
+        for (int count : counts) total += count;
+        long[] merged = new long[total];
+        int offset = 0;
+        for (int t = 0; t < perThread.length; t++) {
+            System.arraycopy(perThread[t], 0, merged, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+}
@@ -0,0 +1,98 @@
+package com.bookmyshow.benchmark;
+
+import com.bookmyshow.event.EventBus;
+import com.bookmyshow.model.Hold;
+import com.bookmyshow.service.BookingService;
+import com.bookmyshow.service.SeatMapCache;
+import com.bookmyshow.storage.IdempotencyStore;
+import com.bookmyshow.storage.SeatInventoryDB;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventBusBenchmark - Booking latency with slow event consumers attached.
+ *
+ * 20,000 hold + release calls through BookingService (two events each) on
+ * 200 shows. Three consumers are subscribed:
+ *   SeatMapCache         fast, lossless (always BLOCK)
+ *   NotificationService  ~60 µs per event (a push/email call), one at a time
+ *   AnalyticsService     ~1 ms per batch (one bulk insert per batch)
+ * Runs the bus in SYNC mode, then ASYNC with the two slow consumers on each
+ * backpressure policy (queue capacity 1,024). Reports booking-call latency and
+ * throughput, the time to drain what is still queued, and per-consumer stats.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.bookmyshow.benchmark.EventBusBenchmark
+ */
+public class EventBusBenchmark {
+
+    private static final int SHOWS = 200;
+    private static final int SEATS_PER_SHOW = 100;
+    private static final int OPERATIONS = 20_000;
+    private static final int QUEUE_CAPACITY = 1_024;
+    private static final long NOTIFICATION_NANOS = 60_000;
+    private static final long ANALYTICS_BATCH_NANOS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== EventBus: " + OPERATIONS + " hold+release calls, slow consumers attached, "
+            + Runtime.getRuntime().availableProcessors() + " CPUs ===");
+        System.out.println("  mode                  p50 µs     p99 µs      max µs      calls/s   drain ms");
+        run("SYNC", EventBus.Delivery.SYNC, EventBus.Backpressure.BLOCK);
+        for (EventBus.Backpressure backpressure : EventBus.Backpressure.values()) {
+            run("ASYNC " + backpressure, EventBus.Delivery.ASYNC, backpressure);
+        }
+    }
+
+    private static void run(String label, EventBus.Delivery delivery, EventBus.Backpressure slowConsumers)
+            throws Exception {
+        SeatInventoryDB db = new SeatInventoryDB();
+        for (int s = 0; s < SHOWS; s++) {
+            for (int n = 0; n < SEATS_PER_SHOW; n++) {
+                db.initShowSeat("show_" + s, "S" + n);
+            }
+        }
+        EventBus eventBus = new EventBus(delivery, QUEUE_CAPACITY);
+        SeatMapCache seatMaps = new SeatMapCache(db, eventBus);
+        for (int s = 0; s < SHOWS; s++) {
+            seatMaps.getSnapshot("show_" + s);
+        }
+        eventBus.subscribe("NotificationService", event -> LockSupport.parkNanos(NOTIFICATION_NANOS),
+            slowConsumers);
+        eventBus.subscribeBatch("AnalyticsService", batch -> LockSupport.parkNanos(ANALYTICS_BATCH_NANOS),
+            slowConsumers);
+        BookingService bookingService = new BookingService(db, new IdempotencyStore(), eventBus, 600_000);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   // Every publish and hold is logged
+
+        Random random = new Random(11);
+        long[] nanos = new long[OPERATIONS];
+        long begin = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            String showId = "show_" + random.nextInt(SHOWS);
+            List<String> seatIds = List.of("S" + random.nextInt(SEATS_PER_SHOW));
+            long t0 = System.nanoTime();
+            Hold hold = bookingService.holdSeats(showId, seatIds, "user_" + i);
+            if (hold != null) bookingService.releaseHold(hold.getHoldId());
+            nanos[i] = System.nanoTime() - t0;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long drainStart = System.nanoTime();
+        eventBus.flush(60_000);
+        double drainMillis = (System.nanoTime() - drainStart) / 1e6;
+        eventBus.close();
+        System.setOut(out);
+
+        Arrays.sort(nanos);
+        System.out.println(String.format("  %-18s %9.1f  %9.1f  %10.1f  %,11.0f  %9.1f", label,
+            BenchmarkSupport.percentile(nanos, OPERATIONS, 50) / 1000.0,
+            BenchmarkSupport.percentile(nanos, OPERATIONS, 99) / 1000.0,
+            nanos[OPERATIONS - 1] / 1000.0, OPERATIONS / seconds, drainMillis));
+        eventBus.getStats().forEach((name, stats) -> System.out.println(String.format(
+            "      %-20s delivered %,7d  dropped %,7d  spilled %,7d  batches %,6d  max lag %,6d ms"
+                + "  blocked publishes %,6d",
+            name, stats.get("delivered"), stats.get("dropped"), stats.get("spilled"), stats.get("batches"),
+            stats.get("maxLagMillis"), stats.get("blockedPublishes"))));
+    }
+}
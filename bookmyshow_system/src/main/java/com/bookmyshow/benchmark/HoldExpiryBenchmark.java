@@ -0,0 +1,126 @@
+package com.bookmyshow.benchmark;
+
+import com.bookmyshow.model.Hold;
+import com.bookmyshow.storage.SeatInventoryDB;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * HoldExpiryBenchmark - Hold Manager sweep cost: full scan of all holds vs timing wheel.
+ *
+ * A long sale compressed into seconds: holds arrive at a steady rate with a
+ * short TTL standing in for the usual 10 minutes; 10% are confirmed, 45%
+ * cancelled and 45% abandoned to expire. The same traffic goes to two
+ * databases, swept every 100 ms:
+ *   scan:  the old sweep — stream over every hold ever created
+ *          (findExpiredHolds), then release each expired one
+ *   wheel: releaseExpiredHolds(), which only visits the slots that came due
+ *          and compacts finished holds out of memory
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.bookmyshow.benchmark.HoldExpiryBenchmark
+ *      (optional arg: seconds to run, default 10)
+ */
+public class HoldExpiryBenchmark {
+
+    private static final int SHOWS = 200;
+    private static final int SEATS_PER_SHOW = 500;
+    private static final long HOLD_TTL_MS = 300;
+    private static final long SWEEP_INTERVAL_MS = 100;
+    private static final int HOLDS_PER_SWEEP = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        SeatInventoryDB scanDB = createDB();
+        SeatInventoryDB wheelDB = createDB();
+
+        System.out.println("=== Hold expiry: " + HOLDS_PER_SWEEP * (1000 / SWEEP_INTERVAL_MS) + " holds/s, TTL "
+            + HOLD_TTL_MS + " ms, sweep every " + SWEEP_INTERVAL_MS + " ms ===");
+        System.out.println("  second  holds retained: scan     wheel   sweep avg / max: scan            wheel"
+            + "            released: scan  wheel");
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   // Lazy releases are logged
+
+        Random random = new Random(3);
+        List<Hold> history = new ArrayList<>();   // What the holds map kept before compaction
+        long scanNanos = 0, scanMax = 0, wheelNanos = 0, wheelMax = 0;
+        int sweeps = 0, scanReleased = 0, wheelReleased = 0, user = 0;
+        long start = System.currentTimeMillis();
+        long nextReport = start + 1000;
+
+        while (System.currentTimeMillis() - start < seconds * 1000L) {
+            long tickStart = System.currentTimeMillis();
+            for (int i = 0; i < HOLDS_PER_SWEEP; i++, user++) {
+                String userId = "user_" + user;
+                String showId = "show_" + random.nextInt(SHOWS);
+                List<String> seatIds = List.of("S" + random.nextInt(SEATS_PER_SHOW));
+                int outcome = random.nextInt(20);
+                Hold scanHold = scanDB.holdSeats(showId, seatIds, userId, HOLD_TTL_MS, 500);
+                Hold wheelHold = wheelDB.holdSeats(showId, seatIds, userId, HOLD_TTL_MS, 500);
+                if (scanHold != null) {
+                    history.add(scanHold);
+                    finish(scanDB, scanHold, outcome);
+                }
+                if (wheelHold != null) {
+                    finish(wheelDB, wheelHold, outcome);
+                }
+            }
+
+            long t0 = System.nanoTime();
+            List<Hold> expired = history.stream()
+                .filter(h -> h.getStatus() == Hold.Status.ACTIVE && h.isExpired())
+                .collect(Collectors.toList());
+            for (Hold hold : expired) {
+                scanDB.releaseHold(hold.getHoldId());
+            }
+            long scan = System.nanoTime() - t0;
+
+            long t1 = System.nanoTime();
+            wheelReleased += wheelDB.releaseExpiredHolds().size();
+            long wheel = System.nanoTime() - t1;
+
+            scanReleased += expired.size();
+            scanNanos += scan;
+            scanMax = Math.max(scanMax, scan);
+            wheelNanos += wheel;
+            wheelMax = Math.max(wheelMax, wheel);
+            sweeps++;
+
+            if (System.currentTimeMillis() >= nextReport) {
+                out.println(String.format("  %6d  %,20d  %,8d  %8.3f / %8.3f ms  %7.3f / %7.3f ms  %,14d  %,5d",
+                    (nextReport - start) / 1000, history.size(), wheelDB.getRetainedHoldCount(),
+                    scanNanos / 1e6 / sweeps, scanMax / 1e6, wheelNanos / 1e6 / sweeps, wheelMax / 1e6,
+                    scanReleased, wheelReleased));
+                scanNanos = scanMax = wheelNanos = wheelMax = 0;
+                sweeps = scanReleased = wheelReleased = 0;
+                nextReport += 1000;
+            }
+
+            long sleep = SWEEP_INTERVAL_MS - (System.currentTimeMillis() - tickStart);
+            if (sleep > 0) Thread.sleep(sleep);
+        }
+        System.setOut(out);
+    }
+
+    private static SeatInventoryDB createDB() {
+        SeatInventoryDB db = new SeatInventoryDB();
+        db.setFinishedHoldRetentionMs(HOLD_TTL_MS);
+        for (int s = 0; s < SHOWS; s++) {
+            for (int n = 0; n < SEATS_PER_SHOW; n++) {
+                db.initShowSeat("show_" + s, "S" + n);
+            }
+        }
+        return db;
+    }
+
+    /** 10% confirm, 45% cancel, 45% abandon (left to expire). */
+    private static void finish(SeatInventoryDB db, Hold hold, int outcome) {
+        if (outcome < 2) {
+            db.confirmHold(hold.getHoldId(), hold.getUserId(), "pay_" + hold.getHoldId());
+        } else if (outcome < 11) {
+            db.releaseHold(hold.getHoldId());
+        }
+    }
+}
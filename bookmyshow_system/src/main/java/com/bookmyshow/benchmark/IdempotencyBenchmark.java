@@ -0,0 +1,128 @@
+package com.bookmyshow.benchmark;
+
+import com.bookmyshow.event.EventBus;
+import com.bookmyshow.model.Hold;
+import com.bookmyshow.service.BookingService;
+import com.bookmyshow.storage.IdempotencyStore;
+import com.bookmyshow.storage.SeatInventoryDB;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IdempotencyBenchmark - Duplicate confirms racing each other, and store size over a long sale.
+ *
+ * 1. Double charges: 2,000 holds, each confirmed by 4 threads at once with the
+ *    same Idempotency-Key (a client retrying on a flaky network). Counts how
+ *    often the payment step ran:
+ *      lookup-then-save: the old check (lookup, run, save) — duplicates all
+ *                        miss while the first is still running
+ *      claim:            IdempotencyStore.claim — duplicates wait for the owner
+ * 2. Size: 8 threads saving unique keys for a few seconds with a 1 s TTL
+ *    standing in for 24 hours, and a 100K-key cap: keys written vs kept.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.bookmyshow.benchmark.IdempotencyBenchmark
+ */
+public class IdempotencyBenchmark {
+
+    private static final int HOLDS = 2_000;
+    private static final int DUPLICATES = 4;
+    private static final int THREADS = 8;
+    private static final long TTL_MS = 1_000;
+    private static final int MAX_ENTRIES = 100_000;
+    private static final int SECONDS = 4;
+
+    /** The original flow: a plain lookup, nothing reserved while the payment runs. */
+    private static final class LookupThenSaveStore extends IdempotencyStore {
+        @Override
+        public CachedResponse claim(String key) {
+            return lookup(key);
+        }
+    }
+
+    /** Counts payment log lines from BookingService. */
+    private static final class PaymentCounter extends PrintStream {
+        final LongAdder payments = new LongAdder();
+
+        PaymentCounter() {
+            super(OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void println(String line) {
+            if (line.contains("[PAYMENT]")) payments.increment();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Idempotency: " + DUPLICATES + " concurrent confirms per key, "
+            + Runtime.getRuntime().availableProcessors() + " CPUs ===");
+        duplicateConfirms("lookup-then-save", new LookupThenSaveStore());
+        duplicateConfirms("claim           ", new IdempotencyStore());
+
+        System.out.println("\n=== Store size: " + THREADS + " threads, unique keys, TTL " + TTL_MS
+            + " ms, cap " + String.format("%,d", MAX_ENTRIES) + " ===");
+        IdempotencyStore store = new IdempotencyStore(TTL_MS, MAX_ENTRIES);
+        LongAdder written = new LongAdder();
+        long end = System.currentTimeMillis() + SECONDS * 1000L;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (long i = 0; System.currentTimeMillis() < end; i++) {
+                    String key = "idem_" + thread + "_" + i;
+                    if (store.claim(key) == null) store.save(key, 200, "bk_" + i);
+                    written.increment();
+                }
+            }));
+        }
+        for (Future<?> future : futures) future.get();
+        pool.shutdown();
+        Map<String, Object> stats = store.getStats();
+        System.out.println(String.format("  %,d keys written (%,.0f claim+save/s), %,d kept",
+            written.sum(), written.sum() / (double) SECONDS, (int) stats.get("size")));
+        System.out.println("  " + stats);
+    }
+
+    private static void duplicateConfirms(String label, IdempotencyStore store) throws Exception {
+        SeatInventoryDB db = new SeatInventoryDB();
+        for (int n = 0; n < HOLDS; n++) {
+            db.initShowSeat("show_1", "S" + n);
+        }
+        PrintStream out = System.out;
+        PaymentCounter counter = new PaymentCounter();
+        System.setOut(counter);
+
+        BookingService bookingService = new BookingService(db, store, new EventBus(), 600_000);
+        ExecutorService pool = Executors.newFixedThreadPool(DUPLICATES);
+        LongAdder confirmed = new LongAdder();
+        long start = System.nanoTime();
+        for (int n = 0; n < HOLDS; n++) {
+            Hold hold = bookingService.holdSeats("show_1", List.of("S" + n), "user_" + n);
+            String key = "idem_" + n;
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Integer>> responses = new ArrayList<>();
+            for (int d = 0; d < DUPLICATES; d++) {
+                responses.add(pool.submit(() -> {
+                    go.await();
+                    return bookingService.confirmBooking(hold.getHoldId(), hold.getUserId(), key);
+                }));
+            }
+            go.countDown();
+            for (Future<Integer> response : responses) {
+                if (response.get() == 200) confirmed.increment();
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        pool.shutdown();
+        System.setOut(out);
+
+        long extra = counter.payments.sum() - HOLDS;
+        System.out.println(String.format("  %s payments %,6d for %,d holds (%,5d double charges)"
+                + "  200s %,6d of %,d  %7.1f ms",
+            label, counter.payments.sum(), HOLDS, extra, confirmed.sum(), HOLDS * DUPLICATES, millis));
+    }
+}
@@ -0,0 +1,182 @@
+package com.bookmyshow.benchmark;
+
+import com.bookmyshow.model.Booking;
+import com.bookmyshow.model.Hold;
+import com.bookmyshow.storage.SeatInventoryDB;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SeatContentionBenchmark - Hold/confirm throughput: global lock vs per-show locks vs optimistic CAS.
+ *
+ * 10,000 users arrive at once; each tries up to 3 times to hold 1-4 adjacent
+ * seats in a row, then confirms (70%) or cancels (30%). Runs with every user
+ * on one hot show (a blockbuster opening) and spread over 500 shows (a busy
+ * evening city-wide). The global-lock baseline wraps every mutation in one
+ * monitor, as SeatInventoryDB did before per-show striping. Each run also
+ * reports the database's contention metrics: share of operations that waited
+ * for a lock or lost a compare-and-set, and optimistic retries.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.bookmyshow.benchmark.SeatContentionBenchmark
+ *      (optional arg: request threads, default 64)
+ */
+public class SeatContentionBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int ROWS = 20;
+    private static final int SEATS_PER_ROW = 25;
+    private static final int ATTEMPTS_PER_USER = 3;
+    private static final int ROUNDS = 5;   // Report the fastest round; one round is only tens of ms
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        System.out.println("=== Seat contention: " + USERS + " users, " + threads + " request threads, "
+            + ROWS * SEATS_PER_ROW + " seats/show, " + Runtime.getRuntime().availableProcessors() + " CPUs ===");
+
+        for (int shows : new int[] {1, 500}) {
+            for (Mode mode : Mode.values()) {
+                run(shows, threads, mode);   // Warmup
+            }
+            System.out.println("  " + shows + (shows == 1 ? " hot show:" : " shows:"));
+            System.out.println("    global lock:   " + best(shows, threads, Mode.GLOBAL_LOCK));
+            System.out.println("    per-show lock: " + best(shows, threads, Mode.PER_SHOW_LOCK));
+            System.out.println("    optimistic:    " + best(shows, threads, Mode.OPTIMISTIC));
+        }
+    }
+
+    private enum Mode { GLOBAL_LOCK, PER_SHOW_LOCK, OPTIMISTIC }
+
+    private static String best(int showCount, int threads, Mode mode) throws Exception {
+        Result best = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            Result result = run(showCount, threads, mode);
+            if (best == null || result.millis < best.millis) best = result;
+        }
+        return best.summary;
+    }
+
+    private static Result run(int showCount, int threads, Mode mode) throws Exception {
+        SeatInventoryDB db = mode == Mode.GLOBAL_LOCK ? new GlobalLockSeatInventoryDB()
+            : mode == Mode.PER_SHOW_LOCK ? new SeatInventoryDB()
+            : new SeatInventoryDB(SeatInventoryDB.ConcurrencyControl.OPTIMISTIC);
+        for (int s = 0; s < showCount; s++) {
+            for (int r = 0; r < ROWS; r++) {
+                for (int n = 1; n <= SEATS_PER_ROW; n++) {
+                    db.initShowSeat("show_" + s, (char) ('A' + r) + String.valueOf(n));
+                }
+            }
+        }
+
+        AtomicInteger nextUser = new AtomicInteger();
+        LongAdder holds = new LongAdder();
+        LongAdder bookings = new LongAdder();
+        Set<String> bookedSeats = ConcurrentHashMap.newKeySet();
+        LongAdder doubleBooked = new LongAdder();
+        long[][] latencies = new long[threads][USERS * (ATTEMPTS_PER_USER + 1)];
+        int[] counts = new int[threads];
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                int user;
+                while ((user = nextUser.getAndIncrement()) < USERS) {
+                    Random random = new Random(user);
+                    String userId = "user_" + user;
+                    String showId = "show_" + random.nextInt(showCount);
+                    for (int attempt = 0; attempt < ATTEMPTS_PER_USER; attempt++) {
+                        List<String> seatIds = pickSeats(random);
+                        long t0 = System.nanoTime();
+                        Hold hold = db.holdSeats(showId, seatIds, userId, 600_000, 500.0 * seatIds.size());
+                        latencies[thread][counts[thread]++] = System.nanoTime() - t0;
+                        if (hold == null) continue;
+                        holds.increment();
+
+                        long t1 = System.nanoTime();
+                        if (random.nextInt(10) < 7) {
+                            Booking booking = db.confirmHold(hold.getHoldId(), userId, "pay_" + user);
+                            if (booking != null) {
+                                bookings.increment();
+                                for (String seatId : seatIds) {
+                                    if (!bookedSeats.add(showId + ":" + seatId)) doubleBooked.increment();
+                                }
+                            }
+                        } else {
+                            db.releaseHold(hold.getHoldId());
+                        }
+                        latencies[thread][counts[thread]++] = System.nanoTime() - t1;
+                        break;
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        double millis = (System.nanoTime() - begin) / 1e6;
+        pool.shutdown();
+
+        long[] sorted = BenchmarkSupport.mergeSorted(latencies, counts);
+        Map<String, Object> stats = db.getStats();
+        return new Result(millis, String.format("%6.0f ms  %,9.0f ops/s  p50 %6.1f µs  p99 %7.1f µs  "
+                + "holds %,5d  bookings %,5d  double-booked %d  contention %s  retries %s",
+            millis, sorted.length / millis * 1000,
+            BenchmarkSupport.percentile(sorted, sorted.length, 50) / 1000.0,
+            BenchmarkSupport.percentile(sorted, sorted.length, 99) / 1000.0,
+            holds.sum(), bookings.sum(), doubleBooked.sum(),
+            mode == Mode.GLOBAL_LOCK ? "-" : stats.get("contentionRate"),   // Outer monitor isn't counted
+            stats.get("retryRate")));
+    }
+
+    /** 1-4 adjacent seats in one row. */
+    private static List<String> pickSeats(Random random) {
+        int count = 1 + random.nextInt(4);
+        char row = (char) ('A' + random.nextInt(ROWS));
+        int first = 1 + random.nextInt(SEATS_PER_ROW - count + 1);
+        List<String> seatIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            seatIds.add(row + String.valueOf(first + i));
+        }
+        return seatIds;
+    }
+
+    private static final class Result {
+        final double millis;
+        final String summary;
+
+        Result(double millis, String summary) {
+            this.millis = millis;
+            this.summary = summary;
+        }
+    }
+
+    /**
+     * Baseline: every mutation serialized on one database-wide monitor.
+     */
+    private static final class GlobalLockSeatInventoryDB extends SeatInventoryDB {
+        @Override
+        public synchronized Hold holdSeats(String showId, List<String> seatIds, String userId,
+                                           long holdDurationMs, double totalPrice) {
+            return super.holdSeats(showId, seatIds, userId, holdDurationMs, totalPrice);
+        }
+
+        @Override
+        public synchronized Booking confirmHold(String holdId, String userId, String paymentId) {
+            return super.confirmHold(holdId, userId, paymentId);
+        }
+
+        @Override
+        public synchronized void releaseHold(String holdId) {
+            super.releaseHold(holdId);
+        }
+    }
+}
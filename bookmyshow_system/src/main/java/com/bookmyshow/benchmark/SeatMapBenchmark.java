@@ -0,0 +1,152 @@
+package com.bookmyshow.benchmark;
+
+import com.bookmyshow.event.EventBus;
+import com.bookmyshow.model.Hold;
+import com.bookmyshow.model.ShowSeat;
+import com.bookmyshow.service.BookingService;
+import com.bookmyshow.service.SeatMapCache;
+import com.bookmyshow.storage.IdempotencyStore;
+import com.bookmyshow.storage.SeatInventoryDB;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * SeatMapBenchmark - Cost of one seat-map page view, while bookings keep changing seats.
+ *
+ * 500 shows × 500 seats; a writer thread holds, confirms, cancels and
+ * abandons seats through BookingService at up to 2,000 ops/s (events feed
+ * SeatMapCache). A reader renders the seat map of a random show (a few hot
+ * shows get most views) three ways:
+ *   full scan:  stream over every seat of every show and filter by show,
+ *               as getSeatsForShow did originally
+ *   per-show:   today's getSeatsForShow (list of the show's seats) + statuses
+ *   snapshot:   SeatMapCache.getSnapshot + encoded bitmap
+ * First measures what a client polling the hottest show every 50 ms would
+ * download: the seats changed since its version vs the whole bitmap.
+ *
+ * Run: mvn compile exec:java -Dexec.mainClass=com.bookmyshow.benchmark.SeatMapBenchmark
+ */
+public class SeatMapBenchmark {
+
+    private static final int SHOWS = 500;
+    private static final int SEATS_PER_SHOW = 500;
+    private static final int READS = 200_000;
+    private static final int FULL_SCAN_READS = 500;   // Each one walks 250,000 seats
+    private static final long WRITE_INTERVAL_NANOS = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        SeatInventoryDB db = new SeatInventoryDB();
+        List<ShowSeat> allSeats = new ArrayList<>();
+        for (int s = 0; s < SHOWS; s++) {
+            for (int n = 0; n < SEATS_PER_SHOW; n++) {
+                db.initShowSeat("show_" + s, "S" + n);
+                allSeats.add(db.getShowSeat("show_" + s, "S" + n));
+            }
+        }
+        EventBus eventBus = new EventBus();
+        SeatMapCache seatMaps = new SeatMapCache(db, eventBus);
+        BookingService bookingService = new BookingService(db, new IdempotencyStore(), eventBus, 600_000);
+        String[] showIds = new String[SHOWS];
+        for (int s = 0; s < SHOWS; s++) {
+            showIds[s] = "show_" + s;
+            seatMaps.getSnapshot(showIds[s]);
+        }
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   // Booking flow logs every step
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(5);
+            for (int user = 0; running.get(); user++) {
+                String showId = showIds[hotShow(random)];
+                int seat = random.nextInt(SEATS_PER_SHOW - 1);
+                String userId = "user_" + user;
+                Hold hold = bookingService.holdSeats(showId, List.of("S" + seat, "S" + (seat + 1)), userId);
+                int outcome = random.nextInt(10);
+                if (hold != null && outcome == 0) {
+                    bookingService.confirmBooking(hold.getHoldId(), userId, "idem_" + user);
+                } else if (hold != null && outcome > 2) {
+                    bookingService.releaseHold(hold.getHoldId());
+                }   // else abandoned: stays held
+                writes.incrementAndGet();
+                LockSupport.parkNanos(WRITE_INTERVAL_NANOS);
+            }
+        }, "booking-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        out.println("=== Seat map reads: " + SHOWS + " shows × " + SEATS_PER_SHOW + " seats, bookings running"
+            + " in the background, " + Runtime.getRuntime().availableProcessors() + " CPUs ===");
+
+        // A client on the hottest show polling every 50 ms: full bitmap vs delta
+        long since = seatMaps.getSnapshot(showIds[0]).getVersion();
+        long deltaSeats = 0, fullBytes = 0;
+        int polls = 20;
+        for (int p = 0; p < polls; p++) {
+            Thread.sleep(50);
+            SeatMapCache.Delta delta = seatMaps.getDelta(showIds[0], since);
+            deltaSeats += delta.isFullResync() ? SEATS_PER_SHOW : delta.getChanges().size();
+            fullBytes += seatMaps.getSnapshot(showIds[0]).getEncoded().length();
+            since = delta.getToVersion();
+        }
+        out.println(String.format("  hot-show poll every 50 ms: delta %.1f seats/poll vs full bitmap "
+                + "of %d seats (%d chars)",
+            (double) deltaSeats / polls, SEATS_PER_SHOW, fullBytes / polls));
+
+        long[] sink = new long[1];
+        out.println("  full scan: " + time(FULL_SCAN_READS, index -> {
+            String showId = showIds[index];
+            List<ShowSeat> seats = allSeats.stream()
+                .filter(s -> s.getShowId().equals(showId))
+                .collect(Collectors.toList());
+            for (ShowSeat seat : seats) sink[0] += seat.getStatus().ordinal();
+        }));
+        out.println("  per-show:  " + time(READS, index -> {
+            for (ShowSeat seat : db.getSeatsForShow(showIds[index])) sink[0] += seat.getStatus().ordinal();
+        }));
+        out.println("  snapshot:  " + time(READS, index -> {
+            SeatMapCache.Snapshot snapshot = seatMaps.getSnapshot(showIds[index]);
+            sink[0] += snapshot.getVersion() + snapshot.getEncoded().length();
+        }));
+
+        running.set(false);
+        writer.join();
+        System.setOut(out);
+
+        System.out.println(String.format("  %,d booking ops ran meanwhile (sink %d)", writes.get(), sink[0] & 1));
+    }
+
+    private static String time(int reads, IntConsumer read) {
+        Random random = new Random(9);
+        for (int i = 0; i < Math.min(reads, 1_000); i++) {
+            read.accept(hotShow(random));   // Warmup
+        }
+        long[] nanos = new long[reads];
+        long begin = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            int show = hotShow(random);
+            long t0 = System.nanoTime();
+            read.accept(show);
+            nanos[i] = System.nanoTime() - t0;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        Arrays.sort(nanos);
+        return String.format("p50 %9.2f µs  p99 %9.2f µs  %,12.0f reads/s",
+            BenchmarkSupport.percentile(nanos, reads, 50) / 1000.0,
+            BenchmarkSupport.percentile(nanos, reads, 99) / 1000.0,
+            reads / seconds);
+    }
+
+    /** Half of all traffic goes to the 10 hottest shows. */
+    private static int hotShow(Random random) {
+        return random.nextBoolean() ? random.nextInt(10) : random.nextInt(SHOWS);
+    }
+}
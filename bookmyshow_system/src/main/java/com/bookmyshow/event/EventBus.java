@@ -1,30 +1,374 @@
 package com.bookmyshow.event;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 /**
  * Simulates Kafka — in-memory event bus.
  * Booking Service publishes events; consumers (Notification, Analytics) subscribe.
  * In production: transactional outbox → Kafka topic "booking-events".
+ *
+ * SYNC (default): publish() runs every consumer in the caller's thread, in
+ * subscription order.
+ *
+ * ASYNC: every consumer gets its own bounded ring buffer and dispatcher
+ * thread. publish() only appends to the buffers; the dispatcher hands events
+ * over in batches of up to MAX_BATCH, so a slow Notification or Analytics
+ * consumer never adds latency to a booking. When a buffer is full the
+ * consumer's Backpressure decides:
+ *   BLOCK        publisher waits for room (lossless; for consumers that
+ *                must see every event, like SeatMapCache)
+ *   DROP_OLDEST  oldest queued event is discarded (lossy, never waits)
+ *   SPILL        event goes to an overflow queue, standing in for a local
+ *                disk log, and is delivered in order once the buffer drains;
+ *                the overflow queue is bounded too (spillCapacity), and once
+ *                it is full the oldest queued event is dropped, as in DROP_OLDEST
+ *
+ * getStats() reports per consumer: events queued, delivered, dropped and
+ * spilled, current lag (events waiting and age of the oldest one) and the
+ * worst lag seen.
  */
 public class EventBus {
 
-    private final List<BookingEvent> eventLog = new ArrayList<>();
-    private final Map<String, Consumer<BookingEvent>> consumers = new LinkedHashMap<>();
+    public enum Delivery { SYNC, ASYNC }
 
+    public enum Backpressure { BLOCK, DROP_OLDEST, SPILL }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /** Default SPILL overflow bound, as a multiple of the queue capacity. */
+    public static final int DEFAULT_SPILL_FACTOR = 16;
+
+    /** Most events handed to a consumer in one call. */
+    public static final int MAX_BATCH = 256;
+
+    /** An event that overflowed to the spill queue, with when it was published. */
+    private static final class Spilled {
+        final BookingEvent event;
+        final long publishedNanos;
+
+        Spilled(BookingEvent event, long publishedNanos) {
+            this.event = event;
+            this.publishedNanos = publishedNanos;
+        }
+    }
+
+    /** One consumer: in ASYNC mode its ring buffer, spill queue and dispatcher thread. */
+    private final class Subscriber {
+        final String name;
+        final Consumer<List<BookingEvent>> handler;
+        final Backpressure backpressure;
+
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notEmpty = lock.newCondition();
+        final Condition notFull = lock.newCondition();
+        final Condition idle = lock.newCondition();
+        final BookingEvent[] ring;
+        final long[] publishedNanos;
+        final ArrayDeque<Spilled> spill = new ArrayDeque<>();
+        int head;
+        int count;
+        int inFlight;                // Taken by the dispatcher, handler still running
+        long inFlightSince;          // Publish time of the oldest event in flight
+        boolean running = true;
+        Thread thread;
+
+        final LongAdder queued = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder spilled = new LongAdder();
+        final LongAdder blockedPublishes = new LongAdder();
+        final LongAdder blockedNanos = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicLong maxLagNanos = new AtomicLong();
+
+        Subscriber(String name, Consumer<List<BookingEvent>> handler, Backpressure backpressure) {
+            this.name = name;
+            this.handler = handler;
+            this.backpressure = backpressure;
+            int capacity = delivery == Delivery.ASYNC ? queueCapacity : 0;
+            this.ring = new BookingEvent[capacity];
+            this.publishedNanos = new long[capacity];
+        }
+
+        void offer(BookingEvent event, long now) {
+            lock.lock();
+            try {
+                queued.increment();
+                if (backpressure == Backpressure.SPILL && (count == ring.length || !spill.isEmpty())) {
+                    if (!spill.isEmpty() && spill.size() >= spillCapacity) {
+                        // Overflow full too: drop the oldest queued event, move the next spilled one up
+                        if (count == ring.length) {
+                            ring[head] = null;
+                            head = (head + 1) % ring.length;
+                            count--;
+                            dropped.increment();
+                        }
+                        Spilled next = spill.pollFirst();
+                        int tail = (head + count) % ring.length;
+                        ring[tail] = next.event;
+                        publishedNanos[tail] = next.publishedNanos;
+                        count++;
+                    }
+                    if (spill.size() < spillCapacity) {
+                        spill.addLast(new Spilled(event, now));   // Behind anything already spilled, to keep order
+                        spilled.increment();
+                        notEmpty.signal();
+                        return;
+                    }
+                    // spillCapacity 0: the ring is full, drop its oldest event below
+                }
+                if (count == ring.length && backpressure == Backpressure.BLOCK && running) {
+                    blockedPublishes.increment();
+                    long t0 = System.nanoTime();
+                    while (count == ring.length && running) notFull.awaitUninterruptibly();
+                    blockedNanos.add(System.nanoTime() - t0);
+                }
+                if (!running) {   // Closed: nothing will deliver it
+                    dropped.increment();
+                    return;
+                }
+                if (count == ring.length) {   // DROP_OLDEST
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                    count--;
+                    dropped.increment();
+                }
+                int tail = (head + count) % ring.length;
+                ring[tail] = event;
+                publishedNanos[tail] = now;
+                count++;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void dispatch() {
+            List<BookingEvent> batch = new ArrayList<>(MAX_BATCH);
+            while (true) {
+                long oldest;
+                lock.lock();
+                try {
+                    while (count == 0 && spill.isEmpty() && running) notEmpty.awaitUninterruptibly();
+                    if (count == 0 && spill.isEmpty()) return;   // Closed and drained
+                    while (count < ring.length && !spill.isEmpty()) {
+                        Spilled next = spill.pollFirst();
+                        int tail = (head + count) % ring.length;
+                        ring[tail] = next.event;
+                        publishedNanos[tail] = next.publishedNanos;
+                        count++;
+                    }
+                    oldest = publishedNanos[head];
+                    int n = Math.min(count, MAX_BATCH);
+                    for (int i = 0; i < n; i++) {
+                        batch.add(ring[head]);
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                    }
+                    count -= n;
+                    inFlight = n;
+                    inFlightSince = oldest;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                maxLagNanos.accumulateAndGet(System.nanoTime() - oldest, Math::max);
+                System.out.println("  [KAFKA] → " + name + " consuming " + batch.size() + " event(s)...");
+                deliver(batch);
+
+                lock.lock();
+                try {
+                    inFlight = 0;
+                    if (count == 0 && spill.isEmpty()) idle.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                batch.clear();
+            }
+        }
+
+        void deliver(List<BookingEvent> batch) {
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException e) {
+                errors.increment();   // A failing consumer must not stop its dispatcher
+                System.out.println("  [KAFKA] " + name + " failed on a batch of " + batch.size() + ": " + e);
+            }
+            batches.increment();
+            delivered.add(batch.size());
+        }
+
+        boolean awaitIdle(long deadlineNanos) {
+            lock.lock();
+            try {
+                while (count > 0 || !spill.isEmpty() || inFlight > 0) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    idle.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void stop() {
+            lock.lock();
+            try {
+                running = false;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> stats() {
+            long now = System.nanoTime();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            lock.lock();
+            try {
+                long oldest = inFlight > 0 ? inFlightSince
+                    : count > 0 ? publishedNanos[head]
+                    : !spill.isEmpty() ? spill.peekFirst().publishedNanos : now;
+                stats.put("backpressure", delivery == Delivery.ASYNC ? backpressure : "SYNC");
+                stats.put("queued", queued.sum());
+                stats.put("delivered", delivered.sum());
+                stats.put("dropped", dropped.sum());
+                stats.put("spilled", spilled.sum());
+                stats.put("lagEvents", count + spill.size() + inFlight);
+                stats.put("lagMillis", (now - oldest) / 1_000_000);
+                stats.put("spillDepth", spill.size());
+            } finally {
+                lock.unlock();
+            }
+            stats.put("maxLagMillis", maxLagNanos.get() / 1_000_000);
+            stats.put("batches", batches.sum());
+            stats.put("blockedPublishes", blockedPublishes.sum());
+            stats.put("blockedMillis", blockedNanos.sum() / 1_000_000);
+            stats.put("errors", errors.sum());
+            return stats;
+        }
+    }
+
+    private final Delivery delivery;
+    private final int queueCapacity;
+    private final int spillCapacity;
+    private final AtomicLong published = new AtomicLong();
+    private final List<Subscriber> consumers = new CopyOnWriteArrayList<>();
+
+    public EventBus() {
+        this(Delivery.SYNC, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public EventBus(Delivery delivery, int queueCapacity) {
+        this(delivery, queueCapacity, (int) Math.min(Integer.MAX_VALUE, (long) queueCapacity * DEFAULT_SPILL_FACTOR));
+    }
+
+    /** @param spillCapacity most events a SPILL consumer keeps in overflow beyond its queue */
+    public EventBus(Delivery delivery, int queueCapacity, int spillCapacity) {
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive");
+        if (spillCapacity < 0) throw new IllegalArgumentException("spillCapacity must not be negative");
+        this.delivery = delivery;
+        this.queueCapacity = queueCapacity;
+        this.spillCapacity = spillCapacity;
+    }
+
+    public Delivery getDelivery() { return delivery; }
+
+    /** Subscribe one event at a time; lossless (BLOCK) in ASYNC mode. */
     public void subscribe(String name, Consumer<BookingEvent> handler) {
-        consumers.put(name, handler);
+        subscribe(name, handler, Backpressure.BLOCK);
+    }
+
+    public void subscribe(String name, Consumer<BookingEvent> handler, Backpressure backpressure) {
+        subscribeBatch(name, batch -> batch.forEach(handler), backpressure);
+    }
+
+    /** Subscribe to whole batches (one event per batch in SYNC mode). */
+    public synchronized void subscribeBatch(String name, Consumer<List<BookingEvent>> handler,
+                                            Backpressure backpressure) {
+        unsubscribe(name);
+        Subscriber subscriber = new Subscriber(name, handler, backpressure);
+        if (delivery == Delivery.ASYNC) {
+            subscriber.thread = new Thread(subscriber::dispatch, "eventbus-" + name);
+            subscriber.thread.setDaemon(true);
+            subscriber.thread.start();
+        }
+        consumers.add(subscriber);
+    }
+
+    /** Remove the consumer; in ASYNC mode what it had queued is still delivered first. */
+    public synchronized void unsubscribe(String name) {
+        for (Subscriber subscriber : consumers) {
+            if (subscriber.name.equals(name)) {
+                consumers.remove(subscriber);
+                subscriber.stop();
+            }
+        }
     }
 
     public void publish(BookingEvent event) {
-        eventLog.add(event);
+        published.incrementAndGet();
         System.out.println("  [KAFKA] Published: " + event);
-        for (Map.Entry<String, Consumer<BookingEvent>> entry : consumers.entrySet()) {
-            System.out.println("  [KAFKA] → " + entry.getKey() + " consuming...");
-            entry.getValue().accept(event);
+        if (delivery == Delivery.ASYNC) {
+            long now = System.nanoTime();
+            for (Subscriber subscriber : consumers) {
+                subscriber.offer(event, now);
+            }
+            return;
+        }
+        for (Subscriber subscriber : consumers) {
+            System.out.println("  [KAFKA] → " + subscriber.name + " consuming...");
+            subscriber.queued.increment();
+            subscriber.handler.accept(List.of(event));
+            subscriber.batches.increment();
+            subscriber.delivered.increment();
+        }
+    }
+
+    /** Wait until every consumer has handled everything published so far. True if it did in time. */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Subscriber subscriber : consumers) {
+            if (!subscriber.awaitIdle(deadline)) return false;
+        }
+        return true;
+    }
+
+    /** Stop the dispatchers after they deliver what is queued. Later publishes count as dropped. */
+    public void close() throws InterruptedException {
+        for (Subscriber subscriber : consumers) {
+            subscriber.stop();
+        }
+        for (Subscriber subscriber : consumers) {
+            if (subscriber.thread != null) subscriber.thread.join();
         }
     }
 
-    public int eventCount() { return eventLog.size(); }
+    /** Events published so far, saturated at Integer.MAX_VALUE; see getPublishedCount(). */
+    public int eventCount() { return (int) Math.min(Integer.MAX_VALUE, published.get()); }
+
+    public long getPublishedCount() { return published.get(); }
+
+    /** Per-consumer delivery and lag metrics, in subscription order. */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (Subscriber subscriber : consumers) {
+            stats.put(subscriber.name, subscriber.stats());
+        }
+        return stats;
+    }
 }
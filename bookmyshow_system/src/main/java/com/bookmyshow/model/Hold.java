@@ -1,6 +1,7 @@
 package com.bookmyshow.model;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Hold {
     public enum Status { ACTIVE, CONFIRMED, RELEASED, EXPIRED }
@@ -11,7 +12,7 @@ public class Hold {
     private final List<String> seatIds;
     private final long expiresAt;
     private final double totalPrice;
-    private Status status;
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.ACTIVE);
 
     public Hold(String holdId, String showId, String userId, List<String> seatIds,
                 long expiresAt, double totalPrice) {
@@ -21,7 +22,6 @@ public class Hold {
         this.seatIds = seatIds;
         this.expiresAt = expiresAt;
         this.totalPrice = totalPrice;
-        this.status = Status.ACTIVE;
     }
 
     public String getHoldId() { return holdId; }
@@ -30,17 +30,22 @@ public class Hold {
     public List<String> getSeatIds() { return seatIds; }
     public long getExpiresAt() { return expiresAt; }
     public double getTotalPrice() { return totalPrice; }
-    public Status getStatus() { return status; }
+    public Status getStatus() { return status.get(); }
 
-    public void setStatus(Status status) { this.status = status; }
+    public void setStatus(Status status) { this.status.set(status); }
+
+    /** Decide the hold's outcome exactly once when confirm and release race without a lock. */
+    public boolean compareAndSetStatus(Status expected, Status next) {
+        return status.compareAndSet(expected, next);
+    }
 
     public boolean isExpired() {
-        return status == Status.ACTIVE && System.currentTimeMillis() > expiresAt;
+        return status.get() == Status.ACTIVE && System.currentTimeMillis() > expiresAt;
     }
 
     @Override
     public String toString() {
         return String.format("Hold[%s show=%s user=%s seats=%s status=%s price=$%.0f]",
-            holdId, showId, userId, seatIds, status, totalPrice);
+            holdId, showId, userId, seatIds, status.get(), totalPrice);
     }
 }
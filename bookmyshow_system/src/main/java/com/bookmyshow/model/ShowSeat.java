@@ -1,61 +1,142 @@
 package com.bookmyshow.model;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 /**
  * Represents one row in the show_seats table.
  * Primary key: (showId, seatId). Source of truth for seat availability.
+ *
+ * The mutable columns live in one immutable State that is replaced as a whole,
+ * so a transition can be a compare-and-set on (status, version) — the
+ * in-memory form of UPDATE ... WHERE status = ? AND version = ? — and a
+ * reader never sees a hold's status without its holdId and expiresAt.
  */
 public class ShowSeat {
     public enum Status { AVAILABLE, HELD, CONFIRMED }
 
+    /** One version of the row. Every transition bumps the version. */
+    public static final class State {
+        private final Status status;
+        private final int version;
+        private final String holdId;
+        private final String userId;
+        private final long expiresAt;
+        private final String bookingId;
+
+        private State(Status status, int version, String holdId, String userId,
+                      long expiresAt, String bookingId) {
+            this.status = status;
+            this.version = version;
+            this.holdId = holdId;
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+            this.bookingId = bookingId;
+        }
+
+        public Status getStatus() { return status; }
+        public int getVersion() { return version; }
+        public String getHoldId() { return holdId; }
+        public String getUserId() { return userId; }
+        public long getExpiresAt() { return expiresAt; }
+        public String getBookingId() { return bookingId; }
+
+        public boolean isExpired(long now) {
+            return status == Status.HELD && now > expiresAt;
+        }
+
+        public State toHeld(String holdId, String userId, long expiresAt) {
+            return new State(Status.HELD, version + 1, holdId, userId, expiresAt, null);
+        }
+
+        public State toConfirmed(String bookingId) {
+            return new State(Status.CONFIRMED, version + 1, holdId, userId, expiresAt, bookingId);
+        }
+
+        public State toAvailable() {
+            return new State(Status.AVAILABLE, version + 1, null, null, 0, null);
+        }
+    }
+
     private final String showId;
     private final String seatId;
-    private Status status;
-    private String holdId;
-    private String userId;
-    private long expiresAt;
-    private String bookingId;
-    private int version;
+    private final AtomicReference<State> state;
 
     public ShowSeat(String showId, String seatId) {
         this.showId = showId;
         this.seatId = seatId;
-        this.status = Status.AVAILABLE;
-        this.version = 1;
+        this.state = new AtomicReference<>(new State(Status.AVAILABLE, 1, null, null, 0, null));
     }
 
     public String getShowId() { return showId; }
     public String getSeatId() { return seatId; }
-    public Status getStatus() { return status; }
-    public String getHoldId() { return holdId; }
-    public String getUserId() { return userId; }
-    public long getExpiresAt() { return expiresAt; }
-    public String getBookingId() { return bookingId; }
-    public int getVersion() { return version; }
-
-    public void setStatus(Status status) { this.status = status; }
-    public void setHoldId(String holdId) { this.holdId = holdId; }
-    public void setUserId(String userId) { this.userId = userId; }
-    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
-    public void setBookingId(String bookingId) { this.bookingId = bookingId; }
-    public void incrementVersion() { this.version++; }
+    public State getState() { return state.get(); }
+    public Status getStatus() { return state.get().status; }
+    public String getHoldId() { return state.get().holdId; }
+    public String getUserId() { return state.get().userId; }
+    public long getExpiresAt() { return state.get().expiresAt; }
+    public String getBookingId() { return state.get().bookingId; }
+    public int getVersion() { return state.get().version; }
+
+    // Single-column updates; callers serialize them (the show lock)
+    public void setStatus(Status status) {
+        update(s -> new State(status, s.version, s.holdId, s.userId, s.expiresAt, s.bookingId));
+    }
+
+    public void setHoldId(String holdId) {
+        update(s -> new State(s.status, s.version, holdId, s.userId, s.expiresAt, s.bookingId));
+    }
+
+    public void setUserId(String userId) {
+        update(s -> new State(s.status, s.version, s.holdId, userId, s.expiresAt, s.bookingId));
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        update(s -> new State(s.status, s.version, s.holdId, s.userId, expiresAt, s.bookingId));
+    }
+
+    public void setBookingId(String bookingId) {
+        update(s -> new State(s.status, s.version, s.holdId, s.userId, s.expiresAt, bookingId));
+    }
+
+    public void incrementVersion() {
+        update(s -> new State(s.status, s.version + 1, s.holdId, s.userId, s.expiresAt, s.bookingId));
+    }
+
+    /**
+     * Optimistic transition: succeeds only if the row is still exactly `expected`
+     * (same status and version), i.e. nobody changed it since it was read.
+     */
+    public boolean compareAndSet(State expected, State next) {
+        return state.compareAndSet(expected, next);
+    }
+
+    public void hold(String holdId, String userId, long expiresAt) {
+        update(s -> s.toHeld(holdId, userId, expiresAt));
+    }
+
+    public void confirm(String bookingId) {
+        update(s -> s.toConfirmed(bookingId));
+    }
 
     public boolean isExpired() {
-        return status == Status.HELD && System.currentTimeMillis() > expiresAt;
+        return state.get().isExpired(System.currentTimeMillis());
     }
 
     public void release() {
-        this.status = Status.AVAILABLE;
-        this.holdId = null;
-        this.userId = null;
-        this.expiresAt = 0;
-        this.version++;
+        update(State::toAvailable);
+    }
+
+    private void update(UnaryOperator<State> change) {
+        state.updateAndGet(change);
     }
 
     @Override
     public String toString() {
+        State s = state.get();
         String extra = "";
-        if (status == Status.HELD) extra = " hold=" + holdId + " user=" + userId;
-        if (status == Status.CONFIRMED) extra = " booking=" + bookingId;
-        return String.format("[%s %s%s]", seatId, status, extra);
+        if (s.status == Status.HELD) extra = " hold=" + s.holdId + " user=" + s.userId;
+        if (s.status == Status.CONFIRMED) extra = " booking=" + s.bookingId;
+        return String.format("[%s %s%s]", seatId, s.status, extra);
     }
 }
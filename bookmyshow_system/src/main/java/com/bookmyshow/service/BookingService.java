@@ -61,16 +61,32 @@ public class BookingService {
      * Confirm booking — idempotency check → validate hold → payment → confirm.
      * Returns HTTP-like status: 200 (confirmed), 402 (payment failed),
      * 409 (conflict), 410 (hold expired).
+     *
+     * The key is claimed before anything runs: a duplicate sent while this
+     * request is still paying waits for its result instead of charging again.
      */
     public int confirmBooking(String holdId, String userId, String idempotencyKey) {
-        // 1. Idempotency check
-        CachedResponse cached = idempotencyStore.lookup(idempotencyKey);
+        // 1. Idempotency check (claims the key if it is new)
+        CachedResponse cached = idempotencyStore.claim(idempotencyKey);
         if (cached != null) {
             System.out.println("  [IDEMPOTENT] Duplicate key '" + idempotencyKey +
                 "' → returning cached " + cached.statusCode + " (" + cached.body + ")");
             return cached.statusCode;
         }
+        boolean saved = false;
+        try {
+            int status = confirmClaimed(holdId, userId, idempotencyKey);
+            saved = true;   // Every path that returns has saved its response
+            return status;
+        } finally {
+            if (!saved) {
+                // Any other exit (exception or Error, e.g. OOM mid-payment): let a retry run
+                idempotencyStore.abandon(idempotencyKey);
+            }
+        }
+    }
 
+    private int confirmClaimed(String holdId, String userId, String idempotencyKey) {
         // 2. Validate hold
         Hold hold = seatDB.getHold(holdId);
         if (hold == null) {
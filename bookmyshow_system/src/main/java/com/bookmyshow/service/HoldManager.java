@@ -9,7 +9,8 @@ import java.util.List;
 /**
  * Background process that releases expired holds.
  * In production: cron job running every 30-60 sec.
- * Processes in batches to avoid thundering herd.
+ * SeatInventoryDB keeps active holds in a timing wheel by expiresAt, so each
+ * run touches only the holds that came due since the last one.
  */
 public class HoldManager {
 
@@ -22,26 +23,23 @@ public class HoldManager {
     }
 
     /**
-     * Scan for expired holds and release them.
+     * Release holds that expired since the last run.
      * Returns the number of holds released.
      */
     public int releaseExpiredHolds() {
-        List<Hold> expired = seatDB.findExpiredHolds();
+        List<Hold> expired = seatDB.releaseExpiredHolds();
         if (expired.isEmpty()) {
             System.out.println("  [HOLD MANAGER] No expired holds found");
             return 0;
         }
 
         System.out.println("  [HOLD MANAGER] Found " + expired.size() + " expired hold(s)");
-        int released = 0;
         for (Hold hold : expired) {
-            seatDB.releaseHold(hold.getHoldId());
-            released++;
             System.out.println("  [HOLD MANAGER] Released: " + hold.getHoldId() +
                 " (seats " + hold.getSeatIds() + " → AVAILABLE)");
             eventBus.publish(new BookingEvent(BookingEvent.Type.BOOKING_RELEASED,
                 hold.getShowId(), hold.getUserId(), hold.getHoldId(), null, hold.getSeatIds()));
         }
-        return released;
+        return expired.size();
     }
 }
@@ -0,0 +1,257 @@
+package com.bookmyshow.service;
+
+import com.bookmyshow.event.BookingEvent;
+import com.bookmyshow.event.EventBus;
+import com.bookmyshow.model.ShowSeat;
+import com.bookmyshow.storage.SeatInventoryDB;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read model for seat-map pages — the highest-QPS read in the system.
+ *
+ * Keeps one immutable, versioned Snapshot per show: 2 bits per seat
+ * (AVAILABLE / HELD / CONFIRMED) packed into a long[], in the show's seat
+ * order. A page view is a single reference read; nothing is built per request.
+ *
+ * Snapshots are maintained from BookingEvents on the EventBus. An event says
+ * which seats changed; their current status is re-read from SeatInventoryDB,
+ * so a late or duplicate event cannot roll a seat back. Each change publishes
+ * a new snapshot (copy-on-write of the small bitmap) with version + 1; with an
+ * ASYNC bus a whole batch of events for a show becomes one new version.
+ *
+ * Clients that already have version v ask for getDelta(showId, v) and get only
+ * the seats that differ. The last HISTORY versions per show are kept for this;
+ * anything older gets a full snapshot to resync from.
+ */
+public class SeatMapCache {
+
+    /** Versions kept per show for deltas. */
+    public static final int HISTORY = 64;
+
+    private static final ShowSeat.Status[] STATUSES = ShowSeat.Status.values();
+
+    /** Seat order and seatId → position of one show; shared by all its snapshots. */
+    private static final class Layout {
+        final String[] seatIds;
+        final Map<String, Integer> index = new HashMap<>();
+
+        Layout(List<ShowSeat> seats) {
+            seatIds = new String[seats.size()];
+            for (int i = 0; i < seatIds.length; i++) {
+                seatIds[i] = seats.get(i).getSeatId();
+                index.put(seatIds[i], i);
+            }
+        }
+    }
+
+    /** Immutable seat map of one show at one version. */
+    public static final class Snapshot {
+        private final String showId;
+        private final long version;
+        private final Layout layout;
+        private final long[] bits;   // 2 bits per seat, 32 seats per word
+        private String encoded;      // Lazily built; racy but idempotent
+
+        private Snapshot(String showId, long version, Layout layout, long[] bits) {
+            this.showId = showId;
+            this.version = version;
+            this.layout = layout;
+            this.bits = bits;
+        }
+
+        public String getShowId() { return showId; }
+        public long getVersion() { return version; }
+        public int getSeatCount() { return layout.seatIds.length; }
+        public String getSeatId(int index) { return layout.seatIds[index]; }
+
+        public ShowSeat.Status getStatus(int index) {
+            return STATUSES[(int) (bits[index >>> 5] >>> ((index & 31) << 1)) & 3];
+        }
+
+        /** Status of a seat, or null if the show has no such seat. */
+        public ShowSeat.Status getStatus(String seatId) {
+            Integer index = layout.index.get(seatId);
+            return index != null ? getStatus(index) : null;
+        }
+
+        public int countAvailable() {
+            int available = 0;
+            for (int i = 0; i < layout.seatIds.length; i++) {
+                if (getStatus(i) == ShowSeat.Status.AVAILABLE) available++;
+            }
+            return available;
+        }
+
+        /** The bitmap as Base64 (little-endian words), ready to send to a client. */
+        public String getEncoded() {
+            String result = encoded;
+            if (result == null) {
+                int bytes = (layout.seatIds.length + 3) / 4;
+                byte[] packed = new byte[bytes];
+                for (int i = 0; i < bytes; i++) {
+                    packed[i] = (byte) (bits[i >>> 3] >>> ((i & 7) << 3));
+                }
+                result = Base64.getEncoder().encodeToString(packed);
+                encoded = result;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SeatMap[%s v%d %d/%d available]",
+                showId, version, countAvailable(), getSeatCount());
+        }
+    }
+
+    /** Seats that changed between two versions, or a full snapshot if the base version is too old. */
+    public static final class Delta {
+        private final String showId;
+        private final long fromVersion;
+        private final long toVersion;
+        private final Map<String, ShowSeat.Status> changes;
+        private final Snapshot fullSnapshot;
+
+        private Delta(String showId, long fromVersion, long toVersion,
+                      Map<String, ShowSeat.Status> changes, Snapshot fullSnapshot) {
+            this.showId = showId;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.changes = changes;
+            this.fullSnapshot = fullSnapshot;
+        }
+
+        public String getShowId() { return showId; }
+        public long getFromVersion() { return fromVersion; }
+        public long getToVersion() { return toVersion; }
+        public Map<String, ShowSeat.Status> getChanges() { return changes; }
+        public boolean isFullResync() { return fullSnapshot != null; }
+        public Snapshot getFullSnapshot() { return fullSnapshot; }
+
+        @Override
+        public String toString() {
+            return isFullResync()
+                ? String.format("Delta[%s v%d→v%d FULL %s]", showId, fromVersion, toVersion, fullSnapshot)
+                : String.format("Delta[%s v%d→v%d %s]", showId, fromVersion, toVersion, changes);
+        }
+    }
+
+    /** Current snapshot of one show plus recent ones for deltas; writers serialize on it. */
+    private static final class ShowMap {
+        volatile Snapshot current;                          // null while the first load runs
+        final Snapshot[] history = new Snapshot[HISTORY];   // history[v % HISTORY]
+    }
+
+    private final SeatInventoryDB seatDB;
+    private final Map<String, ShowMap> shows = new ConcurrentHashMap<>();
+
+    public SeatMapCache(SeatInventoryDB seatDB, EventBus eventBus) {
+        this.seatDB = seatDB;
+        eventBus.subscribeBatch("SeatMapCache", this::onEvents, EventBus.Backpressure.BLOCK);
+    }
+
+    /** Current seat map of the show (built from the inventory on first request), or null if unknown. */
+    public Snapshot getSnapshot(String showId) {
+        ShowMap map = shows.get(showId);
+        if (map == null) {
+            map = load(showId);
+            if (map == null) return null;
+        }
+        Snapshot current = map.current;
+        if (current == null) {
+            synchronized (map) {   // Another request is loading it
+                current = map.current;
+            }
+        }
+        return current;
+    }
+
+    /** What changed since the client's version. */
+    public Delta getDelta(String showId, long sinceVersion) {
+        Snapshot current = getSnapshot(showId);
+        if (current == null) return null;
+        ShowMap map = shows.get(showId);
+        Snapshot base = sinceVersion >= 1 && sinceVersion <= current.version ? map.history[(int) (sinceVersion % HISTORY)] : null;
+        if (base == null || base.version != sinceVersion || base.layout != current.layout) {
+            return new Delta(showId, sinceVersion, current.version, Map.of(), current);
+        }
+
+        Map<String, ShowSeat.Status> changes = new LinkedHashMap<>();
+        for (int w = 0; w < current.bits.length; w++) {
+            long diff = current.bits[w] ^ base.bits[w];
+            while (diff != 0) {
+                int seat = (w << 5) + (Long.numberOfTrailingZeros(diff) >>> 1);
+                changes.put(current.layout.seatIds[seat], current.getStatus(seat));
+                diff &= ~(3L << ((seat & 31) << 1));
+            }
+        }
+        return new Delta(showId, sinceVersion, current.version, changes, null);
+    }
+
+    /** A batch of events (one in SYNC mode) becomes at most one new snapshot per show. */
+    private void onEvents(List<BookingEvent> events) {
+        Map<String, Set<String>> changed = new LinkedHashMap<>();
+        for (BookingEvent event : events) {
+            changed.computeIfAbsent(event.getShowId(), k -> new LinkedHashSet<>()).addAll(event.getSeatIds());
+        }
+        changed.forEach(this::refresh);
+    }
+
+    private void refresh(String showId, Set<String> seatIds) {
+        ShowMap map = shows.get(showId);
+        if (map == null) return;   // Not viewed yet: built from the inventory on first read
+        synchronized (map) {
+            Snapshot current = map.current;
+            long[] bits = null;
+            for (String seatId : seatIds) {
+                Integer index = current.layout.index.get(seatId);
+                ShowSeat seat = seatDB.getShowSeat(showId, seatId);
+                if (index == null || seat == null) continue;
+                long[] target = bits != null ? bits : current.bits;
+                long updated = withStatus(target[index >>> 5], index, seat.getStatus());
+                if (updated == target[index >>> 5]) continue;
+                if (bits == null) bits = current.bits.clone();
+                bits[index >>> 5] = updated;
+            }
+            if (bits == null) return;   // Already reflected (duplicate or late event)
+            publish(map, new Snapshot(current.showId, current.version + 1, current.layout, bits));
+        }
+    }
+
+    /**
+     * Register the show before reading the inventory: an event committed after
+     * the read waits for this load and is applied on top; one committed before
+     * it is already in what we read.
+     */
+    private ShowMap load(String showId) {
+        ShowMap fresh = new ShowMap();
+        synchronized (fresh) {
+            ShowMap existing = shows.putIfAbsent(showId, fresh);
+            if (existing != null) return existing;
+
+            List<ShowSeat> seats = seatDB.getSeatsForShow(showId);
+            if (seats.isEmpty()) {
+                shows.remove(showId, fresh);
+                return null;
+            }
+            Layout layout = new Layout(seats);
+            long[] bits = new long[(seats.size() + 31) >>> 5];
+            for (int i = 0; i < seats.size(); i++) {
+                bits[i >>> 5] = withStatus(bits[i >>> 5], i, seats.get(i).getStatus());
+            }
+            publish(fresh, new Snapshot(showId, 1, layout, bits));
+            return fresh;
+        }
+    }
+
+    private static void publish(ShowMap map, Snapshot next) {
+        map.history[(int) (next.version % HISTORY)] = next;
+        map.current = next;
+    }
+
+    private static long withStatus(long word, int index, ShowSeat.Status status) {
+        int shift = (index & 31) << 1;
+        return (word & ~(3L << shift)) | ((long) status.ordinal() << shift);
+    }
+}
@@ -0,0 +1,150 @@
+package com.bookmyshow.storage;
+
+import com.bookmyshow.model.Hold;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel of holds keyed by a due time (expiresAt, or when a
+ * finished hold may be dropped).
+ *
+ * 4 levels × 64 slots; a level-0 slot is one tick, a level-L slot 64^L ticks.
+ * An entry goes to the lowest level whose slot still separates its tick from
+ * the current one; when a level-L slot comes due its entries cascade down to
+ * finer levels. With a 100 ms tick the wheel spans 64^4 ticks ≈ 19 days;
+ * anything later waits in an overflow list.
+ *
+ *   schedule: O(1)      advance: O(ticks passed / 64 + entries due)
+ *
+ * Empty runs of level-0 slots are skipped using an occupancy bitmap, so a
+ * sweep after a quiet hour does not walk 36,000 empty ticks.
+ *
+ * schedule() is lock-free (an inbox the sweeper drains), so registering a
+ * hold does not put a global lock back on the booking path. advance() is
+ * meant for one sweeper at a time and serializes on the wheel.
+ * Entries are never removed early: a confirmed or released hold stays until
+ * its slot fires, and the sweeper decides then what to do with it.
+ */
+final class HoldExpiryWheel {
+
+    static final class Entry {
+        final Hold hold;
+        final long dueMillis;
+
+        Entry(Hold hold, long dueMillis) {
+            this.hold = hold;
+            this.dueMillis = dueMillis;
+        }
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Queue<Entry> inbox = new ConcurrentLinkedQueue<>();
+    private final List<List<Entry>> slots = new ArrayList<>(LEVELS * SLOTS);   // [level × SLOTS + slot]
+    private final long[] occupied = new long[LEVELS];                          // Bit per non-empty slot
+    private List<Entry> overflow = new ArrayList<>();
+    private List<Entry> due = new ArrayList<>();   // Scheduled in the past; handed out on the next advance
+    private long currentTick = -1;                 // Every tick before this one has been processed
+    private int size;
+
+    HoldExpiryWheel(long tickMillis) {
+        this.tickMillis = tickMillis;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /** Register a hold to come due at dueMillis. Thread-safe, lock-free. */
+    void schedule(Hold hold, long dueMillis) {
+        inbox.add(new Entry(hold, dueMillis));
+    }
+
+    /**
+     * Everything due strictly before the start of the current tick,
+     * i.e. at most one tick late and never early.
+     */
+    synchronized List<Entry> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        if (currentTick < 0) currentTick = target;
+        for (Entry entry; (entry = inbox.poll()) != null; ) {
+            size++;
+            place(entry);
+        }
+
+        while (currentTick < target) {
+            int slot = (int) (currentTick & (SLOTS - 1));
+            long ahead = occupied[0] >>> slot;
+            if (ahead == 0) {
+                // Rest of this level-0 rotation is empty: jump to its end (or to now)
+                currentTick = Math.min(target, (currentTick | (SLOTS - 1)) + 1);
+            } else {
+                int skip = Long.numberOfTrailingZeros(ahead);
+                if (currentTick + skip >= target) {
+                    currentTick = target;
+                    break;
+                }
+                currentTick += skip;
+                drainSlot(0, (int) (currentTick & (SLOTS - 1)), due);
+                currentTick++;
+            }
+            if ((currentTick & (SLOTS - 1)) == 0) cascade();
+        }
+
+        List<Entry> result = due;
+        due = new ArrayList<>();
+        size -= result.size();
+        return result;
+    }
+
+    /** Entries scheduled and not yet handed out (including the undrained inbox). */
+    synchronized int size() {
+        return size + inbox.size();
+    }
+
+    /** Pull the slots of every level that just rolled over down into finer levels, highest first. */
+    private void cascade() {
+        if ((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0 && !overflow.isEmpty()) {
+            List<Entry> pending = overflow;
+            overflow = new ArrayList<>();
+            pending.forEach(this::place);
+        }
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) continue;
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            List<Entry> pending = new ArrayList<>();
+            drainSlot(level, slot, pending);
+            pending.forEach(this::place);
+        }
+    }
+
+    private void place(Entry entry) {
+        long tick = Math.floorDiv(entry.dueMillis, tickMillis);
+        if (tick < currentTick) {
+            due.add(entry);
+            return;
+        }
+        // Lowest level at which tick and currentTick share the same parent slot
+        long diff = tick ^ currentTick;
+        int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+        if (level >= LEVELS) {
+            overflow.add(entry);
+            return;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        slots.get(level * SLOTS + slot).add(entry);
+        occupied[level] |= 1L << slot;
+    }
+
+    private void drainSlot(int level, int slot, List<Entry> into) {
+        List<Entry> entries = slots.get(level * SLOTS + slot);
+        if (entries.isEmpty()) return;
+        into.addAll(entries);
+        slots.set(level * SLOTS + slot, new ArrayList<>());   // Let a burst's backing array go
+        occupied[level] &= ~(1L << slot);
+    }
+}
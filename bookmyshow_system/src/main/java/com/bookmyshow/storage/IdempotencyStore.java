@@ -1,14 +1,47 @@
 package com.bookmyshow.storage;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Simulates idempotency key storage (DB table in same DB as bookings).
  * Written atomically with booking in same transaction.
+ *
+ * Keys are kept for a TTL (24 hours by default); after that a retry counts as
+ * a new request. Time is cut into buckets of ttl / SEGMENTS and every bucket
+ * gets its own segment (hash map). Once a whole bucket is older than the TTL
+ * its segment is dropped in one step, with no per-key timestamps or scans.
+ * A key lives between ttl and ttl + 2 × ttl / SEGMENTS.
+ *
+ * Keys are hashed over SHARDS shards, each with its own lock, so concurrent
+ * confirms only contend when their keys land in the same shard. The store
+ * holds at most maxEntries keys; a full shard evicts its oldest finished
+ * keys first, before their TTL.
+ *
+ * In-flight dedup: claim(key) returns the saved response, or makes the caller
+ * the owner of the key until it calls save() (or abandon() if it failed).
+ * A duplicate that arrives meanwhile waits for the owner's response instead of
+ * running the payment step a second time.
  */
 public class IdempotencyStore {
 
+    public static final long DEFAULT_TTL_MS = 24 * 60 * 60_000L;
+    public static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+
+    /** How long a duplicate waits for the request that owns its key. */
+    public static final long IN_FLIGHT_WAIT_MS = 10_000;
+
+    /** Returned (never saved) when the owner of the key is still running after IN_FLIGHT_WAIT_MS. */
+    public static final CachedResponse IN_PROGRESS =
+        new CachedResponse(409, "A request with this key is still in progress");
+
+    private static final int SHARDS = 16;
+    private static final int SEGMENTS = 8;
+
     public static class CachedResponse {
         public final int statusCode;
         public final String body;
@@ -19,13 +52,220 @@ public class IdempotencyStore {
         }
     }
 
-    private final Map<String, CachedResponse> store = new LinkedHashMap<>();
+    /** One key; its response completes when the owner saves (or with null if it abandons). */
+    private static final class Entry {
+        final CompletableFuture<CachedResponse> response = new CompletableFuture<>();
+    }
+
+    /** Keys first seen during one time bucket, in insertion order. */
+    private static final class Segment {
+        final long bucket;
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+        Segment(long bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    /** Segments oldest first; guarded by the shard's monitor. */
+    private static final class Shard {
+        final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        int size;
+    }
+
+    private final long bucketMillis;
+    private final int maxEntriesPerShard;
+    private final Shard[] shards = new Shard[SHARDS];
+
+    private final LongAdder claims = new LongAdder();          // Keys handed to a new owner
+    private final LongAdder hits = new LongAdder();            // Duplicates answered from the store
+    private final LongAdder inFlightWaits = new LongAdder();   // Duplicates that waited for the owner
+    private final LongAdder expired = new LongAdder();         // Dropped with their segment after the TTL
+    private final LongAdder evicted = new LongAdder();         // Dropped early by the size cap
+
+    public IdempotencyStore() {
+        this(DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public IdempotencyStore(long ttlMillis, int maxEntries) {
+        if (ttlMillis <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("ttlMillis and maxEntries must be positive");
+        }
+        this.bucketMillis = Math.max(1, (ttlMillis + SEGMENTS - 1) / SEGMENTS);
+        this.maxEntriesPerShard = Math.max(1, maxEntries / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
 
+    /** Saved response for the key, or null if there is none yet (unknown or still in flight). */
     public CachedResponse lookup(String key) {
-        return store.get(key);
+        Shard shard = shardFor(key);
+        Entry entry;
+        synchronized (shard) {
+            expire(shard, currentBucket());
+            entry = find(shard, key);
+        }
+        return entry != null ? entry.response.getNow(null) : null;
     }
 
+    /**
+     * Saved response for the key, or null if the caller now owns it and must
+     * save() or abandon() it. If another request owns the key, waits for its
+     * response (IN_PROGRESS after IN_FLIGHT_WAIT_MS); if that request abandons
+     * the key, claims it again.
+     */
+    public CachedResponse claim(String key) {
+        Shard shard = shardFor(key);
+        long deadline = System.currentTimeMillis() + IN_FLIGHT_WAIT_MS;
+        while (true) {
+            Entry entry;
+            synchronized (shard) {
+                long bucket = currentBucket();
+                expire(shard, bucket);
+                entry = find(shard, key);
+                if (entry == null) {
+                    insert(shard, bucket, key, new Entry());
+                    claims.increment();
+                    return null;
+                }
+            }
+            CachedResponse response = entry.response.getNow(null);
+            if (response == null && !entry.response.isDone()) {
+                inFlightWaits.increment();
+                response = await(entry, deadline);
+                if (response == IN_PROGRESS) return response;
+            }
+            if (response != null) {
+                hits.increment();
+                return response;
+            }
+            // Owner abandoned the key: try to claim it ourselves
+        }
+    }
+
+    /** Store the response for the key and hand it to any duplicates waiting in claim(). */
     public void save(String key, int statusCode, String body) {
-        store.put(key, new CachedResponse(statusCode, body));
+        Shard shard = shardFor(key);
+        Entry entry;
+        synchronized (shard) {
+            long bucket = currentBucket();
+            expire(shard, bucket);
+            entry = find(shard, key);
+            if (entry == null) {   // Saved without claim(), or dropped while in flight
+                entry = new Entry();
+                insert(shard, bucket, key, entry);
+            }
+        }
+        entry.response.complete(new CachedResponse(statusCode, body));   // First response wins
+    }
+
+    /** The owner failed without a response: free the key so a duplicate or retry can run. */
+    public void abandon(String key) {
+        Shard shard = shardFor(key);
+        Entry entry = null;
+        synchronized (shard) {
+            for (Segment segment : shard.segments) {
+                Entry candidate = segment.entries.get(key);
+                if (candidate != null && !candidate.response.isDone()) {
+                    segment.entries.remove(key);
+                    shard.size--;
+                    entry = candidate;
+                }
+            }
+        }
+        if (entry != null) entry.response.complete(null);
+    }
+
+    /** Keys currently stored, including in-flight ones. */
+    public int size() {
+        long bucket = currentBucket();
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                expire(shard, bucket);
+                size += shard.size;
+            }
+        }
+        return size;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("claims", claims.sum());
+        stats.put("hits", hits.sum());
+        stats.put("inFlightWaits", inFlightWaits.sum());
+        stats.put("expired", expired.sum());
+        stats.put("evicted", evicted.sum());
+        return stats;
+    }
+
+    private Shard shardFor(String key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / bucketMillis;
+    }
+
+    private static Entry find(Shard shard, String key) {
+        for (Iterator<Segment> it = shard.segments.descendingIterator(); it.hasNext(); ) {
+            Entry entry = it.next().entries.get(key);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+    /** Drop every segment whose bucket ended more than a TTL ago. */
+    private void expire(Shard shard, long bucket) {
+        Segment oldest;
+        while ((oldest = shard.segments.peekFirst()) != null && oldest.bucket + SEGMENTS < bucket) {
+            shard.segments.pollFirst();
+            shard.size -= oldest.entries.size();
+            expired.add(oldest.entries.size());
+        }
+    }
+
+    private void insert(Shard shard, long bucket, String key, Entry entry) {
+        Segment newest = shard.segments.peekLast();
+        if (newest == null || newest.bucket < bucket) {   // A clock step back keeps using the newest
+            newest = new Segment(bucket);
+            shard.segments.addLast(newest);
+        }
+        newest.entries.put(key, entry);
+        shard.size++;
+        if (shard.size > maxEntriesPerShard) evict(shard);
+    }
+
+    /** Over the cap: drop the oldest finished keys. In-flight keys are never dropped early. */
+    private void evict(Shard shard) {
+        for (Iterator<Segment> segments = shard.segments.iterator();
+             segments.hasNext() && shard.size > maxEntriesPerShard; ) {
+            Segment segment = segments.next();
+            for (Iterator<Entry> it = segment.entries.values().iterator();
+                 it.hasNext() && shard.size > maxEntriesPerShard; ) {
+                if (!it.next().response.isDone()) continue;
+                it.remove();
+                shard.size--;
+                evicted.increment();
+            }
+            if (segment.entries.isEmpty()) segments.remove();
+        }
+    }
+
+    private static CachedResponse await(Entry entry, long deadline) {
+        try {
+            long wait = Math.max(1, deadline - System.currentTimeMillis());
+            return entry.response.get(wait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return IN_PROGRESS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return IN_PROGRESS;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());   // Never completed exceptionally
+        }
     }
 }
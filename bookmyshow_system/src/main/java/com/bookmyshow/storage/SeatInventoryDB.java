@@ -4,137 +4,418 @@ import com.bookmyshow.model.Hold;
 import com.bookmyshow.model.Booking;
 import com.bookmyshow.model.ShowSeat;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Simulates the seat inventory database (MySQL/PostgreSQL).
  * Source of truth for seat state: AVAILABLE / HELD / CONFIRMED.
  *
  * Provides atomic operations:
- * - holdSeats: all-or-nothing hold (pessimistic lock via synchronized)
+ * - holdSeats: all-or-nothing hold
  * - confirmHold: HELD → CONFIRMED
  * - releaseHold: HELD → AVAILABLE
+ *
+ * Two concurrency-control modes, chosen when the database is created:
+ * - PESSIMISTIC (default): SELECT ... FOR UPDATE. Locking is striped per show
+ *   (see ShowInventory): a hold on one show never waits for a hold on another.
+ *   A hold only ever touches one show, so there is no lock ordering to get wrong.
+ * - OPTIMISTIC: version column. Read the seats, validate, then move each one
+ *   with a compare-and-set on (status, version); if another request changed a
+ *   seat in between, undo and retry from a fresh read. No locks at all, so an
+ *   uncontended hold never waits; under heavy contention requests retry instead.
+ *
+ * getStats() reports lock waits (pessimistic) and CAS conflicts / retries
+ * (optimistic) so the two can be compared on the same traffic.
+ *
+ * Holds are indexed by expiresAt in a timing wheel (HoldExpiryWheel), so the
+ * Hold Manager's sweep costs O(holds due) instead of a scan of every hold ever
+ * made. Finished holds are dropped from memory by the same sweep once they can
+ * no longer matter, so the holds map stays the size of the live working set
+ * over a multi-day sale (bookings are the permanent record).
  */
 public class SeatInventoryDB {
 
-    private final Map<String, ShowSeat> showSeats = new LinkedHashMap<>();
-    private final Map<String, Hold> holds = new LinkedHashMap<>();
-    private final Map<String, Booking> bookings = new LinkedHashMap<>();
-    private int holdCounter = 0;
-    private int bookingCounter = 0;
+    public enum ConcurrencyControl { PESSIMISTIC, OPTIMISTIC }
+
+    /** Optimistic hold: re-reads after a lost compare-and-set before giving up. */
+    public static final int MAX_OPTIMISTIC_RETRIES = 3;
+
+    /** Expiry granularity: a hold is released at most one tick after it expires. */
+    public static final long HOLD_EXPIRY_TICK_MS = 100;
+
+    /** A finished hold stays queryable this long after its expiry, so late confirm retries get 409, not 404. */
+    public static final long DEFAULT_FINISHED_HOLD_RETENTION_MS = 10 * 60_000;
+
+    private final ConcurrencyControl concurrency;
+    private final Map<String, ShowInventory> shows = new ConcurrentHashMap<>();
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final Map<String, Booking> bookings = new ConcurrentHashMap<>();
+    private final AtomicInteger holdCounter = new AtomicInteger();
+    private final AtomicInteger bookingCounter = new AtomicInteger();
+    private final HoldExpiryWheel expiryWheel = new HoldExpiryWheel(HOLD_EXPIRY_TICK_MS);
+    private volatile long finishedHoldRetentionMs = DEFAULT_FINISHED_HOLD_RETENTION_MS;
+
+    // Metrics
+    private final LongAdder operations = new LongAdder();       // hold / confirm / release calls
+    private final LongAdder lockWaits = new LongAdder();        // Pessimistic: show lock was taken, had to wait
+    private final LongAdder casConflicts = new LongAdder();     // Optimistic: a seat or hold changed under us
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+
+    public SeatInventoryDB() {
+        this(ConcurrencyControl.PESSIMISTIC);
+    }
+
+    public SeatInventoryDB(ConcurrencyControl concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public ConcurrencyControl getConcurrencyControl() { return concurrency; }
+
+    /** How long a finished hold stays queryable after its expiry before it is compacted away. */
+    public void setFinishedHoldRetentionMs(long retentionMs) {
+        this.finishedHoldRetentionMs = retentionMs;
+    }
 
     /** Initialize seat inventory for a show. */
     public void initShowSeat(String showId, String seatId) {
-        String key = showId + ":" + seatId;
-        showSeats.put(key, new ShowSeat(showId, seatId));
+        shows.computeIfAbsent(showId, ShowInventory::new).addSeat(seatId);
     }
 
     public ShowSeat getShowSeat(String showId, String seatId) {
-        return showSeats.get(showId + ":" + seatId);
+        ShowInventory show = shows.get(showId);
+        return show != null ? show.getSeat(seatId) : null;
     }
 
     public List<ShowSeat> getSeatsForShow(String showId) {
-        return showSeats.values().stream()
-            .filter(s -> s.getShowId().equals(showId))
-            .collect(Collectors.toList());
+        ShowInventory show = shows.get(showId);
+        return show != null ? show.getSeats() : new ArrayList<>();
+    }
+
+    /** Seats of the show currently AVAILABLE (expired holds not yet released count as held). */
+    public int countAvailable(String showId) {
+        ShowInventory show = shows.get(showId);
+        return show != null ? show.countAvailable() : 0;
     }
 
     /**
-     * Atomic all-or-nothing hold (simulates SELECT ... FOR UPDATE in a transaction).
+     * Atomic all-or-nothing hold.
      * If ALL seats are AVAILABLE → set to HELD. If ANY is not → fail entirely.
-     * synchronized = simulates DB row-level lock (only one thread at a time).
+     * Seat ids are resolved to indexes before locking (or reading, if optimistic).
      */
-    public synchronized Hold holdSeats(String showId, List<String> seatIds,
-                                        String userId, long holdDurationMs, double totalPrice) {
-        // Check all seats are AVAILABLE
-        for (String seatId : seatIds) {
-            ShowSeat seat = getShowSeat(showId, seatId);
-            if (seat == null || seat.getStatus() != ShowSeat.Status.AVAILABLE) {
-                // If expired hold, release it first (lazy release)
-                if (seat != null && seat.isExpired()) {
-                    seat.release();
-                    System.out.println("    [LAZY RELEASE] Seat " + seatId + " hold expired, released");
-                    continue;
+    public Hold holdSeats(String showId, List<String> seatIds,
+                          String userId, long holdDurationMs, double totalPrice) {
+        ShowInventory show = shows.get(showId);
+        if (show == null) return null;
+        int[] indexes = show.indexesOf(seatIds);
+        if (indexes == null) return null;
+        operations.increment();
+
+        if (concurrency == ConcurrencyControl.OPTIMISTIC) {
+            return holdSeatsOptimistic(show, indexes, seatIds, userId, holdDurationMs, totalPrice);
+        }
+
+        // Simulates SELECT ... FOR UPDATE on the show's rows in a transaction
+        if (show.lock()) lockWaits.increment();
+        try {
+            // Check all seats are AVAILABLE
+            for (int index : indexes) {
+                if (!show.isAvailable(index)) {
+                    // If expired hold, release it first (lazy release)
+                    ShowSeat seat = show.seat(index);
+                    if (seat.isExpired()) {
+                        show.release(index);
+                        System.out.println("    [LAZY RELEASE] Seat " + seat.getSeatId() + " hold expired, released");
+                        continue;
+                    }
+                    return null; // at least one seat not available → fail all
                 }
-                return null; // at least one seat not available → fail all
             }
-        }
 
-        // All available → hold all
-        String holdId = "h_" + String.format("%03d", ++holdCounter);
-        long expiresAt = System.currentTimeMillis() + holdDurationMs;
-
-        for (String seatId : seatIds) {
-            ShowSeat seat = getShowSeat(showId, seatId);
-            seat.setStatus(ShowSeat.Status.HELD);
-            seat.setHoldId(holdId);
-            seat.setUserId(userId);
-            seat.setExpiresAt(expiresAt);
-            seat.incrementVersion();
+            // All available → hold all
+            String holdId = nextHoldId();
+            long expiresAt = System.currentTimeMillis() + holdDurationMs;
+
+            for (int index : indexes) {
+                show.hold(index, holdId, userId, expiresAt);
+            }
+
+            Hold hold = new Hold(holdId, show.getShowId(), userId, seatIds, expiresAt, totalPrice);
+            holds.put(holdId, hold);
+            expiryWheel.schedule(hold, expiresAt);
+            return hold;
+        } finally {
+            show.unlock();
         }
+    }
+
+    /**
+     * Simulates UPDATE show_seats SET status = 'HELD', version = version + 1
+     * WHERE ... AND status = ? AND version = ?, one row at a time.
+     * A seat that is taken fails the hold at once (retrying cannot help);
+     * a lost compare-and-set undoes the seats already claimed and retries.
+     */
+    private Hold holdSeatsOptimistic(ShowInventory show, int[] indexes, List<String> seatIds,
+                                     String userId, long holdDurationMs, double totalPrice) {
+        ShowSeat.State[] seen = new ShowSeat.State[indexes.length];
+        ShowSeat.State[] mine = new ShowSeat.State[indexes.length];
+        String holdId = null;
+
+        for (int attempt = 0; ; attempt++) {
+            // Read + validate: every seat AVAILABLE, or held by an expired hold (taken over directly)
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < indexes.length; i++) {
+                seen[i] = show.seat(indexes[i]).getState();
+                if (seen[i].getStatus() != ShowSeat.Status.AVAILABLE && !seen[i].isExpired(now)) {
+                    return null; // at least one seat not available → fail all
+                }
+            }
+
+            // Commit: compare-and-set each seat from the version read
+            if (holdId == null) holdId = nextHoldId();
+            long expiresAt = now + holdDurationMs;
+            int claimed = 0;
+            while (claimed < indexes.length) {
+                mine[claimed] = seen[claimed].toHeld(holdId, userId, expiresAt);
+                if (!show.seat(indexes[claimed]).compareAndSet(seen[claimed], mine[claimed])) break;
+                claimed++;
+            }
 
-        Hold hold = new Hold(holdId, showId, userId, seatIds, expiresAt, totalPrice);
-        holds.put(holdId, hold);
-        return hold;
+            if (claimed == indexes.length) {
+                for (int i = 0; i < indexes.length; i++) {
+                    show.syncBits(indexes[i]);
+                    if (seen[i].getStatus() == ShowSeat.Status.HELD) {
+                        System.out.println("    [LAZY RELEASE] Seat " + seatIds.get(i) + " hold expired, released");
+                    }
+                }
+                Hold hold = new Hold(holdId, show.getShowId(), userId, seatIds, expiresAt, totalPrice);
+                holds.put(holdId, hold);
+                expiryWheel.schedule(hold, expiresAt);
+                return hold;
+            }
+
+            // Lost a race on one seat: give back the ones already claimed, then re-read
+            casConflicts.increment();
+            for (int i = 0; i < claimed; i++) {
+                show.seat(indexes[i]).compareAndSet(mine[i], mine[i].toAvailable());
+                show.syncBits(indexes[i]);
+            }
+            if (attempt == MAX_OPTIMISTIC_RETRIES) {
+                retriesExhausted.increment();
+                return null;
+            }
+            retries.increment();
+        }
     }
 
     /**
      * Confirm a hold: HELD → CONFIRMED. Atomic.
      * Validates: hold exists, is ACTIVE, not expired, belongs to user.
      */
-    public synchronized Booking confirmHold(String holdId, String userId, String paymentId) {
+    public Booking confirmHold(String holdId, String userId, String paymentId) {
         Hold hold = holds.get(holdId);
         if (hold == null) return null;
+        ShowInventory show = shows.get(hold.getShowId());
+        int[] indexes = show.indexesOf(hold.getSeatIds());
+        operations.increment();
+
+        if (concurrency == ConcurrencyControl.OPTIMISTIC) {
+            return confirmHoldOptimistic(show, indexes, hold, userId, paymentId);
+        }
+
+        if (show.lock()) lockWaits.increment();
+        try {
+            if (hold.getStatus() != Hold.Status.ACTIVE) return null;
+            if (!hold.getUserId().equals(userId)) return null;
+
+            // Check not expired
+            if (hold.isExpired()) {
+                releaseHold(holdId);
+                return null;
+            }
+
+            // Every seat must still be held by this hold before any of them changes
+            for (int index : indexes) {
+                if (!show.isHeldBy(index, holdId)) {
+                    return null; // inconsistency guard
+                }
+            }
+
+            // Transition all seats: HELD → CONFIRMED
+            String bookingId = nextBookingId();
+            for (int index : indexes) {
+                show.confirm(index, bookingId);
+            }
+
+            hold.setStatus(Hold.Status.CONFIRMED);
+            return saveBooking(hold, bookingId, paymentId);
+        } finally {
+            show.unlock();
+        }
+    }
+
+    /**
+     * The hold's outcome is decided by one compare-and-set on the hold
+     * (ACTIVE → CONFIRMED), so a racing release cannot win half the seats.
+     * A seat can still be lost if the hold expired and another request took
+     * the seat over; then the confirmed seats are given back and the hold is lost.
+     */
+    private Booking confirmHoldOptimistic(ShowInventory show, int[] indexes, Hold hold,
+                                          String userId, String paymentId) {
+        String holdId = hold.getHoldId();
         if (hold.getStatus() != Hold.Status.ACTIVE) return null;
         if (!hold.getUserId().equals(userId)) return null;
-
-        // Check not expired
         if (hold.isExpired()) {
             releaseHold(holdId);
             return null;
         }
+        if (!hold.compareAndSetStatus(Hold.Status.ACTIVE, Hold.Status.CONFIRMED)) {
+            casConflicts.increment();   // Released (or confirmed by a retry) meanwhile
+            return null;
+        }
 
-        // Transition all seats: HELD → CONFIRMED
-        String bookingId = "b_" + String.format("%03d", ++bookingCounter);
-        for (String seatId : hold.getSeatIds()) {
-            ShowSeat seat = getShowSeat(hold.getShowId(), seatId);
-            if (seat.getStatus() != ShowSeat.Status.HELD || !holdId.equals(seat.getHoldId())) {
-                return null; // inconsistency guard
-            }
-            seat.setStatus(ShowSeat.Status.CONFIRMED);
-            seat.setBookingId(bookingId);
-            seat.incrementVersion();
+        String bookingId = nextBookingId();
+        ShowSeat.State[] mine = new ShowSeat.State[indexes.length];
+        int confirmed = 0;
+        while (confirmed < indexes.length) {
+            ShowSeat seat = show.seat(indexes[confirmed]);
+            ShowSeat.State current = seat.getState();
+            if (current.getStatus() != ShowSeat.Status.HELD || !holdId.equals(current.getHoldId())) break;
+            mine[confirmed] = current.toConfirmed(bookingId);
+            if (!seat.compareAndSet(current, mine[confirmed])) break;
+            confirmed++;
         }
 
-        hold.setStatus(Hold.Status.CONFIRMED);
+        if (confirmed < indexes.length) {
+            casConflicts.increment();
+            for (int i = 0; i < confirmed; i++) {
+                show.seat(indexes[i]).compareAndSet(mine[i], mine[i].toAvailable());
+            }
+            releaseSeatsOf(show, indexes, holdId);
+            hold.setStatus(Hold.Status.EXPIRED);
+            for (int index : indexes) show.syncBits(index);
+            return null;
+        }
 
-        Booking booking = new Booking(bookingId, holdId, hold.getShowId(), userId,
-            hold.getSeatIds(), paymentId, hold.getTotalPrice());
-        bookings.put(bookingId, booking);
-        return booking;
+        for (int index : indexes) show.syncBits(index);
+        return saveBooking(hold, bookingId, paymentId);
     }
 
     /** Release a hold: HELD → AVAILABLE. Called by Hold Manager on expiry or user cancel. */
-    public synchronized void releaseHold(String holdId) {
+    public void releaseHold(String holdId) {
         Hold hold = holds.get(holdId);
-        if (hold == null || hold.getStatus() != Hold.Status.ACTIVE) return;
+        if (hold != null) release(hold);
+    }
+
+    /** @return true if this call released the hold (it was still ACTIVE) */
+    private boolean release(Hold hold) {
+        String holdId = hold.getHoldId();
+        ShowInventory show = shows.get(hold.getShowId());
+        int[] indexes = show.indexesOf(hold.getSeatIds());
+        operations.increment();
+
+        if (concurrency == ConcurrencyControl.OPTIMISTIC) {
+            if (!hold.compareAndSetStatus(Hold.Status.ACTIVE, Hold.Status.EXPIRED)) return false;
+            releaseSeatsOf(show, indexes, holdId);
+            for (int index : indexes) show.syncBits(index);
+            return true;
+        }
 
-        for (String seatId : hold.getSeatIds()) {
-            ShowSeat seat = getShowSeat(hold.getShowId(), seatId);
-            if (seat != null && holdId.equals(seat.getHoldId())) {
-                seat.release();
+        if (show.lock()) lockWaits.increment();
+        try {
+            if (hold.getStatus() != Hold.Status.ACTIVE) return false;
+            for (int index : indexes) {
+                if (show.isHeldBy(index, holdId)) {
+                    show.release(index);
+                }
             }
+            hold.setStatus(Hold.Status.EXPIRED);
+            return true;
+        } finally {
+            show.unlock();
+        }
+    }
+
+    /** Optimistic: HELD → AVAILABLE for every seat this hold still has. */
+    private void releaseSeatsOf(ShowInventory show, int[] indexes, String holdId) {
+        for (int index : indexes) {
+            ShowSeat seat = show.seat(index);
+            ShowSeat.State current;
+            do {
+                current = seat.getState();
+                if (current.getStatus() != ShowSeat.Status.HELD || !holdId.equals(current.getHoldId())) break;
+            } while (!seat.compareAndSet(current, current.toAvailable()));
         }
-        hold.setStatus(Hold.Status.EXPIRED);
     }
 
-    /** Find all active holds that have expired (for cron-based Hold Manager). */
-    public List<Hold> findExpiredHolds() {
-        return holds.values().stream()
-            .filter(h -> h.getStatus() == Hold.Status.ACTIVE && h.isExpired())
-            .collect(Collectors.toList());
+    private Booking saveBooking(Hold hold, String bookingId, String paymentId) {
+        Booking booking = new Booking(bookingId, hold.getHoldId(), hold.getShowId(), hold.getUserId(),
+            hold.getSeatIds(), paymentId, hold.getTotalPrice());
+        bookings.put(bookingId, booking);
+        return booking;
+    }
+
+    private String nextHoldId() {
+        return "h_" + String.format("%03d", holdCounter.incrementAndGet());
+    }
+
+    private String nextBookingId() {
+        return "b_" + String.format("%03d", bookingCounter.incrementAndGet());
+    }
+
+    /**
+     * Release every active hold whose TTL has passed (for the cron-based Hold
+     * Manager), and drop finished holds that are due from memory.
+     * Walks only the wheel slots that came due: O(holds due), not O(all holds).
+     *
+     * A hold comes due twice: at its expiry, when it is released if still active
+     * and otherwise (confirmed, cancelled) left alone, and once the retention has
+     * passed, when it is dropped. Every finished hold is thus retained the same way.
+     *
+     * @return the holds this call released
+     */
+    public List<Hold> releaseExpiredHolds() {
+        long now = System.currentTimeMillis();
+        List<Hold> released = new ArrayList<>();
+        for (HoldExpiryWheel.Entry entry : expiryWheel.advance(now)) {
+            Hold hold = entry.hold;
+            if (entry.dueMillis == hold.getExpiresAt()) {
+                if (hold.getStatus() == Hold.Status.ACTIVE && release(hold)) {
+                    released.add(hold);
+                }
+                expiryWheel.schedule(hold, now + finishedHoldRetentionMs);
+            } else {
+                // Retention over: late retries of this hold no longer need an answer
+                holds.remove(hold.getHoldId());
+            }
+        }
+        return released;
     }
 
     public Hold getHold(String holdId) { return holds.get(holdId); }
+
+    /** Holds still in memory: active ones plus finished ones not yet compacted. */
+    public int getRetainedHoldCount() { return holds.size(); }
     public Booking getBooking(String bookingId) { return bookings.get(bookingId); }
+
+    /**
+     * Contention metrics. "contentionRate" is the share of operations that
+     * waited for a show lock (pessimistic) or lost a compare-and-set (optimistic).
+     */
+    public Map<String, Object> getStats() {
+        long ops = operations.sum();
+        long contended = concurrency == ConcurrencyControl.OPTIMISTIC ? casConflicts.sum() : lockWaits.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrencyControl", concurrency);
+        stats.put("operations", ops);
+        stats.put("lockWaits", lockWaits.sum());
+        stats.put("casConflicts", casConflicts.sum());
+        stats.put("retries", retries.sum());
+        stats.put("retriesExhausted", retriesExhausted.sum());
+        stats.put("contentionRate", ops > 0 ? String.format("%.2f%%", 100.0 * contended / ops) : "N/A");
+        stats.put("retryRate", ops > 0 ? String.format("%.2f%%", 100.0 * retries.sum() / ops) : "N/A");
+        return stats;
+    }
 }
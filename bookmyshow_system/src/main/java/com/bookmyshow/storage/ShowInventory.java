@@ -0,0 +1,198 @@
+package com.bookmyshow.storage;
+
+import com.bookmyshow.model.ShowSeat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Seat inventory of one show — one lock stripe of SeatInventoryDB.
+ *
+ * Each seat gets a dense index when it is added; seat status is mirrored in
+ * three bitsets (available / held / confirmed) indexed by it, so checking an
+ * all-or-nothing hold is a handful of bit tests with no string keys built.
+ *
+ * Pessimistic mode changes state while holding this show's lock; holds on
+ * other shows never wait for it. Optimistic mode changes seats by
+ * compare-and-set and then re-syncs their bits. Seat lookups
+ * (seatId → index → ShowSeat) are lock-free. Seats are added before the
+ * show takes traffic.
+ */
+final class ShowInventory {
+
+    private final String showId;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Integer> seatIndex = new ConcurrentHashMap<>();
+    private volatile ShowSeat[] seats = new ShowSeat[64];
+    private int seatCount;
+
+    // Bit i of each set = seat i is in that status
+    private volatile AtomicLongArray available = new AtomicLongArray(1);
+    private volatile AtomicLongArray held = new AtomicLongArray(1);
+    private volatile AtomicLongArray confirmed = new AtomicLongArray(1);
+
+    ShowInventory(String showId) {
+        this.showId = showId;
+    }
+
+    String getShowId() { return showId; }
+
+    /**
+     * Take the show's lock.
+     * @return true if another request held it and this one had to wait
+     */
+    boolean lock() {
+        if (lock.tryLock()) return false;
+        lock.lock();
+        return true;
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    /** Add a seat (AVAILABLE). Re-adding an existing seat resets it, as before. */
+    void addSeat(String seatId) {
+        lock.lock();
+        try {
+            ShowSeat seat = new ShowSeat(showId, seatId);
+            Integer existing = seatIndex.get(seatId);
+            if (existing != null) {
+                seats[existing] = seat;
+                syncBits(existing);
+                return;
+            }
+
+            int index = seatCount++;
+            if (index == seats.length) {
+                seats = Arrays.copyOf(seats, index * 2);
+            }
+            seats[index] = seat;
+            int words = (seatCount + 63) >>> 6;
+            if (words > available.length()) {
+                available = grow(available, words * 2);
+                held = grow(held, words * 2);
+                confirmed = grow(confirmed, words * 2);
+            }
+            syncBits(index);
+            seatIndex.put(seatId, index);   // Publishes the seat to lock-free lookups
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ShowSeat getSeat(String seatId) {
+        Integer index = seatIndex.get(seatId);
+        return index != null ? seats[index] : null;
+    }
+
+    ShowSeat seat(int index) {
+        return seats[index];
+    }
+
+    /** Dense indexes of the given seats, or null if any of them does not exist. */
+    int[] indexesOf(List<String> seatIds) {
+        int[] indexes = new int[seatIds.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            Integer index = seatIndex.get(seatIds.get(i));
+            if (index == null) return null;
+            indexes[i] = index;
+        }
+        return indexes;
+    }
+
+    /** All seats in the order they were added. */
+    List<ShowSeat> getSeats() {
+        ShowSeat[] current = seats;
+        int count = seatIndex.size();
+        List<ShowSeat> result = new ArrayList<>(count);
+        for (int i = 0; i < count && i < current.length && current[i] != null; i++) {
+            result.add(current[i]);
+        }
+        return result;
+    }
+
+    int seatCount() { return seatIndex.size(); }
+
+    // ─── Transitions under the show lock (pessimistic mode) ───
+
+    boolean isAvailable(int index) {
+        return testBit(available, index);
+    }
+
+    boolean isHeldBy(int index, String holdId) {
+        return testBit(held, index) && holdId.equals(seats[index].getHoldId());
+    }
+
+    void hold(int index, String holdId, String userId, long expiresAt) {
+        seats[index].hold(holdId, userId, expiresAt);
+        clearBit(available, index);
+        setBit(held, index);
+    }
+
+    void confirm(int index, String bookingId) {
+        seats[index].confirm(bookingId);
+        clearBit(held, index);
+        setBit(confirmed, index);
+    }
+
+    void release(int index) {
+        seats[index].release();
+        clearBit(held, index);
+        setBit(available, index);
+    }
+
+    /**
+     * Make the seat's bits match its current state (after a lock-free
+     * compare-and-set). Re-checks afterwards: if the seat moved on meanwhile,
+     * whoever moved it may have written its bits before ours, so write again.
+     */
+    void syncBits(int index) {
+        ShowSeat seat = seats[index];
+        ShowSeat.State state;
+        do {
+            state = seat.getState();
+            ShowSeat.Status status = state.getStatus();
+            updateBit(available, index, status == ShowSeat.Status.AVAILABLE);
+            updateBit(held, index, status == ShowSeat.Status.HELD);
+            updateBit(confirmed, index, status == ShowSeat.Status.CONFIRMED);
+        } while (seat.getState() != state);
+    }
+
+    int countAvailable() {
+        AtomicLongArray bits = available;
+        int count = 0;
+        for (int w = 0; w < bits.length(); w++) {
+            count += Long.bitCount(bits.get(w));
+        }
+        return count;
+    }
+
+    private static AtomicLongArray grow(AtomicLongArray bits, int words) {
+        AtomicLongArray grown = new AtomicLongArray(words);
+        for (int w = 0; w < bits.length(); w++) {
+            grown.set(w, bits.get(w));
+        }
+        return grown;
+    }
+
+    private static boolean testBit(AtomicLongArray bits, int index) {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private static void updateBit(AtomicLongArray bits, int index, boolean on) {
+        if (on) setBit(bits, index); else clearBit(bits, index);
+    }
+
+    private static void setBit(AtomicLongArray bits, int index) {
+        bits.getAndAccumulate(index >>> 6, 1L << index, (word, mask) -> word | mask);
+    }
+
+    private static void clearBit(AtomicLongArray bits, int index) {
+        bits.getAndAccumulate(index >>> 6, ~(1L << index), (word, mask) -> word & mask);
+    }
+}
@@ -46,17 +46,36 @@ public class TripService {
      * Implements idempotency: same key + same driver → return cached result.
      * Different driver but ride already matched → 409 Conflict.
      *
-     * Returns HTTP-like status: 200 (matched), 409 (conflict), 404 (not found).
+     * Returns HTTP-like status: 200 (matched), 409 (conflict), 404 (not found),
+     * 425 (an accept with this key is still in flight; retry with the same key).
+     *
+     * The key is claimed before anything runs: a retry sent while the first
+     * accept is still in flight waits for its result instead of running again.
+     * If that takes longer than IdempotencyStore.IN_FLIGHT_WAIT_MS the retry gets
+     * 425, never 409, so the driver does not give up a ride the first accept may win.
      */
     public int acceptRide(String rideId, String driverId, String idempotencyKey) {
-        // 1. Idempotency check (same driver retrying)
-        CachedResponse cached = idempotencyStore.lookup(idempotencyKey);
+        // 1. Idempotency check (same driver retrying; claims the key if it is new)
+        CachedResponse cached = idempotencyStore.claim(idempotencyKey);
         if (cached != null) {
             System.out.println("  [IDEMPOTENT] Duplicate key '" + idempotencyKey +
                 "' → returning cached " + cached.statusCode);
             return cached.statusCode;
         }
+        boolean saved = false;
+        try {
+            int status = acceptClaimed(rideId, driverId, idempotencyKey);
+            saved = true;   // Every path that returns has saved its response
+            return status;
+        } finally {
+            if (!saved) {
+                // Any other exit (exception or Error, e.g. OOM mid-transition): let a retry run
+                idempotencyStore.abandon(idempotencyKey);
+            }
+        }
+    }
 
+    private int acceptClaimed(String rideId, String driverId, String idempotencyKey) {
         Trip trip = tripDB.findById(rideId);
         if (trip == null) {
             idempotencyStore.save(idempotencyKey, 404, "Trip not found");